@@ -0,0 +1,150 @@
+package org.example.ejemplos.carga;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Parametros de una prueba de carga, leidos de argumentos {@code clave=valor}. Con la misma configuracion (incluida la
+ * semilla) cada hilo genera exactamente la misma secuencia de operaciones y de tiempos de llegada, asi dos versiones
+ * se comparan con el mismo trafico.
+ */
+final class ConfiguracionCarga {
+
+    enum Llegadas {
+        // intervalos iguales entre operaciones
+        CONSTANTE,
+        // intervalos exponenciales, llegadas independientes con la tasa pedida en promedio
+        POISSON
+    }
+
+    // cuentas del banco y saldo inicial de cada una, en centavos
+    final int cuentas;
+    final long saldoInicial;
+    final String tipoCuenta;
+    // exponente de Zipf para elegir cuentas, 0 es uniforme
+    final double zipf;
+    final int hilos;
+    // operaciones por segundo entre todos los hilos
+    final double tasa;
+    final Llegadas llegadas;
+    // durante el primer decimo de cada periodo la tasa se multiplica por la rafaga
+    final double rafaga;
+    final long periodoRafagaMillis;
+    // fraccion de operaciones que solo leen un saldo
+    final double lecturas;
+    // fraccion de transferencias con un monto mayor a cualquier saldo
+    final double sobregiros;
+    // monto maximo de una transferencia normal, en centavos
+    final long montoMaximo;
+    final long calentamientoSegundos;
+    final long duracionSegundos;
+    final long semilla;
+    final String salida;
+
+    private ConfiguracionCarga(Map<String, String> valores) {
+        cuentas = Integer.parseInt(valores.remove("cuentas"));
+        saldoInicial = Long.parseLong(valores.remove("saldoInicial"));
+        tipoCuenta = valores.remove("tipoCuenta");
+        zipf = Double.parseDouble(valores.remove("zipf"));
+        hilos = Integer.parseInt(valores.remove("hilos"));
+        tasa = Double.parseDouble(valores.remove("tasa"));
+        llegadas = Llegadas.valueOf(valores.remove("llegadas").toUpperCase(Locale.ROOT));
+        rafaga = Double.parseDouble(valores.remove("rafaga"));
+        periodoRafagaMillis = Long.parseLong(valores.remove("periodoRafaga"));
+        lecturas = Double.parseDouble(valores.remove("lecturas"));
+        sobregiros = Double.parseDouble(valores.remove("sobregiros"));
+        montoMaximo = Long.parseLong(valores.remove("montoMaximo"));
+        calentamientoSegundos = Long.parseLong(valores.remove("calentamiento"));
+        duracionSegundos = Long.parseLong(valores.remove("duracion"));
+        semilla = Long.parseLong(valores.remove("semilla"));
+        salida = valores.remove("salida");
+        if (!valores.isEmpty()) {
+            throw new IllegalArgumentException("Parametros desconocidos: " + valores.keySet());
+        }
+        if (cuentas < 2 || hilos < 1 || tasa <= 0 || rafaga < 1 || periodoRafagaMillis < 1 || montoMaximo < 1
+                || duracionSegundos < 1 || calentamientoSegundos < 0) {
+            throw new IllegalArgumentException("Configuracion invalida: " + this);
+        }
+        if (lecturas < 0 || lecturas > 1 || sobregiros < 0 || sobregiros > 1) {
+            throw new IllegalArgumentException("lecturas y sobregiros son fracciones entre 0 y 1");
+        }
+    }
+
+    private static Map<String, String> porDefecto() {
+        Map<String, String> valores = new LinkedHashMap<>();
+        valores.put("cuentas", "10000");
+        valores.put("saldoInicial", "100000000");
+        valores.put("tipoCuenta", "Cuenta");
+        valores.put("zipf", "0.99");
+        valores.put("hilos", "4");
+        valores.put("tasa", "20000");
+        valores.put("llegadas", "poisson");
+        valores.put("rafaga", "1");
+        valores.put("periodoRafaga", "1000");
+        valores.put("lecturas", "0.5");
+        valores.put("sobregiros", "0.05");
+        valores.put("montoMaximo", "10000");
+        valores.put("calentamiento", "3");
+        valores.put("duracion", "10");
+        valores.put("semilla", "42");
+        valores.put("salida", "target/carga-resultados.json");
+        return valores;
+    }
+
+    static ConfiguracionCarga desdeArgumentos(String... argumentos) {
+        Map<String, String> valores = porDefecto();
+        for (String argumento : argumentos) {
+            int igual = argumento.indexOf('=');
+            if (igual < 1) {
+                throw new IllegalArgumentException("Se esperaba clave=valor: " + argumento + ", claves: "
+                        + porDefecto().keySet());
+            }
+            String clave = argumento.substring(0, igual);
+            if (!porDefecto().containsKey(clave)) {
+                throw new IllegalArgumentException("Parametro desconocido " + clave + ", claves: "
+                        + porDefecto().keySet());
+            }
+            valores.put(clave, argumento.substring(igual + 1));
+        }
+        return new ConfiguracionCarga(valores);
+    }
+
+    /**
+     * Operaciones por segundo que se planean en promedio, contando las rafagas.
+     */
+    double getTasaPromedio() {
+        return tasa * (0.9 + 0.1 * rafaga);
+    }
+
+    /**
+     * Los parametros como pares clave valor, en el mismo formato que se leen.
+     */
+    Map<String, Object> comoMapa() {
+        Map<String, Object> mapa = new LinkedHashMap<>();
+        mapa.put("cuentas", cuentas);
+        mapa.put("saldoInicial", saldoInicial);
+        mapa.put("tipoCuenta", tipoCuenta);
+        mapa.put("zipf", zipf);
+        mapa.put("hilos", hilos);
+        mapa.put("tasa", tasa);
+        mapa.put("llegadas", llegadas.name().toLowerCase(Locale.ROOT));
+        mapa.put("rafaga", rafaga);
+        mapa.put("periodoRafaga", periodoRafagaMillis);
+        mapa.put("lecturas", lecturas);
+        mapa.put("sobregiros", sobregiros);
+        mapa.put("montoMaximo", montoMaximo);
+        mapa.put("calentamiento", calentamientoSegundos);
+        mapa.put("duracion", duracionSegundos);
+        mapa.put("semilla", semilla);
+        return mapa;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder texto = new StringBuilder();
+        comoMapa().forEach((clave, valor) -> texto.append(texto.length() == 0 ? "" : " ").append(clave).append('=')
+                .append(valor));
+        return texto.toString();
+    }
+}
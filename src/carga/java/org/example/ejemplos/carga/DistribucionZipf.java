@@ -0,0 +1,72 @@
+package org.example.ejemplos.carga;
+
+import java.util.SplittableRandom;
+
+/**
+ * Elige posiciones entre 0 y {@code cantidad - 1} con popularidad de Zipf: la posicion de rango k sale con
+ * probabilidad proporcional a 1 / k^exponente. Con exponente 0 todas salen igual; cerca de 1 unas pocas cuentas se
+ * llevan la mayor parte del trafico, como pasa con comercios y cuentas recaudadoras.
+ * <p>
+ * Los rangos se reparten entre las posiciones con una permutacion de la semilla, asi las cuentas calientes no son
+ * siempre las primeras que se crearon.
+ */
+final class DistribucionZipf {
+
+    private final double[] acumulada;
+    private final int[] posiciones;
+
+    DistribucionZipf(int cantidad, double exponente, long semilla) {
+        if (cantidad < 1) {
+            throw new IllegalArgumentException("Debe haber al menos una posicion");
+        }
+        if (exponente < 0) {
+            throw new IllegalArgumentException("El exponente no puede ser negativo");
+        }
+        acumulada = new double[cantidad];
+        double suma = 0;
+        for (int k = 0; k < cantidad; k++) {
+            suma += 1 / Math.pow(k + 1, exponente);
+            acumulada[k] = suma;
+        }
+        for (int k = 0; k < cantidad; k++) {
+            acumulada[k] /= suma;
+        }
+        // el ultimo queda en 1 aunque la division redondee, nextDouble nunca pasa de ahi
+        acumulada[cantidad - 1] = 1;
+
+        posiciones = new int[cantidad];
+        for (int i = 0; i < cantidad; i++) {
+            posiciones[i] = i;
+        }
+        SplittableRandom random = new SplittableRandom(semilla);
+        for (int i = cantidad - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int temporal = posiciones[i];
+            posiciones[i] = posiciones[j];
+            posiciones[j] = temporal;
+        }
+    }
+
+    int siguiente(SplittableRandom random) {
+        double u = random.nextDouble();
+        // primer rango con acumulada mayor a u
+        int bajo = 0;
+        int alto = acumulada.length - 1;
+        while (bajo < alto) {
+            int medio = (bajo + alto) >>> 1;
+            if (acumulada[medio] <= u) {
+                bajo = medio + 1;
+            } else {
+                alto = medio;
+            }
+        }
+        return posiciones[bajo];
+    }
+
+    /**
+     * Fraccion del trafico que se llevan las {@code primeras} posiciones mas populares.
+     */
+    double fraccionDeLasPrimeras(int primeras) {
+        return primeras <= 0 ? 0 : acumulada[Math.min(primeras, acumulada.length) - 1];
+    }
+}
@@ -0,0 +1,206 @@
+package org.example.ejemplos.carga;
+
+import org.example.ejemplos.exceptions.DineroInsuficienteException;
+import org.example.ejemplos.models.Banco;
+import org.example.ejemplos.models.Cuenta;
+import org.example.ejemplos.models.CuentaAtomica;
+import org.example.ejemplos.models.CuentaEstriada;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Prueba de carga de {@link Banco#trasnferir(Cuenta, Cuenta, long, int)} con trafico parecido al real: cuentas
+ * calientes con popularidad de Zipf, llegadas de Poisson o constantes con rafagas, lecturas de saldo mezcladas con
+ * transferencias y una fraccion de sobregiros que terminan en {@link DineroInsuficienteException}.
+ * <p>
+ * La carga es de lazo abierto: cada hilo tiene un plan de llegadas que no depende de cuanto tardan las operaciones.
+ * Si una operacion se demora, las siguientes salen atrasadas y su latencia se cuenta desde el momento planeado,
+ * como la veria un cliente. Un generador de lazo cerrado esperaria a que el banco responda y no mediria justamente
+ * las esperas largas.
+ * <p>
+ * {@code mvn -P carga test-compile exec:exec -Dcarga.args="tasa=50000 hilos=8 zipf=1.1 semilla=7"}
+ */
+public final class PruebaCarga {
+
+    // el sobregiro pide mas de lo que cualquier cuenta puede juntar
+    private static final long MONTO_SOBREGIRO = Long.MAX_VALUE / 4;
+    // bajo esto se espera activamente, parkNanos se pasa por decenas de microsegundos
+    private static final long ESPERA_ACTIVA_NANOS = 100_000;
+
+    private final ConfiguracionCarga configuracion;
+    private final Banco banco;
+    private final Cuenta[] cuentas;
+    private final DistribucionZipf popularidad;
+
+    PruebaCarga(ConfiguracionCarga configuracion) {
+        this.configuracion = configuracion;
+        this.banco = new Banco("Banco De Carga");
+        this.cuentas = new Cuenta[configuracion.cuentas];
+        for (int i = 0; i < cuentas.length; i++) {
+            cuentas[i] = nuevaCuenta(configuracion.tipoCuenta, "cliente " + i, configuracion.saldoInicial);
+            banco.addCuentas(cuentas[i]);
+        }
+        this.popularidad = new DistribucionZipf(configuracion.cuentas, configuracion.zipf, configuracion.semilla);
+    }
+
+    private static Cuenta nuevaCuenta(String tipo, String persona, long saldo) {
+        switch (tipo) {
+            case "Cuenta":
+                return new Cuenta(persona, saldo, 2);
+            case "CuentaAtomica":
+                return new CuentaAtomica(persona, saldo, 2);
+            case "CuentaEstriada":
+                return new CuentaEstriada(persona, saldo, 2);
+            default:
+                throw new IllegalArgumentException("Tipo de cuenta desconocido: " + tipo);
+        }
+    }
+
+    /**
+     * Corre la prueba completa: calentamiento y medicion, con todos los hilos empezando en el mismo instante.
+     */
+    ResultadoCarga correr() throws InterruptedException {
+        ResultadoCarga resultado = new ResultadoCarga(configuracion);
+        // un generador por hilo derivado de la semilla, en orden, asi cada hilo repite su secuencia
+        SplittableRandom raiz = new SplittableRandom(configuracion.semilla);
+        Thread[] hilos = new Thread[configuracion.hilos];
+        CountDownLatch listos = new CountDownLatch(hilos.length);
+        long[] inicio = new long[1];
+        CountDownLatch partida = new CountDownLatch(1);
+        for (int h = 0; h < hilos.length; h++) {
+            SplittableRandom random = raiz.split();
+            hilos[h] = new Thread(() -> {
+                listos.countDown();
+                try {
+                    partida.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                generar(random, inicio[0], resultado);
+            }, "carga-" + h);
+            hilos[h].start();
+        }
+        listos.await();
+        // un poco en el futuro para que todos los hilos despierten antes de la primera llegada
+        inicio[0] = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(10);
+        partida.countDown();
+        for (Thread hilo : hilos) {
+            hilo.join();
+        }
+        return resultado;
+    }
+
+    private void generar(SplittableRandom random, long inicio, ResultadoCarga resultado) {
+        long inicioMedicion = inicio + TimeUnit.SECONDS.toNanos(configuracion.calentamientoSegundos);
+        long fin = inicioMedicion + TimeUnit.SECONDS.toNanos(configuracion.duracionSegundos);
+        long periodoRafaga = TimeUnit.MILLISECONDS.toNanos(configuracion.periodoRafagaMillis);
+        // intervalo medio de cada hilo, la tasa se reparte entre todos
+        double intervaloMedio = configuracion.hilos * 1e9 / configuracion.tasa;
+        double programado = inicio;
+        long atrasoMaximo = 0;
+        long ultimoTermino = inicioMedicion;
+        while (true) {
+            double intervalo = intervaloMedio;
+            if ((long) (programado - inicio) % periodoRafaga < periodoRafaga / 10) {
+                intervalo /= configuracion.rafaga;
+            }
+            if (configuracion.llegadas == ConfiguracionCarga.Llegadas.POISSON) {
+                intervalo *= -Math.log(1 - random.nextDouble());
+            }
+            programado += intervalo;
+            long momento = (long) programado;
+            if (momento >= fin) {
+                break;
+            }
+
+            // todo lo aleatorio se decide antes de esperar, asi no depende de los tiempos
+            ResultadoCarga.Operacion operacion;
+            int indiceOrigen = popularidad.siguiente(random);
+            Cuenta origen = cuentas[indiceOrigen];
+            Cuenta destino = null;
+            long monto = 0;
+            if (random.nextDouble() < configuracion.lecturas) {
+                operacion = ResultadoCarga.Operacion.LECTURA;
+            } else {
+                destino = cuentas[popularidad.siguiente(random)];
+                if (destino == origen) {
+                    destino = cuentas[(indiceOrigen + 1) % cuentas.length];
+                }
+                if (random.nextDouble() < configuracion.sobregiros) {
+                    operacion = ResultadoCarga.Operacion.SOBREGIRO;
+                    monto = MONTO_SOBREGIRO;
+                } else {
+                    operacion = ResultadoCarga.Operacion.TRANSFERENCIA;
+                    monto = 1 + random.nextLong(configuracion.montoMaximo);
+                }
+            }
+
+            esperarHasta(momento);
+            long comienzo = System.nanoTime();
+            switch (operacion) {
+                case LECTURA:
+                    if (origen.getSaldoUnidades() < 0) {
+                        resultado.saldoNegativo();
+                    }
+                    break;
+                case TRANSFERENCIA:
+                    try {
+                        banco.trasnferir(origen, destino, monto, 2);
+                    } catch (DineroInsuficienteException e) {
+                        if (momento >= inicioMedicion) {
+                            resultado.rechazada();
+                        }
+                    }
+                    break;
+                default:
+                    try {
+                        banco.trasnferir(origen, destino, monto, 2);
+                        resultado.sobregiroAceptado();
+                    } catch (DineroInsuficienteException e) {
+                        // esperado
+                    }
+            }
+            long termino = System.nanoTime();
+            if (momento >= inicioMedicion) {
+                resultado.registrar(operacion, momento, comienzo, termino);
+                atrasoMaximo = Math.max(atrasoMaximo, comienzo - momento);
+                ultimoTermino = termino;
+            }
+        }
+        resultado.terminar(ultimoTermino - inicioMedicion, atrasoMaximo);
+    }
+
+    private static void esperarHasta(long momento) {
+        long falta = momento - System.nanoTime();
+        if (falta > ESPERA_ACTIVA_NANOS) {
+            LockSupport.parkNanos(falta - ESPERA_ACTIVA_NANOS);
+        }
+        while (System.nanoTime() < momento) {
+            Thread.onSpinWait();
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException, IOException {
+        ConfiguracionCarga configuracion = ConfiguracionCarga.desdeArgumentos(args);
+        PruebaCarga prueba = new PruebaCarga(configuracion);
+        System.out.printf("%d cuentas, las 1%% mas populares reciben el %.1f%% de las operaciones%n",
+                configuracion.cuentas, 100 * prueba.popularidad.fraccionDeLasPrimeras(configuracion.cuentas / 100));
+        ResultadoCarga resultado = prueba.correr();
+        System.out.print(resultado);
+        Path salida = Paths.get(configuracion.salida);
+        if (salida.getParent() != null) {
+            Files.createDirectories(salida.getParent());
+        }
+        Files.write(salida, resultado.aJson().getBytes(StandardCharsets.UTF_8));
+        System.out.println("Resultado en " + salida.toAbsolutePath());
+    }
+}
@@ -0,0 +1,182 @@
+package org.example.ejemplos.carga;
+
+import org.example.ejemplos.metricas.HistogramaLatencia;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencias y conteos de una prueba de carga por tipo de operacion. La latencia corregida se mide desde el momento
+ * en que la operacion debia empezar segun el plan de llegadas, no desde que el hilo la pudo empezar: si el banco se
+ * atrasa, las operaciones que esperaban detras cuentan ese atraso (correccion de omision coordinada). La sin
+ * corregir se guarda para ver cuanto esconde medir solo el servicio.
+ */
+final class ResultadoCarga {
+
+    enum Operacion {
+        LECTURA,
+        TRANSFERENCIA,
+        SOBREGIRO
+    }
+
+    private static final double[] PERCENTILES = {0.5, 0.99, 0.999};
+    private static final String[] NOMBRES_PERCENTILES = {"p50", "p99", "p99.9"};
+
+    private final ConfiguracionCarga configuracion;
+    private final Map<Operacion, HistogramaLatencia> corregidas = new EnumMap<>(Operacion.class);
+    private final Map<Operacion, HistogramaLatencia> sinCorregir = new EnumMap<>(Operacion.class);
+    private final HistogramaLatencia total = new HistogramaLatencia();
+    private final HistogramaLatencia totalSinCorregir = new HistogramaLatencia();
+    // transferencias normales que se rechazaron porque la cuenta ya no tenia saldo
+    private final LongAdder rechazadas = new LongAdder();
+    // sobregiros que el banco acepto y lecturas que vieron un saldo negativo, deberian quedar en 0
+    private final LongAdder sobregirosAceptados = new LongAdder();
+    private final LongAdder saldosNegativos = new LongAdder();
+    private volatile long duracionNanos;
+    private volatile long atrasoMaximoNanos;
+
+    ResultadoCarga(ConfiguracionCarga configuracion) {
+        this.configuracion = configuracion;
+        for (Operacion operacion : Operacion.values()) {
+            corregidas.put(operacion, new HistogramaLatencia());
+            sinCorregir.put(operacion, new HistogramaLatencia());
+        }
+    }
+
+    void registrar(Operacion operacion, long programado, long comienzo, long termino) {
+        corregidas.get(operacion).registrar(termino - programado);
+        sinCorregir.get(operacion).registrar(termino - comienzo);
+        total.registrar(termino - programado);
+        totalSinCorregir.registrar(termino - comienzo);
+    }
+
+    void rechazada() {
+        rechazadas.increment();
+    }
+
+    void sobregiroAceptado() {
+        sobregirosAceptados.increment();
+    }
+
+    void saldoNegativo() {
+        saldosNegativos.increment();
+    }
+
+    synchronized void terminar(long duracionNanos, long atrasoMaximoNanos) {
+        this.duracionNanos = Math.max(this.duracionNanos, duracionNanos);
+        this.atrasoMaximoNanos = Math.max(this.atrasoMaximoNanos, atrasoMaximoNanos);
+    }
+
+    long getOperaciones() {
+        return total.getCantidad();
+    }
+
+    /**
+     * Operaciones medidas por segundo, desde el fin del calentamiento hasta que termino la ultima.
+     */
+    double getOperacionesPorSegundo() {
+        return duracionNanos == 0 ? 0 : getOperaciones() * 1e9 / duracionNanos;
+    }
+
+    /**
+     * Mayor diferencia entre el momento planeado y el real de una operacion. Si crece con la duracion el banco no
+     * alcanza la tasa pedida y los percentiles corregidos miden la cola, no el servicio.
+     */
+    long getAtrasoMaximoNanos() {
+        return atrasoMaximoNanos;
+    }
+
+    long getRechazadas() {
+        return rechazadas.sum();
+    }
+
+    long getSobregirosAceptados() {
+        return sobregirosAceptados.sum();
+    }
+
+    long getSaldosNegativos() {
+        return saldosNegativos.sum();
+    }
+
+    HistogramaLatencia getCorregida(Operacion operacion) {
+        return corregidas.get(operacion);
+    }
+
+    private static String micros(long nanos) {
+        return String.format(Locale.ROOT, "%.1f", nanos / 1000.0);
+    }
+
+    private static void lineaTexto(StringBuilder texto, String nombre, HistogramaLatencia corregida,
+                                   HistogramaLatencia sinCorregir) {
+        texto.append(String.format(Locale.ROOT, "%-14s %10d", nombre, corregida.getCantidad()));
+        for (double percentil : PERCENTILES) {
+            texto.append(String.format(Locale.ROOT, " %10s", micros(corregida.percentil(percentil))));
+        }
+        texto.append(String.format(Locale.ROOT, " %10s", micros(corregida.getMaximo())));
+        texto.append(String.format(Locale.ROOT, " %14s%n", micros(sinCorregir.percentil(0.999))));
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder texto = new StringBuilder();
+        texto.append(configuracion).append(System.lineSeparator());
+        texto.append(String.format(Locale.ROOT, "%-14s %10s %10s %10s %10s %10s %14s%n", "operacion (us)", "cantidad",
+                "p50", "p99", "p99.9", "max", "p99.9 sin corr"));
+        for (Operacion operacion : Operacion.values()) {
+            lineaTexto(texto, operacion.name().toLowerCase(Locale.ROOT), corregidas.get(operacion),
+                    sinCorregir.get(operacion));
+        }
+        lineaTexto(texto, "total", total, totalSinCorregir);
+        texto.append(String.format(Locale.ROOT, "%.0f ops/s de %.0f planeadas, atraso maximo %s us, %d rechazadas por "
+                        + "saldo, %d sobregiros aceptados, %d saldos negativos%n", getOperacionesPorSegundo(),
+                configuracion.getTasaPromedio(), micros(atrasoMaximoNanos), getRechazadas(), getSobregirosAceptados(),
+                getSaldosNegativos()));
+        return texto.toString();
+    }
+
+    private static void histogramaJson(StringBuilder json, String nombre, HistogramaLatencia corregida,
+                                       HistogramaLatencia sinCorregir) {
+        json.append("    \"").append(nombre).append("\": {\"cantidad\": ").append(corregida.getCantidad());
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            json.append(", \"").append(NOMBRES_PERCENTILES[i]).append("\": ")
+                    .append(corregida.percentil(PERCENTILES[i]));
+        }
+        json.append(", \"maximo\": ").append(corregida.getMaximo());
+        json.append(", \"p99.9SinCorregir\": ").append(sinCorregir.percentil(0.999)).append('}');
+    }
+
+    /**
+     * Resultado en JSON con la configuracion y las latencias en nanosegundos, para comparar corridas.
+     */
+    String aJson() {
+        StringBuilder json = new StringBuilder("{\n  \"configuracion\": {");
+        boolean primero = true;
+        for (Map.Entry<String, Object> parametro : configuracion.comoMapa().entrySet()) {
+            json.append(primero ? "" : ", ").append('"').append(parametro.getKey()).append("\": ");
+            Object valor = parametro.getValue();
+            if (valor instanceof String) {
+                json.append('"').append(valor).append('"');
+            } else {
+                json.append(valor);
+            }
+            primero = false;
+        }
+        json.append("},\n");
+        json.append(String.format(Locale.ROOT, "  \"operacionesPorSegundo\": %.1f,%n", getOperacionesPorSegundo()));
+        json.append("  \"atrasoMaximo\": ").append(atrasoMaximoNanos).append(",\n");
+        json.append("  \"rechazadas\": ").append(getRechazadas()).append(",\n");
+        json.append("  \"sobregirosAceptados\": ").append(getSobregirosAceptados()).append(",\n");
+        json.append("  \"saldosNegativos\": ").append(getSaldosNegativos()).append(",\n");
+        json.append("  \"latencias\": {\n");
+        for (Operacion operacion : Operacion.values()) {
+            histogramaJson(json, operacion.name().toLowerCase(Locale.ROOT), corregidas.get(operacion),
+                    sinCorregir.get(operacion));
+            json.append(",\n");
+        }
+        histogramaJson(json, "total", total, totalSinCorregir);
+        json.append("\n  }\n}\n");
+        return json.toString();
+    }
+}
@@ -0,0 +1,101 @@
+package org.example.ejemplos.benchmarks;
+
+import org.example.ejemplos.models.Banco;
+import org.example.ejemplos.models.Cuenta;
+import org.example.ejemplos.models.TablaCambio;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.Currency;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transferencias y busqueda de cuentas en un banco con muchas cuentas. Con varios hilos las transferencias
+ * eligen pares al azar, asi se mide tanto el paralelismo entre pares distintos como la contencion en pares comunes.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BancoBenchmark {
+
+    @Param({"100000"})
+    public int cantidadCuentas;
+
+    private Banco banco;
+    private Cuenta[] cuentas;
+    private String[] personas;
+    private Cuenta dolares;
+
+    @Setup(Level.Trial)
+    public void preparar() {
+        banco = new Banco("Banco De Chile");
+        cuentas = new Cuenta[cantidadCuentas];
+        personas = new String[cantidadCuentas];
+        for (int i = 0; i < cantidadCuentas; i++) {
+            personas[i] = "persona " + i;
+            cuentas[i] = new Cuenta(personas[i], 1_000_000_000_000L, 2);
+            banco.addCuentas(cuentas[i]);
+        }
+        Currency usd = Currency.getInstance("USD");
+        dolares = new Cuenta("dolares", 1_000_000_000_000L, 2, usd);
+        banco.addCuentas(dolares);
+        banco.setTablaCambio(TablaCambio.VACIA
+                .conTasa(Cuenta.MONEDA_POR_DEFECTO, usd, new BigDecimal("0.00106016"))
+                .conTasa(usd, Cuenta.MONEDA_POR_DEFECTO, new BigDecimal("943.25")));
+    }
+
+    private void transferirAlAzar() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Cuenta origen = cuentas[random.nextInt(cantidadCuentas)];
+        Cuenta destino = cuentas[random.nextInt(cantidadCuentas)];
+        banco.trasnferir(origen, destino, 125L, 2);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void trasnferirUnHilo() {
+        transferirAlAzar();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void trasnferirMultiHilo() {
+        transferirAlAzar();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void trasnferirParCalienteMultiHilo() {
+        banco.trasnferir(cuentas[0], cuentas[1], 125L, 2);
+        banco.trasnferir(cuentas[1], cuentas[0], 125L, 2);
+    }
+
+    // mismo camino que trasnferirUnHilo mas la conversion, la diferencia es el costo de la tabla de cambio
+    @Benchmark
+    @Threads(1)
+    public void trasnferirEntreMonedasUnHilo() {
+        banco.trasnferir(cuentas[ThreadLocalRandom.current().nextInt(cantidadCuentas)], dolares, 125_000L, 2);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Cuenta buscarPorPersonaUnHilo() {
+        return banco.findCuenta(personas[ThreadLocalRandom.current().nextInt(cantidadCuentas)]);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Cuenta buscarPorPersonaMultiHilo() {
+        return banco.findCuenta(personas[ThreadLocalRandom.current().nextInt(cantidadCuentas)]);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Cuenta buscarPorIdMultiHilo() {
+        return banco.findCuenta(cuentas[ThreadLocalRandom.current().nextInt(cantidadCuentas)].getId());
+    }
+}
@@ -0,0 +1,114 @@
+package org.example.ejemplos.benchmarks;
+
+import org.example.ejemplos.exceptions.DineroInsuficienteException;
+import org.example.ejemplos.models.Cuenta;
+import org.example.ejemplos.models.CuentaAtomica;
+import org.example.ejemplos.models.CuentaEstriada;
+import org.example.ejemplos.models.ResultadoDebito;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Credito y debito de una cuenta, con un hilo y con varios hilos sobre la misma cuenta (contencion).
+ * Correr con {@code -prof gc} para ver cuanta memoria asigna cada operacion.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CuentaBenchmark {
+
+    private static final BigDecimal MONTO = new BigDecimal("1.25");
+    private static final long SALDO_INICIAL = 1_000_000_000_000L;
+
+    @State(Scope.Benchmark)
+    public static class CuentaCompartida {
+        @Param({"Cuenta", "CuentaAtomica", "CuentaEstriada"})
+        public String tipo;
+
+        public Cuenta cuenta;
+        public Cuenta sinFondos;
+
+        @Setup(Level.Iteration)
+        public void preparar() {
+            cuenta = crear(tipo, SALDO_INICIAL);
+            sinFondos = crear(tipo, 0L);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class CuentaPorHilo extends CuentaCompartida {
+    }
+
+    static Cuenta crear(String tipo, long unidades) {
+        switch (tipo) {
+            case "CuentaAtomica":
+                return new CuentaAtomica("benchmark", unidades, 2);
+            case "CuentaEstriada":
+                return new CuentaEstriada("benchmark", unidades, 2);
+            default:
+                return new Cuenta("benchmark", unidades, 2);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void creditoUnHilo(CuentaPorHilo estado) {
+        estado.cuenta.credito(125L, 2);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void creditoMultiHilo(CuentaCompartida estado) {
+        estado.cuenta.credito(125L, 2);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void creditoBigDecimalUnHilo(CuentaPorHilo estado) {
+        estado.cuenta.credito(MONTO);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void debitoUnHilo(CuentaPorHilo estado) {
+        estado.cuenta.debito(125L, 2);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void debitoMultiHilo(CuentaCompartida estado) {
+        estado.cuenta.debito(125L, 2);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Object debitoSinFondosUnHilo(CuentaPorHilo estado) {
+        try {
+            estado.sinFondos.debito(125L, 2);
+            return null;
+        } catch (DineroInsuficienteException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public ResultadoDebito tryDebitoSinFondosUnHilo(CuentaPorHilo estado) {
+        return estado.sinFondos.tryDebito(125L, 2);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object debitoSinFondosMultiHilo(CuentaCompartida estado) {
+        try {
+            estado.sinFondos.debito(125L, 2);
+            return null;
+        } catch (DineroInsuficienteException e) {
+            return e;
+        }
+    }
+}
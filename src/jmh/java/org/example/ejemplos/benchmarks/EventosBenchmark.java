@@ -0,0 +1,72 @@
+package org.example.ejemplos.benchmarks;
+
+import org.example.ejemplos.eventos.PoliticaLleno;
+import org.example.ejemplos.eventos.PublicadorEventos;
+import org.example.ejemplos.eventos.Suscripcion;
+import org.example.ejemplos.models.Banco;
+import org.example.ejemplos.models.Cuenta;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Costo de publicar eventos en el camino de las transferencias: sin publicador, con publicador y sin suscripciones,
+ * y con suscripciones que consumen en sus hilos. Con {@code ESPERAR} y un solo procesador la transferencia tambien
+ * paga el tiempo del suscriptor cuando el anillo se llena.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EventosBenchmark {
+
+    @Param({"-1", "0", "1", "2"})
+    public int suscripciones;
+
+    @Param({"DESCONECTAR", "ESPERAR"})
+    public PoliticaLleno politica;
+
+    private Banco banco;
+    private Cuenta origen;
+    private Cuenta destino;
+    private PublicadorEventos publicador;
+
+    @Setup(Level.Iteration)
+    public void preparar() {
+        banco = new Banco("benchmark");
+        origen = new Cuenta("origen", Long.MAX_VALUE / 4, 2);
+        destino = new Cuenta("destino", 0L, 2);
+        banco.addCuentas(origen);
+        banco.addCuentas(destino);
+        if (suscripciones >= 0) {
+            publicador = new PublicadorEventos();
+            banco.agregarObservador(publicador);
+            for (int i = 0; i < suscripciones; i++) {
+                // cada suscripcion suma los montos en su propio arreglo, asi el consumo no se elimina
+                long[] suma = new long[1];
+                publicador.suscribir("benchmark-" + i, lote -> {
+                    for (int j = 0; j < lote.getCantidad(); j++) {
+                        suma[0] += lote.get(j).getUnidades();
+                    }
+                }, politica);
+            }
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void terminar() {
+        if (publicador != null) {
+            for (Suscripcion suscripcion : publicador.getSuscripciones()) {
+                System.out.println(suscripcion);
+            }
+            publicador.close();
+        }
+    }
+
+    @Benchmark
+    public void transferencia() {
+        banco.trasnferir(origen, destino, 125L, 2);
+    }
+}
@@ -0,0 +1,59 @@
+package org.example.ejemplos.benchmarks;
+
+import org.example.ejemplos.metricas.Metricas;
+import org.example.ejemplos.models.Banco;
+import org.example.ejemplos.models.Cuenta;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Costo de las metricas en los caminos criticos: las mismas operaciones con las metricas desactivadas y activadas.
+ * Desactivadas deberia quedar igual que {@link CuentaBenchmark} para {@code Cuenta}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MetricasBenchmark {
+
+    @Param({"false", "true"})
+    public boolean activas;
+
+    private Banco banco;
+    private Cuenta origen;
+    private Cuenta destino;
+
+    @Setup(Level.Trial)
+    public void preparar() {
+        Metricas.setActivas(activas);
+        Metricas.reiniciar();
+        banco = new Banco("benchmark");
+        origen = new Cuenta("origen", Long.MAX_VALUE / 4, 2);
+        destino = new Cuenta("destino", 0L, 2);
+        banco.addCuentas(origen);
+        banco.addCuentas(destino);
+    }
+
+    @TearDown(Level.Trial)
+    public void terminar() {
+        Metricas.setActivas(false);
+    }
+
+    @Benchmark
+    public void credito() {
+        destino.credito(125L, 2);
+    }
+
+    @Benchmark
+    public void debito() {
+        origen.debito(125L, 2);
+    }
+
+    @Benchmark
+    public void transferencia() {
+        banco.trasnferir(origen, destino, 125L, 2);
+    }
+}
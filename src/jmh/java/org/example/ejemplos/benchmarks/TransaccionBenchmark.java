@@ -0,0 +1,70 @@
+package org.example.ejemplos.benchmarks;
+
+import org.example.ejemplos.models.Banco;
+import org.example.ejemplos.models.Cuenta;
+import org.example.ejemplos.models.EstadisticasTransacciones;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transacciones optimistas de tres cuentas (un pago con comision que lee el saldo del origen) con mas o menos
+ * contencion: con pocas cuentas muchas transacciones chocan y se reintentan. Al final de cada iteracion se imprimen
+ * las {@link EstadisticasTransacciones} de esa iteracion.
+ * {@link #dosTransferencias} hace los mismos movimientos con {@link Banco#trasnferir} sin atomicidad entre ambos,
+ * como referencia.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+@Threads(4)
+public class TransaccionBenchmark {
+
+    @Param({"4", "10000"})
+    public int cantidadCuentas;
+
+    private Banco banco;
+    private Cuenta[] cuentas;
+
+    @Setup(Level.Iteration)
+    public void preparar() {
+        banco = new Banco("Banco De Chile");
+        cuentas = new Cuenta[cantidadCuentas];
+        for (int i = 0; i < cantidadCuentas; i++) {
+            cuentas[i] = new Cuenta("persona " + i, 1_000_000_000_000L, 2);
+            banco.addCuentas(cuentas[i]);
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void terminar() {
+        EstadisticasTransacciones estadisticas = banco.getEstadisticasTransacciones();
+        System.out.println(" [" + estadisticas + ", tasa de reintentos " + estadisticas.getTasaReintentos() + "]");
+    }
+
+    @Benchmark
+    public void transaccionTresCuentas() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Cuenta origen = cuentas[random.nextInt(cantidadCuentas)];
+        Cuenta destino = cuentas[random.nextInt(cantidadCuentas)];
+        Cuenta comision = cuentas[random.nextInt(cantidadCuentas)];
+        banco.transaccion(tx -> {
+            long comisionUnidades = tx.getSaldo(origen).signum() > 0 ? 3L : 0L;
+            tx.trasnferir(origen, destino, 125L, 2);
+            tx.trasnferir(origen, comision, comisionUnidades, 2);
+            return null;
+        }, Integer.MAX_VALUE);
+    }
+
+    @Benchmark
+    public void dosTransferencias() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Cuenta origen = cuentas[random.nextInt(cantidadCuentas)];
+        banco.trasnferir(origen, cuentas[random.nextInt(cantidadCuentas)], 125L, 2);
+        banco.trasnferir(origen, cuentas[random.nextInt(cantidadCuentas)], 3L, 2);
+    }
+}
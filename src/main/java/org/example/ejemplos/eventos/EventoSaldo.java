@@ -0,0 +1,93 @@
+package org.example.ejemplos.eventos;
+
+import org.example.ejemplos.models.Dinero;
+
+import java.math.BigDecimal;
+
+/**
+ * Un cambio de saldo publicado por {@link PublicadorEventos}. Los objetos se reutilizan: el anillo del publicador y el
+ * {@link LoteEventos} de cada suscripcion se crean una vez y se sobrescriben, asi que un evento solo es valido
+ * durante {@link SuscriptorEventos#procesar(LoteEventos)}; quien quiera guardarlo copia sus campos.
+ * <p>
+ * En aperturas y ajustes el monto es el saldo de la cuenta en ese momento. En una transferencia la cuenta es el
+ * origen, el monto es lo que salio del origen y el monto de destino lo que entro al destino, que solo es distinto si
+ * las monedas son distintas. Los montos van en unidades de {@link Dinero}.
+ */
+public final class EventoSaldo {
+
+    long secuencia;
+    TipoEvento tipo;
+    long cuenta;
+    long destino;
+    long unidades;
+    int escala;
+    long unidadesDestino;
+    int escalaDestino;
+
+    void escribir(long secuencia, TipoEvento tipo, long cuenta, long destino, long unidades, int escala,
+                  long unidadesDestino, int escalaDestino) {
+        this.secuencia = secuencia;
+        this.tipo = tipo;
+        this.cuenta = cuenta;
+        this.destino = destino;
+        this.unidades = unidades;
+        this.escala = escala;
+        this.unidadesDestino = unidadesDestino;
+        this.escalaDestino = escalaDestino;
+    }
+
+    void copiar(EventoSaldo otro) {
+        escribir(otro.secuencia, otro.tipo, otro.cuenta, otro.destino, otro.unidades, otro.escala,
+                otro.unidadesDestino, otro.escalaDestino);
+    }
+
+    /**
+     * Posicion del evento en el publicador, correlativa entre todas las cuentas.
+     */
+    public long getSecuencia() {
+        return secuencia;
+    }
+
+    public TipoEvento getTipo() {
+        return tipo;
+    }
+
+    /**
+     * Id de la cuenta, en las transferencias el del origen.
+     */
+    public long getCuenta() {
+        return cuenta;
+    }
+
+    /**
+     * Id de la cuenta de destino de una transferencia, 0 en los demas eventos.
+     */
+    public long getDestino() {
+        return destino;
+    }
+
+    public long getUnidades() {
+        return unidades;
+    }
+
+    public int getEscala() {
+        return escala;
+    }
+
+    public long getUnidadesDestino() {
+        return unidadesDestino;
+    }
+
+    public int getEscalaDestino() {
+        return escalaDestino;
+    }
+
+    public BigDecimal getMonto() {
+        return Dinero.aBigDecimal(unidades, escala);
+    }
+
+    @Override
+    public String toString() {
+        return secuencia + " " + tipo + " " + cuenta + (destino != 0 ? "->" + destino : "") + " " + getMonto();
+    }
+}
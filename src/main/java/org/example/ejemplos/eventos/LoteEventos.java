@@ -0,0 +1,29 @@
+package org.example.ejemplos.eventos;
+
+/**
+ * Eventos consecutivos que se entregan juntos a un {@link SuscriptorEventos}, en orden de secuencia. Cada suscripcion
+ * tiene un solo lote que se vuelve a llenar en cada entrega, sin crear objetos.
+ */
+public final class LoteEventos {
+
+    final EventoSaldo[] eventos;
+    int cantidad;
+
+    LoteEventos(int capacidad) {
+        eventos = new EventoSaldo[capacidad];
+        for (int i = 0; i < capacidad; i++) {
+            eventos[i] = new EventoSaldo();
+        }
+    }
+
+    public int getCantidad() {
+        return cantidad;
+    }
+
+    public EventoSaldo get(int i) {
+        if (i < 0 || i >= cantidad) {
+            throw new IndexOutOfBoundsException("Evento " + i + " de un lote de " + cantidad);
+        }
+        return eventos[i];
+    }
+}
@@ -0,0 +1,20 @@
+package org.example.ejemplos.eventos;
+
+/**
+ * Que hace el publicador cuando un evento nuevo sobrescribiria uno que la suscripcion todavia no lee.
+ */
+public enum PoliticaLleno {
+    /**
+     * El movimiento espera a que la suscripcion avance. Frena al banco al ritmo del suscriptor mas lento, sirve para
+     * consumidores que no pueden perder eventos y son mas rapidos que el banco en promedio. Se espera con los
+     * monitores de las cuentas del movimiento tomados, asi que la espera tiene un maximo
+     * ({@link PublicadorEventos#getEsperaMaxima()}): si la suscripcion no avanza en ese tiempo se desconecta igual
+     * que con {@link #DESCONECTAR}.
+     */
+    ESPERAR,
+    /**
+     * La suscripcion se desconecta y el movimiento sigue sin esperar. El suscriptor se entera por
+     * {@link SuscriptorEventos#alDesconectar()} y tiene que volver a suscribirse y reconciliar por su cuenta.
+     */
+    DESCONECTAR
+}
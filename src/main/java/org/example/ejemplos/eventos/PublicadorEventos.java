@@ -0,0 +1,322 @@
+package org.example.ejemplos.eventos;
+
+import org.example.ejemplos.models.Banco;
+import org.example.ejemplos.models.Cuenta;
+import org.example.ejemplos.models.ObservadorMovimientos;
+
+import java.io.Closeable;
+import java.lang.invoke.VarHandle;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Publica cada cambio de saldo de un {@link Banco} como un {@link EventoSaldo} para sistemas externos
+ * (notificaciones, fraude, bodega de datos). Se registra como cualquier observador, con
+ * {@link Banco#agregarObservador(ObservadorMovimientos)}.
+ * <p>
+ * Los eventos van a un anillo de tamano fijo con los objetos creados de antemano. Publicar es tomar la siguiente
+ * secuencia con un incremento atomico, copiar los campos en la posicion del anillo y marcarla como publicada: sin
+ * bloqueos ni objetos nuevos. Sin suscripciones el anillo simplemente se sobrescribe.
+ * <p>
+ * Cada {@link Suscripcion} tiene su hilo y su cursor: lee del anillo todo lo publicado desde su cursor y lo entrega
+ * en lotes, asi un suscriptor lento no frena a los demas ni al banco. Cuando el anillo da la vuelta y alcanzaria a
+ * una suscripcion atrasada se aplica su {@link PoliticaLleno}: esperar a que avance o desconectarla. La espera
+ * ocurre dentro del aviso, con los monitores de las cuentas del movimiento tomados, y dura a lo mas
+ * {@link #getEsperaMaxima()}: una suscripcion que no avanza en ese tiempo se desconecta aunque sea
+ * {@link PoliticaLleno#ESPERAR}.
+ * <p>
+ * Los observadores se llaman con el monitor de la cuenta tomado, y la secuencia se toma dentro de esa llamada: los
+ * eventos de una cuenta tienen secuencias en el orden en que se aplicaron y cada suscripcion los recibe en orden de
+ * secuencia. Con {@link org.example.ejemplos.models.CuentaAtomica} y {@link org.example.ejemplos.models.CuentaEstriada}
+ * los creditos no toman el monitor y su orden es el del observador (ver {@link ObservadorMovimientos}).
+ */
+public class PublicadorEventos implements ObservadorMovimientos, Closeable {
+
+    public static final int CAPACIDAD_POR_DEFECTO = 1 << 16;
+    public static final int TAMANO_LOTE_POR_DEFECTO = 256;
+    public static final Duration ESPERA_MAXIMA_POR_DEFECTO = Duration.ofSeconds(1);
+
+    private static final Suscripcion[] NINGUNA = new Suscripcion[0];
+
+    private final EventoSaldo[] anillo;
+    // secuencia publicada en cada posicion del anillo, -1 mientras un productor la esta escribiendo
+    private final AtomicLongArray publicados;
+    private final int mascara;
+    private final long esperaMaximaNanos;
+    private final AtomicLong siguiente = new AtomicLong();
+    private volatile Suscripciones suscripciones = new Suscripciones(NINGUNA, Long.MAX_VALUE);
+    private volatile boolean cerrado;
+
+    public PublicadorEventos() {
+        this(CAPACIDAD_POR_DEFECTO);
+    }
+
+    /**
+     * @param capacidad eventos en el anillo, potencia de dos; es cuanto puede atrasarse una suscripcion
+     */
+    public PublicadorEventos(int capacidad) {
+        this(capacidad, ESPERA_MAXIMA_POR_DEFECTO);
+    }
+
+    /**
+     * @param esperaMaxima lo que un movimiento espera a una suscripcion {@link PoliticaLleno#ESPERAR} atrasada antes
+     *                     de desconectarla
+     */
+    public PublicadorEventos(int capacidad, Duration esperaMaxima) {
+        if (capacidad <= 0 || Integer.bitCount(capacidad) != 1) {
+            throw new IllegalArgumentException("La capacidad debe ser una potencia de dos: " + capacidad);
+        }
+        anillo = new EventoSaldo[capacidad];
+        publicados = new AtomicLongArray(capacidad);
+        for (int i = 0; i < capacidad; i++) {
+            anillo[i] = new EventoSaldo();
+            publicados.set(i, -1);
+        }
+        mascara = capacidad - 1;
+        esperaMaximaNanos = esperaMaxima.toNanos();
+    }
+
+    /**
+     * Suscripciones que el productor tiene que respetar, con el minimo de sus cursores la ultima vez que se calculo.
+     * Se reemplaza entera al suscribir o quitar, asi un minimo calculado con una lista vieja no queda en la nueva.
+     */
+    private static final class Suscripciones {
+        final Suscripcion[] todas;
+        volatile long minimoCursores;
+
+        Suscripciones(Suscripcion[] todas, long minimoCursores) {
+            this.todas = todas;
+            this.minimoCursores = minimoCursores;
+        }
+    }
+
+    public Suscripcion suscribir(String nombre, SuscriptorEventos suscriptor, PoliticaLleno politica) {
+        return suscribir(nombre, suscriptor, politica, Math.min(TAMANO_LOTE_POR_DEFECTO, anillo.length));
+    }
+
+    /**
+     * Registra un suscriptor que recibe los eventos publicados desde ahora, en lotes de hasta {@code tamanoLote}, en
+     * un hilo propio que empieza de inmediato.
+     */
+    public synchronized Suscripcion suscribir(String nombre, SuscriptorEventos suscriptor, PoliticaLleno politica,
+                                              int tamanoLote) {
+        if (cerrado) {
+            throw new IllegalStateException("El publicador esta cerrado");
+        }
+        if (tamanoLote <= 0 || tamanoLote > anillo.length) {
+            throw new IllegalArgumentException("El lote debe tener entre 1 y " + anillo.length + " eventos");
+        }
+        Suscripcion suscripcion = new Suscripcion(this, nombre, suscriptor, politica, tamanoLote, siguiente.get());
+        Suscripcion[] actuales = suscripciones.todas;
+        Suscripcion[] nuevas = Arrays.copyOf(actuales, actuales.length + 1);
+        nuevas[actuales.length] = suscripcion;
+        suscripciones = new Suscripciones(nuevas, Long.MIN_VALUE);
+        // un productor que tomo su secuencia antes de ver la lista nueva no la respeta, por eso el cursor se vuelve a
+        // fijar despues de publicarla: esas secuencias quedan antes del cursor y la suscripcion no las lee
+        suscripcion.cursor = siguiente.get();
+        suscripcion.iniciar();
+        return suscripcion;
+    }
+
+    synchronized void quitar(Suscripcion suscripcion) {
+        Suscripcion[] actuales = suscripciones.todas;
+        List<Suscripcion> restantes = new ArrayList<>(Arrays.asList(actuales));
+        if (restantes.remove(suscripcion)) {
+            suscripciones = new Suscripciones(restantes.toArray(NINGUNA), Long.MIN_VALUE);
+        }
+    }
+
+    synchronized void desconectar(Suscripcion suscripcion) {
+        if (!suscripcion.desconectada) {
+            suscripcion.desconectada = true;
+            quitar(suscripcion);
+        }
+    }
+
+    public List<Suscripcion> getSuscripciones() {
+        return List.of(suscripciones.todas);
+    }
+
+    /**
+     * Cantidad de eventos publicados desde que se creo el publicador.
+     */
+    public long getPublicados() {
+        return siguiente.get();
+    }
+
+    public int getCapacidad() {
+        return anillo.length;
+    }
+
+    public Duration getEsperaMaxima() {
+        return Duration.ofNanos(esperaMaximaNanos);
+    }
+
+    private void publicar(TipoEvento tipo, long cuenta, long destino, long unidades, int escala, long unidadesDestino,
+                          int escalaDestino) {
+        if (cerrado) {
+            return;
+        }
+        long secuencia = siguiente.getAndIncrement();
+        Suscripciones actuales = suscripciones;
+        if (secuencia - anillo.length >= actuales.minimoCursores) {
+            esperarEspacio(actuales, secuencia);
+        }
+        int posicion = (int) secuencia & mascara;
+        // se marca la posicion como en escritura antes de tocar los campos, un lector que la estaba copiando lo nota
+        publicados.setOpaque(posicion, -1);
+        VarHandle.storeStoreFence();
+        anillo[posicion].escribir(secuencia, tipo, cuenta, destino, unidades, escala, unidadesDestino, escalaDestino);
+        publicados.setRelease(posicion, secuencia);
+    }
+
+    /**
+     * Camino lento del productor: el anillo dio la vuelta hasta el cursor de alguna suscripcion, o el minimo guardado
+     * ya no sirve. Desconecta a las suscripciones atrasadas que lo permiten y espera a las demas, hasta la espera
+     * maxima; despues tambien las desconecta.
+     */
+    private void esperarEspacio(Suscripciones actuales, long secuencia) {
+        // la posicion de secuencia tuvo antes esta otra, todas las suscripciones tienen que haberla leido
+        long anterior = secuencia - anillo.length;
+        long limite = 0;
+        boolean vencida = false;
+        for (int esperas = 0; ; esperas++) {
+            long minimo = Long.MAX_VALUE;
+            for (Suscripcion suscripcion : actuales.todas) {
+                if (suscripcion.desconectada || suscripcion.terminarEn == Long.MIN_VALUE) {
+                    // desconectada o cancelada mientras se leia la lista
+                    continue;
+                }
+                long cursor = suscripcion.cursor;
+                if (cursor <= anterior && (vencida || suscripcion.politica == PoliticaLleno.DESCONECTAR)) {
+                    desconectar(suscripcion);
+                    continue;
+                }
+                minimo = Math.min(minimo, cursor);
+            }
+            if (minimo > anterior) {
+                actuales.minimoCursores = minimo;
+                return;
+            }
+            if (cerrado) {
+                // las suscripciones terminan en lo publicado antes del cierre, no hay a quien esperar
+                return;
+            }
+            if (esperas < 100) {
+                Thread.onSpinWait();
+            } else if (esperas < 200) {
+                Thread.yield();
+            } else {
+                // el reloj se mira solo al dormir, girar y ceder son mucho mas cortos que la espera maxima
+                if (limite == 0) {
+                    limite = System.nanoTime() + esperaMaximaNanos;
+                } else if (System.nanoTime() - limite >= 0) {
+                    vencida = true;
+                }
+                LockSupport.parkNanos(10_000);
+            }
+            // una suscripcion nueva o quitada cambia la lista, hay que mirar la actual
+            actuales = suscripciones;
+        }
+    }
+
+    /**
+     * Copia al lote los eventos publicados desde {@code desde}, hasta llenarlo o llegar a uno que todavia no se
+     * publica.
+     *
+     * @return la cantidad copiada, o -1 si un productor ya sobrescribio {@code desde} (la suscripcion quedo atras)
+     */
+    int leer(long desde, LoteEventos lote) {
+        EventoSaldo[] destino = lote.eventos;
+        int leidos = 0;
+        while (leidos < destino.length) {
+            long secuencia = desde + leidos;
+            int posicion = (int) secuencia & mascara;
+            long publicado = publicados.getAcquire(posicion);
+            if (publicado != secuencia) {
+                if (publicado > secuencia) {
+                    return -1;
+                }
+                break;
+            }
+            destino[leidos].copiar(anillo[posicion]);
+            // si la posicion cambio mientras se copiaba, la copia puede estar mezclada
+            VarHandle.loadLoadFence();
+            if (publicados.get(posicion) != secuencia) {
+                return -1;
+            }
+            leidos++;
+        }
+        lote.cantidad = leidos;
+        return leidos;
+    }
+
+    /**
+     * Deja de publicar y termina las suscripciones despues de que entreguen lo ya publicado. Los movimientos que
+     * esten publicando justo al cerrar pueden no entregarse.
+     */
+    @Override
+    public void close() {
+        Suscripcion[] todas;
+        synchronized (this) {
+            if (cerrado) {
+                return;
+            }
+            cerrado = true;
+            todas = suscripciones.todas;
+        }
+        long fin = siguiente.get();
+        for (Suscripcion suscripcion : todas) {
+            suscripcion.terminarEn = fin;
+        }
+        try {
+            for (Suscripcion suscripcion : todas) {
+                suscripcion.esperarFin();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void apertura(Cuenta cuenta) {
+        publicar(TipoEvento.APERTURA, cuenta.getId(), 0, cuenta.getSaldoUnidades(), cuenta.getEscala(), 0, 0);
+    }
+
+    @Override
+    public void cierre(Cuenta cuenta) {
+        publicar(TipoEvento.CIERRE, cuenta.getId(), 0, cuenta.getSaldoUnidades(), cuenta.getEscala(), 0, 0);
+    }
+
+    @Override
+    public void credito(Cuenta cuenta, long unidades, int escala) {
+        publicar(TipoEvento.CREDITO, cuenta.getId(), 0, unidades, escala, 0, 0);
+    }
+
+    @Override
+    public void debito(Cuenta cuenta, long unidades, int escala) {
+        publicar(TipoEvento.DEBITO, cuenta.getId(), 0, unidades, escala, 0, 0);
+    }
+
+    @Override
+    public void ajuste(Cuenta cuenta) {
+        publicar(TipoEvento.AJUSTE, cuenta.getId(), 0, cuenta.getSaldoUnidades(), cuenta.getEscala(), 0, 0);
+    }
+
+    @Override
+    public void transferencia(Cuenta origen, Cuenta destino, long unidades, int escala) {
+        publicar(TipoEvento.TRANSFERENCIA, origen.getId(), destino.getId(), unidades, escala, unidades, escala);
+    }
+
+    @Override
+    public void transferencia(Cuenta origen, Cuenta destino, long unidades, int escala, long unidadesDestino,
+                              int escalaDestino) {
+        publicar(TipoEvento.TRANSFERENCIA, origen.getId(), destino.getId(), unidades, escala, unidadesDestino,
+                escalaDestino);
+    }
+}
@@ -0,0 +1,158 @@
+package org.example.ejemplos.eventos;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Un suscriptor registrado en un {@link PublicadorEventos}, con su cursor y su hilo. El hilo lee del anillo todos
+ * los eventos publicados desde su cursor, hasta el tamano del lote, los entrega y recien entonces avanza el cursor,
+ * que es lo que el publicador mira para saber que posiciones puede sobrescribir.
+ */
+public final class Suscripcion {
+
+    // esperas sin eventos: primero se gira, despues se cede el procesador y al final se duerme de a poco
+    private static final int GIROS = 100;
+    private static final int CESIONES = 200;
+    private static final long ESPERA_MAXIMA_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final PublicadorEventos publicador;
+    private final String nombre;
+    private final SuscriptorEventos suscriptor;
+    final PoliticaLleno politica;
+    private final LoteEventos lote;
+    private final Thread hilo;
+
+    // siguiente secuencia que va a leer; el publicador no sobrescribe desde aqui en adelante
+    volatile long cursor;
+    // el hilo termina al llegar a esta secuencia, la fija el cierre del publicador o la cancelacion
+    volatile long terminarEn = Long.MAX_VALUE;
+    volatile boolean desconectada;
+    // solo los escribe el hilo de la suscripcion
+    private volatile long entregados;
+    private volatile long lotes;
+    private volatile long errores;
+
+    Suscripcion(PublicadorEventos publicador, String nombre, SuscriptorEventos suscriptor, PoliticaLleno politica,
+                int tamanoLote, long cursor) {
+        this.publicador = publicador;
+        this.nombre = nombre;
+        this.suscriptor = suscriptor;
+        this.politica = politica;
+        this.lote = new LoteEventos(tamanoLote);
+        this.cursor = cursor;
+        this.hilo = new Thread(this::entregar, "eventos-" + nombre);
+        hilo.setDaemon(true);
+    }
+
+    void iniciar() {
+        hilo.start();
+    }
+
+    private void entregar() {
+        long siguiente = cursor;
+        int esperas = 0;
+        boolean terminoBien = false;
+        try {
+            while (siguiente < terminarEn && !desconectada) {
+                int leidos = publicador.leer(siguiente, lote);
+                if (leidos < 0) {
+                    // un productor paso por encima del cursor, ya nos desconecto
+                    break;
+                }
+                if (leidos == 0) {
+                    esperar(esperas++);
+                    continue;
+                }
+                esperas = 0;
+                try {
+                    suscriptor.procesar(lote);
+                } catch (RuntimeException e) {
+                    errores++;
+                }
+                siguiente += leidos;
+                entregados += leidos;
+                lotes++;
+                cursor = siguiente;
+            }
+            terminoBien = true;
+        } finally {
+            if (!terminoBien) {
+                // un Error del suscriptor mata el hilo: el cursor ya no avanza y los productores que esperan a esta
+                // suscripcion esperarian para siempre con los monitores de las cuentas tomados
+                terminarEn = Long.MIN_VALUE;
+                publicador.quitar(this);
+            }
+        }
+        if (desconectada) {
+            suscriptor.alDesconectar();
+        }
+    }
+
+    private static void esperar(int esperas) {
+        if (esperas < GIROS) {
+            Thread.onSpinWait();
+        } else if (esperas < CESIONES) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(Math.min(ESPERA_MAXIMA_NANOS, 1_000L << Math.min(esperas - CESIONES, 10)));
+        }
+    }
+
+    /**
+     * Deja de entregar eventos y libera al publicador de esperar a esta suscripcion. El lote que se este entregando
+     * termina igual.
+     */
+    public void cancelar() {
+        publicador.quitar(this);
+        terminarEn = Long.MIN_VALUE;
+        LockSupport.unpark(hilo);
+    }
+
+    /**
+     * Espera a que el hilo de la suscripcion termine, despues de cancelarla, desconectarla o cerrar el publicador.
+     */
+    public void esperarFin() throws InterruptedException {
+        hilo.join();
+    }
+
+    public String getNombre() {
+        return nombre;
+    }
+
+    public PoliticaLleno getPolitica() {
+        return politica;
+    }
+
+    public long getCursor() {
+        return cursor;
+    }
+
+    public long getEntregados() {
+        return entregados;
+    }
+
+    public long getLotes() {
+        return lotes;
+    }
+
+    public long getErrores() {
+        return errores;
+    }
+
+    public boolean isDesconectada() {
+        return desconectada;
+    }
+
+    /**
+     * Eventos publicados que la suscripcion todavia no entrega.
+     */
+    public long getPendientes() {
+        return desconectada ? 0 : Math.max(0, publicador.getPublicados() - cursor);
+    }
+
+    @Override
+    public String toString() {
+        return nombre + ": entregados=" + entregados + ", lotes=" + lotes + ", errores=" + errores + ", pendientes="
+                + getPendientes() + (desconectada ? ", desconectada" : "");
+    }
+}
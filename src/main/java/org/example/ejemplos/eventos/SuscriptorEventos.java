@@ -0,0 +1,20 @@
+package org.example.ejemplos.eventos;
+
+/**
+ * Recibe los eventos de un {@link PublicadorEventos} en el hilo de su suscripcion, nunca en el de quien hizo el
+ * movimiento. Las llamadas de una misma suscripcion son siempre desde el mismo hilo.
+ */
+public interface SuscriptorEventos {
+
+    /**
+     * Los eventos del lote y el lote mismo se reutilizan al volver. Una excepcion no detiene la suscripcion: se
+     * cuenta en {@link Suscripcion#getErrores()} y el lote se da por entregado.
+     */
+    void procesar(LoteEventos lote);
+
+    /**
+     * La suscripcion quedo un anillo completo atras con {@link PoliticaLleno#DESCONECTAR} y ya no recibe eventos.
+     */
+    default void alDesconectar() {
+    }
+}
@@ -0,0 +1,10 @@
+package org.example.ejemplos.eventos;
+
+public enum TipoEvento {
+    APERTURA,
+    CIERRE,
+    CREDITO,
+    DEBITO,
+    AJUSTE,
+    TRANSFERENCIA
+}
@@ -0,0 +1,11 @@
+package org.example.ejemplos.exceptions;
+
+/**
+ * Una transaccion de {@link org.example.ejemplos.models.Banco} no pudo confirmarse porque otras operaciones cambiaron
+ * las cuentas que leyo, en todos los intentos permitidos.
+ */
+public class ConflictoTransaccionException extends RuntimeException {
+    public ConflictoTransaccionException(String msg) {
+        super(msg);
+    }
+}
@@ -4,4 +4,10 @@ public class DineroInsuficienteException extends RuntimeException {
     public DineroInsuficienteException(String msg) {
         super(msg);
     }
+
+    // Sin traza: capturar el stack en cada rechazo es lo mas caro del camino de error y en un rechazo por fondos
+    // la traza no aporta nada, el mensaje es el mismo
+    public DineroInsuficienteException(String msg, boolean conTraza) {
+        super(msg, null, false, conTraza);
+    }
 }
@@ -0,0 +1,16 @@
+package org.example.ejemplos.exceptions;
+
+/**
+ * Un debito que la cuenta podia pagar pero que supera uno de sus limites de monto por ventana de tiempo (ver
+ * {@link org.example.ejemplos.models.LimitesDebito}).
+ */
+public class LimiteExcedidoException extends RuntimeException {
+    public LimiteExcedidoException(String msg) {
+        super(msg);
+    }
+
+    // Sin traza por la misma razon que DineroInsuficienteException: es un rechazo esperado y frecuente
+    public LimiteExcedidoException(String msg, boolean conTraza) {
+        super(msg, null, false, conTraza);
+    }
+}
@@ -0,0 +1,320 @@
+package org.example.ejemplos.ingesta;
+
+import org.example.ejemplos.models.AlmacenColumnar;
+import org.example.ejemplos.models.Banco;
+import org.example.ejemplos.models.Cuenta;
+import org.example.ejemplos.models.CuentaColumnar;
+import org.example.ejemplos.models.Dinero;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+/**
+ * Compara los saldos de un {@link Banco} con un archivo de saldos esperados, una linea {@code persona,saldo} por
+ * cuenta (por ejemplo el cierre del sistema central). El titular va hasta la ultima coma.
+ * <p>
+ * El archivo se divide en tramos de bytes que se leen en paralelo en un {@link ForkJoinPool}, cada tramo con un
+ * {@link FileChannel} posicional y un bloque de tamano fijo como {@link IngestaLiquidaciones}: la memoria usada
+ * depende de la cantidad de hilos y no del tamano del archivo. Un tramo procesa las lineas que empiezan dentro de
+ * el, aunque terminen en el siguiente. Cada linea se cruza con el indice por titular del banco, que ya es una tabla
+ * hash, asi que no hay que ordenar ni cargar el archivo.
+ * <p>
+ * Las diferencias se entregan a medida que se encuentran, de a una, asi el consumidor no necesita ser seguro entre
+ * hilos; el orden entre tramos no esta definido. Al terminar el archivo se entregan las cuentas del banco que no
+ * aparecieron en el. Una conciliacion lee cada saldo una vez y deberia correr con el banco quieto: con movimientos
+ * en curso una cuenta puede salir distinta solo porque cambio mientras se leia el archivo.
+ */
+public class ConciliacionSaldos {
+
+    public static final int TAMANO_BUFFER_POR_DEFECTO = 1 << 20;
+
+    // filas del almacen columnar que revisa cada tarea al buscar las cuentas que faltan en el archivo
+    private static final int FILAS_POR_TAREA = 1 << 14;
+
+    private final Banco banco;
+    private final int tamanoBuffer;
+    private final ForkJoinPool pool;
+
+    public ConciliacionSaldos(Banco banco) {
+        this(banco, TAMANO_BUFFER_POR_DEFECTO, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param tamanoBuffer bytes que se leen por bloque, debe ser mayor que la linea mas larga del archivo
+     */
+    public ConciliacionSaldos(Banco banco, int tamanoBuffer, ForkJoinPool pool) {
+        this.banco = banco;
+        this.tamanoBuffer = tamanoBuffer;
+        this.pool = pool;
+    }
+
+    public ResumenConciliacion conciliar(Path archivo, Consumer<Diferencia> diferencias) throws IOException {
+        long inicio = System.nanoTime();
+        // las filas del almacen se recorren sin juntar sus vistas en una lista
+        List<Cuenta> cuentas = banco.getCuentasDelHeap();
+        AlmacenColumnar almacen = banco.getAlmacen();
+        int filas = almacen == null ? 0 : almacen.getFilasUsadas();
+        try (FileChannel canal = FileChannel.open(archivo, StandardOpenOption.READ)) {
+            Estado estado = new Estado(canal, cuentas, filas, diferencias);
+            long tamano = canal.size();
+            // varios tramos por hilo para repartir bien aunque algunos tramos tengan mas diferencias que otros
+            long tamanoTramo = Math.max((long) tamanoBuffer * 4, tamano / (pool.getParallelism() * 8L));
+            try {
+                pool.invoke(new Tramo(estado, 0, tamano, tamanoTramo));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            pool.submit(() -> cuentas.parallelStream().forEach(estado::verificarVista)).join();
+            if (filas > 0) {
+                pool.submit(() -> IntStream.range(0, (filas + FILAS_POR_TAREA - 1) / FILAS_POR_TAREA).parallel()
+                        .forEach(tarea -> almacen.recorrer(tarea * FILAS_POR_TAREA,
+                                Math.min(filas, (tarea + 1) * FILAS_POR_TAREA), estado::verificarVista))).join();
+            }
+            return new ResumenConciliacion(estado.lineas.sum(), estado.coincidentes.sum(),
+                    estado.cantidadDiferencias.sum(), System.nanoTime() - inicio);
+        }
+    }
+
+    /**
+     * Lo que comparten los tramos de una conciliacion.
+     */
+    private static final class Estado {
+        final FileChannel canal;
+        final Consumer<Diferencia> diferencias;
+        final LongAdder lineas = new LongAdder();
+        final LongAdder coincidentes = new LongAdder();
+        final LongAdder cantidadDiferencias = new LongAdder();
+        // un bit por cuenta que existia al empezar, marca las que ya aparecieron en el archivo: primero las del heap
+        // por su posicion en la lista y despues las filas del almacen. La posicion de las del heap se busca por id en
+        // una tabla de direccionamiento abierto de arreglos primitivos, sin un objeto por cuenta; en posiciones va
+        // la posicion mas uno, 0 es una casilla libre
+        final long[] ids;
+        final int[] posiciones;
+        final int mascara;
+        final int delHeap;
+        final int filas;
+        final AtomicLongArray vistas;
+
+        Estado(FileChannel canal, List<Cuenta> cuentas, int filas, Consumer<Diferencia> diferencias) {
+            this.canal = canal;
+            this.diferencias = diferencias;
+            // a lo mas la mitad de las casillas ocupadas
+            int casillas = Integer.highestOneBit(Math.max(1, cuentas.size())) << 2;
+            this.ids = new long[casillas];
+            this.posiciones = new int[casillas];
+            this.mascara = casillas - 1;
+            for (int i = 0; i < cuentas.size(); i++) {
+                long id = cuentas.get(i).getId();
+                int casilla = casilla(id);
+                while (posiciones[casilla] != 0) {
+                    casilla = (casilla + 1) & mascara;
+                }
+                ids[casilla] = id;
+                posiciones[casilla] = i + 1;
+            }
+            this.delHeap = cuentas.size();
+            this.filas = filas;
+            this.vistas = new AtomicLongArray((int) (((long) delHeap + filas + 63) >>> 6));
+        }
+
+        /**
+         * Bit de la cuenta, o -1 si se abrio despues de empezar.
+         */
+        long posicion(Cuenta cuenta) {
+            if (cuenta instanceof CuentaColumnar) {
+                int fila = ((CuentaColumnar) cuenta).getFila();
+                return fila < filas ? (long) delHeap + fila : -1;
+            }
+            long id = cuenta.getId();
+            for (int casilla = casilla(id); posiciones[casilla] != 0; casilla = (casilla + 1) & mascara) {
+                if (ids[casilla] == id) {
+                    return posiciones[casilla] - 1;
+                }
+            }
+            return -1;
+        }
+
+        private int casilla(long id) {
+            return (int) ((id * 0x9E3779B97F4A7C15L) >>> 32) & mascara;
+        }
+
+        /**
+         * Marca la cuenta como vista, devuelve false si ya lo estaba. Las cuentas abiertas despues de empezar no
+         * tienen bit y siempre cuentan como no vistas.
+         */
+        boolean marcar(Cuenta cuenta) {
+            long posicion = posicion(cuenta);
+            if (posicion < 0) {
+                return true;
+            }
+            long bit = 1L << posicion;
+            return (vistas.getAndAccumulate((int) (posicion >>> 6), bit, (a, b) -> a | b) & bit) == 0;
+        }
+
+        void verificarVista(Cuenta cuenta) {
+            long posicion = posicion(cuenta);
+            if (posicion >= 0 && (vistas.get((int) (posicion >>> 6)) & (1L << posicion)) == 0) {
+                entregar(new Diferencia(Diferencia.Tipo.FALTA_EN_ARCHIVO, -1, cuenta.getPersona(), cuenta, null,
+                        cuenta.getSaldo()));
+            }
+        }
+
+        void entregar(Diferencia diferencia) {
+            cantidadDiferencias.increment();
+            synchronized (diferencias) {
+                diferencias.accept(diferencia);
+            }
+        }
+    }
+
+    private final class Tramo extends RecursiveAction {
+        private final Estado estado;
+        private final long desde;
+        private final long hasta;
+        private final long tamanoTramo;
+        private final LectorMonto monto = new LectorMonto();
+
+        Tramo(Estado estado, long desde, long hasta, long tamanoTramo) {
+            this.estado = estado;
+            this.desde = desde;
+            this.hasta = hasta;
+            this.tamanoTramo = tamanoTramo;
+        }
+
+        @Override
+        protected void compute() {
+            if (hasta - desde > tamanoTramo) {
+                long medio = desde + (hasta - desde) / 2;
+                invokeAll(new Tramo(estado, desde, medio, tamanoTramo), new Tramo(estado, medio, hasta, tamanoTramo));
+                return;
+            }
+            try {
+                leer();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void leer() throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(tamanoBuffer);
+            // se empieza un byte antes: si es un fin de linea, la primera linea del tramo empieza justo en desde
+            long base = desde == 0 ? 0 : desde - 1;
+            boolean saltar = desde > 0;
+            while (true) {
+                int leidos = estado.canal.read(buffer, base + buffer.position());
+                buffer.flip();
+                int limite = buffer.limit();
+                int inicioLinea = 0;
+                for (int i = 0; i < limite; i++) {
+                    if (buffer.get(i) != '\n') {
+                        continue;
+                    }
+                    if (!saltar) {
+                        linea(buffer, base, inicioLinea, i);
+                    }
+                    saltar = false;
+                    inicioLinea = i + 1;
+                    if (base + inicioLinea >= hasta) {
+                        return;
+                    }
+                }
+                if (leidos < 0) {
+                    if (!saltar && inicioLinea < limite) {
+                        linea(buffer, base, inicioLinea, limite);
+                    }
+                    return;
+                }
+                if (inicioLinea == 0 && limite == buffer.capacity()) {
+                    if (!saltar) {
+                        throw new IOException("La linea en el byte " + base + " no cabe en un bloque de "
+                                + tamanoBuffer + " bytes");
+                    }
+                    // el resto de una linea del tramo anterior, se descarta entero
+                    inicioLinea = limite;
+                }
+                buffer.position(inicioLinea);
+                buffer.compact();
+                base += inicioLinea;
+            }
+        }
+
+        private void linea(ByteBuffer buffer, long base, int desdeLinea, int hastaLinea) {
+            if (hastaLinea > desdeLinea && buffer.get(hastaLinea - 1) == '\r') {
+                hastaLinea--;
+            }
+            if (hastaLinea == desdeLinea) {
+                return;
+            }
+            estado.lineas.increment();
+            long posicion = base + desdeLinea;
+            int coma = -1;
+            for (int i = hastaLinea - 1; i >= desdeLinea; i--) {
+                if (buffer.get(i) == ',') {
+                    coma = i;
+                    break;
+                }
+            }
+            boolean valida;
+            try {
+                valida = coma > desdeLinea && monto.leer(buffer, coma + 1, hastaLinea);
+            } catch (ArithmeticException e) {
+                valida = false;
+            }
+            if (!valida) {
+                estado.entregar(new Diferencia(Diferencia.Tipo.LINEA_INVALIDA, posicion,
+                        texto(buffer, desdeLinea, hastaLinea), null, null, null));
+                return;
+            }
+            String persona = texto(buffer, desdeLinea, coma);
+            Cuenta cuenta = banco.findCuenta(persona);
+            if (cuenta == null) {
+                estado.entregar(new Diferencia(Diferencia.Tipo.CUENTA_INEXISTENTE, posicion, persona, null,
+                        esperado(), null));
+                return;
+            }
+            if (!estado.marcar(cuenta)) {
+                estado.entregar(new Diferencia(Diferencia.Tipo.DUPLICADA, posicion, persona, cuenta, esperado(),
+                        cuenta.getSaldo()));
+                return;
+            }
+            // escala y unidades se leen por separado, si la escala cambio entremedio se vuelven a leer
+            int escala;
+            long unidades;
+            do {
+                escala = cuenta.getEscala();
+                unidades = cuenta.getSaldoUnidades();
+            } while (escala != cuenta.getEscala());
+            if (Dinero.comparar(unidades, escala, monto.unidades, monto.escala) == 0) {
+                estado.coincidentes.increment();
+            } else {
+                estado.entregar(new Diferencia(Diferencia.Tipo.SALDO_DISTINTO, posicion, persona, cuenta, esperado(),
+                        Dinero.aBigDecimal(unidades, escala)));
+            }
+        }
+
+        private BigDecimal esperado() {
+            return Dinero.aBigDecimal(monto.unidades, monto.escala);
+        }
+
+        private String texto(ByteBuffer buffer, int desdeTexto, int hastaTexto) {
+            byte[] bytes = new byte[hastaTexto - desdeTexto];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = buffer.get(desdeTexto + i);
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
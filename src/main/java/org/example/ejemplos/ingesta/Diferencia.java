@@ -0,0 +1,82 @@
+package org.example.ejemplos.ingesta;
+
+import org.example.ejemplos.models.Cuenta;
+
+import java.math.BigDecimal;
+
+/**
+ * Una diferencia encontrada por {@link ConciliacionSaldos} entre el archivo de saldos esperados y el banco.
+ */
+public class Diferencia {
+
+    public enum Tipo {
+        // el saldo de la cuenta no es el del archivo
+        SALDO_DISTINTO,
+        // el archivo tiene un titular sin cuenta en el banco
+        CUENTA_INEXISTENTE,
+        // la cuenta del banco no aparece en el archivo
+        FALTA_EN_ARCHIVO,
+        // el titular aparece mas de una vez en el archivo, solo se concilia la primera que se lee
+        DUPLICADA,
+        // la linea no es {@code persona,saldo}
+        LINEA_INVALIDA
+    }
+
+    private final Tipo tipo;
+    private final long posicion;
+    private final String persona;
+    private final Cuenta cuenta;
+    private final BigDecimal esperado;
+    private final BigDecimal actual;
+
+    Diferencia(Tipo tipo, long posicion, String persona, Cuenta cuenta, BigDecimal esperado, BigDecimal actual) {
+        this.tipo = tipo;
+        this.posicion = posicion;
+        this.persona = persona;
+        this.cuenta = cuenta;
+        this.esperado = esperado;
+        this.actual = actual;
+    }
+
+    public Tipo getTipo() {
+        return tipo;
+    }
+
+    /**
+     * Byte del archivo donde empieza la linea, -1 en {@link Tipo#FALTA_EN_ARCHIVO}.
+     */
+    public long getPosicion() {
+        return posicion;
+    }
+
+    public String getPersona() {
+        return persona;
+    }
+
+    /**
+     * La cuenta del banco, null si no hay.
+     */
+    public Cuenta getCuenta() {
+        return cuenta;
+    }
+
+    /**
+     * Saldo del archivo, null si la linea no lo tiene o la cuenta no aparece en el archivo.
+     */
+    public BigDecimal getEsperado() {
+        return esperado;
+    }
+
+    /**
+     * Saldo de la cuenta al conciliarla, null si no hay cuenta.
+     */
+    public BigDecimal getActual() {
+        return actual;
+    }
+
+    @Override
+    public String toString() {
+        return tipo + " persona=" + persona + ", esperado=" + esperado + ", actual=" + actual
+                + (posicion >= 0 ? ", posicion=" + posicion : "");
+    }
+}
@@ -0,0 +1,171 @@
+package org.example.ejemplos.ingesta;
+
+import org.example.ejemplos.models.Banco;
+import org.example.ejemplos.models.Cuenta;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Aplica a un {@link Banco} un archivo de liquidacion con una linea {@code cuenta,monto} por movimiento, donde
+ * {@code cuenta} es el id de la cuenta y {@code monto} un decimal con signo: positivo es un credito y negativo un
+ * debito.
+ * <p>
+ * El archivo se lee por bloques de tamano fijo con un {@link FileChannel}, asi la memoria usada no depende del
+ * tamano del archivo. Los campos se interpretan directo desde los bytes del bloque, sin crear un {@code String} ni un
+ * {@code BigDecimal} por linea. Las lineas que no se pueden aplicar se copian al archivo de rechazos con el motivo
+ * al final ({@code cuenta,monto,motivo}).
+ */
+public class IngestaLiquidaciones {
+
+    public static final int TAMANO_BUFFER_POR_DEFECTO = 1 << 20;
+
+    static final String LINEA_INVALIDA = "Linea invalida";
+    static final String CUENTA_INEXISTENTE = "Cuenta inexistente";
+    static final String DINERO_INSUFICIENTE = "Dinero insuficiente";
+    static final String LIMITE_EXCEDIDO = "Limite excedido";
+    static final String MONTO_FUERA_DE_RANGO = "Monto fuera de rango";
+
+    private static final byte[] MOTIVO_LINEA_INVALIDA = motivo(LINEA_INVALIDA);
+    private static final byte[] MOTIVO_CUENTA_INEXISTENTE = motivo(CUENTA_INEXISTENTE);
+    private static final byte[] MOTIVO_DINERO_INSUFICIENTE = motivo(DINERO_INSUFICIENTE);
+    private static final byte[] MOTIVO_LIMITE_EXCEDIDO = motivo(LIMITE_EXCEDIDO);
+    private static final byte[] MOTIVO_MONTO_FUERA_DE_RANGO = motivo(MONTO_FUERA_DE_RANGO);
+
+    private final Banco banco;
+    private final int tamanoBuffer;
+
+    public IngestaLiquidaciones(Banco banco) {
+        this(banco, TAMANO_BUFFER_POR_DEFECTO);
+    }
+
+    /**
+     * @param tamanoBuffer bytes que se leen por bloque, debe ser mayor que la linea mas larga del archivo
+     */
+    public IngestaLiquidaciones(Banco banco, int tamanoBuffer) {
+        this.banco = banco;
+        this.tamanoBuffer = tamanoBuffer;
+    }
+
+    private static byte[] motivo(String motivo) {
+        return ("," + motivo + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    public ResumenIngesta procesar(Path archivo, Path rechazos) throws IOException {
+        long inicio = System.nanoTime();
+        try (FileChannel canal = FileChannel.open(archivo, StandardOpenOption.READ);
+             OutputStream salidaRechazos = new BufferedOutputStream(Files.newOutputStream(rechazos), 1 << 16)) {
+            Lector lector = new Lector(salidaRechazos);
+            ByteBuffer buffer = ByteBuffer.allocateDirect(tamanoBuffer);
+            while (true) {
+                int leidos = canal.read(buffer);
+                buffer.flip();
+                int limite = buffer.limit();
+                int desde = 0;
+                for (int i = 0; i < limite; i++) {
+                    if (buffer.get(i) == '\n') {
+                        lector.linea(buffer, desde, i);
+                        desde = i + 1;
+                    }
+                }
+                if (leidos < 0) {
+                    if (desde < limite) {
+                        lector.linea(buffer, desde, limite);
+                    }
+                    break;
+                }
+                if (desde == 0 && limite == buffer.capacity()) {
+                    throw new IOException("La linea " + (lector.lineas + 1) + " no cabe en un bloque de " + tamanoBuffer + " bytes");
+                }
+                // lo que queda es una linea incompleta, se mueve al principio y se sigue leyendo detras
+                buffer.position(desde);
+                buffer.compact();
+            }
+            return new ResumenIngesta(lector.lineas, lector.aplicadas, lector.rechazadas, System.nanoTime() - inicio);
+        }
+    }
+
+    /**
+     * Estado de una lectura.
+     */
+    private class Lector {
+        private final OutputStream rechazos;
+        private long lineas;
+        private long aplicadas;
+        private long rechazadas;
+        private final LectorMonto monto = new LectorMonto();
+
+        Lector(OutputStream rechazos) {
+            this.rechazos = rechazos;
+        }
+
+        void linea(ByteBuffer buffer, int desde, int hasta) throws IOException {
+            if (hasta > desde && buffer.get(hasta - 1) == '\r') {
+                hasta--;
+            }
+            if (hasta == desde) {
+                return;
+            }
+            lineas++;
+            byte[] motivo = aplicar(buffer, desde, hasta);
+            if (motivo == null) {
+                aplicadas++;
+                return;
+            }
+            rechazadas++;
+            for (int i = desde; i < hasta; i++) {
+                rechazos.write(buffer.get(i));
+            }
+            rechazos.write(motivo);
+        }
+
+        private byte[] aplicar(ByteBuffer buffer, int desde, int hasta) {
+            int coma = -1;
+            long id = 0;
+            for (int i = desde; i < hasta; i++) {
+                byte b = buffer.get(i);
+                if (b == ',') {
+                    coma = i;
+                    break;
+                }
+                if (b < '0' || b > '9' || id > (Long.MAX_VALUE - 9) / 10) {
+                    return MOTIVO_LINEA_INVALIDA;
+                }
+                id = id * 10 + (b - '0');
+            }
+            if (coma <= desde) {
+                return MOTIVO_LINEA_INVALIDA;
+            }
+            try {
+                if (!monto.leer(buffer, coma + 1, hasta)) {
+                    return MOTIVO_LINEA_INVALIDA;
+                }
+                Cuenta cuenta = banco.findCuenta(id);
+                if (cuenta == null) {
+                    return MOTIVO_CUENTA_INEXISTENTE;
+                }
+                if (monto.unidades >= 0) {
+                    cuenta.credito(monto.unidades, monto.escala);
+                    return null;
+                }
+                switch (cuenta.tryDebito(-monto.unidades, monto.escala)) {
+                    case EXITOSO:
+                        return null;
+                    case LIMITE_EXCEDIDO:
+                        return MOTIVO_LIMITE_EXCEDIDO;
+                    default:
+                        return MOTIVO_DINERO_INSUFICIENTE;
+                }
+            } catch (ArithmeticException e) {
+                return MOTIVO_MONTO_FUERA_DE_RANGO;
+            }
+        }
+    }
+}
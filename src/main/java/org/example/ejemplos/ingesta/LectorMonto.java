@@ -0,0 +1,56 @@
+package org.example.ejemplos.ingesta;
+
+import org.example.ejemplos.models.Dinero;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Interpreta montos decimales directo desde los bytes de un bloque, sin crear un {@code String} ni un
+ * {@code BigDecimal}. El resultado queda en {@link #unidades} y {@link #escala} en vez de devolver un objeto por
+ * linea, cada lector usa su propia instancia.
+ */
+final class LectorMonto {
+
+    long unidades;
+    int escala;
+
+    /**
+     * Lee un decimal con signo opcional y punto decimal opcional.
+     *
+     * @return false si no es un decimal
+     * @throws ArithmeticException si no cabe en un long o tiene demasiados decimales
+     */
+    boolean leer(ByteBuffer buffer, int desde, int hasta) {
+        boolean negativo = false;
+        int i = desde;
+        if (i < hasta && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+            negativo = buffer.get(i) == '-';
+            i++;
+        }
+        long leidas = 0;
+        int decimales = 0;
+        boolean punto = false;
+        boolean digitos = false;
+        for (; i < hasta; i++) {
+            byte b = buffer.get(i);
+            if (b == '.' && !punto) {
+                punto = true;
+            } else if (b >= '0' && b <= '9') {
+                leidas = Math.addExact(Math.multiplyExact(leidas, 10), b - '0');
+                digitos = true;
+                if (punto) {
+                    decimales++;
+                }
+            } else {
+                return false;
+            }
+        }
+        if (!digitos) {
+            return false;
+        }
+        Dinero.validarEscala(decimales);
+        unidades = negativo ? -leidas : leidas;
+        escala = decimales;
+        return true;
+    }
+}
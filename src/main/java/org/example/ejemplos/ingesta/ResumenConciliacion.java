@@ -0,0 +1,47 @@
+package org.example.ejemplos.ingesta;
+
+/**
+ * Totales de una conciliacion de saldos.
+ */
+public class ResumenConciliacion {
+    private final long lineas;
+    private final long coincidentes;
+    private final long diferencias;
+    private final long nanos;
+
+    ResumenConciliacion(long lineas, long coincidentes, long diferencias, long nanos) {
+        this.lineas = lineas;
+        this.coincidentes = coincidentes;
+        this.diferencias = diferencias;
+        this.nanos = nanos;
+    }
+
+    public long getLineas() {
+        return lineas;
+    }
+
+    public long getCoincidentes() {
+        return coincidentes;
+    }
+
+    /**
+     * Cantidad de {@link Diferencia} entregadas, incluidas las cuentas que faltan en el archivo.
+     */
+    public long getDiferencias() {
+        return diferencias;
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+
+    public long getFilasPorSegundo() {
+        return nanos == 0 ? 0 : lineas * 1_000_000_000L / nanos;
+    }
+
+    @Override
+    public String toString() {
+        return "lineas=" + lineas + ", coincidentes=" + coincidentes + ", diferencias=" + diferencias
+                + ", filas/s=" + getFilasPorSegundo();
+    }
+}
@@ -0,0 +1,44 @@
+package org.example.ejemplos.ingesta;
+
+/**
+ * Totales de una ingesta de liquidaciones.
+ */
+public class ResumenIngesta {
+    private final long lineas;
+    private final long aplicadas;
+    private final long rechazadas;
+    private final long nanos;
+
+    ResumenIngesta(long lineas, long aplicadas, long rechazadas, long nanos) {
+        this.lineas = lineas;
+        this.aplicadas = aplicadas;
+        this.rechazadas = rechazadas;
+        this.nanos = nanos;
+    }
+
+    public long getLineas() {
+        return lineas;
+    }
+
+    public long getAplicadas() {
+        return aplicadas;
+    }
+
+    public long getRechazadas() {
+        return rechazadas;
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+
+    public long getFilasPorSegundo() {
+        return nanos == 0 ? 0 : lineas * 1_000_000_000L / nanos;
+    }
+
+    @Override
+    public String toString() {
+        return "lineas=" + lineas + ", aplicadas=" + aplicadas + ", rechazadas=" + rechazadas
+                + ", filas/s=" + getFilasPorSegundo();
+    }
+}
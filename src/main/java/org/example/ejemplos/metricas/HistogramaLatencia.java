@@ -0,0 +1,117 @@
+package org.example.ejemplos.metricas;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histograma de latencias en nanosegundos con rangos log-lineales, al estilo de HdrHistogram: cada potencia de dos
+ * se divide en {@value #SUBRANGOS} rangos iguales, asi el error relativo es menor al 3% en todo el intervalo (de 1 ns
+ * a 2^63 ns). Registrar no crea objetos y no toma bloqueos, solo incrementa una posicion de un
+ * {@link AtomicLongArray}.
+ * <p>
+ * Como en un {@link java.util.concurrent.atomic.LongAdder}, los conteos estan repartidos en franjas y cada hilo
+ * escribe en la de su id: hilos que registran a la vez casi nunca escriben en el mismo arreglo, y leer suma todas las
+ * franjas. Cada franja ocupa unos 15 KB.
+ */
+public final class HistogramaLatencia {
+
+    static final int BITS_SUBRANGO = 5;
+    static final int SUBRANGOS = 1 << BITS_SUBRANGO;
+    private static final int CANTIDAD_RANGOS = (64 - BITS_SUBRANGO) * SUBRANGOS;
+    // potencia de dos, una por procesador hasta 16
+    private static final int CANTIDAD_FRANJAS = Math.min(16,
+            Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1)));
+
+    private final AtomicLongArray[] franjas = new AtomicLongArray[CANTIDAD_FRANJAS];
+    // casi siempre solo se lee, se escribe cuando aparece un maximo nuevo
+    private final AtomicLong maximo = new AtomicLong();
+
+    public HistogramaLatencia() {
+        for (int i = 0; i < franjas.length; i++) {
+            franjas[i] = new AtomicLongArray(CANTIDAD_RANGOS);
+        }
+    }
+
+    static int indiceDe(long valor) {
+        if (valor < SUBRANGOS) {
+            return (int) Math.max(0, valor);
+        }
+        int exponente = 63 - Long.numberOfLeadingZeros(valor);
+        int corrimiento = exponente - BITS_SUBRANGO;
+        return ((corrimiento + 1) << BITS_SUBRANGO) + (int) ((valor >>> corrimiento) & (SUBRANGOS - 1));
+    }
+
+    /**
+     * Mayor valor que cae en el rango {@code indice}.
+     */
+    static long limiteSuperior(int indice) {
+        if (indice < SUBRANGOS) {
+            return indice;
+        }
+        int corrimiento = (indice >>> BITS_SUBRANGO) - 1;
+        long inicio = (long) (SUBRANGOS + (indice & (SUBRANGOS - 1))) << corrimiento;
+        return inicio + (1L << corrimiento) - 1;
+    }
+
+    public void registrar(long nanos) {
+        franjas[(int) Thread.currentThread().getId() & (CANTIDAD_FRANJAS - 1)].incrementAndGet(indiceDe(nanos));
+        long actual = maximo.get();
+        while (nanos > actual && !maximo.compareAndSet(actual, nanos)) {
+            actual = maximo.get();
+        }
+    }
+
+    private long conteo(int indice) {
+        long total = 0;
+        for (AtomicLongArray franja : franjas) {
+            total += franja.get(indice);
+        }
+        return total;
+    }
+
+    public long getCantidad() {
+        long total = 0;
+        for (int i = 0; i < CANTIDAD_RANGOS; i++) {
+            total += conteo(i);
+        }
+        return total;
+    }
+
+    public long getMaximo() {
+        return maximo.get();
+    }
+
+    /**
+     * Valor bajo el cual queda la fraccion {@code percentil} (entre 0 y 1) de los registros, con la precision de los
+     * rangos. 0 si no hay registros.
+     */
+    public long percentil(double percentil) {
+        long[] copia = new long[CANTIDAD_RANGOS];
+        long total = 0;
+        for (int i = 0; i < CANTIDAD_RANGOS; i++) {
+            copia[i] = conteo(i);
+            total += copia[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long objetivo = Math.max(1, (long) Math.ceil(percentil * total));
+        long acumulado = 0;
+        for (int i = 0; i < CANTIDAD_RANGOS; i++) {
+            acumulado += copia[i];
+            if (acumulado >= objetivo) {
+                return Math.min(limiteSuperior(i), maximo.get());
+            }
+        }
+        return maximo.get();
+    }
+
+    public void reiniciar() {
+        for (AtomicLongArray franja : franjas) {
+            for (int i = 0; i < CANTIDAD_RANGOS; i++) {
+                franja.set(i, 0);
+            }
+        }
+        maximo.set(0);
+    }
+}
@@ -0,0 +1,182 @@
+package org.example.ejemplos.metricas;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metricas de los caminos criticos de {@link org.example.ejemplos.models.Cuenta} y
+ * {@link org.example.ejemplos.models.Banco}: cantidad y latencia de creditos, debitos y transferencias, y cuantas
+ * veces se rechazo un debito por falta de saldo o por un limite, lo haya devuelto
+ * {@link org.example.ejemplos.models.Cuenta#tryDebito} o lanzado como
+ * {@link org.example.ejemplos.exceptions.DineroInsuficienteException} o
+ * {@link org.example.ejemplos.exceptions.LimiteExcedidoException}.
+ * <p>
+ * Vienen desactivadas. Desactivadas, cada operacion medida solo lee un campo volatile; activadas suman dos llamadas
+ * a {@link System#nanoTime()} y un par de incrementos atomicos, sin crear objetos. Se leen por JMX
+ * ({@link #registrarJmx()}) o como texto con {@link #volcar()}.
+ */
+public final class Metricas {
+
+    public static final String NOMBRE_JMX = "org.example.ejemplos:type=Metricas";
+
+    public static final OperacionMedida CREDITO = new OperacionMedida("credito");
+    public static final OperacionMedida DEBITO = new OperacionMedida("debito");
+    public static final OperacionMedida TRANSFERENCIA = new OperacionMedida("transferencia");
+
+    private static final OperacionMedida[] OPERACIONES = {CREDITO, DEBITO, TRANSFERENCIA};
+    private static final LongAdder DINERO_INSUFICIENTE = new LongAdder();
+    private static final LongAdder LIMITE_EXCEDIDO = new LongAdder();
+
+    private static volatile boolean activas = Boolean.getBoolean("metricas.activas");
+
+    private Metricas() {
+    }
+
+    public static boolean isActivas() {
+        return activas;
+    }
+
+    public static void setActivas(boolean activas) {
+        Metricas.activas = activas;
+    }
+
+    /**
+     * Marca de tiempo para {@link OperacionMedida#registrar(long)}, 0 si las metricas estan desactivadas.
+     */
+    public static long inicio() {
+        if (!activas) {
+            return 0;
+        }
+        long ahora = System.nanoTime();
+        // 0 significa desactivadas, nanoTime puede devolverlo legitimamente
+        return ahora != 0 ? ahora : 1;
+    }
+
+    public static void dineroInsuficiente() {
+        if (activas) {
+            DINERO_INSUFICIENTE.increment();
+        }
+    }
+
+    public static long getDineroInsuficiente() {
+        return DINERO_INSUFICIENTE.sum();
+    }
+
+    public static void limiteExcedido() {
+        if (activas) {
+            LIMITE_EXCEDIDO.increment();
+        }
+    }
+
+    public static long getLimiteExcedido() {
+        return LIMITE_EXCEDIDO.sum();
+    }
+
+    public static void reiniciar() {
+        for (OperacionMedida operacion : OPERACIONES) {
+            operacion.reiniciar();
+        }
+        DINERO_INSUFICIENTE.reset();
+        LIMITE_EXCEDIDO.reset();
+    }
+
+    static Map<String, Long> contadores() {
+        Map<String, Long> contadores = new LinkedHashMap<>();
+        for (OperacionMedida operacion : OPERACIONES) {
+            contadores.put(operacion.getNombre(), operacion.getCantidad());
+        }
+        contadores.put("dineroInsuficiente", getDineroInsuficiente());
+        contadores.put("limiteExcedido", getLimiteExcedido());
+        return contadores;
+    }
+
+    static Map<String, Long> latenciasNanos() {
+        Map<String, Long> latencias = new LinkedHashMap<>();
+        for (OperacionMedida operacion : OPERACIONES) {
+            HistogramaLatencia histograma = operacion.getLatencias();
+            latencias.put(operacion.getNombre() + ".p50", histograma.percentil(0.50));
+            latencias.put(operacion.getNombre() + ".p99", histograma.percentil(0.99));
+            latencias.put(operacion.getNombre() + ".p999", histograma.percentil(0.999));
+            latencias.put(operacion.getNombre() + ".max", histograma.getMaximo());
+        }
+        return latencias;
+    }
+
+    /**
+     * Una linea por operacion, por ejemplo
+     * {@code credito cantidad=1200 p50=85ns p99=410ns p999=2047ns max=15320ns}.
+     */
+    public static String volcar() {
+        StringBuilder texto = new StringBuilder();
+        texto.append("activas=").append(activas).append('\n');
+        for (OperacionMedida operacion : OPERACIONES) {
+            HistogramaLatencia histograma = operacion.getLatencias();
+            texto.append(operacion.getNombre())
+                    .append(" cantidad=").append(operacion.getCantidad())
+                    .append(" p50=").append(histograma.percentil(0.50)).append("ns")
+                    .append(" p99=").append(histograma.percentil(0.99)).append("ns")
+                    .append(" p999=").append(histograma.percentil(0.999)).append("ns")
+                    .append(" max=").append(histograma.getMaximo()).append("ns\n");
+        }
+        texto.append("dineroInsuficiente cantidad=").append(getDineroInsuficiente()).append('\n');
+        texto.append("limiteExcedido cantidad=").append(getLimiteExcedido()).append('\n');
+        return texto.toString();
+    }
+
+    /**
+     * Registra el {@link MetricasMXBean} en el servidor de MBeans de la plataforma. Llamarlo de nuevo no tiene
+     * efecto.
+     */
+    public static ObjectName registrarJmx() {
+        try {
+            ObjectName nombre = new ObjectName(NOMBRE_JMX);
+            MBeanServer servidor = ManagementFactory.getPlatformMBeanServer();
+            try {
+                servidor.registerMBean(new MetricasJmx(), nombre);
+            } catch (InstanceAlreadyExistsException e) {
+                // ya registrado
+            }
+            return nombre;
+        } catch (JMException e) {
+            throw new IllegalStateException("No se pudo registrar " + NOMBRE_JMX, e);
+        }
+    }
+
+    private static final class MetricasJmx implements MetricasMXBean {
+        @Override
+        public boolean isActivas() {
+            return Metricas.isActivas();
+        }
+
+        @Override
+        public void setActivas(boolean activas) {
+            Metricas.setActivas(activas);
+        }
+
+        @Override
+        public Map<String, Long> getContadores() {
+            return contadores();
+        }
+
+        @Override
+        public Map<String, Long> getLatenciasNanos() {
+            return latenciasNanos();
+        }
+
+        @Override
+        public String getVolcado() {
+            return volcar();
+        }
+
+        @Override
+        public void reiniciar() {
+            Metricas.reiniciar();
+        }
+    }
+}
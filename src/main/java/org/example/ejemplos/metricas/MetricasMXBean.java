@@ -0,0 +1,28 @@
+package org.example.ejemplos.metricas;
+
+import java.util.Map;
+
+/**
+ * Vista JMX de {@link Metricas}, registrada con {@link Metricas#registrarJmx()} como {@value Metricas#NOMBRE_JMX}.
+ */
+public interface MetricasMXBean {
+
+    boolean isActivas();
+
+    void setActivas(boolean activas);
+
+    /**
+     * Cantidad por operacion y las cantidades de {@link org.example.ejemplos.exceptions.DineroInsuficienteException}
+     * y {@link org.example.ejemplos.exceptions.LimiteExcedidoException}.
+     */
+    Map<String, Long> getContadores();
+
+    /**
+     * Latencias en nanosegundos, con claves {@code operacion.p50}, {@code .p99}, {@code .p999} y {@code .max}.
+     */
+    Map<String, Long> getLatenciasNanos();
+
+    String getVolcado();
+
+    void reiniciar();
+}
@@ -0,0 +1,50 @@
+package org.example.ejemplos.metricas;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cantidad de llamadas y latencias de una operacion. En el codigo medido se usa como
+ * <pre>
+ * long inicio = Metricas.inicio();
+ * try {
+ *     ...
+ * } finally {
+ *     Metricas.CREDITO.registrar(inicio);
+ * }
+ * </pre>
+ * Con las metricas desactivadas {@link Metricas#inicio()} devuelve 0 y {@link #registrar(long)} no hace nada.
+ */
+public final class OperacionMedida {
+
+    private final String nombre;
+    private final LongAdder cantidad = new LongAdder();
+    private final HistogramaLatencia latencias = new HistogramaLatencia();
+
+    OperacionMedida(String nombre) {
+        this.nombre = nombre;
+    }
+
+    public void registrar(long inicio) {
+        if (inicio != 0) {
+            cantidad.increment();
+            latencias.registrar(System.nanoTime() - inicio);
+        }
+    }
+
+    public String getNombre() {
+        return nombre;
+    }
+
+    public long getCantidad() {
+        return cantidad.sum();
+    }
+
+    public HistogramaLatencia getLatencias() {
+        return latencias;
+    }
+
+    void reiniciar() {
+        cantidad.reset();
+        latencias.reiniciar();
+    }
+}
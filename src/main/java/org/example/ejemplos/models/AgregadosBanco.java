@@ -0,0 +1,301 @@
+package org.example.ejemplos.models;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Currency;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Totales de un {@link Banco} que se mantienen con cada movimiento, para leerlos sin recorrer las cuentas: saldo
+ * total, cantidad de cuentas, histograma de saldos por orden de magnitud y las cuentas de mayor saldo. Se obtiene
+ * con {@link Banco#activarAgregados()}.
+ * <p>
+ * Cada movimiento vuelve a leer el saldo de la cuenta y aplica a los totales la diferencia con el ultimo saldo
+ * registrado, en vez de sumar el monto del evento. Asi los totales no dependen del orden en que lleguen los avisos
+ * (que en {@link CuentaAtomica} no esta garantizado) y una transferencia suma cero sin tratarla aparte. Con el
+ * banco quieto, {@link #getSaldoTotal()} es exactamente la suma de {@link Cuenta#getSaldo()}; con movimientos en
+ * curso puede ir un movimiento atras por cuenta.
+ * <p>
+ * El registro de cada cuenta se guarda en la propia cuenta (en el almacen para {@link CuentaColumnar}), sin mapas ni
+ * claves, y se reemplaza con CAS sin tomar el monitor de la cuenta: {@link CuentaAtomica} y {@link CuentaEstriada}
+ * siguen sin bloqueos. Cada aviso crea un registro nuevo, chico e inmutable, y no se mantiene ningun orden. Las
+ * cuentas de mayor saldo se calculan al pedirlas, recorriendo las cuentas del banco.
+ * <p>
+ * Los saldos totales se llevan por moneda, nunca se suman montos de monedas distintas. El histograma y las cuentas
+ * de mayor saldo comparan los saldos tal cual, sin convertir: solo tienen sentido si el banco maneja una moneda.
+ */
+public class AgregadosBanco implements ObservadorMovimientos {
+
+    // indice i: saldos con i digitos en la parte entera, el 0 son los menores que 1 (incluidos los negativos)
+    public static final int CANTIDAD_RANGOS = 20;
+
+    private static final Comparator<Registro> POR_SALDO_DESCENDENTE = (a, b) -> {
+        int comparacion = Dinero.comparar(b.unidades, b.escala, a.unidades, a.escala);
+        return comparacion != 0 ? comparacion : Long.compare(a.cuenta.getId(), b.cuenta.getId());
+    };
+
+    private final ConcurrentHashMap<Currency, TotalesMoneda> totales = new ConcurrentHashMap<>();
+    private final LongAdder cantidad = new LongAdder();
+    private final LongAdder[] rangos = new LongAdder[CANTIDAD_RANGOS];
+    private final Banco banco;
+
+    AgregadosBanco(Banco banco) {
+        this.banco = banco;
+        for (int i = 0; i < rangos.length; i++) {
+            rangos[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Saldo de una cuenta que ya esta sumado en los totales. No cambia: un movimiento pone uno nuevo en la cuenta.
+     */
+    static final class Registro {
+        final Cuenta cuenta;
+        final long unidades;
+        final int escala;
+
+        Registro(Cuenta cuenta, long unidades, int escala) {
+            this.cuenta = cuenta;
+            this.unidades = unidades;
+            this.escala = escala;
+        }
+    }
+
+    private static final class TotalesMoneda {
+        // suma de saldos separada por escala, asi nunca hay que reescalar al sumar
+        final LongAdder[] porEscala = new LongAdder[Dinero.ESCALA_MAXIMA + 1];
+        final LongAdder cuentas = new LongAdder();
+
+        TotalesMoneda() {
+            for (int i = 0; i < porEscala.length; i++) {
+                porEscala[i] = new LongAdder();
+            }
+        }
+
+        BigDecimal saldo() {
+            BigDecimal total = BigDecimal.ZERO;
+            for (int escala = 0; escala < porEscala.length; escala++) {
+                long suma = porEscala[escala].sum();
+                if (suma != 0) {
+                    total = total.add(Dinero.aBigDecimal(suma, escala));
+                }
+            }
+            return total;
+        }
+    }
+
+    private TotalesMoneda totalesDe(Currency moneda) {
+        TotalesMoneda totalesMoneda = totales.get(moneda);
+        return totalesMoneda != null ? totalesMoneda : totales.computeIfAbsent(moneda, m -> new TotalesMoneda());
+    }
+
+    static int rangoDe(long unidades, int escala) {
+        long entero = unidades / Dinero.potenciaDiez(escala);
+        if (entero <= 0) {
+            return 0;
+        }
+        int digitos = 0;
+        while (entero > 0) {
+            entero /= 10;
+            digitos++;
+        }
+        return digitos;
+    }
+
+    // Se lee el registro, despues el saldo, y se reemplaza el registro con CAS; recien entonces se suma la diferencia.
+    // Si otro aviso de la misma cuenta lo cambio entre medio se vuelve a leer, asi cada diferencia se suma una vez y
+    // el ultimo registro es un saldo leido despues del ultimo movimiento. El registro nuevo se crea siempre, aunque
+    // el saldo sea igual: un aviso atrasado que leyo el saldo antes que este ya no puede ganar el CAS.
+    private void actualizar(Cuenta cuenta) {
+        while (true) {
+            Registro anterior = cuenta.registroAgregados();
+            if (anterior == null) {
+                // cuenta cerrada o todavia no registrada, la apertura o el registro inicial leeran el saldo
+                return;
+            }
+            Registro nuevo = new Registro(cuenta, cuenta.getSaldoUnidades(), cuenta.getEscala());
+            if (cuenta.cambiarRegistroAgregados(anterior, nuevo)) {
+                sumarDiferencia(anterior, nuevo);
+                return;
+            }
+        }
+    }
+
+    private void sumarDiferencia(Registro anterior, Registro nuevo) {
+        TotalesMoneda totalesMoneda = totalesDe(nuevo.cuenta.getMoneda());
+        if (nuevo.escala == anterior.escala) {
+            totalesMoneda.porEscala[nuevo.escala].add(nuevo.unidades - anterior.unidades);
+        } else {
+            totalesMoneda.porEscala[anterior.escala].add(-anterior.unidades);
+            totalesMoneda.porEscala[nuevo.escala].add(nuevo.unidades);
+        }
+        int rangoAnterior = rangoDe(anterior.unidades, anterior.escala);
+        int rango = rangoDe(nuevo.unidades, nuevo.escala);
+        if (rango != rangoAnterior) {
+            rangos[rangoAnterior].decrement();
+            rangos[rango].increment();
+        }
+    }
+
+    private void sumar(Registro registro) {
+        totalesDe(registro.cuenta.getMoneda()).porEscala[registro.escala].add(registro.unidades);
+        rangos[rangoDe(registro.unidades, registro.escala)].increment();
+    }
+
+    private void quitar(Registro registro) {
+        rangos[rangoDe(registro.unidades, registro.escala)].decrement();
+        totalesDe(registro.cuenta.getMoneda()).porEscala[registro.escala].add(-registro.unidades);
+    }
+
+    void registrar(Cuenta cuenta) {
+        Registro registro = new Registro(cuenta, cuenta.getSaldoUnidades(), cuenta.getEscala());
+        if (cuenta.cambiarRegistroAgregados(null, registro)) {
+            cantidad.increment();
+            totalesDe(cuenta.getMoneda()).cuentas.increment();
+            sumar(registro);
+            // un movimiento entre la lectura del saldo y el CAS no encontro registro y no sumo nada
+            actualizar(cuenta);
+        }
+    }
+
+    @Override
+    public void apertura(Cuenta cuenta) {
+        registrar(cuenta);
+    }
+
+    @Override
+    public void cierre(Cuenta cuenta) {
+        while (true) {
+            Registro registro = cuenta.registroAgregados();
+            if (registro == null) {
+                return;
+            }
+            if (cuenta.cambiarRegistroAgregados(registro, null)) {
+                cantidad.decrement();
+                totalesDe(cuenta.getMoneda()).cuentas.decrement();
+                quitar(registro);
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void credito(Cuenta cuenta, long unidades, int escala) {
+        actualizar(cuenta);
+    }
+
+    @Override
+    public void debito(Cuenta cuenta, long unidades, int escala) {
+        actualizar(cuenta);
+    }
+
+    @Override
+    public void ajuste(Cuenta cuenta) {
+        actualizar(cuenta);
+    }
+
+    @Override
+    public void reversion(Cuenta cuenta, long unidades, int escala) {
+        actualizar(cuenta);
+    }
+
+    @Override
+    public void transferencia(Cuenta origen, Cuenta destino, long unidades, int escala) {
+        actualizar(origen);
+        actualizar(destino);
+    }
+
+    @Override
+    public void transferencia(Cuenta origen, Cuenta destino, long unidades, int escala, long unidadesDestino,
+                              int escalaDestino) {
+        actualizar(origen);
+        actualizar(destino);
+    }
+
+    /**
+     * Saldo total de un banco con cuentas de una sola moneda.
+     *
+     * @throws IllegalStateException si hay cuentas de mas de una moneda, en ese caso se usa
+     *                               {@link #getSaldoTotal(Currency)} o {@link #getSaldosTotales()}
+     */
+    public BigDecimal getSaldoTotal() {
+        Map<Currency, BigDecimal> saldos = getSaldosTotales();
+        if (saldos.size() > 1) {
+            throw new IllegalStateException("El banco tiene cuentas en varias monedas: " + saldos.keySet());
+        }
+        return saldos.isEmpty() ? BigDecimal.ZERO : saldos.values().iterator().next();
+    }
+
+    public BigDecimal getSaldoTotal(Currency moneda) {
+        TotalesMoneda totalesMoneda = totales.get(moneda);
+        return totalesMoneda == null ? BigDecimal.ZERO : totalesMoneda.saldo();
+    }
+
+    /**
+     * Saldo total de cada moneda que tiene cuentas abiertas, ordenadas por codigo.
+     */
+    public Map<Currency, BigDecimal> getSaldosTotales() {
+        Map<Currency, BigDecimal> saldos = new TreeMap<>(Comparator.comparing(Currency::getCurrencyCode));
+        totales.forEach((moneda, totalesMoneda) -> {
+            if (totalesMoneda.cuentas.sum() > 0) {
+                saldos.put(moneda, totalesMoneda.saldo());
+            }
+        });
+        return saldos;
+    }
+
+    public long getCantidadCuentas() {
+        return cantidad.sum();
+    }
+
+    /**
+     * Cantidad de cuentas por orden de magnitud del saldo, ver {@link #CANTIDAD_RANGOS}.
+     */
+    public long[] getHistogramaSaldos() {
+        long[] histograma = new long[CANTIDAD_RANGOS];
+        for (int i = 0; i < histograma.length; i++) {
+            histograma[i] = rangos[i].sum();
+        }
+        return histograma;
+    }
+
+    /**
+     * Las {@code n} cuentas de mayor saldo, de mayor a menor. Recorre todas las cuentas del banco, es para reportes y
+     * no para llamarlo en cada movimiento.
+     */
+    public List<Cuenta> getMayoresSaldos(int n) {
+        if (n <= 0) {
+            return new ArrayList<>();
+        }
+        // la cabeza es la menor de las n mayores encontradas hasta ahora
+        PriorityQueue<Registro> mayores = new PriorityQueue<>(n, POR_SALDO_DESCENDENTE.reversed());
+        banco.recorrerCuentas(cuenta -> {
+            Registro registro = cuenta.registroAgregados();
+            if (registro == null) {
+                return;
+            }
+            if (mayores.size() == n) {
+                Registro menor = mayores.peek();
+                int comparacion = Dinero.comparar(registro.unidades, registro.escala, menor.unidades, menor.escala);
+                if (comparacion < 0 || comparacion == 0 && registro.cuenta.getId() > menor.cuenta.getId()) {
+                    return;
+                }
+                mayores.poll();
+            }
+            mayores.add(registro);
+        });
+        List<Registro> orden = new ArrayList<>(mayores);
+        orden.sort(POR_SALDO_DESCENDENTE);
+        List<Cuenta> cuentas = new ArrayList<>(orden.size());
+        for (Registro registro : orden) {
+            cuentas.add(registro.cuenta);
+        }
+        return cuentas;
+    }
+}
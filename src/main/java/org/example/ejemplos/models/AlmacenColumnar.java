@@ -0,0 +1,456 @@
+package org.example.ejemplos.models;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Currency;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+
+/**
+ * Almacen de cuentas fuera del heap, para bancos con decenas de millones de cuentas. Cada cuenta es una fila,
+ * identificada por un indice int, y sus datos viven en columnas de {@link ByteBuffer} directos: el saldo en un long
+ * con la escala y la moneda fijas del almacen y el titular en UTF-8 con un largo maximo. El indice por titular es una tabla hash
+ * de direccionamiento abierto, tambien fuera del heap. El recolector de basura no ve ninguno de estos datos.
+ * <p>
+ * Las cuentas se obtienen como {@link CuentaColumnar}: vistas livianas que se crean al buscarlas y se pueden
+ * descartar. Dos vistas de la misma fila comparten saldo y bloqueo. Se usa con {@link Banco#Banco(String,
+ * AlmacenColumnar)}: {@link #nueva(String, long)} reserva la fila y {@link Banco#addCuentas(Cuenta)} la abre.
+ * <p>
+ * El almacen reserva al crearse un bloque de ids de cuenta ({@link #getCapacidad()} ids consecutivos) y los
+ * bloqueos son franjas de filas contiguas. Asi el orden por id que usa {@link Banco#trasnferir} sigue siendo un
+ * orden total entre bloqueos, tambien mezclando estas cuentas con cuentas del heap.
+ * <p>
+ * Los procesos que recorren todas las cuentas usan {@link #recorrer(int, int, Consumer)} por rangos de filas en vez
+ * de {@link Banco#getCuentas()}, que guarda una vista por cuenta en una lista.
+ */
+public class AlmacenColumnar {
+
+    public static final int LARGO_PERSONA_POR_DEFECTO = 32;
+    // limitada por el indice por titular, que tiene que caber en un solo ByteBuffer
+    public static final int CAPACIDAD_MAXIMA = 1 << 27;
+
+    static final int FILAS_POR_BLOQUE = 1 << 16;
+    private static final int CANTIDAD_BLOQUEOS = 4096;
+
+    // estado de una fila, 0 es una fila que todavia no se entrega
+    private static final byte RESERVADA = 1;
+    private static final byte ABIERTA = 2;
+    private static final byte CERRADA = 3;
+
+    // casillas del indice por titular
+    private static final int VACIA = 0;
+    private static final int BORRADA = -1;
+
+    private final int capacidad;
+    private final int escala;
+    private final Currency moneda;
+    private final int largoPersona;
+    // fila de personas: estado, largo y los bytes del titular
+    private final int anchoPersona;
+    private final long idBase;
+    private final ByteBuffer[] saldos;
+    private final ByteBuffer[] personas;
+    private final ByteBuffer indice;
+    private final int mascaraIndice;
+    private final StampedLock candadoIndice = new StampedLock();
+    private final Object[] bloqueos;
+    private final int filasPorBloqueo;
+    // limites de debito de las filas que tienen, casi siempre pocas o ninguna
+    private final ReferenciasPorFila<VentanasDebito> ventanas;
+    // registro de cada fila en los AgregadosBanco, solo si el banco los activo
+    private final ReferenciasPorFila<AgregadosBanco.Registro> registrosAgregados;
+    private int siguienteFila;
+    private volatile int abiertas;
+    private volatile Banco banco;
+
+    public AlmacenColumnar(int capacidad, int escala) {
+        this(capacidad, escala, LARGO_PERSONA_POR_DEFECTO);
+    }
+
+    /**
+     * @param largoPersona bytes UTF-8 maximos del titular
+     */
+    public AlmacenColumnar(int capacidad, int escala, int largoPersona) {
+        this(capacidad, escala, largoPersona, Cuenta.MONEDA_POR_DEFECTO);
+    }
+
+    public AlmacenColumnar(int capacidad, int escala, int largoPersona, Currency moneda) {
+        if (capacidad <= 0 || capacidad > CAPACIDAD_MAXIMA) {
+            throw new IllegalArgumentException("Capacidad fuera de rango: " + capacidad);
+        }
+        if (largoPersona <= 0 || largoPersona > 255) {
+            throw new IllegalArgumentException("Largo de persona fuera de rango: " + largoPersona);
+        }
+        Dinero.validarEscala(escala);
+        this.capacidad = capacidad;
+        this.escala = escala;
+        this.moneda = moneda;
+        this.largoPersona = largoPersona;
+        this.anchoPersona = 2 + largoPersona;
+        this.idBase = Cuenta.reservarIds(capacidad);
+        this.ventanas = new ReferenciasPorFila<>(capacidad);
+        this.registrosAgregados = new ReferenciasPorFila<>(capacidad);
+
+        int bloques = (capacidad + FILAS_POR_BLOQUE - 1) / FILAS_POR_BLOQUE;
+        this.saldos = new ByteBuffer[bloques];
+        this.personas = new ByteBuffer[bloques];
+        for (int i = 0; i < bloques; i++) {
+            int filas = Math.min(FILAS_POR_BLOQUE, capacidad - i * FILAS_POR_BLOQUE);
+            saldos[i] = ByteBuffer.allocateDirect(filas * Long.BYTES);
+            personas[i] = ByteBuffer.allocateDirect(filas * anchoPersona);
+        }
+        // a lo mas la mitad de las casillas ocupadas, las busquedas terminan rapido
+        int casillas = Integer.highestOneBit(Math.max(2, capacidad - 1)) << 2;
+        this.indice = ByteBuffer.allocateDirect(casillas * Integer.BYTES);
+        this.mascaraIndice = casillas - 1;
+
+        this.filasPorBloqueo = (capacidad + CANTIDAD_BLOQUEOS - 1) / CANTIDAD_BLOQUEOS;
+        this.bloqueos = new Object[(capacidad + filasPorBloqueo - 1) / filasPorBloqueo];
+        for (int i = 0; i < bloqueos.length; i++) {
+            bloqueos[i] = new Object();
+        }
+    }
+
+    void asociar(Banco banco) {
+        if (this.banco != null) {
+            throw new IllegalStateException("El almacen ya pertenece al banco " + this.banco.getNombreBanco());
+        }
+        this.banco = banco;
+    }
+
+    Banco getBanco() {
+        return banco;
+    }
+
+    public int getCapacidad() {
+        return capacidad;
+    }
+
+    public int getEscala() {
+        return escala;
+    }
+
+    public Currency getMoneda() {
+        return moneda;
+    }
+
+    public int getCantidadCuentas() {
+        return abiertas;
+    }
+
+    /**
+     * Filas entregadas hasta ahora por {@link #nueva(String, long)}, abiertas o no. Las cuentas del almacen estan en
+     * las filas de 0 a este valor.
+     */
+    public synchronized int getFilasUsadas() {
+        return siguienteFila;
+    }
+
+    /**
+     * Memoria reservada fuera del heap para las columnas y el indice.
+     */
+    public long getBytesFueraDelHeap() {
+        long bytes = indice.capacity();
+        for (int i = 0; i < saldos.length; i++) {
+            bytes += saldos[i].capacity() + personas[i].capacity();
+        }
+        return bytes;
+    }
+
+    /**
+     * Reserva una fila para una cuenta nueva. La cuenta existe para el banco recien despues de
+     * {@link Banco#addCuentas(Cuenta)}; si esa llamada falla la fila queda sin usar.
+     */
+    public synchronized CuentaColumnar nueva(String persona, long saldoUnidades) {
+        byte[] bytes = persona.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > largoPersona) {
+            throw new IllegalArgumentException("El titular ocupa mas de " + largoPersona + " bytes: " + persona);
+        }
+        if (siguienteFila == capacidad) {
+            throw new IllegalStateException("Almacen lleno, capacidad " + capacidad);
+        }
+        int fila = siguienteFila++;
+        estado(fila, RESERVADA);
+        escribirPersona(fila, bytes);
+        saldos[fila / FILAS_POR_BLOQUE].putLong((fila % FILAS_POR_BLOQUE) * Long.BYTES, saldoUnidades);
+        return new CuentaColumnar(this, fila, persona);
+    }
+
+    boolean contiene(long id) {
+        return id >= idBase && id < idBase + capacidad;
+    }
+
+    boolean esPropia(CuentaColumnar cuenta) {
+        return cuenta.getAlmacen() == this;
+    }
+
+    long idDe(int fila) {
+        return idBase + fila;
+    }
+
+    Object bloqueo(int fila) {
+        return bloqueos[fila / filasPorBloqueo];
+    }
+
+    // Las columnas de saldo y estado se leen y escriben con el bloqueo de la fila tomado
+
+    long saldo(int fila) {
+        return saldos[fila / FILAS_POR_BLOQUE].getLong((fila % FILAS_POR_BLOQUE) * Long.BYTES);
+    }
+
+    void saldo(int fila, long unidades) {
+        saldos[fila / FILAS_POR_BLOQUE].putLong((fila % FILAS_POR_BLOQUE) * Long.BYTES, unidades);
+    }
+
+    private byte estado(int fila) {
+        return personas[fila / FILAS_POR_BLOQUE].get((fila % FILAS_POR_BLOQUE) * anchoPersona);
+    }
+
+    private void estado(int fila, byte estado) {
+        personas[fila / FILAS_POR_BLOQUE].put((fila % FILAS_POR_BLOQUE) * anchoPersona, estado);
+    }
+
+    VentanasDebito ventanas(int fila) {
+        return ventanas.get(fila);
+    }
+
+    void ventanas(int fila, VentanasDebito ventanasFila) {
+        ventanas.set(fila, ventanasFila);
+    }
+
+    AgregadosBanco.Registro registroAgregados(int fila) {
+        return registrosAgregados.get(fila);
+    }
+
+    boolean cambiarRegistroAgregados(int fila, AgregadosBanco.Registro esperado, AgregadosBanco.Registro nuevo) {
+        return registrosAgregados.compareAndSet(fila, esperado, nuevo);
+    }
+
+    boolean isAbierta(int fila) {
+        synchronized (bloqueo(fila)) {
+            return estado(fila) == ABIERTA;
+        }
+    }
+
+    String persona(int fila) {
+        ByteBuffer columna = personas[fila / FILAS_POR_BLOQUE];
+        int posicion = (fila % FILAS_POR_BLOQUE) * anchoPersona;
+        byte[] bytes = new byte[columna.get(posicion + 1) & 0xFF];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = columna.get(posicion + 2 + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void escribirPersona(int fila, byte[] bytes) {
+        ByteBuffer columna = personas[fila / FILAS_POR_BLOQUE];
+        int posicion = (fila % FILAS_POR_BLOQUE) * anchoPersona;
+        columna.put(posicion + 1, (byte) bytes.length);
+        for (int i = 0; i < bytes.length; i++) {
+            columna.put(posicion + 2 + i, bytes[i]);
+        }
+    }
+
+    private boolean mismaPersona(int fila, byte[] bytes) {
+        ByteBuffer columna = personas[fila / FILAS_POR_BLOQUE];
+        int posicion = (fila % FILAS_POR_BLOQUE) * anchoPersona;
+        if ((columna.get(posicion + 1) & 0xFF) != bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (columna.get(posicion + 2 + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int casillaInicial(byte[] bytes) {
+        int hash = 1;
+        for (byte b : bytes) {
+            hash = 31 * hash + b;
+        }
+        return hash * 0x9E3779B9;
+    }
+
+    // fila con ese titular en el indice, o -1; recorre a lo mas todas las casillas por si se lee a medio escribir
+    private int buscarEnIndice(byte[] bytes) {
+        int casilla = casillaInicial(bytes) & mascaraIndice;
+        for (int vueltas = 0; vueltas <= mascaraIndice; vueltas++) {
+            int valor = indice.getInt(casilla * Integer.BYTES);
+            if (valor == VACIA) {
+                return -1;
+            }
+            if (valor > 0 && valor <= capacidad && mismaPersona(valor - 1, bytes)) {
+                return valor - 1;
+            }
+            casilla = (casilla + 1) & mascaraIndice;
+        }
+        return -1;
+    }
+
+    /**
+     * Busca la fila abierta de un titular, sin tomar bloqueos si nadie esta abriendo o cerrando cuentas.
+     */
+    int buscarFila(String persona) {
+        byte[] bytes = persona.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > largoPersona) {
+            return -1;
+        }
+        long sello = candadoIndice.tryOptimisticRead();
+        int fila = buscarEnIndice(bytes);
+        if (!candadoIndice.validate(sello)) {
+            sello = candadoIndice.readLock();
+            try {
+                fila = buscarEnIndice(bytes);
+            } finally {
+                candadoIndice.unlockRead(sello);
+            }
+        }
+        return fila;
+    }
+
+    CuentaColumnar buscar(String persona) {
+        int fila = buscarFila(persona);
+        return fila >= 0 ? vista(fila) : null;
+    }
+
+    CuentaColumnar buscar(long id) {
+        if (!contiene(id)) {
+            return null;
+        }
+        int fila = (int) (id - idBase);
+        return isAbierta(fila) ? vista(fila) : null;
+    }
+
+    private CuentaColumnar vista(int fila) {
+        CuentaColumnar cuenta = new CuentaColumnar(this, fila, persona(fila));
+        cuenta.setBanco(banco);
+        return cuenta;
+    }
+
+    /**
+     * Agrega el titular al indice y marca la fila abierta. Se llama con el bloqueo de la fila tomado.
+     *
+     * @return {@code false} si ya hay una cuenta abierta con ese titular
+     */
+    boolean abrir(CuentaColumnar cuenta) {
+        int fila = cuenta.getFila();
+        if (estado(fila) != RESERVADA) {
+            throw new IllegalStateException("La fila " + fila + " no esta reservada");
+        }
+        byte[] bytes = cuenta.getPersona().getBytes(StandardCharsets.UTF_8);
+        long sello = candadoIndice.writeLock();
+        try {
+            if (buscarEnIndice(bytes) >= 0) {
+                return false;
+            }
+            agregarAlIndice(bytes, fila);
+            estado(fila, ABIERTA);
+            abiertas++;
+            return true;
+        } finally {
+            candadoIndice.unlockWrite(sello);
+        }
+    }
+
+    /**
+     * Saca el titular del indice y marca la fila cerrada, la fila no se reutiliza. Se llama con el bloqueo de la fila
+     * tomado.
+     */
+    boolean cerrar(CuentaColumnar cuenta) {
+        int fila = cuenta.getFila();
+        long sello = candadoIndice.writeLock();
+        try {
+            if (estado(fila) != ABIERTA) {
+                return false;
+            }
+            quitarDelIndice(persona(fila).getBytes(StandardCharsets.UTF_8), fila);
+            estado(fila, CERRADA);
+            abiertas--;
+            ventanas.set(fila, null);
+            return true;
+        } finally {
+            candadoIndice.unlockWrite(sello);
+        }
+    }
+
+    /**
+     * Cambia el titular de la fila en la columna y, si la cuenta esta abierta, en el indice. Se llama con el bloqueo
+     * de la fila tomado.
+     *
+     * @throws IllegalArgumentException si el titular no cabe o ya hay otra cuenta abierta con ese titular
+     */
+    void renombrar(CuentaColumnar cuenta, String persona) {
+        int fila = cuenta.getFila();
+        byte[] bytes = persona.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > largoPersona) {
+            throw new IllegalArgumentException("El titular ocupa mas de " + largoPersona + " bytes: " + persona);
+        }
+        long sello = candadoIndice.writeLock();
+        try {
+            int existente = buscarEnIndice(bytes);
+            if (existente == fila) {
+                return;
+            }
+            if (existente >= 0) {
+                throw new IllegalArgumentException("Ya existe una cuenta para " + persona);
+            }
+            // con el candado de escritura una busqueda optimista que lea la columna a medio cambiar se repite
+            boolean abierta = estado(fila) == ABIERTA;
+            if (abierta) {
+                quitarDelIndice(persona(fila).getBytes(StandardCharsets.UTF_8), fila);
+            }
+            escribirPersona(fila, bytes);
+            if (abierta) {
+                agregarAlIndice(bytes, fila);
+            }
+        } finally {
+            candadoIndice.unlockWrite(sello);
+        }
+    }
+
+    // agregarAlIndice y quitarDelIndice se llaman con el candado de escritura del indice
+
+    private void agregarAlIndice(byte[] bytes, int fila) {
+        int casilla = casillaInicial(bytes) & mascaraIndice;
+        while (true) {
+            int valor = indice.getInt(casilla * Integer.BYTES);
+            if (valor == VACIA || valor == BORRADA) {
+                indice.putInt(casilla * Integer.BYTES, fila + 1);
+                return;
+            }
+            casilla = (casilla + 1) & mascaraIndice;
+        }
+    }
+
+    private void quitarDelIndice(byte[] bytes, int fila) {
+        int casilla = casillaInicial(bytes) & mascaraIndice;
+        while (indice.getInt(casilla * Integer.BYTES) != fila + 1) {
+            casilla = (casilla + 1) & mascaraIndice;
+        }
+        indice.putInt(casilla * Integer.BYTES, BORRADA);
+    }
+
+    /**
+     * Entrega una vista de cada cuenta abierta con fila entre {@code desde} y {@code hasta} (sin incluir), en orden
+     * de fila. Las vistas no se guardan, cada una se puede descartar al volver de {@code accion}. Varios hilos pueden
+     * recorrer rangos distintos a la vez.
+     */
+    public void recorrer(int desde, int hasta, Consumer<? super CuentaColumnar> accion) {
+        int filas = Math.min(hasta, getFilasUsadas());
+        for (int fila = Math.max(desde, 0); fila < filas; fila++) {
+            if (isAbierta(fila)) {
+                accion.accept(vista(fila));
+            }
+        }
+    }
+
+    /**
+     * Agrega una vista de cada cuenta abierta.
+     */
+    void agregarVistas(List<Cuenta> cuentas) {
+        recorrer(0, getFilasUsadas(), cuentas::add);
+    }
+}
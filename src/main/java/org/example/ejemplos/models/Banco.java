@@ -1,25 +1,91 @@
 package org.example.ejemplos.models;
 
+import org.example.ejemplos.exceptions.ConflictoTransaccionException;
+import org.example.ejemplos.exceptions.DineroInsuficienteException;
+import org.example.ejemplos.exceptions.LimiteExcedidoException;
+import org.example.ejemplos.metricas.Metricas;
+
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class Banco {
 
-    private List<Cuenta> cuentas;
+    public static final int MAX_INTENTOS_POR_DEFECTO = 100;
+
+    // Indices primarios de las cuentas, buscar por titular o por id es O(1) en vez de recorrer una lista
+    private final Map<String, Cuenta> cuentasPorPersona = new ConcurrentHashMap<>();
+    private final Map<Long, Cuenta> cuentasPorId = new ConcurrentHashMap<>();
+    // cuentas fuera del heap, opcional; sus cuentas no estan en los indices de arriba
+    private final AlmacenColumnar almacen;
     private String nombreBanco;
+    // arreglo en vez de lista para no crear un iterador en cada movimiento, se reemplaza entero al registrar
+    private volatile ObservadorMovimientos[] observadores = new ObservadorMovimientos[0];
+    private AgregadosBanco agregados;
+    private volatile CacheIdempotencia idempotencia;
+    // se reemplaza entera, cada transferencia lee una sola vez la referencia
+    private volatile TablaCambio tablaCambio = TablaCambio.VACIA;
+    private final EstadisticasTransacciones estadisticasTransacciones = new EstadisticasTransacciones();
 
     public Banco(String nombreBanco) {
         this.nombreBanco = nombreBanco;
-        this.cuentas = new ArrayList<>();
+        this.almacen = null;
+    }
+
+    /**
+     * Banco que ademas de las cuentas del heap tiene las de un {@link AlmacenColumnar}. Un almacen pertenece a un
+     * solo banco.
+     */
+    public Banco(String nombreBanco, AlmacenColumnar almacen) {
+        this.nombreBanco = nombreBanco;
+        this.almacen = almacen;
+        almacen.asociar(this);
     }
 
+    /**
+     * Copia de solo lectura de las cuentas del banco, para agregar o quitar cuentas se usa
+     * {@link #addCuentas(Cuenta)} y {@link #removeCuenta(String)}.
+     */
     public List<Cuenta> getCuentas() {
-        return cuentas;
+        List<Cuenta> cuentas = new ArrayList<>(cuentasPorId.values());
+        if (almacen != null) {
+            almacen.agregarVistas(cuentas);
+        }
+        return Collections.unmodifiableList(cuentas);
+    }
+
+    /**
+     * Copia de las cuentas del banco que no estan en su {@link AlmacenColumnar}. Los procesos que recorren todo el
+     * banco usan esta lista y {@link AlmacenColumnar#recorrer} para las filas, sin guardar una vista por fila.
+     */
+    public List<Cuenta> getCuentasDelHeap() {
+        return Collections.unmodifiableList(new ArrayList<>(cuentasPorId.values()));
+    }
+
+    /**
+     * El almacen columnar del banco, o null si todas sus cuentas estan en el heap.
+     */
+    public AlmacenColumnar getAlmacen() {
+        return almacen;
     }
 
     public void setCuentas(List<Cuenta> cuentas) {
-        this.cuentas = cuentas;
+        for (Cuenta cuenta : getCuentas()) {
+            removeCuenta(cuenta.getPersona());
+        }
+        cuentas.forEach(this::addCuentas);
     }
 
     public String getNombreBanco() {
@@ -31,15 +97,457 @@ public class Banco {
     }
 
     public void addCuentas(Cuenta cuentaAgregada) {
-        cuentas.add(cuentaAgregada);
-        cuentaAgregada.setBanco(this);
+        if (cuentaAgregada instanceof CuentaColumnar) {
+            addCuentaColumnar((CuentaColumnar) cuentaAgregada);
+            return;
+        }
+        if (almacen != null && almacen.buscarFila(cuentaAgregada.getPersona()) >= 0) {
+            throw new IllegalArgumentException("Ya existe una cuenta para " + cuentaAgregada.getPersona());
+        }
+        verificarApertura(cuentaAgregada);
+        Cuenta existente = cuentasPorPersona.putIfAbsent(cuentaAgregada.getPersona(), cuentaAgregada);
+        if (existente == cuentaAgregada) {
+            return;
+        }
+        if (existente != null) {
+            throw new IllegalArgumentException("Ya existe una cuenta para " + cuentaAgregada.getPersona());
+        }
+        // con el monitor tomado, en Cuenta un credito que llegue justo ahora espera a que la cuenta este en el banco y
+        // se avisa despues de la apertura. CuentaAtomica y CuentaEstriada acreditan sin este monitor: un movimiento
+        // suyo mientras se agregan puede no quedar ni en el saldo de la apertura ni en un aviso, no se deben usar
+        // hasta que addCuentas termine
+        synchronized (cuentaAgregada) {
+            try {
+                for (ObservadorMovimientos observador : observadores) {
+                    observador.apertura(cuentaAgregada);
+                }
+            } catch (RuntimeException e) {
+                cuentasPorPersona.remove(cuentaAgregada.getPersona(), cuentaAgregada);
+                throw e;
+            }
+            cuentasPorId.put(cuentaAgregada.getId(), cuentaAgregada);
+            cuentaAgregada.setBanco(this);
+        }
+    }
+
+    private void addCuentaColumnar(CuentaColumnar cuenta) {
+        if (almacen == null || !almacen.esPropia(cuenta)) {
+            throw new IllegalArgumentException("La cuenta de " + cuenta.getPersona() + " es de otro almacen");
+        }
+        if (cuentasPorPersona.containsKey(cuenta.getPersona())) {
+            throw new IllegalArgumentException("Ya existe una cuenta para " + cuenta.getPersona());
+        }
+        synchronized (cuenta.bloqueo()) {
+            if (almacen.isAbierta(cuenta.getFila())) {
+                // otra vista de una cuenta que ya esta en el banco
+                return;
+            }
+            verificarApertura(cuenta);
+            if (!almacen.abrir(cuenta)) {
+                throw new IllegalArgumentException("Ya existe una cuenta para " + cuenta.getPersona());
+            }
+            try {
+                for (ObservadorMovimientos observador : observadores) {
+                    observador.apertura(cuenta);
+                }
+            } catch (RuntimeException e) {
+                almacen.cerrar(cuenta);
+                throw e;
+            }
+            cuenta.setBanco(this);
+        }
+    }
+
+    /**
+     * Las cuentas de un {@link AlmacenColumnar} se devuelven como una vista nueva en cada busqueda, se comparan
+     * por id y no por referencia.
+     */
+    public Cuenta findCuenta(String persona) {
+        Cuenta cuenta = cuentasPorPersona.get(persona);
+        if (cuenta == null && almacen != null) {
+            return almacen.buscar(persona);
+        }
+        return cuenta;
+    }
+
+    public Cuenta findCuenta(long id) {
+        if (almacen != null && almacen.contiene(id)) {
+            return almacen.buscar(id);
+        }
+        return cuentasPorId.get(id);
+    }
+
+    public Cuenta removeCuenta(String persona) {
+        Cuenta cuenta = cuentasPorPersona.get(persona);
+        if (cuenta == null && almacen != null) {
+            CuentaColumnar columnar = almacen.buscar(persona);
+            if (columnar != null) {
+                synchronized (columnar.bloqueo()) {
+                    if (!almacen.isAbierta(columnar.getFila())) {
+                        return null;
+                    }
+                    verificarMovimiento(columnar);
+                    if (!almacen.cerrar(columnar)) {
+                        return null;
+                    }
+                    columnar.setBanco(null);
+                    for (ObservadorMovimientos observador : observadores) {
+                        observador.cierre(columnar);
+                    }
+                }
+            }
+            return columnar;
+        }
+        if (cuenta != null) {
+            synchronized (cuenta) {
+                // el cierre se revisa antes de sacar la cuenta del indice, asi un rechazo no deja nada a medias
+                verificarMovimiento(cuenta);
+                if (!cuentasPorPersona.remove(persona, cuenta)) {
+                    return null;
+                }
+                cuentasPorId.remove(cuenta.getId());
+                cuenta.setBanco(null);
+                for (ObservadorMovimientos observador : observadores) {
+                    observador.cierre(cuenta);
+                }
+            }
+        }
+        return cuenta;
+    }
+
+    public int getCantidadCuentas() {
+        return cuentasPorId.size() + (almacen != null ? almacen.getCantidadCuentas() : 0);
+    }
+
+    boolean esDelBanco(Cuenta cuenta) {
+        if (cuenta instanceof CuentaColumnar) {
+            return almacen.isAbierta(((CuentaColumnar) cuenta).getFila());
+        }
+        return cuentasPorId.get(cuenta.getId()) == cuenta;
+    }
+
+    boolean tieneCuentaDelHeap(String persona) {
+        return cuentasPorPersona.containsKey(persona);
+    }
+
+    // Llamado por Cuenta.setPersona para que el indice por titular no quede apuntando al nombre anterior
+    void reindexar(Cuenta cuenta, String personaAnterior) {
+        if (cuentasPorPersona.remove(personaAnterior, cuenta)) {
+            Cuenta existente = cuentasPorPersona.putIfAbsent(cuenta.getPersona(), cuenta);
+            if (existente != null && existente != cuenta) {
+                cuentasPorPersona.put(personaAnterior, cuenta);
+                throw new IllegalArgumentException("Ya existe una cuenta para " + cuenta.getPersona());
+            }
+        }
+    }
+
+    public synchronized void agregarObservador(ObservadorMovimientos observador) {
+        ObservadorMovimientos[] nuevos = Arrays.copyOf(observadores, observadores.length + 1);
+        nuevos[observadores.length] = observador;
+        observadores = nuevos;
+    }
+
+    public synchronized void quitarObservador(ObservadorMovimientos observador) {
+        List<ObservadorMovimientos> restantes = new ArrayList<>(Arrays.asList(observadores));
+        restantes.remove(observador);
+        observadores = restantes.toArray(new ObservadorMovimientos[0]);
+    }
+
+    /**
+     * Empieza a mantener los {@link AgregadosBanco} de este banco (la primera vez) y los devuelve. Las cuentas que
+     * ya existen se registran con su saldo actual.
+     */
+    public synchronized AgregadosBanco activarAgregados() {
+        if (agregados == null) {
+            agregados = new AgregadosBanco(this);
+            agregarObservador(agregados);
+            // despues de registrar el observador, asi una cuenta que se abra ahora no se pierde; registrar dos veces
+            // la misma cuenta no tiene efecto
+            Consumer<Cuenta> registrar = cuenta -> {
+                synchronized (cuenta.bloqueo()) {
+                    if (esDelBanco(cuenta)) {
+                        agregados.registrar(cuenta);
+                    }
+                }
+            };
+            recorrerCuentas(registrar);
+        }
+        return agregados;
+    }
+
+    /**
+     * Entrega cada cuenta del banco sin armar una lista: las del heap y una vista de cada cuenta abierta del almacen.
+     */
+    void recorrerCuentas(Consumer<? super Cuenta> accion) {
+        cuentasPorId.values().forEach(accion);
+        if (almacen != null) {
+            almacen.recorrer(0, almacen.getFilasUsadas(), accion);
+        }
+    }
+
+    private void verificarApertura(Cuenta cuenta) {
+        for (ObservadorMovimientos observador : observadores) {
+            observador.antesDeApertura(cuenta);
+        }
+    }
+
+    // Antes de aplicar un movimiento, con los monitores tomados: un observador que lanza lo rechaza sin cambiar nada
+    void verificarMovimiento(Cuenta cuenta) {
+        for (ObservadorMovimientos observador : observadores) {
+            observador.antesDeMovimiento(cuenta);
+        }
+    }
+
+    void notificarCredito(Cuenta cuenta, long unidades, int escala) {
+        for (ObservadorMovimientos observador : observadores) {
+            observador.credito(cuenta, unidades, escala);
+        }
+    }
+
+    void notificarDebito(Cuenta cuenta, long unidades, int escala) {
+        for (ObservadorMovimientos observador : observadores) {
+            observador.debito(cuenta, unidades, escala);
+        }
+    }
+
+    void notificarAjuste(Cuenta cuenta) {
+        for (ObservadorMovimientos observador : observadores) {
+            observador.ajuste(cuenta);
+        }
+    }
+
+    void notificarReversion(Cuenta cuenta, long unidades, int escala) {
+        for (ObservadorMovimientos observador : observadores) {
+            observador.reversion(cuenta, unidades, escala);
+        }
     }
 
     public void trasnferir(Cuenta origen, Cuenta destino, BigDecimal monto) {
-        origen.debito(monto);
-        destino.credito(monto);
+        int escala = Dinero.escalaDe(monto);
+        trasnferir(origen, destino, Dinero.aUnidades(monto, escala), escala);
+    }
 
+    /**
+     * Mueve {@code unidades} (en la moneda del origen) de una cuenta a otra. Si las monedas son distintas el destino
+     * recibe el monto convertido con la {@link TablaCambio} del banco, con los decimales de su moneda.
+     *
+     * @throws IllegalArgumentException si las monedas son distintas y la tabla no tiene la tasa
+     */
+    public void trasnferir(Cuenta origen, Cuenta destino, long unidades, int escala) {
+        long inicio = Metricas.inicio();
+        try {
+            boolean cambio = origen.getMoneda() != destino.getMoneda();
+            long unidadesDestino = unidades;
+            int escalaDestino = escala;
+            if (cambio) {
+                // la conversion no depende de los saldos, se calcula antes de tomar los bloqueos
+                escalaDestino = TablaCambio.escalaEn(destino.getMoneda(), escala);
+                unidadesDestino = tablaCambio.convertir(origen.getMoneda(), destino.getMoneda(), unidades, escala,
+                        escalaDestino);
+            }
+            // Los bloqueos se toman siempre en el mismo orden (por id de cuenta) para que dos transferencias
+            // cruzadas A->B y B->A no se bloqueen mutuamente. Pares de cuentas distintos no comparten monitor
+            // y pueden ejecutarse en paralelo. Las cuentas columnares comparten bloqueo por franjas de ids contiguos,
+            // el orden por id sigue sirviendo (ver AlmacenColumnar).
+            Cuenta primera = origen.getId() <= destino.getId() ? origen : destino;
+            Cuenta segunda = primera == origen ? destino : origen;
+            synchronized (primera.bloqueo()) {
+                synchronized (segunda.bloqueo()) {
+                    verificarMovimiento(origen);
+                    verificarMovimiento(destino);
+                    origen.aplicarDebito(unidades, escala);
+                    try {
+                        destino.aplicarCredito(unidadesDestino, escalaDestino);
+                    } catch (RuntimeException e) {
+                        // si el credito falla se devuelve el dinero (y el limite) para no dejar la transferencia a
+                        // medias
+                        origen.devolverDebito(unidades, escala);
+                        throw e;
+                    }
+                    for (ObservadorMovimientos observador : observadores) {
+                        if (cambio) {
+                            observador.transferencia(origen, destino, unidades, escala, unidadesDestino, escalaDestino);
+                        } else {
+                            observador.transferencia(origen, destino, unidades, escala);
+                        }
+                    }
+                }
+            }
+        } finally {
+            Metricas.TRANSFERENCIA.registrar(inicio);
+        }
     }
 
+    public TablaCambio getTablaCambio() {
+        return tablaCambio;
+    }
 
+    /**
+     * Reemplaza las tasas de cambio. Las transferencias en curso terminan con la tabla anterior.
+     */
+    public void setTablaCambio(TablaCambio tablaCambio) {
+        this.tablaCambio = Objects.requireNonNull(tablaCambio, "tablaCambio");
+    }
+
+    /**
+     * Transferencia con id de solicitud. Si el id ya se uso (y no vencio), no se mueve el dinero otra vez: se repite
+     * el resultado original, terminando normalmente o lanzando la misma excepcion. Si la primera todavia se esta
+     * aplicando en otro hilo, espera su resultado.
+     *
+     * @throws IllegalArgumentException si el id ya se uso con otras cuentas u otro monto
+     */
+    public void trasnferir(String idSolicitud, Cuenta origen, Cuenta destino, BigDecimal monto) {
+        int escala = Dinero.escalaDe(monto);
+        trasnferir(idSolicitud, origen, destino, Dinero.aUnidades(monto, escala), escala);
+    }
+
+    public void trasnferir(String idSolicitud, Cuenta origen, Cuenta destino, long unidades, int escala) {
+        CacheIdempotencia.Entrada nueva = new CacheIdempotencia.Entrada(origen.getId(), destino.getId(), unidades,
+                escala, System.nanoTime());
+        CacheIdempotencia.Entrada existente = idempotencia().reservar(idSolicitud, nueva);
+        if (existente != null) {
+            if (!existente.mismaSolicitud(nueva)) {
+                throw new IllegalArgumentException("La solicitud " + idSolicitud + " ya se uso con otros datos");
+            }
+            ResultadoTransferencia resultado = existente.resultado.join();
+            if (!resultado.isExitosa()) {
+                throw resultado.getError();
+            }
+            return;
+        }
+        try {
+            trasnferir(origen, destino, unidades, escala);
+            nueva.resultado.complete(ResultadoTransferencia.EXITOSA);
+        } catch (RuntimeException e) {
+            // trasnferir solo lanza antes de mover el dinero o despues de devolverlo, la solicitud no se aplico
+            nueva.resultado.complete(ResultadoTransferencia.fallida(e));
+            throw e;
+        } catch (Error e) {
+            nueva.resultado.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Aplica la transferencia, con {@link #trasnferir(String, Cuenta, Cuenta, long, int)} si trae id de solicitud.
+     */
+    public void trasnferir(Transferencia transferencia) {
+        if (transferencia.getIdSolicitud() != null) {
+            trasnferir(transferencia.getIdSolicitud(), transferencia.getOrigen(), transferencia.getDestino(),
+                    transferencia.getUnidades(), transferencia.getEscala());
+        } else {
+            trasnferir(transferencia.getOrigen(), transferencia.getDestino(), transferencia.getUnidades(),
+                    transferencia.getEscala());
+        }
+    }
+
+    /**
+     * Tamano y vencimiento del cache de ids de solicitud. Por defecto {@value CacheIdempotencia#CAPACIDAD_POR_DEFECTO}
+     * ids sin vencimiento. Reemplaza el cache, los ids ya vistos se olvidan.
+     *
+     * @param vencimiento {@link Duration#ZERO} para que los ids solo salgan por capacidad
+     */
+    public synchronized void configurarIdempotencia(int capacidad, Duration vencimiento) {
+        idempotencia = new CacheIdempotencia(capacidad, vencimiento.toNanos());
+    }
+
+    private CacheIdempotencia idempotencia() {
+        CacheIdempotencia cache = idempotencia;
+        if (cache == null) {
+            synchronized (this) {
+                if (idempotencia == null) {
+                    idempotencia = new CacheIdempotencia(CacheIdempotencia.CAPACIDAD_POR_DEFECTO, 0);
+                }
+                cache = idempotencia;
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Ejecuta {@code cuerpo} como una transaccion optimista sobre varias cuentas (ver {@link Transaccion}), con
+     * hasta {@value #MAX_INTENTOS_POR_DEFECTO} intentos. Un cuerpo sin resultado devuelve null.
+     */
+    public <T> T transaccion(Function<Transaccion, T> cuerpo) {
+        return transaccion(cuerpo, MAX_INTENTOS_POR_DEFECTO);
+    }
+
+    /**
+     * Ejecuta el cuerpo y confirma la transaccion; si al confirmar alguna cuenta leida cambio, vuelve a ejecutar el
+     * cuerpo con una transaccion nueva. El cuerpo puede ejecutarse varias veces y no debe tener otros efectos.
+     *
+     * @throws org.example.ejemplos.exceptions.DineroInsuficienteException si al confirmar una cuenta queda en
+     *                                                                     negativo, no se aplica nada
+     * @throws LimiteExcedidoException                                     si al confirmar un debito pasa un limite
+     *                                                                     de la cuenta, no se aplica nada
+     * @throws ConflictoTransaccionException                               si ninguno de los intentos se pudo
+     *                                                                     confirmar
+     */
+    public <T> T transaccion(Function<Transaccion, T> cuerpo, int maxIntentos) {
+        for (int intento = 1; ; intento++) {
+            Transaccion transaccion = new Transaccion(this);
+            T resultado = cuerpo.apply(transaccion);
+            try {
+                if (transaccion.confirmar()) {
+                    estadisticasTransacciones.confirmadas.increment();
+                    return resultado;
+                }
+            } catch (DineroInsuficienteException e) {
+                estadisticasTransacciones.sinFondos.increment();
+                throw e;
+            } catch (LimiteExcedidoException e) {
+                estadisticasTransacciones.limiteExcedido.increment();
+                throw e;
+            }
+            if (intento >= maxIntentos) {
+                estadisticasTransacciones.abortadas.increment();
+                throw new ConflictoTransaccionException("La transaccion no se pudo confirmar en " + maxIntentos
+                        + " intentos");
+            }
+            estadisticasTransacciones.reintentos.increment();
+            // espera cada vez mas larga para que los que chocan no vuelvan a chocar en el mismo instante
+            if (intento < 10) {
+                for (int i = 0; i < 1 << intento; i++) {
+                    Thread.onSpinWait();
+                }
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+
+    public EstadisticasTransacciones getEstadisticasTransacciones() {
+        return estadisticasTransacciones;
+    }
+
+    /**
+     * Devenga intereses y cobra comisiones a todas las cuentas del banco segun el plan, en paralelo (ver
+     * {@link ProcesoDevengo}). Puede correr con transferencias en curso: cada cuenta se devenga con su bloqueo
+     * tomado y ningun movimiento se pierde. Las cuentas que se abran durante el devengo pueden quedar fuera.
+     *
+     * @return totales aplicados por moneda, iguales a la suma de lo acreditado y debitado en cada cuenta
+     */
+    public ResumenDevengo devengar(PlanDevengo plan) {
+        return devengar(plan, ForkJoinPool.commonPool());
+    }
+
+    public ResumenDevengo devengar(PlanDevengo plan, ForkJoinPool pool) {
+        return new ProcesoDevengo(this, plan, getCuentasDelHeap(), almacen).aplicar(pool);
+    }
+
+    /**
+     * Aplica un lote de transferencias en paralelo. El resultado de cada instruccion y los saldos finales son los
+     * mismos que si se llamara a {@link #trasnferir(Cuenta, Cuenta, BigDecimal)} una por una en el orden de entrada.
+     */
+    public List<ResultadoTransferencia> trasnferirLote(Collection<Transferencia> transferencias) {
+        return trasnferirLote(transferencias, ForkJoinPool.commonPool());
+    }
+
+    public List<ResultadoTransferencia> trasnferirLote(Collection<Transferencia> transferencias, ForkJoinPool pool) {
+        return new LoteTransferencias(this, new ArrayList<>(transferencias)).aplicar(pool);
+    }
+
+    public List<ResultadoTransferencia> trasnferirLote(Stream<Transferencia> transferencias) {
+        return trasnferirLote(transferencias.collect(Collectors.toList()));
+    }
 }
@@ -0,0 +1,158 @@
+package org.example.ejemplos.models;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Resultados recientes de transferencias por id de solicitud, para que un reintento del cliente devuelva el
+ * resultado original en vez de mover el dinero otra vez (ver {@link Banco#trasnferir(String, Cuenta, Cuenta, long,
+ * int)}).
+ * <p>
+ * La capacidad es fija: al pasarla se descarta la entrada menos usada. La politica es LRU segmentada: una entrada
+ * nueva entra a un segmento de prueba y solo pasa al protegido si se vuelve a consultar, asi una rafaga de ids que
+ * nunca se reintentan no desplaza a los que si. Las entradas se reparten por hash en franjas, cada una con su
+ * propio monitor, y buscar o insertar es O(1) sin un bloqueo global. Opcionalmente las entradas vencen despues de
+ * un tiempo.
+ * <p>
+ * Mientras la transferencia original no termina su entrada guarda un futuro sin completar, un reintento simultaneo
+ * espera ese resultado.
+ */
+final class CacheIdempotencia {
+
+    static final int CAPACIDAD_POR_DEFECTO = 1 << 16;
+    private static final int CANTIDAD_FRANJAS = 64;
+    // fraccion de cada franja reservada para entradas que se consultaron mas de una vez
+    private static final double FRACCION_PROTEGIDA = 0.8;
+
+    private final Franja[] franjas;
+    private final long vencimientoNanos;
+    private final LongAdder aciertos = new LongAdder();
+
+    /**
+     * @param vencimientoNanos vida de una entrada, 0 para que solo salgan por capacidad
+     */
+    CacheIdempotencia(int capacidad, long vencimientoNanos) {
+        if (capacidad <= 0) {
+            throw new IllegalArgumentException("La capacidad debe ser positiva: " + capacidad);
+        }
+        int cantidad = Math.min(CANTIDAD_FRANJAS, Integer.highestOneBit(capacidad));
+        this.franjas = new Franja[cantidad];
+        for (int i = 0; i < cantidad; i++) {
+            // las primeras franjas absorben el resto para que la suma sea exactamente la capacidad
+            franjas[i] = new Franja(capacidad / cantidad + (i < capacidad % cantidad ? 1 : 0));
+        }
+        this.vencimientoNanos = vencimientoNanos;
+    }
+
+    /**
+     * Solicitud ya vista, con el monto e ids de cuentas para detectar un id reutilizado con otros datos.
+     */
+    static final class Entrada {
+        final CompletableFuture<ResultadoTransferencia> resultado = new CompletableFuture<>();
+        final long idOrigen;
+        final long idDestino;
+        final long unidades;
+        final int escala;
+        final long creada;
+
+        Entrada(long idOrigen, long idDestino, long unidades, int escala, long creada) {
+            this.idOrigen = idOrigen;
+            this.idDestino = idDestino;
+            this.unidades = unidades;
+            this.escala = escala;
+            this.creada = creada;
+        }
+
+        boolean mismaSolicitud(Entrada otra) {
+            return idOrigen == otra.idOrigen && idDestino == otra.idDestino
+                    && Dinero.comparar(unidades, escala, otra.unidades, otra.escala) == 0;
+        }
+    }
+
+    private Franja franjaDe(String idSolicitud) {
+        int hash = idSolicitud.hashCode() * 0x9E3779B9;
+        return franjas[(hash >>> 16) & (franjas.length - 1)];
+    }
+
+    /**
+     * Registra {@code nueva} para el id, salvo que ya haya una entrada vigente: en ese caso devuelve la existente y
+     * no cambia nada.
+     */
+    Entrada reservar(String idSolicitud, Entrada nueva) {
+        Entrada existente = franjaDe(idSolicitud).reservar(idSolicitud, nueva, vencimientoNanos);
+        if (existente != null) {
+            aciertos.increment();
+        }
+        return existente;
+    }
+
+    long getAciertos() {
+        return aciertos.sum();
+    }
+
+    int getTamano() {
+        int tamano = 0;
+        for (Franja franja : franjas) {
+            tamano += franja.tamano();
+        }
+        return tamano;
+    }
+
+    private static final class Franja {
+        private final int capacidad;
+        private final int capacidadProtegida;
+        // en orden de acceso, la primera entrada es la menos usada
+        private final LinkedHashMap<String, Entrada> prueba = new LinkedHashMap<>(16, 0.75f, true);
+        private final LinkedHashMap<String, Entrada> protegida = new LinkedHashMap<>(16, 0.75f, true);
+
+        Franja(int capacidad) {
+            this.capacidad = Math.max(1, capacidad);
+            this.capacidadProtegida = (int) (this.capacidad * FRACCION_PROTEGIDA);
+        }
+
+        synchronized int tamano() {
+            return prueba.size() + protegida.size();
+        }
+
+        synchronized Entrada reservar(String id, Entrada nueva, long vencimientoNanos) {
+            Entrada existente = protegida.get(id);
+            if (existente == null) {
+                existente = prueba.remove(id);
+                if (existente != null) {
+                    promover(id, existente);
+                }
+            }
+            if (existente != null) {
+                if (vencimientoNanos == 0 || nueva.creada - existente.creada < vencimientoNanos) {
+                    return existente;
+                }
+                protegida.remove(id);
+            }
+            prueba.put(id, nueva);
+            while (prueba.size() + protegida.size() > capacidad) {
+                desalojar(prueba.isEmpty() ? protegida : prueba);
+            }
+            return null;
+        }
+
+        private void promover(String id, Entrada entrada) {
+            protegida.put(id, entrada);
+            if (protegida.size() > capacidadProtegida) {
+                // la menos usada de las protegidas vuelve a prueba, como la mas reciente
+                Iterator<Map.Entry<String, Entrada>> iterador = protegida.entrySet().iterator();
+                Map.Entry<String, Entrada> menosUsada = iterador.next();
+                iterador.remove();
+                prueba.put(menosUsada.getKey(), menosUsada.getValue());
+            }
+        }
+
+        private static void desalojar(LinkedHashMap<String, Entrada> segmento) {
+            Iterator<Map.Entry<String, Entrada>> iterador = segmento.entrySet().iterator();
+            iterador.next();
+            iterador.remove();
+        }
+    }
+}
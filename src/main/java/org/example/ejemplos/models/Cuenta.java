@@ -1,19 +1,95 @@
 package org.example.ejemplos.models;
 
 import org.example.ejemplos.exceptions.DineroInsuficienteException;
+import org.example.ejemplos.exceptions.LimiteExcedidoException;
+import org.example.ejemplos.metricas.Metricas;
 
 import java.math.BigDecimal;
+import java.util.Currency;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 public class Cuenta {
+    // moneda de las cuentas creadas sin indicar una
+    public static final Currency MONEDA_POR_DEFECTO = Currency.getInstance("CLP");
+
+    // Secuencia global para identificar cada cuenta, se usa para ordenar los bloqueos en las transferencias
+    private static final AtomicLong SECUENCIA = new AtomicLong();
+    private static final AtomicReferenceFieldUpdater<Cuenta, AgregadosBanco.Registro> REGISTRO_AGREGADOS =
+            AtomicReferenceFieldUpdater.newUpdater(Cuenta.class, AgregadosBanco.Registro.class, "registroAgregados");
+
+    private final long id;
     private String persona;
-    private BigDecimal saldo;
+    // El saldo se guarda en punto fijo (ver Dinero): unidades menores y la escala en que estan expresadas.
+    // Asi credito y debito no crean un BigDecimal nuevo en cada operacion.
+    private long saldo;
+    private int escala;
+    private final Currency moneda;
 
-    private Banco banco;
+    private volatile Banco banco;
+    // null si la cuenta no tiene limites, asi sin limites un debito solo lee este campo
+    private volatile VentanasDebito ventanas;
+    // ultimo saldo que vieron los AgregadosBanco del banco, null si no los tiene activos
+    private volatile AgregadosBanco.Registro registroAgregados;
 
     public Cuenta(String persona, BigDecimal saldo) {
+        this(persona, saldo, MONEDA_POR_DEFECTO);
+    }
+
+    public Cuenta(String persona, BigDecimal saldo, Currency moneda) {
+        this(persona, Dinero.aUnidades(saldo, Dinero.escalaDe(saldo)), Dinero.escalaDe(saldo), moneda);
+    }
+
+    public Cuenta(String persona, long saldoUnidades, int escala) {
+        this(persona, saldoUnidades, escala, MONEDA_POR_DEFECTO);
+    }
+
+    public Cuenta(String persona, long saldoUnidades, int escala, Currency moneda) {
+        this(SECUENCIA.incrementAndGet(), persona, saldoUnidades, escala, moneda);
+    }
+
+    /**
+     * Crea la cuenta con un id conocido, por ejemplo al reconstruir un banco desde su diario. Las cuentas creadas
+     * despues reciben ids mayores, asi no se repiten.
+     */
+    public Cuenta(long id, String persona, long saldoUnidades, int escala) {
+        this(id, persona, saldoUnidades, escala, MONEDA_POR_DEFECTO);
+    }
+
+    public Cuenta(long id, String persona, long saldoUnidades, int escala, Currency moneda) {
+        Dinero.validarEscala(escala);
+        if (id <= 0) {
+            throw new IllegalArgumentException("El id de la cuenta debe ser positivo");
+        }
+        // casi siempre la secuencia ya va mas adelante, leer primero evita escribir en un contador compartido
+        if (SECUENCIA.get() < id) {
+            SECUENCIA.accumulateAndGet(id, Math::max);
+        }
+        this.id = id;
         this.persona = persona;
-        this.saldo = saldo;
+        this.saldo = saldoUnidades;
+        this.escala = escala;
+        this.moneda = Objects.requireNonNull(moneda, "moneda");
+    }
+
+    /**
+     * Reserva un bloque de ids consecutivos que ninguna cuenta creada despues va a recibir, devuelve el primero.
+     */
+    static long reservarIds(int cantidad) {
+        return SECUENCIA.getAndAdd(cantidad) + 1;
+    }
+
+    /**
+     * Objeto cuyo monitor protege el saldo, el que toman {@link Banco#trasnferir} y los observadores. Es la propia
+     * cuenta salvo en {@link CuentaColumnar}, donde varias vistas de una misma fila tienen que compartirlo.
+     */
+    Object bloqueo() {
+        return this;
+    }
+
+    public long getId() {
+        return id;
     }
 
     public String getPersona() {
@@ -21,15 +97,44 @@ public class Cuenta {
     }
 
     public void setPersona(String persona) {
+        // el indice del banco no acepta claves null, se rechaza antes de tocar nada
+        Objects.requireNonNull(persona, "persona");
+        String anterior = this.persona;
         this.persona = persona;
+        if (banco != null && !Objects.equals(anterior, persona)) {
+            try {
+                banco.reindexar(this, anterior);
+            } catch (IllegalArgumentException e) {
+                this.persona = anterior;
+                throw e;
+            }
+        }
+    }
+
+    public synchronized BigDecimal getSaldo() {
+        return Dinero.aBigDecimal(saldo, escala);
     }
 
-    public BigDecimal getSaldo() {
+    public synchronized void setSaldo(BigDecimal saldo) {
+        verificarMovimiento();
+        aplicarAjuste(saldo);
+        notificarAjuste();
+    }
+
+    public synchronized long getSaldoUnidades() {
         return saldo;
     }
 
-    public void setSaldo(BigDecimal saldo) {
-        this.saldo = saldo;
+    public synchronized int getEscala() {
+        return escala;
+    }
+
+    /**
+     * Moneda del saldo y de los montos de creditos y debitos. Las transferencias entre cuentas de distinta moneda
+     * convierten con la {@link TablaCambio} del banco.
+     */
+    public Currency getMoneda() {
+        return moneda;
     }
 
     public Banco getBanco() {
@@ -40,20 +145,250 @@ public class Cuenta {
         this.banco = banco;
     }
 
+    public LimitesDebito getLimites() {
+        VentanasDebito v = ventanas();
+        return v == null ? LimitesDebito.NINGUNO : v.getLimites();
+    }
+
+    /**
+     * Reemplaza los limites de monto debitado por ventana de tiempo, {@link LimitesDebito#NINGUNO} los quita. Una
+     * ventana que sigue con la misma duracion conserva lo que ya se debito en ella, asi cambiar el monto de un limite
+     * no lo deja empezar de cero; las ventanas nuevas empiezan de cero.
+     */
+    public void setLimites(LimitesDebito limites) {
+        // como los demas cambios de la cuenta va con su monitor; el de las ventanas anteriores evita copiar sus sumas
+        // a medias de un debito
+        synchronized (bloqueo()) {
+            VentanasDebito anteriores = ventanas();
+            if (limites.getCantidad() == 0) {
+                ventanas(null);
+            } else if (anteriores == null) {
+                ventanas(new VentanasDebito(limites));
+            } else {
+                synchronized (anteriores) {
+                    ventanas(new VentanasDebito(limites, anteriores));
+                }
+            }
+        }
+    }
+
+    /**
+     * Ventanas de los limites de la cuenta, null si no tiene. {@link CuentaColumnar} las guarda en el almacen por
+     * fila, para que todas las vistas de la cuenta usen las mismas.
+     */
+    VentanasDebito ventanas() {
+        return ventanas;
+    }
+
+    void ventanas(VentanasDebito ventanas) {
+        this.ventanas = ventanas;
+    }
+
+    /**
+     * Registro de la cuenta en los {@link AgregadosBanco}, que lo reemplazan con CAS. {@link CuentaColumnar} lo
+     * guarda en el almacen por fila, como las ventanas.
+     */
+    AgregadosBanco.Registro registroAgregados() {
+        return registroAgregados;
+    }
+
+    boolean cambiarRegistroAgregados(AgregadosBanco.Registro esperado, AgregadosBanco.Registro nuevo) {
+        return REGISTRO_AGREGADOS.compareAndSet(this, esperado, nuevo);
+    }
+
     public void credito(BigDecimal monto) {
-        // sumar
-        this.saldo = this.saldo.add(monto);
+        int escalaMonto = Dinero.escalaDe(monto);
+        credito(Dinero.aUnidades(monto, escalaMonto), escalaMonto);
+    }
+
+    public synchronized void credito(long unidades, int escalaMonto) {
+        long inicio = Metricas.inicio();
+        try {
+            verificarMovimiento();
+            aplicarCredito(unidades, escalaMonto);
+            notificarCredito(unidades, escalaMonto);
+        } finally {
+            Metricas.CREDITO.registrar(inicio);
+        }
     }
 
     public void debito(BigDecimal monto) {
-        //Bigdecimal es inmutable porque al usar el subtract devuelve una instancia nueva que no esta referenciada a la memoria, por esa razon
-        // de forma forzada debe asignarse el valor a this.saldo
-        // restar saldo
-        BigDecimal nuevoSaldo = this.saldo.subtract(monto);
-        if (nuevoSaldo.compareTo(BigDecimal.ZERO) < 0) {
-            throw new DineroInsuficienteException("Dinero insuficiente");
+        int escalaMonto = Dinero.escalaDe(monto);
+        debito(Dinero.aUnidades(monto, escalaMonto), escalaMonto);
+    }
+
+    public synchronized void debito(long unidades, int escalaMonto) {
+        long inicio = Metricas.inicio();
+        try {
+            verificarMovimiento();
+            aplicarDebito(unidades, escalaMonto);
+            notificarDebito(unidades, escalaMonto);
+        } finally {
+            Metricas.DEBITO.registrar(inicio);
+        }
+    }
+
+    public ResultadoDebito tryDebito(BigDecimal monto) {
+        int escalaMonto = Dinero.escalaDe(monto);
+        return tryDebito(Dinero.aUnidades(monto, escalaMonto), escalaMonto);
+    }
+
+    /**
+     * Igual que {@link #debito(long, int)} pero si no hay fondos o se pasa de un limite devuelve un resultado en vez
+     * de lanzar {@link DineroInsuficienteException} o {@link LimiteExcedidoException}, sin crear ningun objeto.
+     */
+    public synchronized ResultadoDebito tryDebito(long unidades, int escalaMonto) {
+        long inicio = Metricas.inicio();
+        try {
+            verificarMovimiento();
+            ResultadoDebito resultado = debitarSiPermitido(unidades, escalaMonto);
+            if (resultado == ResultadoDebito.EXITOSO) {
+                notificarDebito(unidades, escalaMonto);
+            }
+            return resultado;
+        } finally {
+            Metricas.DEBITO.registrar(inicio);
+        }
+    }
+
+    // Los metodos aplicar* solo cambian el saldo, sin avisar al banco. En esta clase se llaman con el monitor tomado,
+    // Banco.trasnferir los usa directamente para avisar la transferencia como un solo movimiento.
+
+    protected void aplicarAjuste(BigDecimal saldo) {
+        int nuevaEscala = Dinero.escalaDe(saldo);
+        this.saldo = Dinero.aUnidades(saldo, nuevaEscala);
+        this.escala = nuevaEscala;
+    }
+
+    protected void aplicarCredito(long unidades, int escalaMonto) {
+        // sumar, igual que BigDecimal.add el resultado queda con la mayor de las dos escalas
+        int nuevaEscala = Math.max(escala, escalaMonto);
+        long nuevoSaldo = Dinero.sumar(Dinero.reescalar(saldo, escala, nuevaEscala),
+                Dinero.reescalar(unidades, escalaMonto, nuevaEscala));
+        this.saldo = nuevoSaldo;
+        this.escala = nuevaEscala;
+    }
+
+    protected final void aplicarDebito(long unidades, int escalaMonto) {
+        ResultadoDebito resultado = debitarSiPermitido(unidades, escalaMonto);
+        if (resultado != ResultadoDebito.EXITOSO) {
+            throw resultado.excepcion();
+        }
+    }
+
+    /**
+     * Descuenta el monto solo si no pasa ningun limite de la cuenta y la cuenta queda con saldo no negativo. Todos
+     * los debitos pasan por aqui, salvo las comisiones del devengo y los que deshacen un credito, asi que aqui se
+     * cuentan los rechazos en las {@link Metricas}, tanto los de {@link #tryDebito} como los que lanzan excepcion.
+     */
+    protected final ResultadoDebito debitarSiPermitido(long unidades, int escalaMonto) {
+        VentanasDebito v = ventanas();
+        ResultadoDebito resultado = v == null ? debitarSiAlcanza(unidades, escalaMonto)
+                : debitarConLimites(v, unidades, escalaMonto);
+        if (resultado != ResultadoDebito.EXITOSO) {
+            resultado.contar();
+        }
+        return resultado;
+    }
+
+    private ResultadoDebito debitarConLimites(VentanasDebito v, long unidades, int escalaMonto) {
+        // el monitor de las ventanas hace una sola operacion de revisar el limite, debitar y sumar, tambien en las
+        // cuentas que no usan el de la cuenta. Es de esta cuenta y se toma siempre al final, despues del de la cuenta
+        synchronized (v) {
+            long ahora = v.ahora();
+            if (!v.permite(unidades, escalaMonto, ahora)) {
+                return ResultadoDebito.LIMITE_EXCEDIDO;
+            }
+            ResultadoDebito resultado = debitarSiAlcanza(unidades, escalaMonto);
+            if (resultado == ResultadoDebito.EXITOSO) {
+                v.registrar();
+            }
+            return resultado;
+        }
+    }
+
+    /**
+     * Deshace un debito ya aplicado porque el resto de la operacion fallo: devuelve el monto al saldo y lo saca de
+     * las ventanas de los limites, asi un intento fallido no consume limite.
+     */
+    final void devolverDebito(long unidades, int escalaMonto) {
+        aplicarCredito(unidades, escalaMonto);
+        VentanasDebito v = ventanas();
+        if (v != null) {
+            synchronized (v) {
+                v.devolver(unidades, escalaMonto, v.ahora());
+            }
+        }
+    }
+
+    /**
+     * Revierte un debito que ya se aplico con {@link #tryDebito} o {@link #debito} cuando el resto de la operacion
+     * fallo, por ejemplo el credito de una transferencia en otra particion. Como {@link Banco#trasnferir}, el monto
+     * vuelve al saldo y sale de las ventanas de los limites. Los observadores ya recibieron el debito: se les avisa
+     * con {@link ObservadorMovimientos#reversion} y no como un credito, asi no ven un ingreso que no existio.
+     */
+    public final void revertirDebito(long unidades, int escalaMonto) {
+        synchronized (bloqueo()) {
+            devolverDebito(unidades, escalaMonto);
+            notificarReversion(unidades, escalaMonto);
+        }
+    }
+
+    /**
+     * Descuenta el monto solo si la cuenta queda con saldo no negativo, sin mirar los limites. Las subclases cambian
+     * aqui como se guarda el saldo.
+     */
+    protected ResultadoDebito debitarSiAlcanza(long unidades, int escalaMonto) {
+        // restar saldo, se calcula en variables locales y solo se asigna si hay fondos,
+        // asi un debito rechazado no cambia ni el saldo ni la escala
+        int nuevaEscala = Math.max(escala, escalaMonto);
+        long nuevoSaldo = Dinero.restar(Dinero.reescalar(saldo, escala, nuevaEscala),
+                Dinero.reescalar(unidades, escalaMonto, nuevaEscala));
+        if (nuevoSaldo < 0) {
+            return ResultadoDebito.DINERO_INSUFICIENTE;
         }
         this.saldo = nuevoSaldo;
+        this.escala = nuevaEscala;
+        return ResultadoDebito.EXITOSO;
+    }
+
+    /**
+     * Pregunta a los observadores del banco si el movimiento se puede registrar, antes de cambiar el saldo y con el
+     * monitor tomado. Los avisos de despues ya no pueden fallar, ver {@link ObservadorMovimientos}.
+     */
+    protected final void verificarMovimiento() {
+        Banco b = banco;
+        if (b != null) {
+            b.verificarMovimiento(this);
+        }
+    }
+
+    protected final void notificarAjuste() {
+        Banco b = banco;
+        if (b != null) {
+            b.notificarAjuste(this);
+        }
+    }
+
+    protected final void notificarReversion(long unidades, int escalaMonto) {
+        Banco b = banco;
+        if (b != null) {
+            b.notificarReversion(this, unidades, escalaMonto);
+        }
+    }
+
+    protected final void notificarCredito(long unidades, int escalaMonto) {
+        Banco b = banco;
+        if (b != null) {
+            b.notificarCredito(this, unidades, escalaMonto);
+        }
+    }
+
+    protected final void notificarDebito(long unidades, int escalaMonto) {
+        Banco b = banco;
+        if (b != null) {
+            b.notificarDebito(this, unidades, escalaMonto);
+        }
     }
 
     @Override
@@ -63,11 +398,18 @@ public class Cuenta {
         }
         Cuenta c = (Cuenta) o;
 
-        if (this.persona == null || this.saldo == null) {
+        if (this.persona == null) {
             return false;
         }
 
-        return this.persona.equals(c.getPersona()) && this.saldo.equals(c.getSaldo());
+        return this.persona.equals(c.getPersona()) && this.getSaldo().equals(c.getSaldo());
+    }
+
+    // Solo usa el titular: el saldo cambia con cada movimiento y la cuenta no puede cambiar de posicion
+    // en un HashMap/HashSet cada vez que se acredita. Dos cuentas iguales siempre tienen el mismo titular.
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(persona);
     }
 
 
@@ -0,0 +1,151 @@
+package org.example.ejemplos.models;
+
+import org.example.ejemplos.metricas.Metricas;
+
+import java.math.BigDecimal;
+import java.util.Currency;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cuenta con saldo atomico sin bloqueos, pensada para cuentas muy concurridas (por ejemplo comercios que reciben
+ * miles de creditos por segundo). El saldo vive en un {@link AtomicLong} y credito/debito se aplican con
+ * ciclos compare-and-set en vez de tomar el monitor de la cuenta.
+ * <p>
+ * A diferencia de {@link Cuenta} la escala es fija: se define al crear la cuenta y un monto con mas decimales
+ * de los que permite lanza {@link ArithmeticException}. Esto es lo que permite guardar todo el saldo en un solo long.
+ */
+public class CuentaAtomica extends Cuenta {
+
+    private final AtomicLong saldo;
+    private final int escala;
+    // cuantas veces un compare-and-set perdio contra otro hilo, sirve para detectar cuentas calientes
+    private final LongAdder reintentosCas = new LongAdder();
+
+    public CuentaAtomica(String persona, BigDecimal saldo) {
+        this(persona, saldo, Dinero.escalaDe(saldo));
+    }
+
+    public CuentaAtomica(String persona, BigDecimal saldo, int escala) {
+        this(persona, Dinero.aUnidades(saldo, escala), escala);
+    }
+
+    public CuentaAtomica(String persona, long saldoUnidades, int escala) {
+        this(persona, saldoUnidades, escala, MONEDA_POR_DEFECTO);
+    }
+
+    public CuentaAtomica(String persona, long saldoUnidades, int escala, Currency moneda) {
+        super(persona, saldoUnidades, escala, moneda);
+        this.saldo = new AtomicLong(saldoUnidades);
+        this.escala = escala;
+    }
+
+    public CuentaAtomica(long id, String persona, long saldoUnidades, int escala) {
+        this(id, persona, saldoUnidades, escala, MONEDA_POR_DEFECTO);
+    }
+
+    public CuentaAtomica(long id, String persona, long saldoUnidades, int escala, Currency moneda) {
+        super(id, persona, saldoUnidades, escala, moneda);
+        this.saldo = new AtomicLong(saldoUnidades);
+        this.escala = escala;
+    }
+
+    @Override
+    public BigDecimal getSaldo() {
+        return Dinero.aBigDecimal(saldo.get(), escala);
+    }
+
+    @Override
+    public void setSaldo(BigDecimal saldo) {
+        verificarMovimiento();
+        aplicarAjuste(saldo);
+        notificarAjuste();
+    }
+
+    @Override
+    public long getSaldoUnidades() {
+        return saldo.get();
+    }
+
+    @Override
+    public int getEscala() {
+        return escala;
+    }
+
+    public long getReintentosCas() {
+        return reintentosCas.sum();
+    }
+
+    @Override
+    public void credito(long unidades, int escalaMonto) {
+        long inicio = Metricas.inicio();
+        try {
+            verificarMovimiento();
+            aplicarCredito(unidades, escalaMonto);
+            notificarCredito(unidades, escalaMonto);
+        } finally {
+            Metricas.CREDITO.registrar(inicio);
+        }
+    }
+
+    @Override
+    public void debito(long unidades, int escalaMonto) {
+        long inicio = Metricas.inicio();
+        try {
+            verificarMovimiento();
+            aplicarDebito(unidades, escalaMonto);
+            notificarDebito(unidades, escalaMonto);
+        } finally {
+            Metricas.DEBITO.registrar(inicio);
+        }
+    }
+
+    @Override
+    public ResultadoDebito tryDebito(long unidades, int escalaMonto) {
+        long inicio = Metricas.inicio();
+        try {
+            verificarMovimiento();
+            ResultadoDebito resultado = debitarSiPermitido(unidades, escalaMonto);
+            if (resultado == ResultadoDebito.EXITOSO) {
+                notificarDebito(unidades, escalaMonto);
+            }
+            return resultado;
+        } finally {
+            Metricas.DEBITO.registrar(inicio);
+        }
+    }
+
+    @Override
+    protected void aplicarAjuste(BigDecimal saldo) {
+        this.saldo.set(Dinero.aUnidades(saldo, escala));
+    }
+
+    @Override
+    protected void aplicarCredito(long unidades, int escalaMonto) {
+        long monto = Dinero.reescalar(unidades, escalaMonto, escala);
+        while (true) {
+            long actual = saldo.get();
+            long nuevoSaldo = Dinero.sumar(actual, monto);
+            if (saldo.compareAndSet(actual, nuevoSaldo)) {
+                return;
+            }
+            reintentosCas.increment();
+        }
+    }
+
+    @Override
+    protected ResultadoDebito debitarSiAlcanza(long unidades, int escalaMonto) {
+        long monto = Dinero.reescalar(unidades, escalaMonto, escala);
+        while (true) {
+            long actual = saldo.get();
+            long nuevoSaldo = Dinero.restar(actual, monto);
+            if (nuevoSaldo < 0) {
+                return ResultadoDebito.DINERO_INSUFICIENTE;
+            }
+            if (saldo.compareAndSet(actual, nuevoSaldo)) {
+                return ResultadoDebito.EXITOSO;
+            }
+            reintentosCas.increment();
+        }
+    }
+}
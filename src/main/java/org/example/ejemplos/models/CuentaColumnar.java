@@ -0,0 +1,181 @@
+package org.example.ejemplos.models;
+
+import org.example.ejemplos.metricas.Metricas;
+
+import java.math.BigDecimal;
+import java.util.Objects;
+
+/**
+ * Vista de una fila de {@link AlmacenColumnar}. No guarda el saldo: lo lee y escribe en la columna del almacen con
+ * el bloqueo de la franja de la fila, asi todas las vistas de una misma cuenta ven lo mismo. Se pueden crear y
+ * descartar libremente, el almacen entrega una nueva en cada busqueda.
+ * <p>
+ * Como en {@link CuentaAtomica} la escala es fija (la del almacen). El titular tambien se lee del almacen, que
+ * tiene el indice por titular: cambiarlo en una vista lo cambia en todas. Los {@link LimitesDebito} tambien se
+ * guardan en el almacen, asi valen para todas las vistas de la fila.
+ */
+public class CuentaColumnar extends Cuenta {
+
+    private final AlmacenColumnar almacen;
+    private final int fila;
+
+    CuentaColumnar(AlmacenColumnar almacen, int fila, String persona) {
+        super(almacen.idDe(fila), persona, 0L, almacen.getEscala(), almacen.getMoneda());
+        this.almacen = almacen;
+        this.fila = fila;
+    }
+
+    AlmacenColumnar getAlmacen() {
+        return almacen;
+    }
+
+    /**
+     * Posicion de la fila en el almacen, entre 0 y {@link AlmacenColumnar#getFilasUsadas()}.
+     */
+    public int getFila() {
+        return fila;
+    }
+
+    @Override
+    Object bloqueo() {
+        return almacen.bloqueo(fila);
+    }
+
+    @Override
+    VentanasDebito ventanas() {
+        return almacen.ventanas(fila);
+    }
+
+    @Override
+    void ventanas(VentanasDebito ventanas) {
+        almacen.ventanas(fila, ventanas);
+    }
+
+    @Override
+    AgregadosBanco.Registro registroAgregados() {
+        return almacen.registroAgregados(fila);
+    }
+
+    @Override
+    boolean cambiarRegistroAgregados(AgregadosBanco.Registro esperado, AgregadosBanco.Registro nuevo) {
+        return almacen.cambiarRegistroAgregados(fila, esperado, nuevo);
+    }
+
+    @Override
+    public String getPersona() {
+        synchronized (bloqueo()) {
+            return almacen.persona(fila);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException si el titular no cabe en la columna o ya hay otra cuenta con ese titular en
+     *                                  el almacen o en el heap del banco
+     */
+    @Override
+    public void setPersona(String persona) {
+        Objects.requireNonNull(persona, "persona");
+        synchronized (bloqueo()) {
+            Banco b = getBanco();
+            if (b != null && b.tieneCuentaDelHeap(persona)) {
+                throw new IllegalArgumentException("Ya existe una cuenta para " + persona);
+            }
+            almacen.renombrar(this, persona);
+            // el campo de Cuenta lo usan equals y hashCode; el indice del banco no tiene a esta cuenta y no cambia
+            super.setPersona(persona);
+        }
+    }
+
+    @Override
+    public BigDecimal getSaldo() {
+        return Dinero.aBigDecimal(getSaldoUnidades(), almacen.getEscala());
+    }
+
+    @Override
+    public void setSaldo(BigDecimal saldo) {
+        synchronized (bloqueo()) {
+            verificarMovimiento();
+            aplicarAjuste(saldo);
+            notificarAjuste();
+        }
+    }
+
+    @Override
+    public long getSaldoUnidades() {
+        synchronized (bloqueo()) {
+            return almacen.saldo(fila);
+        }
+    }
+
+    @Override
+    public int getEscala() {
+        return almacen.getEscala();
+    }
+
+    @Override
+    public void credito(long unidades, int escalaMonto) {
+        long inicio = Metricas.inicio();
+        try {
+            synchronized (bloqueo()) {
+                verificarMovimiento();
+                aplicarCredito(unidades, escalaMonto);
+                notificarCredito(unidades, escalaMonto);
+            }
+        } finally {
+            Metricas.CREDITO.registrar(inicio);
+        }
+    }
+
+    @Override
+    public void debito(long unidades, int escalaMonto) {
+        long inicio = Metricas.inicio();
+        try {
+            synchronized (bloqueo()) {
+                verificarMovimiento();
+                aplicarDebito(unidades, escalaMonto);
+                notificarDebito(unidades, escalaMonto);
+            }
+        } finally {
+            Metricas.DEBITO.registrar(inicio);
+        }
+    }
+
+    @Override
+    public ResultadoDebito tryDebito(long unidades, int escalaMonto) {
+        long inicio = Metricas.inicio();
+        try {
+            synchronized (bloqueo()) {
+                verificarMovimiento();
+                ResultadoDebito resultado = debitarSiPermitido(unidades, escalaMonto);
+                if (resultado == ResultadoDebito.EXITOSO) {
+                    notificarDebito(unidades, escalaMonto);
+                }
+                return resultado;
+            }
+        } finally {
+            Metricas.DEBITO.registrar(inicio);
+        }
+    }
+
+    @Override
+    protected void aplicarAjuste(BigDecimal saldo) {
+        almacen.saldo(fila, Dinero.aUnidades(saldo, almacen.getEscala()));
+    }
+
+    @Override
+    protected void aplicarCredito(long unidades, int escalaMonto) {
+        long monto = Dinero.reescalar(unidades, escalaMonto, almacen.getEscala());
+        almacen.saldo(fila, Dinero.sumar(almacen.saldo(fila), monto));
+    }
+
+    @Override
+    protected ResultadoDebito debitarSiAlcanza(long unidades, int escalaMonto) {
+        long monto = Dinero.reescalar(unidades, escalaMonto, almacen.getEscala());
+        long nuevoSaldo = Dinero.restar(almacen.saldo(fila), monto);
+        if (nuevoSaldo < 0) {
+            return ResultadoDebito.DINERO_INSUFICIENTE;
+        }
+        almacen.saldo(fila, nuevoSaldo);
+        return ResultadoDebito.EXITOSO;
+    }
+}
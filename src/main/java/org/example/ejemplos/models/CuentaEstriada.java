@@ -0,0 +1,110 @@
+package org.example.ejemplos.models;
+
+import org.example.ejemplos.metricas.Metricas;
+
+import java.math.BigDecimal;
+import java.util.Currency;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cuenta para recibir casi solo creditos desde muchos hilos (comisiones, pozos de liquidacion). Los creditos van a
+ * celdas repartidas por hilo de un {@link LongAdder}, asi no compiten todos por la misma variable como en
+ * {@link CuentaAtomica}.
+ * <p>
+ * El saldo es {@code base + suma de celdas}. Los debitos se serializan con el monitor de la cuenta y descuentan de
+ * {@code base}. Como los creditos solo pueden sumar, el saldo que ve un debito nunca es mayor que el real y un
+ * debito aceptado no puede dejar la cuenta en negativo. La escala es fija igual que en {@link CuentaAtomica}.
+ * Las celdas no detectan desborde, esta cuenta no sirve para saldos cercanos a {@link Long#MAX_VALUE}.
+ */
+public class CuentaEstriada extends Cuenta {
+
+    private final LongAdder creditos = new LongAdder();
+    private final int escala;
+    private long base;
+
+    public CuentaEstriada(String persona, BigDecimal saldo) {
+        this(persona, saldo, Dinero.escalaDe(saldo));
+    }
+
+    public CuentaEstriada(String persona, BigDecimal saldo, int escala) {
+        this(persona, Dinero.aUnidades(saldo, escala), escala);
+    }
+
+    public CuentaEstriada(String persona, long saldoUnidades, int escala) {
+        this(persona, saldoUnidades, escala, MONEDA_POR_DEFECTO);
+    }
+
+    public CuentaEstriada(String persona, long saldoUnidades, int escala, Currency moneda) {
+        super(persona, saldoUnidades, escala, moneda);
+        this.base = saldoUnidades;
+        this.escala = escala;
+    }
+
+    public CuentaEstriada(long id, String persona, long saldoUnidades, int escala) {
+        this(id, persona, saldoUnidades, escala, MONEDA_POR_DEFECTO);
+    }
+
+    public CuentaEstriada(long id, String persona, long saldoUnidades, int escala, Currency moneda) {
+        super(id, persona, saldoUnidades, escala, moneda);
+        this.base = saldoUnidades;
+        this.escala = escala;
+    }
+
+    @Override
+    public BigDecimal getSaldo() {
+        return Dinero.aBigDecimal(getSaldoUnidades(), escala);
+    }
+
+    @Override
+    protected void aplicarAjuste(BigDecimal saldo) {
+        this.base = Dinero.restar(Dinero.aUnidades(saldo, escala), creditos.sum());
+    }
+
+    @Override
+    public synchronized long getSaldoUnidades() {
+        return Dinero.sumar(base, creditos.sum());
+    }
+
+    @Override
+    public int getEscala() {
+        return escala;
+    }
+
+    @Override
+    public void credito(long unidades, int escalaMonto) {
+        long inicio = Metricas.inicio();
+        try {
+            verificarMovimiento();
+            aplicarCredito(unidades, escalaMonto);
+            notificarCredito(unidades, escalaMonto);
+        } finally {
+            Metricas.CREDITO.registrar(inicio);
+        }
+    }
+
+    @Override
+    protected void aplicarCredito(long unidades, int escalaMonto) {
+        long monto = Dinero.reescalar(unidades, escalaMonto, escala);
+        if (monto < 0) {
+            // un credito negativo es un debito, debe pasar por la validacion de fondos. El monitor de la cuenta se
+            // toma antes que el de los limites, como en debito()
+            synchronized (this) {
+                aplicarDebito(-monto, escala);
+            }
+            return;
+        }
+        creditos.add(monto);
+    }
+
+    // sincronizado porque un credito negativo llega aqui sin pasar por debito(), que ya toma el monitor
+    @Override
+    protected synchronized ResultadoDebito debitarSiAlcanza(long unidades, int escalaMonto) {
+        long monto = Dinero.reescalar(unidades, escalaMonto, escala);
+        long nuevoSaldo = Dinero.restar(Dinero.sumar(base, creditos.sum()), monto);
+        if (nuevoSaldo < 0) {
+            return ResultadoDebito.DINERO_INSUFICIENTE;
+        }
+        base = Dinero.restar(base, monto);
+        return ResultadoDebito.EXITOSO;
+    }
+}
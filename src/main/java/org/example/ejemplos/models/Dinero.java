@@ -0,0 +1,168 @@
+package org.example.ejemplos.models;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Representacion de montos en punto fijo: un monto es un {@code long} de unidades menores
+ * (por ejemplo centavos) mas una escala que indica cuantos decimales representan esas unidades.
+ * 1000.232 con escala 3 son 1000232 unidades.
+ * <p>
+ * Todas las operaciones son exactas, si el resultado no cabe en un long se lanza {@link ArithmeticException}
+ * en vez de desbordar en silencio. La conversion desde y hacia {@link BigDecimal} solo deberia usarse en el borde
+ * de la API, el resto trabaja con primitivos y no genera basura.
+ */
+public final class Dinero {
+
+    public static final int ESCALA_MAXIMA = 18;
+
+    private static final long[] POTENCIAS_DIEZ = new long[ESCALA_MAXIMA + 1];
+
+    static {
+        POTENCIAS_DIEZ[0] = 1;
+        for (int i = 1; i < POTENCIAS_DIEZ.length; i++) {
+            POTENCIAS_DIEZ[i] = POTENCIAS_DIEZ[i - 1] * 10;
+        }
+    }
+
+    private Dinero() {
+    }
+
+    public static long potenciaDiez(int escala) {
+        validarEscala(escala);
+        return POTENCIAS_DIEZ[escala];
+    }
+
+    public static void validarEscala(int escala) {
+        if (escala < 0 || escala > ESCALA_MAXIMA) {
+            throw new ArithmeticException("Escala fuera de rango: " + escala);
+        }
+    }
+
+    public static long sumar(long unidades, long otras) {
+        return Math.addExact(unidades, otras);
+    }
+
+    public static long restar(long unidades, long otras) {
+        return Math.subtractExact(unidades, otras);
+    }
+
+    /**
+     * Lleva unidades de una escala a otra. Subir la escala siempre es exacto salvo desborde, bajarla solo
+     * se permite si no se pierden decimales.
+     */
+    public static long reescalar(long unidades, int escalaOrigen, int escalaDestino) {
+        if (escalaOrigen == escalaDestino) {
+            return unidades;
+        }
+        if (escalaDestino > escalaOrigen) {
+            return Math.multiplyExact(unidades, potenciaDiez(escalaDestino - escalaOrigen));
+        }
+        long divisor = potenciaDiez(escalaOrigen - escalaDestino);
+        if (unidades % divisor != 0) {
+            throw new ArithmeticException("No se puede bajar la escala sin perder decimales");
+        }
+        return unidades / divisor;
+    }
+
+    /**
+     * Division entera redondeada con {@code modo}, igual que {@link BigDecimal#divide(BigDecimal, RoundingMode)} pero
+     * sin crear objetos. El divisor debe ser positivo.
+     *
+     * @throws ArithmeticException con {@link RoundingMode#UNNECESSARY} si la division no es exacta
+     */
+    public static long dividir(long dividendo, long divisor, RoundingMode modo) {
+        long cociente = dividendo / divisor;
+        long resto = dividendo % divisor;
+        if (resto == 0) {
+            return cociente;
+        }
+        // el resto tiene el signo del dividendo, alejarse de cero es sumar ese signo
+        long signo = resto < 0 ? -1 : 1;
+        boolean alejar;
+        switch (modo) {
+            case UP:
+                alejar = true;
+                break;
+            case DOWN:
+                alejar = false;
+                break;
+            case CEILING:
+                alejar = signo > 0;
+                break;
+            case FLOOR:
+                alejar = signo < 0;
+                break;
+            case UNNECESSARY:
+                throw new ArithmeticException("La division no es exacta");
+            default:
+                // |resto| < divisor <= Long.MAX_VALUE, el doble se compara sin desbordar como resto contra lo que falta
+                long falta = divisor - Math.abs(resto);
+                int mitad = Long.compare(Math.abs(resto), falta);
+                if (modo == RoundingMode.HALF_UP) {
+                    alejar = mitad >= 0;
+                } else if (modo == RoundingMode.HALF_DOWN) {
+                    alejar = mitad > 0;
+                } else {
+                    alejar = mitad > 0 || (mitad == 0 && (cociente & 1) != 0);
+                }
+        }
+        return alejar ? cociente + signo : cociente;
+    }
+
+    /**
+     * Multiplica un monto por un factor en punto fijo (una tasa) y redondea una sola vez a {@code escalaDestino}
+     * decimales con {@code modo}. Si el producto no cabe en un long se calcula con {@link BigDecimal}.
+     *
+     * @throws ArithmeticException si el resultado no cabe en un long
+     */
+    public static long multiplicar(long unidades, int escala, long factor, int escalaFactor, int escalaDestino,
+                                   RoundingMode modo) {
+        // unidades * factor tiene escala + escalaFactor decimales, se divide para dejar escalaDestino
+        int exponente = escala + escalaFactor - escalaDestino;
+        long producto = unidades * factor;
+        if (exponente >= 0 && exponente <= ESCALA_MAXIMA && Math.multiplyHigh(unidades, factor) == (producto >> 63)) {
+            return dividir(producto, POTENCIAS_DIEZ[exponente], modo);
+        }
+        // montos enormes o escalas muy distintas, fuera del camino normal
+        return aBigDecimal(unidades, escala)
+                .multiply(aBigDecimal(factor, escalaFactor))
+                .setScale(escalaDestino, modo)
+                .unscaledValue().longValueExact();
+    }
+
+    /**
+     * Compara dos montos en escalas posiblemente distintas. Si llevarlos a la misma escala desborda se compara con
+     * {@link BigDecimal}.
+     */
+    public static int comparar(long unidades, int escala, long otras, int otraEscala) {
+        if (escala == otraEscala) {
+            return Long.compare(unidades, otras);
+        }
+        try {
+            int comun = Math.max(escala, otraEscala);
+            return Long.compare(reescalar(unidades, escala, comun), reescalar(otras, otraEscala, comun));
+        } catch (ArithmeticException e) {
+            return aBigDecimal(unidades, escala).compareTo(aBigDecimal(otras, otraEscala));
+        }
+    }
+
+    /**
+     * Escala minima con la que se puede representar el monto sin perder decimales (nunca negativa).
+     */
+    public static int escalaDe(BigDecimal monto) {
+        int escala = Math.max(0, monto.scale());
+        validarEscala(escala);
+        return escala;
+    }
+
+    public static long aUnidades(BigDecimal monto, int escala) {
+        validarEscala(escala);
+        // setScale sin redondeo lanza ArithmeticException si hay que perder decimales
+        return monto.setScale(escala).unscaledValue().longValueExact();
+    }
+
+    public static BigDecimal aBigDecimal(long unidades, int escala) {
+        return BigDecimal.valueOf(unidades, escala);
+    }
+}
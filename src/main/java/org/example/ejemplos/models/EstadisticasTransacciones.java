@@ -0,0 +1,72 @@
+package org.example.ejemplos.models;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contadores de las transacciones de un {@link Banco}, ver {@link Banco#transaccion(java.util.function.Function)}.
+ */
+public class EstadisticasTransacciones {
+
+    final LongAdder confirmadas = new LongAdder();
+    final LongAdder reintentos = new LongAdder();
+    final LongAdder abortadas = new LongAdder();
+    final LongAdder sinFondos = new LongAdder();
+    final LongAdder limiteExcedido = new LongAdder();
+
+    EstadisticasTransacciones() {
+    }
+
+    public long getConfirmadas() {
+        return confirmadas.sum();
+    }
+
+    /**
+     * Intentos que fallaron la validacion y se volvieron a ejecutar.
+     */
+    public long getReintentos() {
+        return reintentos.sum();
+    }
+
+    /**
+     * Transacciones que se abandonaron por conflictos despues del ultimo intento permitido.
+     */
+    public long getAbortadas() {
+        return abortadas.sum();
+    }
+
+    /**
+     * Transacciones rechazadas al confirmar porque un debito dejaba una cuenta en negativo.
+     */
+    public long getSinFondos() {
+        return sinFondos.sum();
+    }
+
+    /**
+     * Transacciones rechazadas al confirmar porque un debito pasaba un limite de la cuenta.
+     */
+    public long getLimiteExcedido() {
+        return limiteExcedido.sum();
+    }
+
+    /**
+     * Reintentos por transaccion terminada (confirmada, abortada, sin fondos o sobre un limite).
+     */
+    public double getTasaReintentos() {
+        long terminadas = getConfirmadas() + getAbortadas() + getSinFondos() + getLimiteExcedido();
+        return terminadas == 0 ? 0 : (double) getReintentos() / terminadas;
+    }
+
+    /**
+     * Fraccion de las transacciones terminadas que se abortaron por conflictos.
+     */
+    public double getTasaAbortos() {
+        long terminadas = getConfirmadas() + getAbortadas() + getSinFondos() + getLimiteExcedido();
+        return terminadas == 0 ? 0 : (double) getAbortadas() / terminadas;
+    }
+
+    @Override
+    public String toString() {
+        return "confirmadas=" + getConfirmadas() + ", reintentos=" + getReintentos() + ", abortadas="
+                + getAbortadas() + ", sinFondos=" + getSinFondos() + ", limiteExcedido=" + getLimiteExcedido();
+    }
+}
@@ -0,0 +1,115 @@
+package org.example.ejemplos.models;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Limites de monto debitado por ventana de tiempo de una cuenta, por ejemplo un maximo por hora y otro por dia. Se
+ * asignan con {@link Cuenta#setLimites(LimitesDebito)}; un debito que haria pasar la suma de una ventana por encima
+ * de su limite se rechaza con {@link ResultadoDebito#LIMITE_EXCEDIDO}, o con
+ * {@link org.example.ejemplos.exceptions.LimiteExcedidoException} en los caminos que lanzan excepciones.
+ * <p>
+ * Es inmutable como {@link PlanDevengo}: {@link #conLimite} y {@link #conReloj} devuelven limites nuevos. Cada
+ * cuenta lleva cada ventana en {@value #CUBETAS} cubetas de tiempo con la suma de sus debitos y una cubeta sale
+ * entera de la suma cuando queda fuera de la ventana. Asi la ventana se desliza de a una cubeta (algo mas de un minuto
+ * en la de una hora) y un debito cuenta por lo menos durante toda la ventana. Los montos estan en la moneda de la
+ * cuenta. Cuentan los debitos y las salidas de transferencias y transacciones, no las comisiones de
+ * {@link Banco#devengar(PlanDevengo)}.
+ * <p>
+ * Sin limites un debito solo lee un campo mas. Con limites, los debitos de la cuenta se revisan y suman con un monitor
+ * propio de la cuenta; en {@link CuentaAtomica} eso significa que sus debitos dejan de ser sin bloqueos.
+ */
+public final class LimitesDebito {
+
+    public static final LimitesDebito NINGUNO = new LimitesDebito(new long[0], new long[0], new int[0],
+            Clock.systemUTC());
+
+    static final int CUBETAS = 60;
+
+    // por posicion: duracion de la ventana en milisegundos y limite en unidades con su escala
+    private final long[] ventanas;
+    private final long[] limites;
+    private final int[] escalas;
+    private final Clock reloj;
+
+    private LimitesDebito(long[] ventanas, long[] limites, int[] escalas, Clock reloj) {
+        this.ventanas = ventanas;
+        this.limites = limites;
+        this.escalas = escalas;
+        this.reloj = reloj;
+    }
+
+    /**
+     * Limites iguales a estos mas un maximo de {@code monto} debitado en cualquier periodo de {@code ventana}. Si ya
+     * habia un limite con la misma ventana se reemplaza.
+     */
+    public LimitesDebito conLimite(Duration ventana, BigDecimal monto) {
+        long milis = ventana.toMillis();
+        if (milis < CUBETAS) {
+            throw new IllegalArgumentException("La ventana debe durar al menos " + CUBETAS + " ms: " + ventana);
+        }
+        if (monto.signum() < 0) {
+            throw new IllegalArgumentException("El limite no puede ser negativo: " + monto);
+        }
+        int escala = Dinero.escalaDe(monto);
+        long limite = Dinero.aUnidades(monto, escala);
+        int posicion = 0;
+        while (posicion < ventanas.length && ventanas[posicion] != milis) {
+            posicion++;
+        }
+        int cantidad = Math.max(ventanas.length, posicion + 1);
+        LimitesDebito nuevos = new LimitesDebito(Arrays.copyOf(ventanas, cantidad), Arrays.copyOf(limites, cantidad),
+                Arrays.copyOf(escalas, cantidad), reloj);
+        nuevos.ventanas[posicion] = milis;
+        nuevos.limites[posicion] = limite;
+        nuevos.escalas[posicion] = escala;
+        return nuevos;
+    }
+
+    /**
+     * Limites iguales a estos que toman la hora de {@code reloj}, por defecto {@link Clock#systemUTC()}.
+     */
+    public LimitesDebito conReloj(Clock reloj) {
+        return new LimitesDebito(ventanas, limites, escalas, Objects.requireNonNull(reloj, "reloj"));
+    }
+
+    public int getCantidad() {
+        return ventanas.length;
+    }
+
+    public Duration getVentana(int posicion) {
+        return Duration.ofMillis(ventanas[posicion]);
+    }
+
+    public BigDecimal getLimite(int posicion) {
+        return Dinero.aBigDecimal(limites[posicion], escalas[posicion]);
+    }
+
+    long ventanaMilis(int posicion) {
+        return ventanas[posicion];
+    }
+
+    long limite(int posicion) {
+        return limites[posicion];
+    }
+
+    int escala(int posicion) {
+        return escalas[posicion];
+    }
+
+    Clock reloj() {
+        return reloj;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder texto = new StringBuilder("LimitesDebito[");
+        for (int i = 0; i < ventanas.length; i++) {
+            texto.append(i == 0 ? "" : ", ").append(getLimite(i).toPlainString()).append(" en ").append(getVentana(i));
+        }
+        return texto.append(']').toString();
+    }
+}
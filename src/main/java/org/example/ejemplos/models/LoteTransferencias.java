@@ -0,0 +1,142 @@
+package org.example.ejemplos.models;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Aplica un lote de transferencias en paralelo sin cambiar el resultado de aplicarlas una por una en orden.
+ * <p>
+ * Las transferencias se agrupan por componentes conexos de cuentas (union-find): dos transferencias que comparten
+ * alguna cuenta, directa o indirectamente, quedan en el mismo grupo y se aplican en el orden de entrada. Grupos
+ * distintos no comparten cuentas, asi que da lo mismo en que orden o en que hilo se apliquen.
+ */
+class LoteTransferencias {
+
+    // grupos con menos transferencias que esto no se vuelven a dividir entre tareas
+    private static final int UMBRAL_TAREA = 1024;
+
+    private final Banco banco;
+    private final List<Transferencia> transferencias;
+    private final ResultadoTransferencia[] resultados;
+
+    LoteTransferencias(Banco banco, List<Transferencia> transferencias) {
+        this.banco = banco;
+        this.transferencias = transferencias;
+        this.resultados = new ResultadoTransferencia[transferencias.size()];
+    }
+
+    List<ResultadoTransferencia> aplicar(ForkJoinPool pool) {
+        List<int[]> grupos = agrupar();
+        pool.invoke(new AplicarGrupos(grupos, 0, grupos.size()));
+        List<ResultadoTransferencia> lista = new ArrayList<>(resultados.length);
+        for (ResultadoTransferencia resultado : resultados) {
+            lista.add(resultado);
+        }
+        return lista;
+    }
+
+    private List<int[]> agrupar() {
+        // por id y no por identidad: dos vistas de la misma fila de CuentaColumnar son la misma cuenta
+        Map<Long, Integer> indices = new HashMap<>();
+        int[] origenes = new int[transferencias.size()];
+        int[] destinos = new int[transferencias.size()];
+        for (int i = 0; i < transferencias.size(); i++) {
+            Transferencia t = transferencias.get(i);
+            origenes[i] = indice(indices, t.getOrigen());
+            destinos[i] = indice(indices, t.getDestino());
+        }
+
+        int[] padres = new int[indices.size()];
+        for (int i = 0; i < padres.length; i++) {
+            padres[i] = i;
+        }
+        for (int i = 0; i < origenes.length; i++) {
+            unir(padres, origenes[i], destinos[i]);
+        }
+
+        // LinkedHashMap para que cada grupo conserve el orden de entrada de sus transferencias
+        Map<Integer, List<Integer>> porRaiz = new LinkedHashMap<>();
+        for (int i = 0; i < origenes.length; i++) {
+            porRaiz.computeIfAbsent(raiz(padres, origenes[i]), r -> new ArrayList<>()).add(i);
+        }
+        List<int[]> grupos = new ArrayList<>(porRaiz.size());
+        for (List<Integer> miembros : porRaiz.values()) {
+            grupos.add(miembros.stream().mapToInt(Integer::intValue).toArray());
+        }
+        return grupos;
+    }
+
+    private static int indice(Map<Long, Integer> indices, Cuenta cuenta) {
+        Integer indice = indices.get(cuenta.getId());
+        if (indice == null) {
+            indice = indices.size();
+            indices.put(cuenta.getId(), indice);
+        }
+        return indice;
+    }
+
+    private static int raiz(int[] padres, int i) {
+        while (padres[i] != i) {
+            padres[i] = padres[padres[i]];
+            i = padres[i];
+        }
+        return i;
+    }
+
+    private static void unir(int[] padres, int a, int b) {
+        int raizA = raiz(padres, a);
+        int raizB = raiz(padres, b);
+        if (raizA != raizB) {
+            padres[raizB] = raizA;
+        }
+    }
+
+    private void aplicarGrupo(int[] grupo) {
+        for (int i : grupo) {
+            Transferencia t = transferencias.get(i);
+            try {
+                banco.trasnferir(t);
+                resultados[i] = ResultadoTransferencia.EXITOSA;
+            } catch (RuntimeException e) {
+                resultados[i] = ResultadoTransferencia.fallida(e);
+            }
+        }
+    }
+
+    private class AplicarGrupos extends RecursiveAction {
+        private final List<int[]> grupos;
+        private final int desde;
+        private final int hasta;
+
+        AplicarGrupos(List<int[]> grupos, int desde, int hasta) {
+            this.grupos = grupos;
+            this.desde = desde;
+            this.hasta = hasta;
+        }
+
+        @Override
+        protected void compute() {
+            if (hasta - desde > 1 && tamano() > UMBRAL_TAREA) {
+                int medio = (desde + hasta) >>> 1;
+                invokeAll(new AplicarGrupos(grupos, desde, medio), new AplicarGrupos(grupos, medio, hasta));
+                return;
+            }
+            for (int i = desde; i < hasta; i++) {
+                aplicarGrupo(grupos.get(i));
+            }
+        }
+
+        private int tamano() {
+            int total = 0;
+            for (int i = desde; i < hasta && total <= UMBRAL_TAREA; i++) {
+                total += grupos.get(i).length;
+            }
+            return total;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package org.example.ejemplos.models;
+
+/**
+ * Recibe cada movimiento que pasa por un {@link Banco}: apertura y cierre de cuentas, creditos, debitos,
+ * ajustes de saldo y transferencias. Se registra con {@link Banco#agregarObservador(ObservadorMovimientos)}.
+ * <p>
+ * Los metodos se llaman despues de aplicar el movimiento y en el mismo hilo, con el monitor de la cuenta tomado
+ * (en una transferencia, los de ambas cuentas). Por eso para una misma {@link Cuenta} los movimientos llegan en el
+ * orden en que se aplicaron. {@link CuentaAtomica} y {@link CuentaEstriada} no usan el monitor para sus saldos y en
+ * ellas ese orden no esta garantizado. Un observador debe ser rapido y no debe tomar monitores de otras cuentas.
+ * Los montos vienen en unidades de {@link Dinero} con la escala del monto, no la de la cuenta, y en la moneda de
+ * la cuenta.
+ * <p>
+ * Los avisos no deben lanzar excepciones: cuando llegan el saldo ya cambio y quien hizo el movimiento no puede
+ * deshacerlo. Un observador que puede dejar de funcionar (por ejemplo un {@code Diario} cerrado o sin espacio) lo
+ * revisa en {@link #antesDeMovimiento(Cuenta)}, que se llama antes de aplicar el movimiento y si lanza lo rechaza
+ * sin cambiar nada.
+ */
+public interface ObservadorMovimientos {
+
+    /**
+     * Se llama antes de aplicar un credito, debito, ajuste, cierre o transferencia de la cuenta, con los mismos
+     * monitores tomados que el aviso. Lanzar aqui rechaza el movimiento.
+     */
+    default void antesDeMovimiento(Cuenta cuenta) {
+    }
+
+    /**
+     * Se llama antes de agregar la cuenta al banco. Lanzar aqui rechaza la apertura y la cuenta no se agrega.
+     */
+    default void antesDeApertura(Cuenta cuenta) {
+        antesDeMovimiento(cuenta);
+    }
+
+    default void apertura(Cuenta cuenta) {
+    }
+
+    default void cierre(Cuenta cuenta) {
+    }
+
+    default void credito(Cuenta cuenta, long unidades, int escala) {
+    }
+
+    default void debito(Cuenta cuenta, long unidades, int escala) {
+    }
+
+    /**
+     * Se llamo a {@link Cuenta#setSaldo(java.math.BigDecimal)}, el saldo nuevo se lee de la cuenta.
+     */
+    default void ajuste(Cuenta cuenta) {
+    }
+
+    /**
+     * Se revirtio con {@link Cuenta#revertirDebito(long, int)} un debito ya avisado: {@code unidades} volvieron al
+     * saldo. No es un credito, no entro dinero a la cuenta. Por defecto se avisa como un ajuste.
+     */
+    default void reversion(Cuenta cuenta, long unidades, int escala) {
+        ajuste(cuenta);
+    }
+
+    default void transferencia(Cuenta origen, Cuenta destino, long unidades, int escala) {
+    }
+
+    /**
+     * Transferencia entre cuentas de distinta moneda: del origen salio {@code unidades} con {@code escala} y al
+     * destino entro el monto convertido. Por defecto se avisa como un debito y un credito.
+     */
+    default void transferencia(Cuenta origen, Cuenta destino, long unidades, int escala, long unidadesDestino,
+                               int escalaDestino) {
+        debito(origen, unidades, escala);
+        credito(destino, unidadesDestino, escalaDestino);
+    }
+}
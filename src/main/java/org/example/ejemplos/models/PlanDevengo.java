@@ -0,0 +1,151 @@
+package org.example.ejemplos.models;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.Currency;
+
+/**
+ * Tasas de interes y comisiones de mantencion que {@link Banco#devengar(PlanDevengo)} aplica a todas las cuentas en
+ * un cierre de periodo, por moneda. Las cuentas de una moneda sin tasa ni comision no cambian.
+ * <p>
+ * Es inmutable como {@link TablaCambio}: {@link #conTasa}, {@link #conComision} y {@link #conRedondeo} devuelven un
+ * plan nuevo. Las tasas se guardan en punto fijo con {@value TablaCambio#ESCALA_TASA} decimales y las comisiones en
+ * unidades con su escala, asi aplicar el plan a una cuenta no usa {@link BigDecimal}.
+ * <p>
+ * El interes de una cuenta es su saldo por la tasa, redondeado una sola vez con el {@link RoundingMode} del plan
+ * ({@link RoundingMode#HALF_EVEN} por defecto) a los decimales de la moneda, sin pasar de la escala de la cuenta: las
+ * cuentas de escala fija ({@link CuentaAtomica}, {@link CuentaColumnar}) no pueden recibir mas decimales. Una
+ * comision con mas decimales que la cuenta se redondea igual. El mismo saldo y el mismo plan dan siempre el mismo
+ * resultado.
+ */
+public final class PlanDevengo {
+
+    public static final PlanDevengo VACIO = new PlanDevengo(new Currency[0], new long[0], new long[0], new int[0],
+            RoundingMode.HALF_EVEN);
+
+    // por posicion: moneda, tasa con ESCALA_TASA decimales y comision en unidades con su escala
+    private final Currency[] monedas;
+    private final long[] tasas;
+    private final long[] comisiones;
+    private final int[] escalasComision;
+    private final RoundingMode redondeo;
+
+    private PlanDevengo(Currency[] monedas, long[] tasas, long[] comisiones, int[] escalasComision,
+                        RoundingMode redondeo) {
+        this.monedas = monedas;
+        this.tasas = tasas;
+        this.comisiones = comisiones;
+        this.escalasComision = escalasComision;
+        this.redondeo = redondeo;
+    }
+
+    /**
+     * Plan igual a este con la tasa de interes del periodo para las cuentas en {@code moneda}, por ejemplo 0.004 para
+     * un 0.4% mensual. La tasa se redondea a {@value TablaCambio#ESCALA_TASA} decimales.
+     */
+    public PlanDevengo conTasa(Currency moneda, BigDecimal tasa) {
+        long tasaFija = tasa.setScale(TablaCambio.ESCALA_TASA, redondeo).unscaledValue().longValueExact();
+        if (tasaFija < 0) {
+            throw new IllegalArgumentException("La tasa no puede ser negativa: " + tasa);
+        }
+        PlanDevengo plan = agregar(moneda);
+        plan.tasas[plan.posicion(moneda)] = tasaFija;
+        return plan;
+    }
+
+    /**
+     * Plan igual a este con la comision de mantencion para las cuentas en {@code moneda}. Si la cuenta no tiene
+     * saldo para pagarla no se cobra (ver {@link ResumenDevengo#getSinFondos()}).
+     */
+    public PlanDevengo conComision(Currency moneda, BigDecimal comision) {
+        if (comision.signum() < 0) {
+            throw new IllegalArgumentException("La comision no puede ser negativa: " + comision);
+        }
+        int escala = Dinero.escalaDe(comision);
+        long unidades = Dinero.aUnidades(comision, escala);
+        PlanDevengo plan = agregar(moneda);
+        int posicion = plan.posicion(moneda);
+        plan.comisiones[posicion] = unidades;
+        plan.escalasComision[posicion] = escala;
+        return plan;
+    }
+
+    public PlanDevengo conRedondeo(RoundingMode redondeo) {
+        if (redondeo == RoundingMode.UNNECESSARY) {
+            throw new IllegalArgumentException("Un interes casi nunca es exacto, se necesita un redondeo");
+        }
+        return new PlanDevengo(monedas, tasas, comisiones, escalasComision, redondeo);
+    }
+
+    // copia con la moneda agregada al final si no estaba, los arreglos de la copia todavia se pueden modificar
+    private PlanDevengo agregar(Currency moneda) {
+        int n = posicion(moneda) >= 0 ? monedas.length : monedas.length + 1;
+        Currency[] nuevasMonedas = Arrays.copyOf(monedas, n);
+        if (n > monedas.length) {
+            nuevasMonedas[n - 1] = moneda;
+        }
+        return new PlanDevengo(nuevasMonedas, Arrays.copyOf(tasas, n), Arrays.copyOf(comisiones, n),
+                Arrays.copyOf(escalasComision, n), redondeo);
+    }
+
+    /**
+     * Posicion de la moneda en el plan, -1 si no tiene tasa ni comision. Son pocas monedas, una recorrida lineal es
+     * mas rapida que un mapa.
+     */
+    int posicion(Currency moneda) {
+        for (int i = 0; i < monedas.length; i++) {
+            if (monedas[i] == moneda) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    int getCantidadMonedas() {
+        return monedas.length;
+    }
+
+    Currency getMoneda(int posicion) {
+        return monedas[posicion];
+    }
+
+    public RoundingMode getRedondeo() {
+        return redondeo;
+    }
+
+    public BigDecimal getTasa(Currency moneda) {
+        int posicion = posicion(moneda);
+        return posicion < 0 ? BigDecimal.ZERO : Dinero.aBigDecimal(tasas[posicion], TablaCambio.ESCALA_TASA);
+    }
+
+    public BigDecimal getComision(Currency moneda) {
+        int posicion = posicion(moneda);
+        return posicion < 0 ? BigDecimal.ZERO : Dinero.aBigDecimal(comisiones[posicion], escalasComision[posicion]);
+    }
+
+    /**
+     * Interes de un saldo en la moneda de la posicion, con {@code escala} decimales.
+     */
+    long interes(int posicion, long saldoUnidades, int escalaSaldo, int escala) {
+        long tasa = tasas[posicion];
+        return tasa == 0 ? 0 : Dinero.multiplicar(saldoUnidades, escalaSaldo, tasa, TablaCambio.ESCALA_TASA, escala,
+                redondeo);
+    }
+
+    /**
+     * Comision de la moneda de la posicion con a lo mas {@code escalaMaxima} decimales, la escala es la de
+     * {@link #escalaComision(int, int)}.
+     */
+    long comision(int posicion, int escalaMaxima) {
+        int escala = escalasComision[posicion];
+        if (escala <= escalaMaxima) {
+            return comisiones[posicion];
+        }
+        return Dinero.dividir(comisiones[posicion], Dinero.potenciaDiez(escala - escalaMaxima), redondeo);
+    }
+
+    int escalaComision(int posicion, int escalaMaxima) {
+        return Math.min(escalasComision[posicion], escalaMaxima);
+    }
+}
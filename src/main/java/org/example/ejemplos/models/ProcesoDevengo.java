@@ -0,0 +1,182 @@
+package org.example.ejemplos.models;
+
+import java.math.BigDecimal;
+import java.util.Currency;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Aplica un {@link PlanDevengo} a todas las cuentas de un banco en paralelo.
+ * <p>
+ * Las cuentas se dividen por rangos entre tareas de fork-join: primero las del heap, por posicion en la lista, y
+ * despues las filas del {@link AlmacenColumnar}, que se recorren sin juntar sus vistas en una lista. Cada cuenta se
+ * devenga con su bloqueo tomado, el mismo que usa {@link Banco#trasnferir}: el interes se calcula con el saldo de ese
+ * momento y se suma con {@link Cuenta#aplicarCredito}, asi una transferencia que llegue antes o despues no se
+ * pierde. Cada tarea suma sus totales en punto fijo y los totales se juntan al volver de las tareas, sin contadores
+ * compartidos.
+ */
+class ProcesoDevengo {
+
+    // rangos con menos cuentas que esto no se vuelven a dividir entre tareas
+    private static final int UMBRAL_TAREA = 4096;
+
+    private final Banco banco;
+    private final PlanDevengo plan;
+    private final List<Cuenta> cuentas;
+    private final AlmacenColumnar almacen;
+    private final int filas;
+
+    /**
+     * @param almacen el almacen del banco o null; sus filas van despues de {@code cuentas}
+     */
+    ProcesoDevengo(Banco banco, PlanDevengo plan, List<Cuenta> cuentas, AlmacenColumnar almacen) {
+        this.banco = banco;
+        this.plan = plan;
+        this.cuentas = cuentas;
+        this.almacen = almacen;
+        this.filas = almacen == null ? 0 : almacen.getFilasUsadas();
+    }
+
+    ResumenDevengo aplicar(ForkJoinPool pool) {
+        long inicio = System.nanoTime();
+        Parcial total = pool.invoke(new Tramo(0, cuentas.size() + filas));
+        Map<Currency, BigDecimal> intereses = new LinkedHashMap<>();
+        Map<Currency, BigDecimal> comisiones = new LinkedHashMap<>();
+        for (int i = 0; i < plan.getCantidadMonedas(); i++) {
+            intereses.put(plan.getMoneda(i), total.intereses[i].valor());
+            comisiones.put(plan.getMoneda(i), total.comisiones[i].valor());
+        }
+        return new ResumenDevengo(total.cuentas, total.sinFondos, intereses, comisiones, System.nanoTime() - inicio);
+    }
+
+    /**
+     * Devenga una cuenta y suma lo aplicado al parcial de la tarea.
+     */
+    private void devengar(Cuenta cuenta, Parcial parcial) {
+        parcial.cuentas++;
+        int posicion = plan.posicion(cuenta.getMoneda());
+        if (posicion < 0) {
+            return;
+        }
+        synchronized (cuenta.bloqueo()) {
+            // una cuenta cerrada despues de copiar la lista ya no se toca
+            if (!banco.esDelBanco(cuenta)) {
+                return;
+            }
+            banco.verificarMovimiento(cuenta);
+            long saldo = cuenta.getSaldoUnidades();
+            int escala = cuenta.getEscala();
+            // interes y comision con a lo mas la escala de la cuenta, asi la escala de la cuenta no cambia
+            int escalaInteres = Math.min(TablaCambio.escalaEn(cuenta.getMoneda(), escala), escala);
+            long interes = plan.interes(posicion, saldo, escala, escalaInteres);
+            if (interes != 0) {
+                cuenta.aplicarCredito(interes, escalaInteres);
+                cuenta.notificarCredito(interes, escalaInteres);
+                parcial.intereses[posicion].sumar(interes, escalaInteres);
+            }
+            int escalaComision = plan.escalaComision(posicion, escala);
+            long comision = plan.comision(posicion, escala);
+            if (comision != 0) {
+                if (cuenta.debitarSiAlcanza(comision, escalaComision) == ResultadoDebito.EXITOSO) {
+                    cuenta.notificarDebito(comision, escalaComision);
+                    parcial.comisiones[posicion].sumar(comision, escalaComision);
+                } else {
+                    parcial.sinFondos++;
+                }
+            }
+        }
+    }
+
+    private final class Tramo extends RecursiveTask<Parcial> {
+        private final int desde;
+        private final int hasta;
+
+        Tramo(int desde, int hasta) {
+            this.desde = desde;
+            this.hasta = hasta;
+        }
+
+        @Override
+        protected Parcial compute() {
+            if (hasta - desde > UMBRAL_TAREA) {
+                int medio = (desde + hasta) >>> 1;
+                Tramo derecha = new Tramo(medio, hasta);
+                derecha.fork();
+                Parcial parcial = new Tramo(desde, medio).compute();
+                parcial.sumar(derecha.join());
+                return parcial;
+            }
+            Parcial parcial = new Parcial(plan.getCantidadMonedas());
+            int delHeap = Math.min(hasta, cuentas.size());
+            for (int i = desde; i < delHeap; i++) {
+                devengar(cuentas.get(i), parcial);
+            }
+            if (hasta > cuentas.size()) {
+                int primeraFila = Math.max(desde, cuentas.size()) - cuentas.size();
+                almacen.recorrer(primeraFila, hasta - cuentas.size(), cuenta -> devengar(cuenta, parcial));
+            }
+            return parcial;
+        }
+    }
+
+    /**
+     * Totales de un rango de cuentas, por posicion de moneda en el plan.
+     */
+    private static final class Parcial {
+        long cuentas;
+        long sinFondos;
+        final Total[] intereses;
+        final Total[] comisiones;
+
+        Parcial(int monedas) {
+            intereses = new Total[monedas];
+            comisiones = new Total[monedas];
+            for (int i = 0; i < monedas; i++) {
+                intereses[i] = new Total();
+                comisiones[i] = new Total();
+            }
+        }
+
+        void sumar(Parcial otro) {
+            cuentas += otro.cuentas;
+            sinFondos += otro.sinFondos;
+            for (int i = 0; i < intereses.length; i++) {
+                intereses[i].sumar(otro.intereses[i]);
+                comisiones[i].sumar(otro.comisiones[i]);
+            }
+        }
+    }
+
+    /**
+     * Suma exacta de montos en punto fijo, queda con la mayor escala sumada. Lo que no cabe en un long se sigue
+     * sumando en un {@link BigDecimal}.
+     */
+    private static final class Total {
+        long unidades;
+        int escala;
+        BigDecimal desborde = BigDecimal.ZERO;
+
+        void sumar(long otras, int otraEscala) {
+            int nuevaEscala = Math.max(escala, otraEscala);
+            try {
+                unidades = Dinero.sumar(Dinero.reescalar(unidades, escala, nuevaEscala),
+                        Dinero.reescalar(otras, otraEscala, nuevaEscala));
+                escala = nuevaEscala;
+            } catch (ArithmeticException e) {
+                desborde = desborde.add(Dinero.aBigDecimal(otras, otraEscala));
+            }
+        }
+
+        void sumar(Total otro) {
+            sumar(otro.unidades, otro.escala);
+            desborde = desborde.add(otro.desborde);
+        }
+
+        BigDecimal valor() {
+            return Dinero.aBigDecimal(unidades, escala).add(desborde);
+        }
+    }
+}
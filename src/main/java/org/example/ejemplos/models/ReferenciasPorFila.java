@@ -0,0 +1,56 @@
+package org.example.ejemplos.models;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Una referencia por fila de un {@link AlmacenColumnar}, para datos de cuenta que viven en el heap. Las filas van en
+ * bloques de {@link AlmacenColumnar#FILAS_POR_BLOQUE} que se crean la primera vez que se asigna una fila del bloque:
+ * si casi ninguna fila tiene el dato, el almacen solo paga el arreglo de bloques. Leer no toma bloqueos ni crea
+ * objetos.
+ */
+final class ReferenciasPorFila<T> {
+
+    private static final int FILAS = AlmacenColumnar.FILAS_POR_BLOQUE;
+
+    private final int capacidad;
+    private final AtomicReferenceArray<AtomicReferenceArray<T>> bloques;
+
+    ReferenciasPorFila(int capacidad) {
+        this.capacidad = capacidad;
+        this.bloques = new AtomicReferenceArray<>((capacidad + FILAS - 1) / FILAS);
+    }
+
+    T get(int fila) {
+        AtomicReferenceArray<T> bloque = bloques.get(fila / FILAS);
+        return bloque == null ? null : bloque.get(fila % FILAS);
+    }
+
+    void set(int fila, T valor) {
+        if (valor == null) {
+            // quitar no crea el bloque
+            AtomicReferenceArray<T> bloque = bloques.get(fila / FILAS);
+            if (bloque != null) {
+                bloque.set(fila % FILAS, null);
+            }
+            return;
+        }
+        bloque(fila).set(fila % FILAS, valor);
+    }
+
+    boolean compareAndSet(int fila, T esperado, T nuevo) {
+        AtomicReferenceArray<T> bloque = esperado == null ? bloque(fila) : bloques.get(fila / FILAS);
+        return bloque != null && bloque.compareAndSet(fila % FILAS, esperado, nuevo);
+    }
+
+    private AtomicReferenceArray<T> bloque(int fila) {
+        int indice = fila / FILAS;
+        AtomicReferenceArray<T> bloque = bloques.get(indice);
+        if (bloque == null) {
+            int filas = Math.min(FILAS, capacidad - indice * FILAS);
+            // si dos hilos lo crean a la vez se queda el primero
+            bloques.compareAndSet(indice, null, new AtomicReferenceArray<>(filas));
+            bloque = bloques.get(indice);
+        }
+        return bloque;
+    }
+}
@@ -0,0 +1,42 @@
+package org.example.ejemplos.models;
+
+import org.example.ejemplos.exceptions.DineroInsuficienteException;
+import org.example.ejemplos.exceptions.LimiteExcedidoException;
+import org.example.ejemplos.metricas.Metricas;
+
+/**
+ * Resultado de {@link Cuenta#tryDebito(long, int)}. Rechazar un debito con un resultado no crea ningun objeto,
+ * a diferencia de lanzar una excepcion.
+ */
+public enum ResultadoDebito {
+    EXITOSO,
+    DINERO_INSUFICIENTE,
+    // el debito supera un limite de monto por ventana de tiempo de la cuenta (ver LimitesDebito)
+    LIMITE_EXCEDIDO;
+
+    public boolean isExitoso() {
+        return this == EXITOSO;
+    }
+
+    /**
+     * La excepcion que corresponde a un rechazo, para el camino que lanza excepciones. El rechazo ya se conto en las
+     * {@link Metricas} al decidirlo, aqui no se vuelve a contar.
+     */
+    public RuntimeException excepcion() {
+        if (this == LIMITE_EXCEDIDO) {
+            return new LimiteExcedidoException("Limite de debitos excedido", false);
+        }
+        return new DineroInsuficienteException("Dinero insuficiente", false);
+    }
+
+    /**
+     * Suma un rechazo de este tipo a las {@link Metricas}, lance o no una excepcion quien lo recibe.
+     */
+    void contar() {
+        if (this == LIMITE_EXCEDIDO) {
+            Metricas.limiteExcedido();
+        } else if (this == DINERO_INSUFICIENTE) {
+            Metricas.dineroInsuficiente();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package org.example.ejemplos.models;
+
+/**
+ * Resultado de una transferencia: exitosa o con el error que la rechazo (normalmente
+ * {@link org.example.ejemplos.exceptions.DineroInsuficienteException}).
+ */
+public final class ResultadoTransferencia {
+
+    public static final ResultadoTransferencia EXITOSA = new ResultadoTransferencia(null);
+
+    private final RuntimeException error;
+
+    private ResultadoTransferencia(RuntimeException error) {
+        this.error = error;
+    }
+
+    public static ResultadoTransferencia fallida(RuntimeException error) {
+        return new ResultadoTransferencia(error);
+    }
+
+    public boolean isExitosa() {
+        return error == null;
+    }
+
+    public RuntimeException getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return isExitosa() ? "EXITOSA" : "FALLIDA: " + error.getMessage();
+    }
+}
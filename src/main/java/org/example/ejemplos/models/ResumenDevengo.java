@@ -0,0 +1,79 @@
+package org.example.ejemplos.models;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.Currency;
+import java.util.Map;
+
+/**
+ * Totales de un {@link Banco#devengar(PlanDevengo)}. Los intereses y comisiones son la suma exacta de lo que se
+ * acredito y debito en cada cuenta, por moneda: el saldo total de una moneda cambia exactamente en
+ * {@link #getNeto(Currency)}, aunque durante el devengo hayan seguido las transferencias.
+ */
+public class ResumenDevengo {
+    private final long cuentas;
+    private final long sinFondos;
+    private final Map<Currency, BigDecimal> intereses;
+    private final Map<Currency, BigDecimal> comisiones;
+    private final long nanos;
+
+    ResumenDevengo(long cuentas, long sinFondos, Map<Currency, BigDecimal> intereses,
+                   Map<Currency, BigDecimal> comisiones, long nanos) {
+        this.cuentas = cuentas;
+        this.sinFondos = sinFondos;
+        this.intereses = Collections.unmodifiableMap(intereses);
+        this.comisiones = Collections.unmodifiableMap(comisiones);
+        this.nanos = nanos;
+    }
+
+    /**
+     * Cuentas recorridas, incluidas las de monedas que no estan en el plan.
+     */
+    public long getCuentas() {
+        return cuentas;
+    }
+
+    /**
+     * Cuentas a las que no se les cobro la comision por falta de saldo.
+     */
+    public long getSinFondos() {
+        return sinFondos;
+    }
+
+    public BigDecimal getIntereses(Currency moneda) {
+        return intereses.getOrDefault(moneda, BigDecimal.ZERO);
+    }
+
+    public BigDecimal getComisiones(Currency moneda) {
+        return comisiones.getOrDefault(moneda, BigDecimal.ZERO);
+    }
+
+    public Map<Currency, BigDecimal> getIntereses() {
+        return intereses;
+    }
+
+    public Map<Currency, BigDecimal> getComisiones() {
+        return comisiones;
+    }
+
+    /**
+     * Intereses menos comisiones de la moneda.
+     */
+    public BigDecimal getNeto(Currency moneda) {
+        return getIntereses(moneda).subtract(getComisiones(moneda));
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+
+    public long getCuentasPorSegundo() {
+        return nanos == 0 ? 0 : cuentas * 1_000_000_000L / nanos;
+    }
+
+    @Override
+    public String toString() {
+        return "cuentas=" + cuentas + ", intereses=" + intereses + ", comisiones=" + comisiones + ", sinFondos="
+                + sinFondos + ", cuentas/s=" + getCuentasPorSegundo();
+    }
+}
@@ -0,0 +1,168 @@
+package org.example.ejemplos.models;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.Currency;
+
+/**
+ * Tasas de cambio entre monedas para las transferencias de {@link Banco} entre cuentas de distinta moneda.
+ * <p>
+ * Es inmutable: {@link #conTasa} y {@link #conRedondeo} devuelven una tabla nueva, y el banco la reemplaza entera con
+ * {@link Banco#setTablaCambio(TablaCambio)}. Una transferencia lee la tabla una vez y convierte con ella, nunca ve
+ * una tabla a medio actualizar.
+ * <p>
+ * Las tasas se guardan en punto fijo con {@value #ESCALA_TASA} decimales, en un arreglo indexado por el codigo
+ * numerico ISO 4217 de las monedas ({@link Currency#getNumericCode()}). Convertir es una multiplicacion y una
+ * division entera, sin mapas ni {@link BigDecimal} salvo que el producto no quepa en un long.
+ * <p>
+ * El resultado queda con los decimales de la moneda de destino ({@link #escalaEn(Currency, int)}) y se redondea una
+ * sola vez, con el {@link RoundingMode} de la tabla ({@link RoundingMode#HALF_EVEN} por defecto). La misma tabla y
+ * el mismo monto dan siempre el mismo resultado.
+ */
+public final class TablaCambio {
+
+    public static final int ESCALA_TASA = 9;
+    public static final TablaCambio VACIA = new TablaCambio(new Currency[0], new long[0], RoundingMode.HALF_EVEN);
+
+    // los codigos numericos ISO 4217 son de tres digitos
+    private static final int CANTIDAD_CODIGOS = 1000;
+
+    // monedas con alguna tasa, por posicion
+    private final Currency[] monedas;
+    // posicion de cada codigo numerico en monedas, -1 si no esta
+    private final short[] posiciones;
+    // tasas[desde * monedas.length + hacia] con ESCALA_TASA decimales, 0 si no hay tasa
+    private final long[] tasas;
+    private final RoundingMode redondeo;
+
+    private TablaCambio(Currency[] monedas, long[] tasas, RoundingMode redondeo) {
+        this.monedas = monedas;
+        this.tasas = tasas;
+        this.redondeo = redondeo;
+        this.posiciones = new short[CANTIDAD_CODIGOS];
+        Arrays.fill(posiciones, (short) -1);
+        for (short i = 0; i < monedas.length; i++) {
+            posiciones[monedas[i].getNumericCode()] = i;
+        }
+    }
+
+    /**
+     * Tabla igual a esta mas la tasa de {@code desde} a {@code hacia}: una unidad de {@code desde} son {@code tasa}
+     * unidades de {@code hacia}. La tasa se redondea a {@value #ESCALA_TASA} decimales con el redondeo de la tabla.
+     * La tasa inversa no se calcula, si hace falta se agrega aparte.
+     */
+    public TablaCambio conTasa(Currency desde, Currency hacia, BigDecimal tasa) {
+        if (desde == hacia) {
+            throw new IllegalArgumentException("La tasa de una moneda a si misma siempre es 1: " + desde);
+        }
+        long tasaFija = tasa.setScale(ESCALA_TASA, redondeo).unscaledValue().longValueExact();
+        if (tasaFija <= 0) {
+            throw new IllegalArgumentException("La tasa debe ser positiva: " + tasa);
+        }
+        Currency[] nuevasMonedas = agregar(agregar(monedas, desde), hacia);
+        int n = nuevasMonedas.length;
+        long[] nuevasTasas = new long[n * n];
+        // las monedas nuevas van al final, las posiciones de las que ya estaban no cambian
+        for (int i = 0; i < monedas.length; i++) {
+            System.arraycopy(tasas, i * monedas.length, nuevasTasas, i * n, monedas.length);
+        }
+        TablaCambio tabla = new TablaCambio(nuevasMonedas, nuevasTasas, redondeo);
+        nuevasTasas[tabla.posicion(desde) * n + tabla.posicion(hacia)] = tasaFija;
+        return tabla;
+    }
+
+    /**
+     * Tabla con las mismas tasas y otro redondeo para las conversiones. Las tasas ya agregadas no se vuelven a
+     * redondear.
+     */
+    public TablaCambio conRedondeo(RoundingMode redondeo) {
+        if (redondeo == RoundingMode.UNNECESSARY) {
+            throw new IllegalArgumentException("Una conversion casi nunca es exacta, se necesita un redondeo");
+        }
+        return new TablaCambio(monedas, tasas, redondeo);
+    }
+
+    private static Currency[] agregar(Currency[] monedas, Currency moneda) {
+        int codigo = moneda.getNumericCode();
+        if (codigo < 0 || codigo >= CANTIDAD_CODIGOS) {
+            throw new IllegalArgumentException("La moneda no tiene codigo numerico ISO 4217: " + moneda);
+        }
+        for (Currency existente : monedas) {
+            if (existente == moneda) {
+                return monedas;
+            }
+            if (existente.getNumericCode() == codigo) {
+                // solo pasa con monedas retiradas que comparten codigo
+                throw new IllegalArgumentException(moneda + " y " + existente + " tienen el mismo codigo numerico");
+            }
+        }
+        Currency[] nuevas = Arrays.copyOf(monedas, monedas.length + 1);
+        nuevas[monedas.length] = moneda;
+        return nuevas;
+    }
+
+    private int posicion(Currency moneda) {
+        int codigo = moneda.getNumericCode();
+        if (codigo < 0 || codigo >= CANTIDAD_CODIGOS) {
+            return -1;
+        }
+        int posicion = posiciones[codigo];
+        return posicion >= 0 && monedas[posicion] == moneda ? posicion : -1;
+    }
+
+    public RoundingMode getRedondeo() {
+        return redondeo;
+    }
+
+    /**
+     * La tasa de {@code desde} a {@code hacia}, o null si la tabla no la tiene.
+     */
+    public BigDecimal getTasa(Currency desde, Currency hacia) {
+        if (desde == hacia) {
+            return BigDecimal.ONE;
+        }
+        long tasa = tasaFija(desde, hacia);
+        return tasa == 0 ? null : Dinero.aBigDecimal(tasa, ESCALA_TASA);
+    }
+
+    private long tasaFija(Currency desde, Currency hacia) {
+        int i = posicion(desde);
+        int j = posicion(hacia);
+        return i < 0 || j < 0 ? 0 : tasas[i * monedas.length + j];
+    }
+
+    /**
+     * Escala de un monto convertido a {@code moneda}: sus decimales segun ISO 4217, o los del monto original para
+     * las monedas que no tienen (por ejemplo el oro, XAU).
+     */
+    public static int escalaEn(Currency moneda, int escalaMonto) {
+        int decimales = moneda.getDefaultFractionDigits();
+        return decimales >= 0 ? decimales : escalaMonto;
+    }
+
+    /**
+     * Convierte un monto de {@code desde} a {@code hacia}, el resultado queda en unidades con
+     * {@code escalaDestino} decimales.
+     *
+     * @throws IllegalArgumentException si la tabla no tiene la tasa
+     * @throws ArithmeticException      si el resultado no cabe en un long
+     */
+    public long convertir(Currency desde, Currency hacia, long unidades, int escala, int escalaDestino) {
+        if (desde == hacia) {
+            return Dinero.reescalar(unidades, escala, escalaDestino);
+        }
+        long tasa = tasaFija(desde, hacia);
+        if (tasa == 0) {
+            throw new IllegalArgumentException("No hay tasa de " + desde + " a " + hacia);
+        }
+        return Dinero.multiplicar(unidades, escala, tasa, ESCALA_TASA, escalaDestino, redondeo);
+    }
+
+    public BigDecimal convertir(BigDecimal monto, Currency desde, Currency hacia) {
+        int escala = Dinero.escalaDe(monto);
+        int escalaDestino = escalaEn(hacia, escala);
+        return Dinero.aBigDecimal(convertir(desde, hacia, Dinero.aUnidades(monto, escala), escala, escalaDestino),
+                escalaDestino);
+    }
+}
@@ -0,0 +1,222 @@
+package org.example.ejemplos.models;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Creditos, debitos y transferencias sobre varias cuentas que se aplican todos o ninguno. Se usa dentro de
+ * {@link Banco#transaccion(java.util.function.Function)}, que la crea, ejecuta el cuerpo y la confirma.
+ * <p>
+ * Durante el cuerpo no se toma ningun bloqueo: los saldos que se leen con {@link #getSaldo(Cuenta)} se guardan como
+ * estaban y los movimientos solo se anotan, sumados por cuenta. Al confirmar se toman los bloqueos de las cuentas
+ * en orden de id, se verifica que los saldos leidos no cambiaron (si cambiaron, el banco vuelve a ejecutar el
+ * cuerpo con una transaccion nueva) y se aplican los movimientos. Los bloqueos solo se tienen mientras se valida y
+ * se aplica, no mientras corre el cuerpo.
+ * <p>
+ * Los fondos se verifican al confirmar y sobre el neto de cada cuenta: dentro de la transaccion una cuenta puede
+ * quedar momentaneamente en negativo. Si al confirmar alguna queda en negativo no se aplica nada y se lanza
+ * {@link org.example.ejemplos.exceptions.DineroInsuficienteException}; si un debito pasa un {@link LimitesDebito} de
+ * la cuenta, lo mismo con {@link org.example.ejemplos.exceptions.LimiteExcedidoException}.
+ * <p>
+ * Como no hay bloqueos, dos lecturas del cuerpo pueden ver saldos de momentos distintos; la transaccion no se
+ * confirma en ese caso, pero el cuerpo no debe tomar decisiones irreversibles con lo que lee. Las cuentas se
+ * buscan con una recorrida lineal, pensada para transacciones de pocas cuentas.
+ */
+public final class Transaccion {
+
+    private static final Comparator<Movimiento> POR_ID = Comparator.comparingLong(m -> m.cuenta.getId());
+
+    private final Banco banco;
+    private final List<Movimiento> movimientos = new ArrayList<>(4);
+    private boolean terminada;
+
+    Transaccion(Banco banco) {
+        this.banco = banco;
+    }
+
+    /**
+     * Lo que la transaccion sabe de una cuenta: el saldo leido, si se leyo, y el neto de los movimientos anotados.
+     */
+    private static final class Movimiento {
+        final Cuenta cuenta;
+        boolean leida;
+        long unidadesLeidas;
+        int escalaLeida;
+        long delta;
+        int escalaDelta;
+
+        Movimiento(Cuenta cuenta) {
+            this.cuenta = cuenta;
+        }
+
+        void sumar(long unidades, int escala) {
+            int nuevaEscala = Math.max(escalaDelta, escala);
+            delta = Dinero.sumar(Dinero.reescalar(delta, escalaDelta, nuevaEscala),
+                    Dinero.reescalar(unidades, escala, nuevaEscala));
+            escalaDelta = nuevaEscala;
+        }
+    }
+
+    private Movimiento movimiento(Cuenta cuenta) {
+        if (terminada) {
+            throw new IllegalStateException("La transaccion ya termino");
+        }
+        // las vistas columnares de una misma fila son objetos distintos con el mismo id
+        for (Movimiento movimiento : movimientos) {
+            if (movimiento.cuenta.getId() == cuenta.getId()) {
+                return movimiento;
+            }
+        }
+        Movimiento movimiento = new Movimiento(cuenta);
+        movimientos.add(movimiento);
+        return movimiento;
+    }
+
+    /**
+     * Saldo de la cuenta visto por la transaccion: el que tenia la primera vez que se leyo mas los movimientos ya
+     * anotados. Leer una cuenta hace que la transaccion se repita si otro la cambia antes de confirmar.
+     */
+    public BigDecimal getSaldo(Cuenta cuenta) {
+        Movimiento movimiento = movimiento(cuenta);
+        if (!movimiento.leida) {
+            synchronized (cuenta.bloqueo()) {
+                movimiento.unidadesLeidas = cuenta.getSaldoUnidades();
+                movimiento.escalaLeida = cuenta.getEscala();
+            }
+            movimiento.leida = true;
+        }
+        int escala = Math.max(movimiento.escalaLeida, movimiento.escalaDelta);
+        return Dinero.aBigDecimal(Dinero.sumar(
+                Dinero.reescalar(movimiento.unidadesLeidas, movimiento.escalaLeida, escala),
+                Dinero.reescalar(movimiento.delta, movimiento.escalaDelta, escala)), escala);
+    }
+
+    public void credito(Cuenta cuenta, BigDecimal monto) {
+        int escala = Dinero.escalaDe(monto);
+        credito(cuenta, Dinero.aUnidades(monto, escala), escala);
+    }
+
+    public void credito(Cuenta cuenta, long unidades, int escala) {
+        movimiento(cuenta).sumar(unidades, escala);
+    }
+
+    public void debito(Cuenta cuenta, BigDecimal monto) {
+        int escala = Dinero.escalaDe(monto);
+        debito(cuenta, Dinero.aUnidades(monto, escala), escala);
+    }
+
+    public void debito(Cuenta cuenta, long unidades, int escala) {
+        movimiento(cuenta).sumar(Math.negateExact(unidades), escala);
+    }
+
+    public void trasnferir(Cuenta origen, Cuenta destino, BigDecimal monto) {
+        int escala = Dinero.escalaDe(monto);
+        trasnferir(origen, destino, Dinero.aUnidades(monto, escala), escala);
+    }
+
+    /**
+     * Igual que {@link Banco#trasnferir(Cuenta, Cuenta, long, int)}: entre monedas distintas convierte con la tabla
+     * de cambio vigente al anotar.
+     */
+    public void trasnferir(Cuenta origen, Cuenta destino, long unidades, int escala) {
+        long unidadesDestino = unidades;
+        int escalaDestino = escala;
+        if (origen.getMoneda() != destino.getMoneda()) {
+            escalaDestino = TablaCambio.escalaEn(destino.getMoneda(), escala);
+            unidadesDestino = banco.getTablaCambio().convertir(origen.getMoneda(), destino.getMoneda(), unidades,
+                    escala, escalaDestino);
+        }
+        debito(origen, unidades, escala);
+        credito(destino, unidadesDestino, escalaDestino);
+    }
+
+    /**
+     * Valida y aplica con los bloqueos de todas las cuentas tomados.
+     *
+     * @return false si alguna cuenta leida cambio, en ese caso no se aplico nada
+     */
+    boolean confirmar() {
+        terminada = true;
+        movimientos.sort(POR_ID);
+        return confirmarDesde(0);
+    }
+
+    private boolean confirmarDesde(int i) {
+        if (i == movimientos.size()) {
+            return validarYAplicar();
+        }
+        // un synchronized por cuenta, anidados en orden de id igual que en Banco#trasnferir
+        synchronized (movimientos.get(i).cuenta.bloqueo()) {
+            return confirmarDesde(i + 1);
+        }
+    }
+
+    private boolean validarYAplicar() {
+        for (Movimiento movimiento : movimientos) {
+            if (movimiento.leida && Dinero.comparar(movimiento.cuenta.getSaldoUnidades(), movimiento.cuenta.getEscala(),
+                    movimiento.unidadesLeidas, movimiento.escalaLeida) != 0) {
+                return false;
+            }
+        }
+        for (Movimiento movimiento : movimientos) {
+            movimiento.cuenta.verificarMovimiento();
+        }
+        int aplicados = 0;
+        Movimiento[] orden = new Movimiento[movimientos.size()];
+        try {
+            // primero los debitos, si uno no alcanza hay menos que deshacer
+            for (Movimiento movimiento : movimientos) {
+                if (movimiento.delta < 0) {
+                    ResultadoDebito resultado = movimiento.cuenta.debitarSiPermitido(-movimiento.delta,
+                            movimiento.escalaDelta);
+                    if (resultado != ResultadoDebito.EXITOSO) {
+                        throw resultado.excepcion();
+                    }
+                    orden[aplicados++] = movimiento;
+                }
+            }
+            for (Movimiento movimiento : movimientos) {
+                if (movimiento.delta > 0) {
+                    movimiento.cuenta.aplicarCredito(movimiento.delta, movimiento.escalaDelta);
+                    orden[aplicados++] = movimiento;
+                }
+            }
+        } catch (RuntimeException e) {
+            deshacer(orden, aplicados, e);
+            throw e;
+        }
+        for (int i = 0; i < aplicados; i++) {
+            Movimiento movimiento = orden[i];
+            if (movimiento.delta > 0) {
+                movimiento.cuenta.notificarCredito(movimiento.delta, movimiento.escalaDelta);
+            } else {
+                movimiento.cuenta.notificarDebito(-movimiento.delta, movimiento.escalaDelta);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Revierte los movimientos ya aplicados, con los bloqueos todavia tomados. Sacar un credito recien sumado
+     * siempre alcanza; si no, los saldos ya no son los que se validaron y se avisa con una
+     * {@link IllegalStateException} en vez de seguir como si nada.
+     */
+    private static void deshacer(Movimiento[] orden, int aplicados, RuntimeException causa) {
+        IllegalStateException error = null;
+        for (int i = aplicados - 1; i >= 0; i--) {
+            Movimiento movimiento = orden[i];
+            if (movimiento.delta < 0) {
+                movimiento.cuenta.devolverDebito(-movimiento.delta, movimiento.escalaDelta);
+            } else if (movimiento.cuenta.debitarSiAlcanza(movimiento.delta, movimiento.escalaDelta)
+                    != ResultadoDebito.EXITOSO && error == null) {
+                error = new IllegalStateException("No se pudo deshacer el credito a la cuenta "
+                        + movimiento.cuenta.getId(), causa);
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package org.example.ejemplos.models;
+
+import java.math.BigDecimal;
+
+/**
+ * Instruccion de transferencia para procesar en lote con {@link Banco#trasnferirLote(java.util.Collection)}.
+ */
+public class Transferencia {
+    // opcional, con id la transferencia se aplica una sola vez aunque se reintente
+    private final String idSolicitud;
+    private final Cuenta origen;
+    private final Cuenta destino;
+    private final long unidades;
+    private final int escala;
+
+    public Transferencia(Cuenta origen, Cuenta destino, BigDecimal monto) {
+        this(origen, destino, Dinero.aUnidades(monto, Dinero.escalaDe(monto)), Dinero.escalaDe(monto));
+    }
+
+    public Transferencia(Cuenta origen, Cuenta destino, long unidades, int escala) {
+        this(null, origen, destino, unidades, escala);
+    }
+
+    /**
+     * Ver {@link Banco#trasnferir(String, Cuenta, Cuenta, long, int)}.
+     */
+    public Transferencia(String idSolicitud, Cuenta origen, Cuenta destino, long unidades, int escala) {
+        this.idSolicitud = idSolicitud;
+        this.origen = origen;
+        this.destino = destino;
+        this.unidades = unidades;
+        this.escala = escala;
+    }
+
+    public String getIdSolicitud() {
+        return idSolicitud;
+    }
+
+    public Cuenta getOrigen() {
+        return origen;
+    }
+
+    public Cuenta getDestino() {
+        return destino;
+    }
+
+    public long getUnidades() {
+        return unidades;
+    }
+
+    public int getEscala() {
+        return escala;
+    }
+
+    public BigDecimal getMonto() {
+        return Dinero.aBigDecimal(unidades, escala);
+    }
+}
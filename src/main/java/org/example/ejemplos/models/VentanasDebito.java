@@ -0,0 +1,162 @@
+package org.example.ejemplos.models;
+
+import java.math.RoundingMode;
+
+import static org.example.ejemplos.models.LimitesDebito.CUBETAS;
+
+/**
+ * Sumas de los debitos de una cuenta por cubeta de tiempo, una fila por limite de {@link LimitesDebito}. Todo se
+ * reserva al crearla: revisar y registrar un debito solo lee y suma en arreglos, y la suma de cada ventana se lleva
+ * al dia en vez de recorrer las cubetas. No es thread-safe, {@link Cuenta} la usa con su monitor tomado.
+ */
+final class VentanasDebito {
+
+    private final LimitesDebito limites;
+    // milisegundos por cubeta de cada limite
+    private final long[] anchos;
+    // sumas por cubeta en unidades con la escala del limite, la cubeta n va en la posicion n % CUBETAS
+    private final long[][] cubetas;
+    // suma de las cubetas que siguen dentro de la ventana
+    private final long[] totales;
+    // numero de la cubeta mas nueva (milisegundos / ancho)
+    private final long[] actuales;
+    // monto del debito que se esta revisando, en la escala de cada limite
+    private final long[] montos;
+
+    VentanasDebito(LimitesDebito limites) {
+        this(limites, null);
+    }
+
+    /**
+     * Ventanas para {@code limites} que copian de {@code anteriores} las sumas de los limites con la misma duracion,
+     * llevadas a la escala del limite nuevo.
+     */
+    VentanasDebito(LimitesDebito limites, VentanasDebito anteriores) {
+        this.limites = limites;
+        int cantidad = limites.getCantidad();
+        anchos = new long[cantidad];
+        cubetas = new long[cantidad][CUBETAS];
+        totales = new long[cantidad];
+        actuales = new long[cantidad];
+        montos = new long[cantidad];
+        long ahora = ahora();
+        for (int i = 0; i < cantidad; i++) {
+            // la cubeta actual esta a medias, con una menos de ancho un debito cuenta al menos la ventana completa
+            long ventana = limites.ventanaMilis(i);
+            anchos[i] = (ventana + CUBETAS - 2) / (CUBETAS - 1);
+            actuales[i] = Math.floorDiv(ahora, anchos[i]);
+            int j = anteriores == null ? -1 : anteriores.posicion(ventana);
+            if (j >= 0) {
+                copiar(i, anteriores, j, ahora);
+            }
+        }
+    }
+
+    private int posicion(long ventana) {
+        for (int j = 0; j < totales.length; j++) {
+            if (limites.ventanaMilis(j) == ventana) {
+                return j;
+            }
+        }
+        return -1;
+    }
+
+    private void copiar(int i, VentanasDebito anteriores, int j, long ahora) {
+        // misma duracion, mismo ancho de cubeta: se copian cubeta por cubeta
+        anteriores.avanzar(j, ahora);
+        actuales[i] = anteriores.actuales[j];
+        int escalaAnterior = anteriores.limites.escala(j);
+        int escala = limites.escala(i);
+        for (int k = 0; k < CUBETAS; k++) {
+            long suma = enEscala(anteriores.cubetas[j][k], escalaAnterior, escala);
+            cubetas[i][k] = suma;
+            // una suma que no cabe en la escala nueva deja la ventana llena
+            totales[i] = suma > Long.MAX_VALUE - totales[i] ? Long.MAX_VALUE : totales[i] + suma;
+        }
+    }
+
+    LimitesDebito getLimites() {
+        return limites;
+    }
+
+    long ahora() {
+        return limites.reloj().millis();
+    }
+
+    /**
+     * Lleva las ventanas a {@code ahora} y dice si el debito cabe en todos los limites. Si cabe, {@link #registrar()}
+     * lo suma.
+     */
+    boolean permite(long unidades, int escala, long ahora) {
+        for (int i = 0; i < totales.length; i++) {
+            avanzar(i, ahora);
+            long monto = enEscala(unidades, escala, limites.escala(i));
+            // el total nunca pasa del limite, la resta no desborda
+            if (monto > limites.limite(i) - totales[i]) {
+                return false;
+            }
+            montos[i] = monto;
+        }
+        return true;
+    }
+
+    /**
+     * Suma en la cubeta actual el debito que {@link #permite} acaba de aceptar.
+     */
+    void registrar() {
+        for (int i = 0; i < totales.length; i++) {
+            cubetas[i][(int) Math.floorMod(actuales[i], (long) CUBETAS)] += montos[i];
+            totales[i] += montos[i];
+        }
+    }
+
+    /**
+     * Saca de las ventanas un debito que se deshizo. Se descuenta desde la cubeta mas nueva hacia atras sin dejar
+     * ninguna negativa; si el debito ya salio de la ventana no queda nada que descontar.
+     */
+    void devolver(long unidades, int escala, long ahora) {
+        for (int i = 0; i < totales.length; i++) {
+            avanzar(i, ahora);
+            long monto = enEscala(unidades, escala, limites.escala(i));
+            long[] sumas = cubetas[i];
+            for (int k = 0; k < CUBETAS && monto > 0 && totales[i] > 0; k++) {
+                int posicion = (int) Math.floorMod(actuales[i] - k, (long) CUBETAS);
+                long descuento = Math.min(monto, sumas[posicion]);
+                sumas[posicion] -= descuento;
+                totales[i] -= descuento;
+                monto -= descuento;
+            }
+        }
+    }
+
+    private void avanzar(int i, long ahora) {
+        long cubeta = Math.floorDiv(ahora, anchos[i]);
+        // si el reloj retrocede se sigue en la cubeta mas nueva
+        if (cubeta <= actuales[i]) {
+            return;
+        }
+        long pasos = Math.min(cubeta - actuales[i], CUBETAS);
+        long[] sumas = cubetas[i];
+        for (long n = actuales[i] + 1; n <= actuales[i] + pasos; n++) {
+            int posicion = (int) Math.floorMod(n, (long) CUBETAS);
+            totales[i] -= sumas[posicion];
+            sumas[posicion] = 0;
+        }
+        actuales[i] = cubeta;
+    }
+
+    /**
+     * El monto en la escala del limite, redondeado hacia arriba si tiene mas decimales. Un monto que no cabe en esa
+     * escala supera cualquier limite.
+     */
+    private static long enEscala(long unidades, int escala, int escalaLimite) {
+        if (unidades <= 0) {
+            return 0;
+        }
+        if (escala > escalaLimite) {
+            return Dinero.dividir(unidades, Dinero.potenciaDiez(escala - escalaLimite), RoundingMode.CEILING);
+        }
+        long factor = Dinero.potenciaDiez(escalaLimite - escala);
+        return unidades > Long.MAX_VALUE / factor ? Long.MAX_VALUE : unidades * factor;
+    }
+}
@@ -0,0 +1,653 @@
+package org.example.ejemplos.persistencia;
+
+import org.example.ejemplos.models.Banco;
+import org.example.ejemplos.models.Cuenta;
+import org.example.ejemplos.models.ObservadorMovimientos;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Currency;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Diario de movimientos de un {@link Banco}, solo de agregado, en archivos mapeados en memoria.
+ * <p>
+ * Cada movimiento es un registro binario de {@value #TAMANO_REGISTRO} bytes. Los registros van a segmentos de tamano
+ * fijo ({@code diario-<primera secuencia>.seg}) y al llenarse uno se pasa al siguiente, que ya esta mapeado desde
+ * antes para que escribir un movimiento nunca tenga que abrir archivos. Escribir es copiar bytes al
+ * mapa en memoria; la sincronizacion a disco (fsync) se hace en grupo cada cierto intervalo en un hilo aparte, asi
+ * muchas transferencias comparten un solo fsync. Quien necesite saber que su movimiento ya esta en disco llama a
+ * {@link #esperarDurable()}.
+ * <p>
+ * Uso: {@code new Diario(dir).restaurar(banco)} reconstruye las cuentas del banco desde el diario y luego queda
+ * registrado como observador para escribir los movimientos nuevos.
+ * <p>
+ * Para no reproducir anos de movimientos al arrancar, {@link #tomarInstantanea()} guarda una {@link Instantanea} con
+ * el saldo de todas las cuentas hasta cierta secuencia y borra lo que ya no hace falta para restaurar. La
+ * instantanea se arma a partir del diario (la anterior mas los registros nuevos) y no leyendo las cuentas vivas, por
+ * eso no hay que detener las transferencias ni coordinar con ellas: lo que esta en el diario hasta esa secuencia es
+ * inmutable. Al restaurar se carga la ultima instantanea y solo se reproducen los registros posteriores. Se conserva
+ * tambien la instantanea anterior y los segmentos desde ella, por si la ultima resulta danada.
+ * <p>
+ * Cuando llega el aviso de un movimiento el saldo ya cambio, asi que el diario no lanza ahi. Lo que puede impedir
+ * escribir (diario cerrado, un titular que no cabe, un error anterior) se revisa en
+ * {@link #antesDeMovimiento(Cuenta)} y rechaza el movimiento antes de aplicarlo. Si aun asi un movimiento queda sin
+ * escribir, por ejemplo porque no se pudo mapear el segmento siguiente, el diario queda fallido: rechaza todos los
+ * movimientos que siguen y {@link #close()} lanza el error.
+ */
+public class Diario implements ObservadorMovimientos, Closeable {
+
+    public static final int TAMANO_REGISTRO = 128;
+    public static final long TAMANO_SEGMENTO_POR_DEFECTO = 64L * 1024 * 1024;
+    public static final long INTERVALO_SINCRONIZACION_POR_DEFECTO = 10;
+    public static final int LARGO_MAXIMO_PERSONA = 64;
+
+    static final byte APERTURA = 1;
+    static final byte CIERRE = 2;
+    static final byte CREDITO = 3;
+    static final byte DEBITO = 4;
+    static final byte AJUSTE = 5;
+    static final byte TRANSFERENCIA = 6;
+    // transferencia entre monedas distintas, con el monto que salio del origen y el que entro al destino
+    static final byte TRANSFERENCIA_CAMBIO = 7;
+    // debito revertido, el monto vuelve al saldo
+    static final byte REVERSION = 8;
+
+    // posiciones de cada campo dentro del registro
+    private static final int SECUENCIA = 0;
+    private static final int TIEMPO = 8;
+    private static final int TIPO = 16;
+    private static final int ESCALA = 17;
+    private static final int CLASE = 18;
+    private static final int LARGO_PERSONA = 19;
+    private static final int CONTROL = 20;
+    private static final int CUENTA = 24;
+    private static final int DESTINO = 32;
+    private static final int UNIDADES = 40;
+    // codigo ISO 4217 de la moneda en la apertura, ceros en los diarios anteriores a las monedas
+    private static final int MONEDA = 48;
+    private static final int ESCALA_DESTINO = 51;
+    private static final int UNIDADES_DESTINO = 56;
+    private static final int PERSONA = 64;
+
+    private static final String PREFIJO = "diario-";
+    private static final String EXTENSION = ".seg";
+
+    private final Path directorio;
+    private final long tamanoSegmento;
+    private final long intervaloSincronizacion;
+    private final ScheduledExecutorService sincronizador;
+    private final Object monitorDurable = new Object();
+    private final Object monitorInstantanea = new Object();
+    private ScheduledExecutorService instantaneas;
+    // ultimo error de las instantaneas de fondo, null si la ultima salio bien
+    private volatile IOException falloInstantanea;
+    // primer error que dejo o pudo dejar un movimiento sin escribir, desde ahi se rechazan todos
+    private volatile IOException falloEscritura;
+
+    private FileChannel canal;
+    private MappedByteBuffer segmento;
+    private long primeraDelSegmento;
+    // el segmento que sigue al actual, null si no se pudo mapear
+    private FileChannel canalSiguiente;
+    private MappedByteBuffer segmentoSiguiente;
+    private long secuencia;
+    private volatile long secuenciaDurable;
+    private volatile boolean cerrado;
+
+    public Diario(Path directorio) throws IOException {
+        this(directorio, TAMANO_SEGMENTO_POR_DEFECTO, INTERVALO_SINCRONIZACION_POR_DEFECTO);
+    }
+
+    /**
+     * @param intervaloSincronizacion milisegundos entre cada fsync en grupo, con 0 no hay hilo de fondo y cada
+     *                                {@link #esperarDurable()} hace su propio fsync
+     */
+    public Diario(Path directorio, long tamanoSegmento, long intervaloSincronizacion) throws IOException {
+        if (tamanoSegmento < TAMANO_REGISTRO || tamanoSegmento % TAMANO_REGISTRO != 0) {
+            throw new IllegalArgumentException("El tamano de segmento debe ser multiplo de " + TAMANO_REGISTRO);
+        }
+        this.directorio = directorio;
+        this.tamanoSegmento = tamanoSegmento;
+        this.intervaloSincronizacion = intervaloSincronizacion;
+        Files.createDirectories(directorio);
+        abrirUltimoSegmento();
+        this.secuenciaDurable = secuencia;
+
+        if (intervaloSincronizacion > 0) {
+            sincronizador = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread hilo = new Thread(r, "diario-sincronizador");
+                hilo.setDaemon(true);
+                return hilo;
+            });
+            sincronizador.scheduleWithFixedDelay(this::sincronizar, intervaloSincronizacion, intervaloSincronizacion,
+                    TimeUnit.MILLISECONDS);
+        } else {
+            sincronizador = null;
+        }
+    }
+
+    /**
+     * Reconstruye en el banco las cuentas registradas en el diario y deja el diario registrado como observador del
+     * banco. El banco no debe tener ya este diario como observador, o la reconstruccion se volveria a escribir.
+     */
+    public synchronized void restaurar(Banco banco) throws IOException {
+        Instantanea instantanea = Instantanea.leerUltima(directorio);
+        EstadoCuentas estado = instantanea == null ? new EstadoCuentas() : instantanea.getEstado();
+        long desde = instantanea == null ? 0 : instantanea.getSecuencia() + 1;
+        reproducir(desde, secuencia, estado);
+        estado.crearCuentas(banco);
+        banco.agregarObservador(this);
+    }
+
+    /**
+     * Guarda una instantanea con todo lo escrito hasta ahora y, ya en disco, borra las instantaneas y segmentos que
+     * quedaron cubiertos por la anterior. Se puede llamar mientras el banco sigue operando.
+     *
+     * @return la secuencia hasta la que llega la instantanea
+     */
+    public long tomarInstantanea() throws IOException {
+        synchronized (monitorInstantanea) {
+            long hasta = getUltimaSecuencia();
+            Instantanea anterior = Instantanea.leerUltima(directorio);
+            if (anterior != null && anterior.getSecuencia() >= hasta) {
+                return anterior.getSecuencia();
+            }
+            EstadoCuentas estado = anterior == null ? new EstadoCuentas() : anterior.getEstado();
+            reproducir(anterior == null ? 0 : anterior.getSecuencia() + 1, hasta, estado);
+            Instantanea.escribir(directorio, hasta, estado);
+            compactar(hasta, anterior == null ? -1 : anterior.getSecuencia());
+            return hasta;
+        }
+    }
+
+    /**
+     * Toma instantaneas periodicamente en un hilo de fondo.
+     */
+    public synchronized void programarInstantaneas(long periodo, TimeUnit unidad) {
+        if (instantaneas != null) {
+            throw new IllegalStateException("Las instantaneas ya estan programadas");
+        }
+        instantaneas = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread hilo = new Thread(r, "diario-instantaneas");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        instantaneas.scheduleWithFixedDelay(() -> {
+            // no se detiene la programacion, la siguiente vuelta lo vuelve a intentar
+            try {
+                tomarInstantanea();
+                falloInstantanea = null;
+            } catch (IOException e) {
+                falloInstantanea = e;
+            } catch (UncheckedIOException e) {
+                falloInstantanea = e.getCause();
+            }
+        }, periodo, periodo, unidad);
+    }
+
+    /**
+     * El error de la ultima instantanea programada, o null si salio bien o todavia no se intento. Mientras haya uno
+     * los segmentos no se compactan, y {@link #close()} lo lanza si ninguna instantanea posterior lo corrigio.
+     */
+    public IOException getFalloInstantanea() {
+        return falloInstantanea;
+    }
+
+    /**
+     * El error que dejo el diario sin poder escribir, o null. Con un error el diario rechaza los movimientos nuevos
+     * y {@link #close()} lo lanza.
+     */
+    public IOException getFalloEscritura() {
+        return falloEscritura;
+    }
+
+    /**
+     * Deja solo la instantanea nueva y la anterior, de la que salio, y los segmentos desde la anterior: si la nueva
+     * se dana al restaurar se parte de la anterior y se reproduce el resto. Sin anterior no se borra ningun segmento.
+     */
+    private void compactar(long nueva, long anterior) throws IOException {
+        for (Path foto : Instantanea.existentes(directorio)) {
+            long secuenciaFoto = Instantanea.secuenciaDe(foto);
+            if (secuenciaFoto != nueva && secuenciaFoto != anterior) {
+                Files.deleteIfExists(foto);
+            }
+        }
+        if (anterior < 0) {
+            return;
+        }
+        // un segmento se puede borrar si el siguiente empieza antes o justo despues de la instantanea anterior,
+        // el ultimo segmento nunca se borra porque es el que se esta escribiendo
+        List<Path> existentes = segmentos();
+        for (int i = 0; i + 1 < existentes.size(); i++) {
+            if (primeraSecuencia(existentes.get(i + 1)) <= anterior + 1) {
+                Files.deleteIfExists(existentes.get(i));
+            }
+        }
+    }
+
+    public synchronized long getUltimaSecuencia() {
+        return secuencia;
+    }
+
+    public long getSecuenciaDurable() {
+        return secuenciaDurable;
+    }
+
+    /**
+     * Espera a que todo lo escrito hasta ahora este en disco. Con sincronizacion en grupo espera al siguiente fsync
+     * del hilo de fondo, que cubre a todos los hilos que estan esperando.
+     */
+    public void esperarDurable() throws InterruptedException {
+        esperarDurable(getUltimaSecuencia());
+    }
+
+    public void esperarDurable(long hastaSecuencia) throws InterruptedException {
+        if (sincronizador == null) {
+            if (secuenciaDurable < hastaSecuencia) {
+                sincronizar();
+            }
+            return;
+        }
+        synchronized (monitorDurable) {
+            while (secuenciaDurable < hastaSecuencia) {
+                monitorDurable.wait(intervaloSincronizacion);
+            }
+        }
+    }
+
+    /**
+     * Fuerza a disco lo escrito hasta ahora. Los segmentos anteriores se sincronizaron al cerrarse.
+     */
+    public void sincronizar() {
+        MappedByteBuffer actual;
+        long hasta;
+        synchronized (this) {
+            if (cerrado) {
+                return;
+            }
+            actual = segmento;
+            hasta = secuencia;
+        }
+        if (hasta > secuenciaDurable) {
+            actual.force();
+            synchronized (monitorDurable) {
+                if (hasta > secuenciaDurable) {
+                    secuenciaDurable = hasta;
+                }
+                monitorDurable.notifyAll();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (sincronizador != null) {
+            sincronizador.shutdownNow();
+        }
+        synchronized (this) {
+            if (instantaneas != null) {
+                instantaneas.shutdownNow();
+            }
+        }
+        sincronizar();
+        synchronized (this) {
+            cerrado = true;
+            canal.close();
+            if (canalSiguiente != null) {
+                canalSiguiente.close();
+            }
+        }
+        IOException fallo = falloEscritura;
+        if (fallo != null) {
+            throw new IOException("El diario dejo movimientos sin escribir", fallo);
+        }
+        fallo = falloInstantanea;
+        if (fallo != null) {
+            throw new IOException("La ultima instantanea programada del diario fallo", fallo);
+        }
+    }
+
+    // --- ObservadorMovimientos, se llaman con el monitor de la cuenta tomado
+
+    @Override
+    public void antesDeMovimiento(Cuenta cuenta) {
+        if (cerrado) {
+            throw new IllegalStateException("El diario esta cerrado");
+        }
+        IOException fallo = falloEscritura;
+        if (fallo != null) {
+            throw new IllegalStateException("El diario dejo de escribir movimientos", fallo);
+        }
+    }
+
+    @Override
+    public void antesDeApertura(Cuenta cuenta) {
+        antesDeMovimiento(cuenta);
+        if (cuenta.getPersona().getBytes(StandardCharsets.UTF_8).length > LARGO_MAXIMO_PERSONA) {
+            throw new IllegalArgumentException("El nombre de la persona no cabe en el diario: " + cuenta.getPersona());
+        }
+    }
+
+    @Override
+    public void apertura(Cuenta cuenta) {
+        byte[] persona = cuenta.getPersona().getBytes(StandardCharsets.UTF_8);
+        if (persona.length > LARGO_MAXIMO_PERSONA) {
+            // antesDeApertura ya lo rechaza, solo llega aqui si el titular cambio entre medio
+            fallar(new IOException("El nombre de la persona no cabe en el diario: " + cuenta.getPersona()));
+            return;
+        }
+        escribir(APERTURA, cuenta.getId(), 0, cuenta.getSaldoUnidades(), cuenta.getEscala(),
+                EstadoCuentas.claseDe(cuenta), persona, cuenta.getMoneda().getCurrencyCode(), 0, 0);
+    }
+
+    @Override
+    public void cierre(Cuenta cuenta) {
+        escribir(CIERRE, cuenta.getId(), 0, 0, 0, (byte) 0, null);
+    }
+
+    @Override
+    public void credito(Cuenta cuenta, long unidades, int escala) {
+        escribir(CREDITO, cuenta.getId(), 0, unidades, escala, (byte) 0, null);
+    }
+
+    @Override
+    public void debito(Cuenta cuenta, long unidades, int escala) {
+        escribir(DEBITO, cuenta.getId(), 0, unidades, escala, (byte) 0, null);
+    }
+
+    @Override
+    public void ajuste(Cuenta cuenta) {
+        escribir(AJUSTE, cuenta.getId(), 0, cuenta.getSaldoUnidades(), cuenta.getEscala(), (byte) 0, null);
+    }
+
+    @Override
+    public void reversion(Cuenta cuenta, long unidades, int escala) {
+        escribir(REVERSION, cuenta.getId(), 0, unidades, escala, (byte) 0, null);
+    }
+
+    @Override
+    public void transferencia(Cuenta origen, Cuenta destino, long unidades, int escala) {
+        escribir(TRANSFERENCIA, origen.getId(), destino.getId(), unidades, escala, (byte) 0, null);
+    }
+
+    @Override
+    public void transferencia(Cuenta origen, Cuenta destino, long unidades, int escala, long unidadesDestino,
+                              int escalaDestino) {
+        escribir(TRANSFERENCIA_CAMBIO, origen.getId(), destino.getId(), unidades, escala, (byte) 0, null, null,
+                unidadesDestino, escalaDestino);
+    }
+
+    private long escribir(byte tipo, long cuenta, long destino, long unidades, int escala, byte clase,
+                          byte[] persona) {
+        return escribir(tipo, cuenta, destino, unidades, escala, clase, persona, null, 0, 0);
+    }
+
+    /**
+     * Agrega el registro y devuelve su secuencia. No lanza: el movimiento ya se aplico. Si no se puede escribir deja
+     * el diario fallido y devuelve -1.
+     */
+    private synchronized long escribir(byte tipo, long cuenta, long destino, long unidades, int escala, byte clase,
+                                       byte[] persona, String moneda, long unidadesDestino, int escalaDestino) {
+        if (cerrado) {
+            // un movimiento que paso antesDeMovimiento justo antes de close()
+            fallar(new IOException("Movimiento sin escribir, el diario ya estaba cerrado"));
+            return -1;
+        }
+        if (segmento.remaining() < TAMANO_REGISTRO) {
+            if (segmentoSiguiente == null) {
+                fallar(new IOException("Movimiento sin escribir, no hay segmento siguiente en el diario"));
+                return -1;
+            }
+            rotarSegmento();
+        }
+        int base = segmento.position();
+        long nuevaSecuencia = secuencia + 1;
+        segmento.putLong(base + SECUENCIA, nuevaSecuencia);
+        segmento.putLong(base + TIEMPO, System.currentTimeMillis());
+        segmento.put(base + TIPO, tipo);
+        segmento.put(base + ESCALA, (byte) escala);
+        segmento.put(base + CLASE, clase);
+        segmento.put(base + LARGO_PERSONA, (byte) (persona == null ? 0 : persona.length));
+        segmento.putLong(base + CUENTA, cuenta);
+        segmento.putLong(base + DESTINO, destino);
+        segmento.putLong(base + UNIDADES, unidades);
+        for (int i = 0; i < 3; i++) {
+            segmento.put(base + MONEDA + i, moneda == null ? 0 : (byte) moneda.charAt(i));
+        }
+        segmento.put(base + ESCALA_DESTINO, (byte) escalaDestino);
+        segmento.putLong(base + UNIDADES_DESTINO, unidadesDestino);
+        for (int i = 0; i < LARGO_MAXIMO_PERSONA; i++) {
+            segmento.put(base + PERSONA + i, persona != null && i < persona.length ? persona[i] : 0);
+        }
+        segmento.putInt(base + CONTROL, control(segmento, base));
+        segmento.position(base + TAMANO_REGISTRO);
+        secuencia = nuevaSecuencia;
+        return nuevaSecuencia;
+    }
+
+    private synchronized void fallar(IOException e) {
+        if (falloEscritura == null) {
+            falloEscritura = e;
+        }
+    }
+
+    /**
+     * Suma de control de un registro, sirve para detectar un registro escrito a medias al final del diario
+     * despues de una caida.
+     */
+    private static int control(ByteBuffer buffer, int base) {
+        long h = buffer.getInt(base + TIPO);
+        for (int i = 0; i < TAMANO_REGISTRO; i += 8) {
+            if (i != TIPO) {
+                h = (h ^ buffer.getLong(base + i)) * 0x9E3779B97F4A7C15L;
+            }
+        }
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static boolean registroValido(ByteBuffer buffer, int base, long secuenciaEsperada) {
+        return buffer.getLong(base + SECUENCIA) == secuenciaEsperada
+                && buffer.getInt(base + CONTROL) == control(buffer, base);
+    }
+
+    // --- segmentos
+
+    private List<Path> segmentos() throws IOException {
+        List<Path> segmentos = new ArrayList<>();
+        try (DirectoryStream<Path> archivos = Files.newDirectoryStream(directorio, PREFIJO + "*" + EXTENSION)) {
+            archivos.forEach(segmentos::add);
+        }
+        // el nombre lleva la secuencia con ceros a la izquierda, el orden alfabetico es el orden del diario
+        Collections.sort(segmentos);
+        return segmentos;
+    }
+
+    static long primeraSecuencia(Path segmento) {
+        String nombre = segmento.getFileName().toString();
+        return Long.parseLong(nombre.substring(PREFIJO.length(), nombre.length() - EXTENSION.length()));
+    }
+
+    private Path rutaSegmento(long primeraSecuencia) {
+        return directorio.resolve(String.format("%s%020d%s", PREFIJO, primeraSecuencia, EXTENSION));
+    }
+
+    private void abrirUltimoSegmento() throws IOException {
+        List<Path> existentes = segmentos();
+        if (existentes.isEmpty()) {
+            secuencia = 0;
+            abrirSegmento(1);
+            mapearSiguiente();
+            return;
+        }
+        // los ultimos pueden no tener ningun registro: el que se mapeo por adelantado y, si el anterior se lleno
+        // justo antes de cerrar, el que le seguia. Se sigue escribiendo en el ultimo con registros y los vacios se
+        // vuelven a crear al mapear el siguiente
+        int ultimo = existentes.size() - 1;
+        while (ultimo > 0 && !tieneRegistros(existentes.get(ultimo))) {
+            Files.delete(existentes.get(ultimo));
+            ultimo--;
+        }
+        long esperada = primeraSecuencia(existentes.get(ultimo));
+        abrirSegmento(esperada);
+        // se avanza hasta el primer registro vacio o invalido, desde ahi se sigue escribiendo
+        int posicion = 0;
+        while (posicion + TAMANO_REGISTRO <= segmento.capacity() && registroValido(segmento, posicion, esperada)) {
+            posicion += TAMANO_REGISTRO;
+            esperada++;
+        }
+        segmento.position(posicion);
+        secuencia = esperada - 1;
+        mapearSiguiente();
+    }
+
+    private static boolean tieneRegistros(Path ruta) throws IOException {
+        ByteBuffer primero = ByteBuffer.allocate(TAMANO_REGISTRO);
+        try (FileChannel lectura = FileChannel.open(ruta, StandardOpenOption.READ)) {
+            while (primero.hasRemaining() && lectura.read(primero, primero.position()) > 0) {
+                // lee el primer registro completo
+            }
+        }
+        return !primero.hasRemaining() && registroValido(primero, 0, primeraSecuencia(ruta));
+    }
+
+    private void abrirSegmento(long primeraSecuencia) throws IOException {
+        canal = abrirCanal(primeraSecuencia);
+        segmento = canal.map(FileChannel.MapMode.READ_WRITE, 0, tamanoSegmento);
+        primeraDelSegmento = primeraSecuencia;
+    }
+
+    private void mapearSiguiente() throws IOException {
+        FileChannel nuevo = abrirCanal(primeraDelSegmento + tamanoSegmento / TAMANO_REGISTRO);
+        try {
+            segmentoSiguiente = nuevo.map(FileChannel.MapMode.READ_WRITE, 0, tamanoSegmento);
+        } catch (IOException e) {
+            nuevo.close();
+            throw e;
+        }
+        canalSiguiente = nuevo;
+    }
+
+    private FileChannel abrirCanal(long primeraSecuencia) throws IOException {
+        return FileChannel.open(rutaSegmento(primeraSecuencia), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Pasa al segmento siguiente, que ya esta mapeado, y mapea el que le sigue. Si algo falla el movimiento que se
+     * esta escribiendo igual queda en el segmento nuevo, pero el diario queda fallido y no acepta mas movimientos.
+     */
+    private void rotarSegmento() {
+        MappedByteBuffer lleno = segmento;
+        FileChannel canalLleno = canal;
+        canal = canalSiguiente;
+        segmento = segmentoSiguiente;
+        primeraDelSegmento += tamanoSegmento / TAMANO_REGISTRO;
+        canalSiguiente = null;
+        segmentoSiguiente = null;
+        try {
+            lleno.force();
+            canalLleno.close();
+            mapearSiguiente();
+        } catch (IOException e) {
+            fallar(e);
+        } catch (UncheckedIOException e) {
+            fallar(e.getCause());
+        }
+    }
+
+    /**
+     * Aplica al estado los registros con secuencia entre {@code desdeSecuencia} y {@code hastaSecuencia}. Los
+     * segmentos que terminan antes de {@code desdeSecuencia} ni se abren. No toma el monitor del diario: los
+     * registros hasta una secuencia ya entregada por {@link #getUltimaSecuencia()} no vuelven a cambiar.
+     */
+    void reproducir(long desdeSecuencia, long hastaSecuencia, EstadoCuentas estado) throws IOException {
+        List<Path> existentes = segmentos();
+        for (int i = 0; i < existentes.size(); i++) {
+            long esperada = primeraSecuencia(existentes.get(i));
+            if (esperada > hastaSecuencia) {
+                break;
+            }
+            if (i + 1 < existentes.size() && primeraSecuencia(existentes.get(i + 1)) <= desdeSecuencia) {
+                continue;
+            }
+            try (FileChannel lectura = FileChannel.open(existentes.get(i), StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = lectura.map(FileChannel.MapMode.READ_ONLY, 0, lectura.size());
+                for (int base = 0; base + TAMANO_REGISTRO <= buffer.capacity() && esperada <= hastaSecuencia;
+                     base += TAMANO_REGISTRO, esperada++) {
+                    if (!registroValido(buffer, base, esperada)) {
+                        break;
+                    }
+                    if (esperada >= desdeSecuencia) {
+                        aplicar(buffer, base, estado);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void aplicar(ByteBuffer buffer, int base, EstadoCuentas estado) {
+        long cuenta = buffer.getLong(base + CUENTA);
+        long unidades = buffer.getLong(base + UNIDADES);
+        int escala = buffer.get(base + ESCALA);
+        switch (buffer.get(base + TIPO)) {
+            case APERTURA:
+                byte[] persona = new byte[buffer.get(base + LARGO_PERSONA)];
+                for (int i = 0; i < persona.length; i++) {
+                    persona[i] = buffer.get(base + PERSONA + i);
+                }
+                estado.apertura(cuenta, new String(persona, StandardCharsets.UTF_8), buffer.get(base + CLASE),
+                        moneda(buffer, base), unidades, escala);
+                break;
+            case CIERRE:
+                estado.cierre(cuenta);
+                break;
+            case CREDITO:
+            case REVERSION:
+                estado.sumar(cuenta, unidades, escala);
+                break;
+            case DEBITO:
+                estado.sumar(cuenta, -unidades, escala);
+                break;
+            case AJUSTE:
+                estado.ajuste(cuenta, unidades, escala);
+                break;
+            case TRANSFERENCIA:
+                estado.sumar(cuenta, -unidades, escala);
+                estado.sumar(buffer.getLong(base + DESTINO), unidades, escala);
+                break;
+            case TRANSFERENCIA_CAMBIO:
+                estado.sumar(cuenta, -unidades, escala);
+                estado.sumar(buffer.getLong(base + DESTINO), buffer.getLong(base + UNIDADES_DESTINO),
+                        buffer.get(base + ESCALA_DESTINO));
+                break;
+            default:
+                throw new IllegalStateException("Tipo de registro desconocido en el diario");
+        }
+    }
+
+    private static Currency moneda(ByteBuffer buffer, int base) {
+        if (buffer.get(base + MONEDA) == 0) {
+            return Cuenta.MONEDA_POR_DEFECTO;
+        }
+        char[] codigo = new char[3];
+        for (int i = 0; i < codigo.length; i++) {
+            codigo[i] = (char) buffer.get(base + MONEDA + i);
+        }
+        return Currency.getInstance(new String(codigo));
+    }
+}
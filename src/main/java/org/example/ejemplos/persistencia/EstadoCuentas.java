@@ -0,0 +1,109 @@
+package org.example.ejemplos.persistencia;
+
+import org.example.ejemplos.models.Banco;
+import org.example.ejemplos.models.Cuenta;
+import org.example.ejemplos.models.CuentaAtomica;
+import org.example.ejemplos.models.CuentaEstriada;
+import org.example.ejemplos.models.Dinero;
+
+import java.util.Collection;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Estado de las cuentas mientras se reproduce un diario. Los creditos, debitos y transferencias se suman como
+ * deltas sin validar fondos: el diario solo tiene movimientos que ya fueron aceptados y la suma no depende del orden,
+ * asi que no importa si dos movimientos de una cuenta atomica quedaron escritos en otro orden.
+ * Al final {@link #crearCuentas(Banco)} crea las cuentas con el saldo final de una sola vez.
+ */
+class EstadoCuentas {
+
+    static final byte CLASE_CUENTA = 0;
+    static final byte CLASE_ATOMICA = 1;
+    static final byte CLASE_ESTRIADA = 2;
+
+    static final class EstadoCuenta {
+        final long id;
+        final String persona;
+        final byte clase;
+        final Currency moneda;
+        long unidades;
+        int escala;
+
+        EstadoCuenta(long id, String persona, byte clase, Currency moneda, long unidades, int escala) {
+            this.id = id;
+            this.persona = persona;
+            this.clase = clase;
+            this.moneda = moneda;
+            this.unidades = unidades;
+            this.escala = escala;
+        }
+    }
+
+    private final Map<Long, EstadoCuenta> cuentas = new HashMap<>();
+
+    static byte claseDe(Cuenta cuenta) {
+        if (cuenta instanceof CuentaAtomica) {
+            return CLASE_ATOMICA;
+        }
+        if (cuenta instanceof CuentaEstriada) {
+            return CLASE_ESTRIADA;
+        }
+        return CLASE_CUENTA;
+    }
+
+    Collection<EstadoCuenta> getCuentas() {
+        return cuentas.values();
+    }
+
+    int size() {
+        return cuentas.size();
+    }
+
+    void apertura(long id, String persona, byte clase, Currency moneda, long unidades, int escala) {
+        cuentas.put(id, new EstadoCuenta(id, persona, clase, moneda, unidades, escala));
+    }
+
+    void cierre(long id) {
+        cuentas.remove(id);
+    }
+
+    void ajuste(long id, long unidades, int escala) {
+        EstadoCuenta cuenta = cuentas.get(id);
+        if (cuenta != null) {
+            cuenta.unidades = unidades;
+            cuenta.escala = escala;
+        }
+    }
+
+    void sumar(long id, long unidades, int escala) {
+        EstadoCuenta cuenta = cuentas.get(id);
+        if (cuenta == null) {
+            // movimiento de una cuenta que no pertenece al banco (por ejemplo una transferencia hacia afuera)
+            return;
+        }
+        if (escala > cuenta.escala && cuenta.clase == CLASE_CUENTA) {
+            cuenta.unidades = Dinero.reescalar(cuenta.unidades, cuenta.escala, escala);
+            cuenta.escala = escala;
+        }
+        cuenta.unidades = Dinero.sumar(cuenta.unidades, Dinero.reescalar(unidades, escala, cuenta.escala));
+    }
+
+    void crearCuentas(Banco banco) {
+        for (EstadoCuenta estado : cuentas.values()) {
+            banco.addCuentas(crear(estado));
+        }
+    }
+
+    private static Cuenta crear(EstadoCuenta estado) {
+        switch (estado.clase) {
+            case CLASE_ATOMICA:
+                return new CuentaAtomica(estado.id, estado.persona, estado.unidades, estado.escala, estado.moneda);
+            case CLASE_ESTRIADA:
+                return new CuentaEstriada(estado.id, estado.persona, estado.unidades, estado.escala, estado.moneda);
+            default:
+                return new Cuenta(estado.id, estado.persona, estado.unidades, estado.escala, estado.moneda);
+        }
+    }
+}
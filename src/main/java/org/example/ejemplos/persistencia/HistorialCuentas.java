@@ -0,0 +1,519 @@
+package org.example.ejemplos.persistencia;
+
+import org.example.ejemplos.models.Banco;
+import org.example.ejemplos.models.Cuenta;
+import org.example.ejemplos.models.ObservadorMovimientos;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Historial de creditos, debitos, transferencias y ajustes de cada cuenta de un {@link Banco}, para extractos por
+ * rango de fechas. Se registra como observador con {@link Banco#agregarObservador(ObservadorMovimientos)}.
+ * <p>
+ * Los ultimos movimientos de cada cuenta (hasta {@code retencion}) se guardan en un anillo de {@code long} por cuenta,
+ * sin un objeto por movimiento. Cuando el anillo se llena, la mitad mas antigua pasa a un bloque compartido; un
+ * bloque lleno se ordena por cuenta y se escribe en un hilo de fondo como un {@link SegmentoHistorial}, un archivo
+ * inmutable mapeado en memoria. Los bloques se escriben en orden; si uno falla queda en memoria, junto con los que
+ * vienen despues, y se vuelve a intentar con el siguiente bloque o al cerrar. Un extracto busca con una busqueda binaria en cada segmento, recorre el bloque en
+ * memoria y termina en el anillo de la cuenta; solo crea objetos para los movimientos de la pagina pedida.
+ * <p>
+ * Dentro de una cuenta la secuencia y el tiempo de los movimientos siempre crecen (si el reloj retrocede se repite el
+ * tiempo anterior), por eso el orden por secuencia es el orden cronologico y las paginas siguen despues de la ultima
+ * secuencia entregada. Al cerrar se escriben todos los anillos y al abrir el mismo directorio se cargan los
+ * segmentos. No reemplaza al {@link Diario}: lo que queda en memoria se pierde si el proceso se cae.
+ */
+public class HistorialCuentas implements ObservadorMovimientos, Closeable {
+
+    public static final int RETENCION_POR_DEFECTO = 64;
+    public static final int TAMANO_BLOQUE_POR_DEFECTO = 1 << 16;
+
+    // campos de un movimiento en los arreglos de los anillos y los bloques
+    static final int CUENTA = 0;
+    static final int SECUENCIA = 1;
+    static final int TIEMPO = 2;
+    static final int UNIDADES = 3;
+    static final int CONTRAPARTE = 4;
+    // tipo en los bits 8 en adelante, escala en los 8 de abajo
+    static final int TIPO_ESCALA = 5;
+    static final int CAMPOS = 6;
+
+    private static final MovimientoHistorial.Tipo[] TIPOS = MovimientoHistorial.Tipo.values();
+    private static final String PREFIJO = "historial-";
+    private static final String EXTENSION = ".seg";
+
+    private final Path directorio;
+    private final int retencion;
+    private final int tamanoBloque;
+    private final Clock reloj;
+    private final Map<Long, Reciente> recientes = new ConcurrentHashMap<>();
+    private final AtomicLong secuencia;
+    private final ExecutorService escritor;
+    private volatile boolean cerrado;
+
+    // protege lo que ya salio de los anillos: segmentos, bloques escribiendose y el bloque actual. Se toma despues del
+    // anillo de una cuenta, nunca antes
+    private final ReentrantReadWriteLock derrame = new ReentrantReadWriteLock();
+    private final List<SegmentoHistorial> segmentos = new ArrayList<>();
+    private final ArrayDeque<Bloque> enEscritura = new ArrayDeque<>();
+    private Bloque bloque;
+    private long siguienteSegmento;
+    // ultimo error al escribir un segmento, null si el ultimo salio bien
+    private volatile IOException falloSegmento;
+
+    public HistorialCuentas(Path directorio) throws IOException {
+        this(directorio, RETENCION_POR_DEFECTO, TAMANO_BLOQUE_POR_DEFECTO, Clock.systemUTC());
+    }
+
+    /**
+     * @param retencion    movimientos por cuenta que quedan en memoria antes de pasar a los segmentos
+     * @param tamanoBloque movimientos de todas las cuentas que se juntan antes de escribir un segmento
+     * @param reloj        fecha de los movimientos
+     */
+    public HistorialCuentas(Path directorio, int retencion, int tamanoBloque, Clock reloj) throws IOException {
+        if (retencion < 1) {
+            throw new IllegalArgumentException("La retencion debe ser al menos 1");
+        }
+        if (tamanoBloque < 1 || tamanoBloque > SegmentoHistorial.CAPACIDAD_MAXIMA) {
+            throw new IllegalArgumentException("El bloque debe tener entre 1 y " + SegmentoHistorial.CAPACIDAD_MAXIMA
+                    + " movimientos");
+        }
+        this.directorio = directorio;
+        this.retencion = retencion;
+        this.tamanoBloque = tamanoBloque;
+        this.reloj = reloj;
+        Files.createDirectories(directorio);
+        long ultimaSecuencia = 0;
+        for (Path ruta : existentes()) {
+            SegmentoHistorial segmento = SegmentoHistorial.abrir(ruta);
+            segmentos.add(segmento);
+            ultimaSecuencia = Math.max(ultimaSecuencia, segmento.getSecuenciaMaxima());
+            siguienteSegmento = numeroDe(ruta) + 1;
+        }
+        this.secuencia = new AtomicLong(ultimaSecuencia);
+        this.bloque = new Bloque(tamanoBloque);
+        this.escritor = Executors.newSingleThreadExecutor(r -> {
+            Thread hilo = new Thread(r, "historial-segmentos");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+    }
+
+    /**
+     * Ultimos movimientos de una cuenta, en un anillo que crece hasta la retencion. Se sincroniza sobre el propio
+     * anillo porque los creditos de {@link org.example.ejemplos.models.CuentaAtomica} no toman el monitor de la cuenta.
+     */
+    private static final class Reciente {
+        long[] datos = new long[CAMPOS * 4];
+        int inicio;
+        int cantidad;
+        long ultimoTiempo;
+        // movimientos que pasaron al bloque, un extracto lo mira para saber si se le escapo alguno
+        volatile long derramados;
+
+        int capacidad() {
+            return datos.length / CAMPOS;
+        }
+
+        // posicion en datos del i-esimo movimiento mas antiguo
+        int posicion(int i) {
+            return (inicio + i) % capacidad() * CAMPOS;
+        }
+
+        void agregar(long cuenta, long secuencia, long tiempo, long unidades, long contraparte, long tipoEscala,
+                     int retencion) {
+            if (cantidad == capacidad()) {
+                long[] nuevos = new long[Math.min(capacidad() * 2, retencion) * CAMPOS];
+                for (int i = 0; i < cantidad; i++) {
+                    System.arraycopy(datos, posicion(i), nuevos, i * CAMPOS, CAMPOS);
+                }
+                datos = nuevos;
+                inicio = 0;
+            }
+            int base = posicion(cantidad);
+            datos[base + CUENTA] = cuenta;
+            datos[base + SECUENCIA] = secuencia;
+            datos[base + TIEMPO] = tiempo;
+            datos[base + UNIDADES] = unidades;
+            datos[base + CONTRAPARTE] = contraparte;
+            datos[base + TIPO_ESCALA] = tipoEscala;
+            cantidad++;
+        }
+
+        void recolectar(Recolector recolector) {
+            for (int i = 0; i < cantidad && !recolector.terminado; i++) {
+                recolector.ofrecer(datos, posicion(i));
+            }
+        }
+    }
+
+    /**
+     * Movimientos de varias cuentas que salieron de sus anillos, en el orden en que salieron.
+     */
+    private static final class Bloque {
+        final long[] datos;
+        int cantidad;
+        // archivo del segmento, se asigna al entregar el bloque
+        Path ruta;
+
+        Bloque(int capacidad) {
+            datos = new long[capacidad * CAMPOS];
+        }
+
+        boolean lleno() {
+            return cantidad * CAMPOS == datos.length;
+        }
+
+        void agregar(long[] origen, int posicion) {
+            System.arraycopy(origen, posicion, datos, cantidad * CAMPOS, CAMPOS);
+            cantidad++;
+        }
+
+        void recolectar(Recolector recolector) {
+            for (int i = 0; i < cantidad && !recolector.terminado; i++) {
+                if (datos[i * CAMPOS + CUENTA] == recolector.cuenta) {
+                    recolector.ofrecer(datos, i * CAMPOS);
+                }
+            }
+        }
+    }
+
+    /**
+     * Junta los movimientos de una pagina a medida que se recorren el historial de mas antiguo a mas nuevo.
+     */
+    static final class Recolector {
+        final long cuenta;
+        final long desde;
+        final long hasta;
+        final long despuesDe;
+        final int limite;
+        final List<MovimientoHistorial> movimientos = new ArrayList<>();
+        boolean terminado;
+
+        Recolector(long cuenta, long desde, long hasta, long despuesDe, int limite) {
+            this.cuenta = cuenta;
+            this.desde = desde;
+            this.hasta = hasta;
+            this.despuesDe = despuesDe;
+            this.limite = limite;
+        }
+
+        void ofrecer(long[] datos, int base) {
+            ofrecer(datos[base + SECUENCIA], datos[base + TIEMPO], datos[base + UNIDADES], datos[base + CONTRAPARTE],
+                    datos[base + TIPO_ESCALA]);
+        }
+
+        void ofrecer(long secuencia, long tiempo, long unidades, long contraparte, long tipoEscala) {
+            if (secuencia <= despuesDe || tiempo < desde) {
+                return;
+            }
+            if (tiempo >= hasta) {
+                // lo que sigue de la cuenta es todavia mas nuevo
+                terminado = true;
+                return;
+            }
+            movimientos.add(new MovimientoHistorial(cuenta, secuencia, tiempo, TIPOS[(int) (tipoEscala >>> 8)],
+                    unidades, (int) (tipoEscala & 0xFF), contraparte));
+            terminado = movimientos.size() >= limite;
+        }
+    }
+
+    // Un observador no puede lanzar (el movimiento ya se aplico): despues de cerrar los movimientos se ignoran. Se
+    // vuelve a mirar con el anillo tomado; close marca el cierre antes de vaciar los anillos, asi lo que entra a un
+    // anillo antes de eso igual se escribe
+    private void registrar(Cuenta cuenta, MovimientoHistorial.Tipo tipo, long unidades, int escala, long contraparte) {
+        if (cerrado) {
+            return;
+        }
+        Reciente reciente = recientes.get(cuenta.getId());
+        if (reciente == null) {
+            reciente = recientes.computeIfAbsent(cuenta.getId(), id -> new Reciente());
+        }
+        synchronized (reciente) {
+            if (cerrado) {
+                return;
+            }
+            long tiempo = Math.max(reloj.millis(), reciente.ultimoTiempo);
+            reciente.ultimoTiempo = tiempo;
+            if (reciente.cantidad == retencion) {
+                derramar(reciente, Math.max(1, retencion / 2));
+            }
+            reciente.agregar(cuenta.getId(), secuencia.incrementAndGet(), tiempo, unidades, contraparte,
+                    (long) tipo.ordinal() << 8 | escala, retencion);
+        }
+    }
+
+    /**
+     * Pasa los {@code cantidad} movimientos mas antiguos del anillo al bloque. Se llama con el anillo tomado.
+     */
+    private void derramar(Reciente reciente, int cantidad) {
+        derrame.writeLock().lock();
+        try {
+            for (int i = 0; i < cantidad; i++) {
+                bloque.agregar(reciente.datos, reciente.posicion(i));
+                if (bloque.lleno()) {
+                    entregarBloque();
+                }
+            }
+            reciente.inicio = (reciente.inicio + cantidad) % reciente.capacidad();
+            reciente.cantidad -= cantidad;
+            reciente.derramados += cantidad;
+        } finally {
+            derrame.writeLock().unlock();
+        }
+    }
+
+    // con el derrame tomado para escribir
+    private void entregarBloque() {
+        bloque.ruta = directorio.resolve(String.format("%s%020d%s", PREFIJO, siguienteSegmento++, EXTENSION));
+        enEscritura.addLast(bloque);
+        bloque = new Bloque(tamanoBloque);
+        escritor.execute(this::escribirPendientes);
+    }
+
+    /**
+     * Escribe los bloques pendientes del mas antiguo al mas nuevo, asi los segmentos quedan en el orden de los
+     * movimientos. Solo corre en el hilo escritor, que es el unico que saca bloques de {@code enEscritura}.
+     */
+    private void escribirPendientes() {
+        while (true) {
+            Bloque pendiente;
+            derrame.readLock().lock();
+            try {
+                pendiente = enEscritura.peekFirst();
+            } finally {
+                derrame.readLock().unlock();
+            }
+            if (pendiente == null) {
+                return;
+            }
+            SegmentoHistorial segmento;
+            try {
+                segmento = SegmentoHistorial.escribir(pendiente.ruta, pendiente.datos, pendiente.cantidad);
+            } catch (IOException e) {
+                // el bloque y los siguientes quedan en memoria, se siguen pudiendo consultar y se reintentan con el
+                // proximo bloque o al cerrar
+                falloSegmento = e;
+                return;
+            }
+            falloSegmento = null;
+            derrame.writeLock().lock();
+            try {
+                enEscritura.removeFirst();
+                segmentos.add(segmento);
+            } finally {
+                derrame.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * El error del ultimo segmento que se intento escribir, o null si salio bien. Mientras haya uno, ese bloque y los
+     * siguientes solo estan en memoria; {@link #close()} los reintenta y lanza el error si vuelven a fallar.
+     */
+    public IOException getFalloSegmento() {
+        return falloSegmento;
+    }
+
+    public PaginaExtracto extracto(Cuenta cuenta, Instant desde, Instant hasta, int tamanoPagina) {
+        return extracto(cuenta.getId(), desde, hasta, tamanoPagina);
+    }
+
+    /**
+     * Primera pagina del extracto de la cuenta con los movimientos desde {@code desde} (incluido) hasta
+     * {@code hasta} (excluido), en orden cronologico.
+     */
+    public PaginaExtracto extracto(long cuenta, Instant desde, Instant hasta, int tamanoPagina) {
+        return extracto(cuenta, desde, hasta, tamanoPagina, 0);
+    }
+
+    /**
+     * Pagina que sigue a {@code pagina}, vacia si era la ultima.
+     */
+    public PaginaExtracto siguiente(PaginaExtracto pagina) {
+        if (!pagina.isHayMas()) {
+            return new PaginaExtracto(pagina.getCuenta(), pagina.getDesde(), pagina.getHasta(), pagina.getTamano(),
+                    Collections.emptyList(), false);
+        }
+        return extracto(pagina.getCuenta(), pagina.getDesde(), pagina.getHasta(), pagina.getTamano(),
+                pagina.getUltimaSecuencia());
+    }
+
+    private PaginaExtracto extracto(long cuenta, Instant desde, Instant hasta, int tamanoPagina, long despuesDe) {
+        if (tamanoPagina < 1) {
+            throw new IllegalArgumentException("La pagina debe tener al menos un movimiento");
+        }
+        Recolector recolector;
+        Reciente reciente = recientes.get(cuenta);
+        while (true) {
+            // uno de mas para saber si hay otra pagina
+            recolector = new Recolector(cuenta, milisegundos(desde), milisegundos(hasta), despuesDe,
+                    tamanoPagina + 1);
+            if (reciente == null) {
+                recolectarDerrame(recolector);
+                break;
+            }
+            // los segmentos y bloques se recorren sin el anillo, que solo se toma para copiarlo: asi los movimientos
+            // de la cuenta no esperan a un extracto. Si entre medio salieron movimientos del anillo al bloque, el
+            // recorrido no los vio y se repite
+            long derramados = reciente.derramados;
+            recolectarDerrame(recolector);
+            synchronized (reciente) {
+                if (reciente.derramados == derramados) {
+                    reciente.recolectar(recolector);
+                    break;
+                }
+            }
+        }
+        List<MovimientoHistorial> movimientos = recolector.movimientos;
+        boolean hayMas = movimientos.size() > tamanoPagina;
+        if (hayMas) {
+            movimientos = new ArrayList<>(movimientos.subList(0, tamanoPagina));
+        }
+        return new PaginaExtracto(cuenta, desde, hasta, tamanoPagina, movimientos, hayMas);
+    }
+
+    // Instant.MIN e Instant.MAX no caben en milisegundos, se usan como limites abiertos
+    private static long milisegundos(Instant instante) {
+        if (instante.isBefore(Instant.EPOCH)) {
+            return Long.MIN_VALUE;
+        }
+        return instante.getEpochSecond() >= Long.MAX_VALUE / 1000 ? Long.MAX_VALUE : instante.toEpochMilli();
+    }
+
+    private void recolectarDerrame(Recolector recolector) {
+        derrame.readLock().lock();
+        try {
+            for (int i = 0; i < segmentos.size() && !recolector.terminado; i++) {
+                segmentos.get(i).recolectar(recolector);
+            }
+            for (Bloque escribiendose : enEscritura) {
+                escribiendose.recolectar(recolector);
+            }
+            bloque.recolectar(recolector);
+        } finally {
+            derrame.readLock().unlock();
+        }
+    }
+
+    /**
+     * Cantidad de segmentos escritos, incluidos los que estaban en el directorio al abrir.
+     */
+    public int getCantidadSegmentos() {
+        derrame.readLock().lock();
+        try {
+            return segmentos.size();
+        } finally {
+            derrame.readLock().unlock();
+        }
+    }
+
+    /**
+     * Escribe en segmentos todo lo que esta en memoria, incluidos los bloques que fallaron antes, y espera a que
+     * terminen de escribirse. Los extractos se pueden seguir pidiendo despues de cerrar; los movimientos que se avisen
+     * despues no quedan en el historial.
+     *
+     * @throws IOException si algun bloque no se pudo escribir o la escritura no termino en un minuto; lo que no se
+     *                     escribio sigue en memoria pero se pierde al reiniciar
+     */
+    @Override
+    public void close() throws IOException {
+        if (cerrado) {
+            return;
+        }
+        cerrado = true;
+        for (Reciente reciente : recientes.values()) {
+            synchronized (reciente) {
+                derramar(reciente, reciente.cantidad);
+            }
+        }
+        derrame.writeLock().lock();
+        try {
+            if (bloque.cantidad > 0) {
+                entregarBloque();
+            } else if (!enEscritura.isEmpty()) {
+                escritor.execute(this::escribirPendientes);
+            }
+        } finally {
+            derrame.writeLock().unlock();
+        }
+        escritor.shutdown();
+        try {
+            if (!escritor.awaitTermination(1, TimeUnit.MINUTES)) {
+                throw new IOException("Los segmentos del historial no terminaron de escribirse en un minuto");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrumpido esperando los segmentos del historial", e);
+        }
+        IOException fallo = falloSegmento;
+        if (fallo != null) {
+            throw new IOException("No se pudieron escribir todos los segmentos del historial", fallo);
+        }
+    }
+
+    private List<Path> existentes() throws IOException {
+        List<Path> rutas = new ArrayList<>();
+        try (DirectoryStream<Path> archivos = Files.newDirectoryStream(directorio, PREFIJO + "*" + EXTENSION)) {
+            archivos.forEach(rutas::add);
+        }
+        // el numero va con ceros a la izquierda, el orden alfabetico es el orden en que se escribieron
+        Collections.sort(rutas);
+        return rutas;
+    }
+
+    private static long numeroDe(Path ruta) {
+        String nombre = ruta.getFileName().toString();
+        return Long.parseLong(nombre.substring(PREFIJO.length(), nombre.length() - EXTENSION.length()));
+    }
+
+    // --- ObservadorMovimientos, se llaman con el monitor de la cuenta tomado
+
+    @Override
+    public void credito(Cuenta cuenta, long unidades, int escala) {
+        registrar(cuenta, MovimientoHistorial.Tipo.CREDITO, unidades, escala, 0);
+    }
+
+    @Override
+    public void debito(Cuenta cuenta, long unidades, int escala) {
+        registrar(cuenta, MovimientoHistorial.Tipo.DEBITO, unidades, escala, 0);
+    }
+
+    @Override
+    public void ajuste(Cuenta cuenta) {
+        registrar(cuenta, MovimientoHistorial.Tipo.AJUSTE, cuenta.getSaldoUnidades(), cuenta.getEscala(), 0);
+    }
+
+    @Override
+    public void reversion(Cuenta cuenta, long unidades, int escala) {
+        registrar(cuenta, MovimientoHistorial.Tipo.REVERSION, unidades, escala, 0);
+    }
+
+    @Override
+    public void transferencia(Cuenta origen, Cuenta destino, long unidades, int escala) {
+        transferencia(origen, destino, unidades, escala, unidades, escala);
+    }
+
+    @Override
+    public void transferencia(Cuenta origen, Cuenta destino, long unidades, int escala, long unidadesDestino,
+                              int escalaDestino) {
+        registrar(origen, MovimientoHistorial.Tipo.SALIDA, unidades, escala, destino.getId());
+        registrar(destino, MovimientoHistorial.Tipo.ENTRADA, unidadesDestino, escalaDestino, origen.getId());
+    }
+}
@@ -0,0 +1,192 @@
+package org.example.ejemplos.persistencia;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Currency;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Foto binaria del estado de todas las cuentas hasta una secuencia del {@link Diario}.
+ * <p>
+ * Formato: numero magico, version, secuencia, cantidad de cuentas y por cada cuenta id, clase, escala, unidades,
+ * titular en UTF-8 con su largo y el codigo ISO 4217 de la moneda, y al final un CRC32 de todo lo anterior. Se escribe
+ * a un archivo temporal, se fuerza a disco y se renombra, asi nunca queda una foto a medias con el nombre definitivo
+ * ({@code instantanea-<secuencia>.snap}). Si aun asi la mas nueva esta danada, {@link #leerUltima(Path)} usa la
+ * anterior, que el {@link Diario} conserva junto con los segmentos posteriores a ella.
+ */
+final class Instantanea {
+
+    private static final int MAGICO = 0x494E5354;
+    private static final int VERSION = 1;
+    private static final String PREFIJO = "instantanea-";
+    private static final String EXTENSION = ".snap";
+
+    private final long secuencia;
+    private final EstadoCuentas estado;
+
+    private Instantanea(long secuencia, EstadoCuentas estado) {
+        this.secuencia = secuencia;
+        this.estado = estado;
+    }
+
+    long getSecuencia() {
+        return secuencia;
+    }
+
+    EstadoCuentas getEstado() {
+        return estado;
+    }
+
+    /**
+     * Escribe la instantanea y vuelve cuando ya esta en disco con su nombre definitivo, recien entonces el diario
+     * puede borrar lo que ella cubre.
+     */
+    static Path escribir(Path directorio, long secuencia, EstadoCuentas estado) throws IOException {
+        Path temporal = directorio.resolve(PREFIJO + secuencia + ".tmp");
+        try (FileChannel canal = FileChannel.open(temporal, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            CheckedOutputStream suma = new CheckedOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(canal), 1 << 16), new CRC32());
+            DataOutputStream salida = new DataOutputStream(suma);
+            salida.writeInt(MAGICO);
+            salida.writeInt(VERSION);
+            salida.writeLong(secuencia);
+            salida.writeInt(estado.size());
+            for (EstadoCuentas.EstadoCuenta cuenta : estado.getCuentas()) {
+                salida.writeLong(cuenta.id);
+                salida.writeByte(cuenta.clase);
+                salida.writeByte(cuenta.escala);
+                salida.writeLong(cuenta.unidades);
+                byte[] persona = cuenta.persona.getBytes(StandardCharsets.UTF_8);
+                salida.writeShort(persona.length);
+                salida.write(persona);
+                salida.writeBytes(cuenta.moneda.getCurrencyCode());
+            }
+            salida.writeLong(suma.getChecksum().getValue());
+            salida.flush();
+            canal.force(true);
+        }
+        Path definitivo = ruta(directorio, secuencia);
+        Files.move(temporal, definitivo, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        sincronizarDirectorio(directorio);
+        return definitivo;
+    }
+
+    /**
+     * Fuerza a disco la entrada del directorio, sin esto el renombre puede perderse en una caida aunque el archivo
+     * ya este escrito.
+     */
+    private static void sincronizarDirectorio(Path directorio) throws IOException {
+        if (System.getProperty("os.name").startsWith("Windows")) {
+            // Windows no abre directorios como archivos, ahi el renombre queda en disco con el propio archivo
+            return;
+        }
+        try (FileChannel canal = FileChannel.open(directorio, StandardOpenOption.READ)) {
+            canal.force(true);
+        }
+    }
+
+    static Instantanea leer(Path archivo) throws IOException {
+        CheckedInputStream suma = new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(archivo), 1 << 16), new CRC32());
+        try (DataInputStream entrada = new DataInputStream(suma)) {
+            if (entrada.readInt() != MAGICO || entrada.readInt() != VERSION) {
+                throw new IOException("No es una instantanea valida: " + archivo);
+            }
+            long secuencia = entrada.readLong();
+            int cantidad = entrada.readInt();
+            if (cantidad < 0) {
+                throw new IOException("Instantanea danada: " + archivo);
+            }
+            EstadoCuentas estado = new EstadoCuentas();
+            byte[] persona = new byte[256];
+            byte[] codigoMoneda = new byte[3];
+            for (int i = 0; i < cantidad; i++) {
+                long id = entrada.readLong();
+                byte clase = entrada.readByte();
+                int escala = entrada.readByte();
+                long unidades = entrada.readLong();
+                int largo = entrada.readUnsignedShort();
+                if (largo > persona.length) {
+                    persona = new byte[largo];
+                }
+                entrada.readFully(persona, 0, largo);
+                entrada.readFully(codigoMoneda);
+                Currency moneda = moneda(codigoMoneda, archivo);
+                estado.apertura(id, new String(persona, 0, largo, StandardCharsets.UTF_8), clase, moneda, unidades,
+                        escala);
+            }
+            long esperado = suma.getChecksum().getValue();
+            if (entrada.readLong() != esperado) {
+                throw new IOException("Instantanea danada: " + archivo);
+            }
+            return new Instantanea(secuencia, estado);
+        }
+    }
+
+    private static Currency moneda(byte[] codigo, Path archivo) throws IOException {
+        try {
+            return Currency.getInstance(new String(codigo, StandardCharsets.US_ASCII));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Instantanea danada: " + archivo, e);
+        }
+    }
+
+    /**
+     * La instantanea valida mas reciente del directorio, o ninguna si no hay. Si la mas nueva no se puede leer se usa
+     * la anterior; solo falla si ninguna se puede leer.
+     */
+    static Instantanea leerUltima(Path directorio) throws IOException {
+        List<Path> existentes = existentes(directorio);
+        IOException error = null;
+        for (int i = existentes.size() - 1; i >= 0; i--) {
+            try {
+                return leer(existentes.get(i));
+            } catch (IOException e) {
+                if (error == null) {
+                    error = e;
+                } else {
+                    error.addSuppressed(e);
+                }
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+        return null;
+    }
+
+    static List<Path> existentes(Path directorio) throws IOException {
+        List<Path> archivos = new ArrayList<>();
+        try (DirectoryStream<Path> listado = Files.newDirectoryStream(directorio, PREFIJO + "*" + EXTENSION)) {
+            listado.forEach(archivos::add);
+        }
+        Collections.sort(archivos);
+        return archivos;
+    }
+
+    static long secuenciaDe(Path archivo) {
+        String nombre = archivo.getFileName().toString();
+        return Long.parseLong(nombre.substring(PREFIJO.length(), nombre.length() - EXTENSION.length()));
+    }
+
+    private static Path ruta(Path directorio, long secuencia) {
+        return directorio.resolve(String.format("%s%020d%s", PREFIJO, secuencia, EXTENSION));
+    }
+}
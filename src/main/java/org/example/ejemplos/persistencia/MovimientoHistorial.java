@@ -0,0 +1,90 @@
+package org.example.ejemplos.persistencia;
+
+import org.example.ejemplos.models.Dinero;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * Una linea del extracto de una cuenta, leida de {@link HistorialCuentas}.
+ */
+public class MovimientoHistorial {
+
+    public enum Tipo {
+        CREDITO,
+        DEBITO,
+        // transferencia recibida, la contraparte es el origen
+        ENTRADA,
+        // transferencia enviada, la contraparte es el destino
+        SALIDA,
+        // el saldo se fijo con setSaldo, el monto es el saldo nuevo
+        AJUSTE,
+        // se revirtio un debito, el monto volvio al saldo
+        REVERSION
+    }
+
+    private final long cuenta;
+    private final long secuencia;
+    private final long tiempo;
+    private final Tipo tipo;
+    private final long unidades;
+    private final int escala;
+    private final long contraparte;
+
+    MovimientoHistorial(long cuenta, long secuencia, long tiempo, Tipo tipo, long unidades, int escala,
+                        long contraparte) {
+        this.cuenta = cuenta;
+        this.secuencia = secuencia;
+        this.tiempo = tiempo;
+        this.tipo = tipo;
+        this.unidades = unidades;
+        this.escala = escala;
+        this.contraparte = contraparte;
+    }
+
+    public long getCuenta() {
+        return cuenta;
+    }
+
+    /**
+     * Orden del movimiento en el historial, creciente entre todas las cuentas.
+     */
+    public long getSecuencia() {
+        return secuencia;
+    }
+
+    public Instant getTiempo() {
+        return Instant.ofEpochMilli(tiempo);
+    }
+
+    public Tipo getTipo() {
+        return tipo;
+    }
+
+    public long getUnidades() {
+        return unidades;
+    }
+
+    public int getEscala() {
+        return escala;
+    }
+
+    /**
+     * Monto del movimiento, siempre positivo; el tipo dice si entro o salio.
+     */
+    public BigDecimal getMonto() {
+        return Dinero.aBigDecimal(unidades, escala);
+    }
+
+    /**
+     * Id de la otra cuenta en una transferencia, 0 en los demas movimientos.
+     */
+    public long getContraparte() {
+        return contraparte;
+    }
+
+    @Override
+    public String toString() {
+        return secuencia + " " + getTiempo() + " " + tipo + " " + getMonto() + (contraparte != 0 ? " " + contraparte : "");
+    }
+}
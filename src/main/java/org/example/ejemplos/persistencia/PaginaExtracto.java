@@ -0,0 +1,60 @@
+package org.example.ejemplos.persistencia;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Una pagina del extracto de una cuenta entre dos fechas, en orden cronologico. La pagina siguiente se pide con
+ * {@link HistorialCuentas#siguiente(PaginaExtracto)}, que sigue despues de la ultima secuencia de esta: no depende de
+ * cuantas lineas se saltaron y no cambia si mientras tanto se agregan movimientos.
+ */
+public class PaginaExtracto {
+    private final long cuenta;
+    private final Instant desde;
+    private final Instant hasta;
+    private final int tamano;
+    private final List<MovimientoHistorial> movimientos;
+    private final boolean hayMas;
+
+    PaginaExtracto(long cuenta, Instant desde, Instant hasta, int tamano, List<MovimientoHistorial> movimientos,
+                   boolean hayMas) {
+        this.cuenta = cuenta;
+        this.desde = desde;
+        this.hasta = hasta;
+        this.tamano = tamano;
+        this.movimientos = Collections.unmodifiableList(movimientos);
+        this.hayMas = hayMas;
+    }
+
+    public long getCuenta() {
+        return cuenta;
+    }
+
+    public Instant getDesde() {
+        return desde;
+    }
+
+    public Instant getHasta() {
+        return hasta;
+    }
+
+    public int getTamano() {
+        return tamano;
+    }
+
+    public List<MovimientoHistorial> getMovimientos() {
+        return movimientos;
+    }
+
+    public boolean isHayMas() {
+        return hayMas;
+    }
+
+    /**
+     * Secuencia del ultimo movimiento de la pagina, 0 si esta vacia.
+     */
+    public long getUltimaSecuencia() {
+        return movimientos.isEmpty() ? 0 : movimientos.get(movimientos.size() - 1).getSecuencia();
+    }
+}
@@ -0,0 +1,149 @@
+package org.example.ejemplos.persistencia;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import static org.example.ejemplos.persistencia.HistorialCuentas.CAMPOS;
+
+/**
+ * Archivo inmutable con movimientos de {@link HistorialCuentas} ordenados por cuenta y secuencia, mapeado en memoria
+ * de solo lectura. Los movimientos de una cuenta quedan contiguos y en orden cronologico, asi el extracto de una
+ * cuenta desde una fecha se encuentra con una busqueda binaria sin leer el resto del archivo ni copiarlo al heap.
+ */
+final class SegmentoHistorial {
+
+    private static final int MAGIA = 0x48495354;
+    private static final int VERSION = 1;
+    // magia, version, cantidad de registros y secuencia maxima
+    private static final int ENCABEZADO = 24;
+    private static final int TAMANO_REGISTRO = 48;
+
+    // posiciones de cada campo dentro del registro
+    private static final int CUENTA = 0;
+    private static final int SECUENCIA = 8;
+    private static final int TIEMPO = 16;
+    private static final int UNIDADES = 24;
+    private static final int CONTRAPARTE = 32;
+    private static final int TIPO_ESCALA = 40;
+
+    // registros que caben en un archivo mapeado de una vez
+    static final int CAPACIDAD_MAXIMA = (Integer.MAX_VALUE - ENCABEZADO) / TAMANO_REGISTRO;
+
+    private final MappedByteBuffer datos;
+    private final int cantidad;
+    private final long secuenciaMaxima;
+
+    private SegmentoHistorial(MappedByteBuffer datos, int cantidad, long secuenciaMaxima) {
+        this.datos = datos;
+        this.cantidad = cantidad;
+        this.secuenciaMaxima = secuenciaMaxima;
+    }
+
+    /**
+     * Ordena los movimientos de un bloque y los escribe en {@code ruta}. Se escribe a un temporal que se renombra al
+     * terminar, un segmento a medio escribir nunca queda con el nombre definitivo.
+     */
+    static SegmentoHistorial escribir(Path ruta, long[] movimientos, int cantidad) throws IOException {
+        Integer[] orden = new Integer[cantidad];
+        for (int i = 0; i < cantidad; i++) {
+            orden[i] = i * CAMPOS;
+        }
+        Arrays.sort(orden, Comparator.<Integer>comparingLong(i -> movimientos[i + HistorialCuentas.CUENTA])
+                .thenComparingLong(i -> movimientos[i + HistorialCuentas.SECUENCIA]));
+
+        Path temporal = ruta.resolveSibling(ruta.getFileName() + ".tmp");
+        long secuenciaMaxima = 0;
+        try (FileChannel canal = FileChannel.open(temporal, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer mapa = canal.map(FileChannel.MapMode.READ_WRITE, 0,
+                    ENCABEZADO + (long) cantidad * TAMANO_REGISTRO);
+            for (int i = 0; i < cantidad; i++) {
+                int base = ENCABEZADO + i * TAMANO_REGISTRO;
+                int j = orden[i];
+                mapa.putLong(base + CUENTA, movimientos[j + HistorialCuentas.CUENTA]);
+                mapa.putLong(base + SECUENCIA, movimientos[j + HistorialCuentas.SECUENCIA]);
+                mapa.putLong(base + TIEMPO, movimientos[j + HistorialCuentas.TIEMPO]);
+                mapa.putLong(base + UNIDADES, movimientos[j + HistorialCuentas.UNIDADES]);
+                mapa.putLong(base + CONTRAPARTE, movimientos[j + HistorialCuentas.CONTRAPARTE]);
+                mapa.putLong(base + TIPO_ESCALA, movimientos[j + HistorialCuentas.TIPO_ESCALA]);
+                secuenciaMaxima = Math.max(secuenciaMaxima, movimientos[j + HistorialCuentas.SECUENCIA]);
+            }
+            mapa.putInt(0, MAGIA);
+            mapa.putInt(4, VERSION);
+            mapa.putInt(8, cantidad);
+            mapa.putLong(12, secuenciaMaxima);
+            mapa.force();
+        }
+        Files.move(temporal, ruta, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return abrir(ruta);
+    }
+
+    static SegmentoHistorial abrir(Path ruta) throws IOException {
+        try (FileChannel canal = FileChannel.open(ruta, StandardOpenOption.READ)) {
+            if (canal.size() < ENCABEZADO) {
+                throw new IOException("Segmento de historial incompleto: " + ruta);
+            }
+            // el mapa sigue valido despues de cerrar el canal
+            MappedByteBuffer datos = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+            if (datos.getInt(0) != MAGIA || datos.getInt(4) != VERSION) {
+                throw new IOException("No es un segmento de historial: " + ruta);
+            }
+            int cantidad = datos.getInt(8);
+            if (ENCABEZADO + (long) cantidad * TAMANO_REGISTRO != canal.size()) {
+                throw new IOException("Segmento de historial incompleto: " + ruta);
+            }
+            return new SegmentoHistorial(datos, cantidad, datos.getLong(12));
+        }
+    }
+
+    int getCantidad() {
+        return cantidad;
+    }
+
+    long getSecuenciaMaxima() {
+        return secuenciaMaxima;
+    }
+
+    /**
+     * Entrega al recolector los movimientos de su cuenta desde su fecha y cursor, hasta que se llene.
+     */
+    void recolectar(HistorialCuentas.Recolector recolector) {
+        // primer registro que no va antes de lo buscado: de una cuenta mayor, o de la cuenta y ya dentro del rango
+        int bajo = 0;
+        int alto = cantidad;
+        while (bajo < alto) {
+            int medio = (bajo + alto) >>> 1;
+            if (antes(ENCABEZADO + medio * TAMANO_REGISTRO, recolector)) {
+                bajo = medio + 1;
+            } else {
+                alto = medio;
+            }
+        }
+        for (int i = bajo; i < cantidad && !recolector.terminado; i++) {
+            int base = ENCABEZADO + i * TAMANO_REGISTRO;
+            if (datos.getLong(base + CUENTA) != recolector.cuenta) {
+                return;
+            }
+            recolector.ofrecer(datos.getLong(base + SECUENCIA), datos.getLong(base + TIEMPO),
+                    datos.getLong(base + UNIDADES), datos.getLong(base + CONTRAPARTE),
+                    datos.getLong(base + TIPO_ESCALA));
+        }
+    }
+
+    // dentro de una cuenta secuencia y tiempo crecen juntos, la condicion es monotona y sirve para la busqueda binaria
+    private boolean antes(int base, HistorialCuentas.Recolector recolector) {
+        long cuenta = datos.getLong(base + CUENTA);
+        if (cuenta != recolector.cuenta) {
+            return cuenta < recolector.cuenta;
+        }
+        return datos.getLong(base + TIEMPO) < recolector.desde
+                || datos.getLong(base + SECUENCIA) <= recolector.despuesDe;
+    }
+}
@@ -0,0 +1,79 @@
+package org.example.ejemplos.servicios;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Cola acotada de varios productores y un consumidor sobre un arreglo circular, sin bloqueos (esquema de D. Vyukov).
+ * Cada casilla tiene un numero de secuencia que dice si esta libre para el productor de la vuelta {@code pos} o lista
+ * para el consumidor; los productores compiten solo por el contador {@code cola} y el consumidor no usa CAS.
+ */
+final class ColaMpsc<E> {
+
+    private final int mascara;
+    private final Object[] elementos;
+    private final AtomicLongArray secuencias;
+    private final AtomicLong cola = new AtomicLong();
+    // solo la toca el hilo consumidor
+    private long cabeza;
+
+    ColaMpsc(int capacidad) {
+        if (capacidad < 2 || Integer.bitCount(capacidad) != 1) {
+            throw new IllegalArgumentException("La capacidad debe ser potencia de dos: " + capacidad);
+        }
+        this.mascara = capacidad - 1;
+        this.elementos = new Object[capacidad];
+        this.secuencias = new AtomicLongArray(capacidad);
+        for (int i = 0; i < capacidad; i++) {
+            secuencias.set(i, i);
+        }
+    }
+
+    /**
+     * @return {@code false} si la cola esta llena
+     */
+    boolean ofrecer(E elemento) {
+        long pos = cola.get();
+        while (true) {
+            int i = (int) pos & mascara;
+            long diferencia = secuencias.get(i) - pos;
+            if (diferencia == 0) {
+                if (cola.compareAndSet(pos, pos + 1)) {
+                    elementos[i] = elemento;
+                    // escritura volatil y no solo release: el productor lee despues si el consumidor duerme y el
+                    // consumidor, despues de avisar que duerme, vuelve a leer la cola. Con release las dos lecturas
+                    // podrian adelantarse a las escrituras y el mensaje quedaria sin despertar al consumidor
+                    secuencias.set(i, pos + 1);
+                    return true;
+                }
+                pos = cola.get();
+            } else if (diferencia < 0) {
+                return false;
+            } else {
+                pos = cola.get();
+            }
+        }
+    }
+
+    /**
+     * Solo desde el hilo consumidor.
+     *
+     * @return {@code null} si no hay nada publicado
+     */
+    @SuppressWarnings("unchecked")
+    E tomar() {
+        int i = (int) cabeza & mascara;
+        if (secuencias.get(i) != cabeza + 1) {
+            return null;
+        }
+        E elemento = (E) elementos[i];
+        elementos[i] = null;
+        secuencias.setRelease(i, cabeza + mascara + 1);
+        cabeza++;
+        return elemento;
+    }
+
+    boolean isVacia() {
+        return secuencias.get((int) cabeza & mascara) != cabeza + 1;
+    }
+}
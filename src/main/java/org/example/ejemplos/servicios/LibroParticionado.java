@@ -0,0 +1,262 @@
+package org.example.ejemplos.servicios;
+
+import org.example.ejemplos.models.Banco;
+import org.example.ejemplos.models.Cuenta;
+import org.example.ejemplos.models.ResultadoDebito;
+import org.example.ejemplos.models.ResultadoTransferencia;
+import org.example.ejemplos.models.TablaCambio;
+import org.example.ejemplos.models.Transferencia;
+
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Modo de ejecucion de un {@link Banco} con un solo escritor por cuenta. Las cuentas se reparten por id en N
+ * particiones y cada particion tiene un hilo que aplica, uno tras otro, los mensajes de su {@link ColaMpsc}. Como
+ * una cuenta solo la modifica el hilo de su particion, su monitor nunca se disputa.
+ * <p>
+ * Una transferencia entre particiones se hace en dos pasos: la particion del origen debita y, si alcanza, manda el
+ * credito a la particion del destino. Si el debito no alcanza la transferencia termina ahi sin tocar el destino; si
+ * el credito falla (por ejemplo por desborde) se manda a la particion del origen una compensacion que revierte el
+ * debito con {@link Cuenta#revertirDebito(long, int)}, que tambien lo saca de los limites del origen. Entre los
+ * dos pasos el dinero esta en transito y la suma de saldos del banco es momentaneamente menor.
+ * <p>
+ * Mientras el libro este abierto las cuentas del banco no se deben modificar por otro camino. Los futuros se
+ * completan en los hilos de las particiones, las continuaciones pesadas deberian usar las variantes {@code *Async}.
+ */
+public class LibroParticionado implements AutoCloseable {
+
+    public static final int CAPACIDAD_COLA_POR_DEFECTO = 1 << 14;
+
+    private static final int VUELTAS_ANTES_DE_DORMIR = 1000;
+
+    private final Banco banco;
+    private final Particion[] particiones;
+    // transferencias aceptadas cuyo futuro todavia no se completa
+    private final AtomicLong enVuelo = new AtomicLong();
+    private volatile boolean cerrado;
+    private volatile boolean detenido;
+
+    public LibroParticionado(Banco banco, int cantidadParticiones) {
+        this(banco, cantidadParticiones, CAPACIDAD_COLA_POR_DEFECTO);
+    }
+
+    public LibroParticionado(Banco banco, int cantidadParticiones, int capacidadCola) {
+        if (cantidadParticiones <= 0) {
+            throw new IllegalArgumentException("cantidadParticiones debe ser positiva: " + cantidadParticiones);
+        }
+        this.banco = banco;
+        this.particiones = new Particion[cantidadParticiones];
+        for (int i = 0; i < cantidadParticiones; i++) {
+            particiones[i] = new Particion(i, capacidadCola);
+        }
+        for (Particion particion : particiones) {
+            particion.hilo.start();
+        }
+    }
+
+    public Banco getBanco() {
+        return banco;
+    }
+
+    public int getCantidadParticiones() {
+        return particiones.length;
+    }
+
+    int particionDe(long idCuenta) {
+        // mezcla el id para que ids consecutivos no caigan siempre en particiones vecinas
+        return Math.floorMod(Long.hashCode(idCuenta * 0x9E3779B97F4A7C15L), particiones.length);
+    }
+
+    public CompletableFuture<ResultadoTransferencia> trasnferir(Cuenta origen, Cuenta destino, BigDecimal monto) {
+        return trasnferir(new Transferencia(origen, destino, monto));
+    }
+
+    /**
+     * Encola el debito en la particion del origen. Si la cola esta llena espera a que haya lugar.
+     */
+    public CompletableFuture<ResultadoTransferencia> trasnferir(Transferencia transferencia) {
+        // se cuenta antes de mirar cerrado, asi close() espera a toda transferencia que paso el control
+        enVuelo.incrementAndGet();
+        if (cerrado) {
+            enVuelo.decrementAndGet();
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Libro cerrado"));
+        }
+        Mensaje mensaje = new Mensaje(Mensaje.DEBITO, transferencia, new CompletableFuture<>(), null);
+        Particion particion = particiones[particionDe(transferencia.getOrigen().getId())];
+        while (!particion.cola.ofrecer(mensaje)) {
+            Thread.onSpinWait();
+            Thread.yield();
+        }
+        particion.despertar();
+        return mensaje.resultado;
+    }
+
+    /**
+     * Deja de aceptar transferencias, espera a que las particiones vacien sus colas y detiene los hilos.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        cerrado = true;
+        while (enVuelo.get() > 0) {
+            Thread.sleep(1);
+        }
+        detenido = true;
+        for (Particion particion : particiones) {
+            particion.despertar();
+        }
+        for (Particion particion : particiones) {
+            particion.hilo.join();
+        }
+    }
+
+    private static final class Mensaje {
+        static final int DEBITO = 0;
+        static final int CREDITO = 1;
+        static final int COMPENSACION = 2;
+
+        final int tipo;
+        final Transferencia transferencia;
+        final CompletableFuture<ResultadoTransferencia> resultado;
+        // para la compensacion, el error del credito con que se completa el resultado
+        final RuntimeException error;
+
+        Mensaje(int tipo, Transferencia transferencia, CompletableFuture<ResultadoTransferencia> resultado,
+                RuntimeException error) {
+            this.tipo = tipo;
+            this.transferencia = transferencia;
+            this.resultado = resultado;
+            this.error = error;
+        }
+    }
+
+    private final class Particion implements Runnable {
+        private final ColaMpsc<Mensaje> cola;
+        private final Thread hilo;
+        // mensajes para otras particiones que no cupieron en su cola; si el hilo esperara ahi, dos particiones
+        // llenas que se mandan creditos podrian quedar esperandose para siempre
+        private final ArrayDeque<Mensaje> salientes = new ArrayDeque<>();
+        private final ArrayDeque<Particion> destinosSalientes = new ArrayDeque<>();
+        private volatile boolean durmiendo;
+
+        Particion(int numero, int capacidadCola) {
+            this.cola = new ColaMpsc<>(capacidadCola);
+            this.hilo = new Thread(this, "particion-" + numero);
+            this.hilo.setDaemon(true);
+        }
+
+        void despertar() {
+            if (durmiendo) {
+                LockSupport.unpark(hilo);
+            }
+        }
+
+        @Override
+        public void run() {
+            int vacias = 0;
+            while (true) {
+                reintentarSalientes();
+                Mensaje mensaje = cola.tomar();
+                if (mensaje != null) {
+                    vacias = 0;
+                    aplicar(mensaje);
+                    continue;
+                }
+                if (detenido) {
+                    return;
+                }
+                if (++vacias < VUELTAS_ANTES_DE_DORMIR) {
+                    Thread.onSpinWait();
+                    continue;
+                }
+                durmiendo = true;
+                // se vuelve a mirar la cola despues de avisar, asi no se pierde un mensaje publicado justo antes
+                if (cola.isVacia() && salientes.isEmpty()) {
+                    LockSupport.parkNanos(this, 100_000_000L);
+                }
+                durmiendo = false;
+                vacias = 0;
+            }
+        }
+
+        private void aplicar(Mensaje mensaje) {
+            Transferencia t = mensaje.transferencia;
+            switch (mensaje.tipo) {
+                case Mensaje.DEBITO:
+                    ResultadoDebito debito = t.getOrigen().tryDebito(t.getUnidades(), t.getEscala());
+                    if (!debito.isExitoso()) {
+                        completar(mensaje, ResultadoTransferencia.fallida(debito.excepcion()));
+                        return;
+                    }
+                    Particion destino = particiones[particionDe(t.getDestino().getId())];
+                    if (destino == this) {
+                        acreditar(mensaje);
+                    } else {
+                        enviar(destino, new Mensaje(Mensaje.CREDITO, t, mensaje.resultado, null));
+                    }
+                    return;
+                case Mensaje.CREDITO:
+                    acreditar(mensaje);
+                    return;
+                default:
+                    t.getOrigen().revertirDebito(t.getUnidades(), t.getEscala());
+                    completar(mensaje, ResultadoTransferencia.fallida(mensaje.error));
+            }
+        }
+
+        private void completar(Mensaje mensaje, ResultadoTransferencia resultado) {
+            enVuelo.decrementAndGet();
+            mensaje.resultado.complete(resultado);
+        }
+
+        private void acreditar(Mensaje mensaje) {
+            Transferencia t = mensaje.transferencia;
+            try {
+                Cuenta destino = t.getDestino();
+                if (t.getOrigen().getMoneda() == destino.getMoneda()) {
+                    destino.credito(t.getUnidades(), t.getEscala());
+                } else {
+                    // se convierte con la tabla vigente al acreditar, una tasa que falta termina en compensacion
+                    int escala = TablaCambio.escalaEn(destino.getMoneda(), t.getEscala());
+                    destino.credito(banco.getTablaCambio().convertir(t.getOrigen().getMoneda(), destino.getMoneda(),
+                            t.getUnidades(), t.getEscala(), escala), escala);
+                }
+                completar(mensaje, ResultadoTransferencia.EXITOSA);
+            } catch (RuntimeException e) {
+                Particion origen = particiones[particionDe(t.getOrigen().getId())];
+                // el futuro se completa cuando el monto ya volvio al origen
+                Mensaje compensacion = new Mensaje(Mensaje.COMPENSACION, t, mensaje.resultado, e);
+                if (origen == this) {
+                    aplicar(compensacion);
+                } else {
+                    enviar(origen, compensacion);
+                }
+            }
+        }
+
+        private void enviar(Particion destino, Mensaje mensaje) {
+            if (salientes.isEmpty() && destino.cola.ofrecer(mensaje)) {
+                destino.despertar();
+                return;
+            }
+            salientes.addLast(mensaje);
+            destinosSalientes.addLast(destino);
+        }
+
+        private void reintentarSalientes() {
+            while (!salientes.isEmpty()) {
+                Particion destino = destinosSalientes.peekFirst();
+                if (!destino.cola.ofrecer(salientes.peekFirst())) {
+                    return;
+                }
+                salientes.pollFirst();
+                destinosSalientes.pollFirst();
+                destino.despertar();
+            }
+        }
+    }
+}
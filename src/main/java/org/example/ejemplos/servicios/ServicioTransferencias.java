@@ -0,0 +1,168 @@
+package org.example.ejemplos.servicios;
+
+import org.example.ejemplos.models.Banco;
+import org.example.ejemplos.models.Cuenta;
+import org.example.ejemplos.models.ResultadoTransferencia;
+import org.example.ejemplos.models.Transferencia;
+
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ejecuta transferencias de un {@link Banco} fuera del hilo que las pide y entrega el resultado en un
+ * {@link CompletableFuture}.
+ * <p>
+ * Garantias:
+ * <ul>
+ *     <li>Las transferencias que tocan una misma cuenta se aplican en el orden en que se enviaron: cada una queda
+ *     encadenada a la ultima pendiente de su origen y de su destino. Las que no comparten cuentas corren en
+ *     paralelo.</li>
+ *     <li>A lo mas {@code maxEnVuelo} transferencias pendientes; al llegar al limite {@link #trasnferir} bloquea al
+ *     que llama hasta que alguna termine.</li>
+ * </ul>
+ * Los errores del banco (por ejemplo {@link org.example.ejemplos.exceptions.DineroInsuficienteException}) no
+ * completan el futuro con excepcion, quedan en el {@link ResultadoTransferencia} como en
+ * {@link Banco#trasnferirLote(java.util.Collection)}.
+ */
+public class ServicioTransferencias implements AutoCloseable {
+
+    public static final int MAX_EN_VUELO_POR_DEFECTO = 10_000;
+
+    private static final CompletableFuture<Void> COMPLETADA = CompletableFuture.completedFuture(null);
+
+    private final Banco banco;
+    private final Executor ejecutor;
+    private final boolean ejecutorPropio;
+    private final int maxEnVuelo;
+    private final Semaphore permisos;
+    // ultima transferencia pendiente de cada cuenta, por id
+    private final Map<Long, CompletableFuture<Void>> colas = new HashMap<>();
+    private volatile boolean cerrado;
+
+    /**
+     * Usa {@link #ejecutorPorDefecto()}, que se cierra junto con el servicio.
+     */
+    public ServicioTransferencias(Banco banco) {
+        this(banco, ejecutorPorDefecto(), true, MAX_EN_VUELO_POR_DEFECTO);
+    }
+
+    /**
+     * @param ejecutor donde se aplican las transferencias, no se cierra con el servicio
+     */
+    public ServicioTransferencias(Banco banco, Executor ejecutor, int maxEnVuelo) {
+        this(banco, ejecutor, false, maxEnVuelo);
+    }
+
+    private ServicioTransferencias(Banco banco, Executor ejecutor, boolean ejecutorPropio, int maxEnVuelo) {
+        if (maxEnVuelo <= 0) {
+            throw new IllegalArgumentException("maxEnVuelo debe ser positivo: " + maxEnVuelo);
+        }
+        this.banco = banco;
+        this.ejecutor = ejecutor;
+        this.ejecutorPropio = ejecutorPropio;
+        this.maxEnVuelo = maxEnVuelo;
+        this.permisos = new Semaphore(maxEnVuelo);
+    }
+
+    /**
+     * Un hilo virtual por tarea si el JDK los tiene (21 o superior); si no, un pool fijo de hilos daemon. Como las
+     * transferencias pueden quedar esperando al disco (ver {@link org.example.ejemplos.persistencia.Diario}) el pool
+     * tiene varios hilos por procesador.
+     */
+    public static ExecutorService ejecutorPorDefecto() {
+        try {
+            Method virtuales = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) virtuales.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() * 4, tarea -> {
+                Thread hilo = new Thread(tarea, "transferencias");
+                hilo.setDaemon(true);
+                return hilo;
+            });
+        }
+    }
+
+    public CompletableFuture<ResultadoTransferencia> trasnferir(Cuenta origen, Cuenta destino, BigDecimal monto) {
+        return trasnferir(new Transferencia(origen, destino, monto));
+    }
+
+    public CompletableFuture<ResultadoTransferencia> trasnferir(Transferencia transferencia) {
+        if (cerrado) {
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Servicio cerrado"));
+        }
+        try {
+            permisos.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        }
+        long idOrigen = transferencia.getOrigen().getId();
+        long idDestino = transferencia.getDestino().getId();
+        CompletableFuture<Void> fin = new CompletableFuture<>();
+        CompletableFuture<Void> anterior;
+        // el encadenamiento de las dos cuentas tiene que ser atomico, si no dos transferencias A->B y B->A podrian
+        // quedar esperando una a la otra
+        synchronized (colas) {
+            CompletableFuture<Void> anteriorOrigen = colas.put(idOrigen, fin);
+            CompletableFuture<Void> anteriorDestino = idDestino == idOrigen ? null : colas.put(idDestino, fin);
+            if (anteriorOrigen == null) {
+                anterior = anteriorDestino == null ? COMPLETADA : anteriorDestino;
+            } else {
+                anterior = anteriorDestino == null ? anteriorOrigen : CompletableFuture.allOf(anteriorOrigen, anteriorDestino);
+            }
+        }
+
+        CompletableFuture<ResultadoTransferencia> resultado;
+        try {
+            resultado = anterior.thenApplyAsync(v -> aplicar(transferencia), ejecutor);
+        } catch (RejectedExecutionException e) {
+            resultado = CompletableFuture.failedFuture(e);
+        }
+        resultado.whenComplete((r, e) -> {
+            synchronized (colas) {
+                colas.remove(idOrigen, fin);
+                colas.remove(idDestino, fin);
+            }
+            permisos.release();
+            fin.complete(null);
+        });
+        return resultado;
+    }
+
+    private ResultadoTransferencia aplicar(Transferencia t) {
+        try {
+            banco.trasnferir(t);
+            return ResultadoTransferencia.EXITOSA;
+        } catch (RuntimeException e) {
+            return ResultadoTransferencia.fallida(e);
+        }
+    }
+
+    public int getEnVuelo() {
+        return maxEnVuelo - permisos.availablePermits();
+    }
+
+    /**
+     * Rechaza transferencias nuevas, espera a que terminen las pendientes y cierra el ejecutor si es propio.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        cerrado = true;
+        permisos.acquire(maxEnVuelo);
+        permisos.release(maxEnVuelo);
+        if (ejecutorPropio) {
+            ExecutorService servicio = (ExecutorService) ejecutor;
+            servicio.shutdown();
+            servicio.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package org.example.ejemplos.eventos;
+
+import org.example.ejemplos.exceptions.DineroInsuficienteException;
+import org.example.ejemplos.models.Banco;
+import org.example.ejemplos.models.Cuenta;
+import org.example.ejemplos.models.CuentaAtomica;
+import org.example.ejemplos.models.TablaCambio;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PublicadorEventosTest {
+
+    /**
+     * Guarda cada evento como texto, en el orden en que llegan.
+     */
+    private static final class Registro implements SuscriptorEventos {
+        final List<String> eventos = new ArrayList<>();
+        long ultimaSecuencia = -1;
+        boolean enOrden = true;
+
+        @Override
+        public void procesar(LoteEventos lote) {
+            for (int i = 0; i < lote.getCantidad(); i++) {
+                EventoSaldo evento = lote.get(i);
+                enOrden &= evento.getSecuencia() > ultimaSecuencia;
+                ultimaSecuencia = evento.getSecuencia();
+                eventos.add(evento.getTipo() + " " + evento.getMonto().toPlainString()
+                        + (evento.getDestino() != 0 ? " " + evento.getUnidadesDestino() : ""));
+            }
+        }
+    }
+
+    @Test
+    void testEntregaCadaCambioEnOrden() {
+        Banco banco = new Banco("Banco De Chile");
+        banco.setTablaCambio(TablaCambio.VACIA
+                .conTasa(Cuenta.MONEDA_POR_DEFECTO, Currency.getInstance("USD"), new BigDecimal("0.001")));
+        PublicadorEventos publicador = new PublicadorEventos(16);
+        banco.agregarObservador(publicador);
+        Registro registro = new Registro();
+        Suscripcion suscripcion = publicador.suscribir("registro", registro, PoliticaLleno.ESPERAR, 3);
+
+        Cuenta cuenta1 = new Cuenta("kan doe", new BigDecimal("1000"));
+        Cuenta cuenta2 = new CuentaAtomica("Chulin Doe", 0L, 2, Currency.getInstance("USD"));
+        banco.addCuentas(cuenta1);
+        banco.addCuentas(cuenta2);
+        cuenta1.credito(new BigDecimal("50.5"));
+        cuenta1.debito(new BigDecimal("0.5"));
+        banco.trasnferir(cuenta1, cuenta2, new BigDecimal("1000"));
+        cuenta1.setSaldo(new BigDecimal("7"));
+        banco.removeCuenta("kan doe");
+        publicador.close();
+
+        assertEquals(List.of(
+                "APERTURA 1000",
+                "APERTURA 0.00",
+                "CREDITO 50.5",
+                "DEBITO 0.5",
+                "TRANSFERENCIA 1000 100",
+                "AJUSTE 7",
+                "CIERRE 7"), registro.eventos);
+        assertTrue(registro.enOrden);
+        assertEquals(7, suscripcion.getEntregados());
+        assertTrue(suscripcion.getLotes() >= 3);
+        assertEquals(0, suscripcion.getPendientes());
+        // cerrado ya no publica
+        cuenta2.credito(new BigDecimal("1"));
+        assertEquals(7, publicador.getPublicados());
+    }
+
+    @Test
+    void testSuscriptorLentoSeDesconectaSinFrenarAlBanco() throws InterruptedException {
+        Banco banco = new Banco("Banco De Chile");
+        PublicadorEventos publicador = new PublicadorEventos(16);
+        banco.agregarObservador(publicador);
+        Cuenta cuenta = new Cuenta("kan doe", new BigDecimal("0"));
+        banco.addCuentas(cuenta);
+
+        CountDownLatch bloqueado = new CountDownLatch(1);
+        CountDownLatch desconectado = new CountDownLatch(1);
+        Suscripcion lenta = publicador.suscribir("lenta", new SuscriptorEventos() {
+            @Override
+            public void procesar(LoteEventos lote) {
+                try {
+                    bloqueado.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            @Override
+            public void alDesconectar() {
+                desconectado.countDown();
+            }
+        }, PoliticaLleno.DESCONECTAR, 1);
+        Registro registro = new Registro();
+        Suscripcion rapida = publicador.suscribir("rapida", registro, PoliticaLleno.ESPERAR);
+
+        for (int i = 0; i < 1_000; i++) {
+            cuenta.credito(1L, 0);
+        }
+        assertTrue(lenta.isDesconectada());
+        assertEquals(1, publicador.getSuscripciones().size());
+        bloqueado.countDown();
+        assertTrue(desconectado.await(10, TimeUnit.SECONDS));
+
+        publicador.close();
+        assertEquals(1_000, rapida.getEntregados());
+        assertEquals(1_000, registro.eventos.size());
+        assertFalse(rapida.isDesconectada());
+    }
+
+    @Test
+    void testSuscriptorCaidoOTrabadoNoDetieneAlBanco() throws InterruptedException {
+        PublicadorEventos publicador = new PublicadorEventos(4, Duration.ofMillis(50));
+        Banco banco = new Banco("Banco De Chile");
+        banco.agregarObservador(publicador);
+        Cuenta cuenta = new Cuenta("kan doe", new BigDecimal("0"));
+        banco.addCuentas(cuenta);
+        // un Error mata el hilo de la suscripcion, que deja de contar para el anillo
+        Suscripcion caida = publicador.suscribir("caida", lote -> {
+            throw new StackOverflowError();
+        }, PoliticaLleno.ESPERAR, 1);
+        CountDownLatch bloqueado = new CountDownLatch(1);
+        Suscripcion trabada = publicador.suscribir("trabada", lote -> {
+            try {
+                bloqueado.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, PoliticaLleno.ESPERAR, 1);
+
+        Thread creditos = new Thread(() -> {
+            for (int i = 0; i < 100; i++) {
+                cuenta.credito(1L, 0);
+            }
+        });
+        creditos.start();
+        // la trabada se desconecta al pasar la espera maxima
+        creditos.join(10_000);
+        assertFalse(creditos.isAlive());
+        assertEquals(100, cuenta.getSaldoUnidades());
+        caida.esperarFin();
+        assertTrue(trabada.isDesconectada());
+        assertTrue(publicador.getSuscripciones().isEmpty());
+        bloqueado.countDown();
+        trabada.esperarFin();
+        publicador.close();
+    }
+
+    @Test
+    void testCancelarLiberaAlPublicador() throws InterruptedException {
+        PublicadorEventos publicador = new PublicadorEventos(4);
+        Banco banco = new Banco("Banco De Chile");
+        banco.agregarObservador(publicador);
+        Cuenta cuenta = new Cuenta("kan doe", new BigDecimal("0"));
+        banco.addCuentas(cuenta);
+        CountDownLatch bloqueado = new CountDownLatch(1);
+        Suscripcion suscripcion = publicador.suscribir("bloqueada", lote -> {
+            try {
+                bloqueado.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, PoliticaLleno.ESPERAR, 1);
+
+        Thread creditos = new Thread(() -> {
+            for (int i = 0; i < 100; i++) {
+                cuenta.credito(1L, 0);
+            }
+        });
+        creditos.start();
+        // el anillo se llena y los creditos esperan a la suscripcion
+        creditos.join(200);
+        assertTrue(creditos.isAlive());
+        assertTrue(publicador.getPublicados() <= 4 + 2);
+
+        suscripcion.cancelar();
+        creditos.join(10_000);
+        assertFalse(creditos.isAlive());
+        bloqueado.countDown();
+        suscripcion.esperarFin();
+        assertEquals(100, cuenta.getSaldoUnidades());
+        publicador.close();
+    }
+
+    @Test
+    @Tag("concurrencia")
+    void testReproducirLosEventosDaLosSaldos(TestReporter reporter) throws InterruptedException {
+        Banco banco = new Banco("Banco De Chile");
+        PublicadorEventos publicador = new PublicadorEventos(64);
+        banco.agregarObservador(publicador);
+        Map<Long, Long> saldos = new HashMap<>();
+        boolean[] negativo = {false};
+        Suscripcion suscripcion = publicador.suscribir("saldos", lote -> {
+            for (int i = 0; i < lote.getCantidad(); i++) {
+                EventoSaldo evento = lote.get(i);
+                switch (evento.getTipo()) {
+                    case APERTURA:
+                        saldos.put(evento.getCuenta(), evento.getUnidades());
+                        break;
+                    case CREDITO:
+                        saldos.merge(evento.getCuenta(), evento.getUnidades(), Long::sum);
+                        break;
+                    case TRANSFERENCIA:
+                        saldos.merge(evento.getDestino(), evento.getUnidadesDestino(), Long::sum);
+                        // en orden por cuenta, un origen reproducido nunca queda en negativo
+                        negativo[0] |= saldos.merge(evento.getCuenta(), -evento.getUnidades(), Long::sum) < 0;
+                        break;
+                    default:
+                        fail("Evento inesperado " + evento);
+                }
+            }
+        }, PoliticaLleno.ESPERAR, 16);
+
+        int cantidad = 16;
+        List<Cuenta> cuentas = new ArrayList<>();
+        for (int i = 0; i < cantidad; i++) {
+            Cuenta cuenta = new Cuenta("persona " + i, 1_000L, 0);
+            cuentas.add(cuenta);
+            banco.addCuentas(cuenta);
+        }
+        List<Thread> hilos = new ArrayList<>();
+        for (int h = 0; h < 4; h++) {
+            long semilla = h;
+            Thread hilo = new Thread(() -> {
+                Random random = new Random(semilla);
+                for (int i = 0; i < 20_000; i++) {
+                    Cuenta origen = cuentas.get(random.nextInt(cantidad));
+                    Cuenta destino = cuentas.get(random.nextInt(cantidad));
+                    try {
+                        if (i % 10 == 0) {
+                            destino.credito(1L, 0);
+                        } else {
+                            banco.trasnferir(origen, destino, random.nextInt(300), 0);
+                        }
+                    } catch (DineroInsuficienteException e) {
+                        // sin evento
+                    }
+                }
+            });
+            hilo.start();
+            hilos.add(hilo);
+        }
+        for (Thread hilo : hilos) {
+            hilo.join();
+        }
+        publicador.close();
+
+        assertFalse(negativo[0]);
+        for (Cuenta cuenta : cuentas) {
+            assertEquals(cuenta.getSaldoUnidades(), saldos.get(cuenta.getId()), cuenta.getPersona());
+        }
+        assertEquals(publicador.getPublicados(), suscripcion.getEntregados());
+        reporter.publishEntry("eventos", suscripcion.toString());
+    }
+}
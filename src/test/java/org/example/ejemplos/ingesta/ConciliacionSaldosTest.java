@@ -0,0 +1,168 @@
+package org.example.ejemplos.ingesta;
+
+import org.example.ejemplos.models.Banco;
+import org.example.ejemplos.models.Cuenta;
+import org.example.ejemplos.models.CuentaAtomica;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConciliacionSaldosTest {
+
+    @TempDir
+    Path directorio;
+
+    private static List<String> resumir(List<Diferencia> diferencias) {
+        List<String> resumen = new ArrayList<>();
+        for (Diferencia diferencia : diferencias) {
+            resumen.add(diferencia.getTipo() + " " + diferencia.getPersona() + " " + diferencia.getEsperado() + " "
+                    + diferencia.getActual());
+        }
+        Collections.sort(resumen);
+        return resumen;
+    }
+
+    @Test
+    void testEncuentraDiferencias() throws Exception {
+        Banco banco = new Banco("Banco De Chile");
+        banco.addCuentas(new Cuenta("kan doe", new BigDecimal("1000.232")));
+        banco.addCuentas(new Cuenta("Chulin Doe", new BigDecimal("10")));
+        banco.addCuentas(new CuentaAtomica("Doe, John", new BigDecimal("5.00")));
+        banco.addCuentas(new Cuenta("sin linea", new BigDecimal("1")));
+        banco.addCuentas(new Cuenta("repetida", new BigDecimal("7")));
+
+        Path archivo = directorio.resolve("saldos.csv");
+        Files.write(archivo, Arrays.asList(
+                "kan doe,1000.2320",
+                "Chulin Doe,10.5\r",
+                "",
+                "Doe, John,5",
+                "no existe,3",
+                "repetida,7",
+                "repetida,8",
+                "sin saldo,",
+                "kan doe 2,1.2.3"), StandardCharsets.UTF_8);
+
+        List<Diferencia> diferencias = new ArrayList<>();
+        // bloques chicos y varios hilos, casi todas las lineas quedan cortadas entre dos tramos o dos bloques
+        ResumenConciliacion resumen = new ConciliacionSaldos(banco, 32, new ForkJoinPool(4))
+                .conciliar(archivo, diferencias::add);
+
+        assertEquals(8, resumen.getLineas());
+        assertEquals(3, resumen.getCoincidentes());
+        assertEquals(6, resumen.getDiferencias());
+        assertEquals(Arrays.asList(
+                "CUENTA_INEXISTENTE no existe 3 null",
+                "DUPLICADA repetida 8 7",
+                "FALTA_EN_ARCHIVO sin linea null 1",
+                "LINEA_INVALIDA kan doe 2,1.2.3 null null",
+                "LINEA_INVALIDA sin saldo, null null",
+                "SALDO_DISTINTO Chulin Doe 10.5 10"), resumir(diferencias));
+    }
+
+    @Test
+    void testMismoResultadoConCualquierDivision() throws Exception {
+        Banco banco = new Banco("Banco De Chile");
+        Random random = new Random(19);
+        Path archivo = directorio.resolve("saldos.csv");
+        try (BufferedWriter salida = Files.newBufferedWriter(archivo, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < 5_000; i++) {
+                long saldo = random.nextInt(1_000_000);
+                banco.addCuentas(new Cuenta("persona " + i, saldo, 2));
+                if (random.nextInt(50) == 0) {
+                    continue;
+                }
+                long esperado = random.nextInt(100) == 0 ? saldo + 1 : saldo;
+                salida.write("persona " + i + "," + BigDecimal.valueOf(esperado, 2).toPlainString()
+                        + (random.nextBoolean() ? "\n" : "\r\n"));
+            }
+        }
+
+        List<String> referencia = null;
+        for (int tamanoBuffer : new int[]{32, 100, 4096, ConciliacionSaldos.TAMANO_BUFFER_POR_DEFECTO}) {
+            for (int hilos : new int[]{1, 3}) {
+                List<Diferencia> diferencias = new ArrayList<>();
+                ResumenConciliacion resumen = new ConciliacionSaldos(banco, tamanoBuffer, new ForkJoinPool(hilos))
+                        .conciliar(archivo, diferencias::add);
+                assertEquals(5_000, resumen.getCoincidentes() + resumen.getDiferencias());
+                List<String> obtenidas = resumir(diferencias);
+                if (referencia == null) {
+                    referencia = obtenidas;
+                    assertFalse(referencia.isEmpty());
+                } else {
+                    assertEquals(referencia, obtenidas, "buffer " + tamanoBuffer + ", hilos " + hilos);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testIdsMuyDistantes() throws Exception {
+        // ids restaurados de otro sistema, un bit por id entre el menor y el mayor serian 1 GB
+        Banco banco = new Banco("Banco De Chile");
+        banco.addCuentas(new Cuenta(1L, "primera", 100, 2));
+        banco.addCuentas(new Cuenta(1L << 32, "segunda", 200, 2));
+        banco.addCuentas(new Cuenta(1L << 33, "tercera", 300, 2));
+
+        Path archivo = directorio.resolve("saldos.csv");
+        Files.write(archivo, Arrays.asList("primera,1", "tercera,3.5"), StandardCharsets.UTF_8);
+
+        List<Diferencia> diferencias = new ArrayList<>();
+        ResumenConciliacion resumen = new ConciliacionSaldos(banco).conciliar(archivo, diferencias::add);
+
+        assertEquals(1, resumen.getCoincidentes());
+        assertEquals(Arrays.asList(
+                "FALTA_EN_ARCHIVO segunda null 2.00",
+                "SALDO_DISTINTO tercera 3.5 3.00"), resumir(diferencias));
+    }
+
+    @Test
+    void testLineaMasLargaQueElBloque() throws Exception {
+        Banco banco = new Banco("Banco De Chile");
+        Path archivo = directorio.resolve("saldos.csv");
+        Files.write(archivo, Collections.singletonList("una persona con un nombre muy largo,1"),
+                StandardCharsets.UTF_8);
+        assertThrows(IOException.class,
+                () -> new ConciliacionSaldos(banco, 16, ForkJoinPool.commonPool()).conciliar(archivo, d -> {
+                }));
+    }
+
+    @Test
+    @Tag("rendimiento")
+    void testRendimientoConciliacion(TestReporter reporter) throws Exception {
+        Banco banco = new Banco("Banco De Chile");
+        int cuentas = 1_000_000;
+        Path archivo = directorio.resolve("saldos.csv");
+        try (BufferedWriter salida = Files.newBufferedWriter(archivo, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < cuentas; i++) {
+                banco.addCuentas(new Cuenta("persona " + i, 100_000L + i, 2));
+                salida.write("persona " + i + "," + BigDecimal.valueOf(100_000L + i + (i % 1000 == 0 ? 1 : 0), 2)
+                        + "\n");
+            }
+        }
+
+        LongAdder diferencias = new LongAdder();
+        ResumenConciliacion resumen = new ConciliacionSaldos(banco).conciliar(archivo, d -> diferencias.increment());
+
+        reporter.publishEntry("conciliacion", resumen.toString());
+        assertEquals(cuentas, resumen.getLineas());
+        assertEquals(cuentas / 1000, diferencias.sum());
+    }
+}
@@ -0,0 +1,113 @@
+package org.example.ejemplos.ingesta;
+
+import org.example.ejemplos.models.Banco;
+import org.example.ejemplos.models.Cuenta;
+import org.example.ejemplos.models.LimitesDebito;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedWriter;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IngestaLiquidacionesTest {
+
+    @TempDir
+    Path directorio;
+
+    @Test
+    void testAplicaCreditosDebitosYRechazos() throws Exception {
+        Banco banco = new Banco("Banco De Chile");
+        Cuenta cuenta = new Cuenta("kan doe", new BigDecimal("1000.232"));
+        Cuenta cuenta2 = new Cuenta("Chulin Doe", new BigDecimal("10"));
+        banco.addCuentas(cuenta);
+        banco.addCuentas(cuenta2);
+
+        Path archivo = directorio.resolve("liquidacion.csv");
+        Files.write(archivo, Arrays.asList(
+                cuenta.getId() + ",100",
+                cuenta.getId() + ",-200.232",
+                cuenta2.getId() + ",-10.5",
+                cuenta2.getId() + ",+0.25\r",
+                "",
+                "999999999,5",
+                "abc,5",
+                cuenta.getId() + ",1.2.3",
+                cuenta.getId() + ",99999999999999999999",
+                cuenta2.getId() + ",-10.25"), StandardCharsets.UTF_8);
+        Path rechazos = directorio.resolve("rechazos.csv");
+
+        // buffer chico para que varias lineas queden cortadas entre dos bloques
+        ResumenIngesta resumen = new IngestaLiquidaciones(banco, 32).procesar(archivo, rechazos);
+
+        assertEquals(9, resumen.getLineas());
+        assertEquals(4, resumen.getAplicadas());
+        assertEquals(5, resumen.getRechazadas());
+        assertEquals("900.000", cuenta.getSaldo().toPlainString());
+        assertEquals("0.00", cuenta2.getSaldo().toPlainString());
+
+        List<String> lineasRechazadas = Files.readAllLines(rechazos, StandardCharsets.UTF_8);
+        assertEquals(Arrays.asList(
+                cuenta2.getId() + ",-10.5,Dinero insuficiente",
+                "999999999,5,Cuenta inexistente",
+                "abc,5,Linea invalida",
+                cuenta.getId() + ",1.2.3,Linea invalida",
+                cuenta.getId() + ",99999999999999999999,Monto fuera de rango"), lineasRechazadas);
+    }
+
+    @Test
+    void testRechazoPorLimite() throws Exception {
+        Banco banco = new Banco("Banco De Chile");
+        Cuenta cuenta = new Cuenta("kan doe", new BigDecimal("1000"));
+        banco.addCuentas(cuenta);
+        cuenta.setLimites(LimitesDebito.NINGUNO.conLimite(Duration.ofHours(1), new BigDecimal("100")));
+
+        Path archivo = directorio.resolve("liquidacion.csv");
+        Files.write(archivo, Arrays.asList(cuenta.getId() + ",-80", cuenta.getId() + ",-30",
+                cuenta.getId() + ",-2000"), StandardCharsets.UTF_8);
+        Path rechazos = directorio.resolve("rechazos.csv");
+        ResumenIngesta resumen = new IngestaLiquidaciones(banco).procesar(archivo, rechazos);
+
+        assertEquals(1, resumen.getAplicadas());
+        assertEquals("920", cuenta.getSaldo().toPlainString());
+        assertEquals(Arrays.asList(
+                cuenta.getId() + ",-30,Limite excedido",
+                cuenta.getId() + ",-2000,Limite excedido"), Files.readAllLines(rechazos, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    @Tag("rendimiento")
+    void testRendimientoIngesta(TestReporter reporter) throws Exception {
+        Banco banco = new Banco("Banco De Chile");
+        Cuenta[] cuentas = new Cuenta[10_000];
+        for (int i = 0; i < cuentas.length; i++) {
+            cuentas[i] = new Cuenta("persona " + i, 100_000L, 2);
+            banco.addCuentas(cuentas[i]);
+        }
+        int lineas = 1_000_000;
+        Path archivo = directorio.resolve("liquidacion.csv");
+        Random random = new Random(11);
+        try (BufferedWriter salida = Files.newBufferedWriter(archivo, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < lineas; i++) {
+                salida.write(cuentas[random.nextInt(cuentas.length)].getId() + ","
+                        + (random.nextBoolean() ? "-" : "") + random.nextInt(1000) + "." + random.nextInt(10) + "\n");
+            }
+        }
+
+        ResumenIngesta resumen = new IngestaLiquidaciones(banco).procesar(archivo, directorio.resolve("rechazos.csv"));
+
+        reporter.publishEntry("ingesta", resumen.toString());
+        assertEquals(lineas, resumen.getLineas());
+        assertEquals(lineas, resumen.getAplicadas() + resumen.getRechazadas());
+    }
+}
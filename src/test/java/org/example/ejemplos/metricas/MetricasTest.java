@@ -0,0 +1,108 @@
+package org.example.ejemplos.metricas;
+
+import org.example.ejemplos.exceptions.DineroInsuficienteException;
+import org.example.ejemplos.models.Banco;
+import org.example.ejemplos.models.Cuenta;
+import org.example.ejemplos.models.CuentaAtomica;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricasTest {
+
+    @BeforeEach
+    void activar() {
+        Metricas.reiniciar();
+        Metricas.setActivas(true);
+    }
+
+    @AfterEach
+    void desactivar() {
+        Metricas.setActivas(false);
+        Metricas.reiniciar();
+    }
+
+    @Test
+    void testHistogramaPrecision() {
+        HistogramaLatencia histograma = new HistogramaLatencia();
+        for (long valor = 1; valor <= 100_000; valor++) {
+            histograma.registrar(valor);
+        }
+        assertEquals(100_000, histograma.getCantidad());
+        assertEquals(100_000, histograma.getMaximo());
+        // error relativo menor a 1/32 por los rangos log-lineales
+        assertEquals(50_000, histograma.percentil(0.5), 50_000 / 32.0);
+        assertEquals(99_000, histograma.percentil(0.99), 99_000 / 32.0);
+        assertEquals(1, histograma.percentil(0.000001));
+
+        for (int i = 0; i < 2000; i++) {
+            long valor = (long) i * i * 7919;
+            assertTrue(HistogramaLatencia.limiteSuperior(HistogramaLatencia.indiceDe(valor)) >= valor);
+        }
+        assertEquals(HistogramaLatencia.indiceDe(Long.MAX_VALUE), HistogramaLatencia.indiceDe(Long.MAX_VALUE - 1));
+    }
+
+    @Test
+    void testCuentaOperacionesYRechazos() {
+        Banco banco = new Banco("Banco De Chile");
+        Cuenta cuenta1 = new Cuenta("kan doe", new BigDecimal("2500"));
+        Cuenta cuenta2 = new CuentaAtomica("Chulin Doe", new BigDecimal("1500.89"));
+        banco.addCuentas(cuenta1);
+        banco.addCuentas(cuenta2);
+
+        cuenta1.credito(new BigDecimal("10"));
+        cuenta2.credito(new BigDecimal("10"));
+        cuenta1.debito(new BigDecimal("5"));
+        assertThrows(DineroInsuficienteException.class, () -> cuenta2.debito(new BigDecimal("50000")));
+        assertFalse(cuenta2.tryDebito(new BigDecimal("50000")).isExitoso());
+        banco.trasnferir(cuenta1, cuenta2, new BigDecimal("100"));
+        assertThrows(DineroInsuficienteException.class, () -> banco.trasnferir(cuenta1, cuenta2, new BigDecimal("100000")));
+
+        assertEquals(2, Metricas.CREDITO.getCantidad());
+        assertEquals(3, Metricas.DEBITO.getCantidad());
+        assertEquals(2, Metricas.TRANSFERENCIA.getCantidad());
+        // los rechazos de tryDebito cuentan aunque no lancen la excepcion
+        assertEquals(3, Metricas.getDineroInsuficiente());
+        assertTrue(Metricas.TRANSFERENCIA.getLatencias().getMaximo() > 0);
+
+        String volcado = Metricas.volcar();
+        assertTrue(volcado.contains("credito cantidad=2 "), volcado);
+        assertTrue(volcado.contains("dineroInsuficiente cantidad=3"), volcado);
+    }
+
+    @Test
+    void testDesactivadasNoRegistran() {
+        Metricas.setActivas(false);
+        Cuenta cuenta = new Cuenta("kan doe", new BigDecimal("2500"));
+        cuenta.credito(new BigDecimal("10"));
+        assertThrows(DineroInsuficienteException.class, () -> cuenta.debito(new BigDecimal("50000")));
+
+        assertEquals(0, Metricas.CREDITO.getCantidad());
+        assertEquals(0, Metricas.DEBITO.getCantidad());
+        assertEquals(0, Metricas.getDineroInsuficiente());
+    }
+
+    @Test
+    void testJmx() throws Exception {
+        ObjectName nombre = Metricas.registrarJmx();
+        assertEquals(nombre, Metricas.registrarJmx());
+        new Cuenta("kan doe", new BigDecimal("2500")).credito(new BigDecimal("10"));
+
+        MBeanServer servidor = ManagementFactory.getPlatformMBeanServer();
+        assertEquals(Boolean.TRUE, servidor.getAttribute(nombre, "Activas"));
+        TabularData contadores = (TabularData) servidor.getAttribute(nombre, "Contadores");
+        assertEquals(1L, contadores.get(new Object[]{"credito"}).get("value"));
+        assertTrue(((String) servidor.getAttribute(nombre, "Volcado")).contains("credito cantidad=1 "));
+
+        servidor.invoke(nombre, "reiniciar", null, null);
+        assertEquals(0, Metricas.CREDITO.getCantidad());
+    }
+}
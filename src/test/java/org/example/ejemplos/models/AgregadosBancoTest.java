@@ -0,0 +1,114 @@
+package org.example.ejemplos.models;
+
+import org.example.ejemplos.exceptions.DineroInsuficienteException;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AgregadosBancoTest {
+
+    private static BigDecimal sumarSaldos(Banco banco) {
+        return banco.getCuentas().stream().map(Cuenta::getSaldo).reduce(BigDecimal.ZERO, BigDecimal::add);
+    }
+
+    @Test
+    void testTotalesConMovimientos() {
+        Banco banco = new Banco("Banco De Chile");
+        Cuenta cuenta1 = new Cuenta("kan doe", new BigDecimal("2500"));
+        Cuenta cuenta2 = new Cuenta("Chulin Doe", new BigDecimal("1500.8989"));
+        banco.addCuentas(cuenta1);
+        // la cuenta que ya existia se registra al activar
+        AgregadosBanco agregados = banco.activarAgregados();
+        assertSame(agregados, banco.activarAgregados());
+        banco.addCuentas(cuenta2);
+
+        assertEquals(2, agregados.getCantidadCuentas());
+        assertEquals(0, new BigDecimal("4000.8989").compareTo(agregados.getSaldoTotal()));
+
+        banco.trasnferir(cuenta2, cuenta1, new BigDecimal("500"));
+        cuenta1.credito(new BigDecimal("0.5"));
+        cuenta2.debito(new BigDecimal("100"));
+        assertThrows(DineroInsuficienteException.class, () -> cuenta2.debito(new BigDecimal("5000")));
+        cuenta2.setSaldo(new BigDecimal("10"));
+        assertEquals(0, sumarSaldos(banco).compareTo(agregados.getSaldoTotal()));
+
+        banco.removeCuenta("Chulin Doe");
+        assertEquals(1, agregados.getCantidadCuentas());
+        assertEquals(0, new BigDecimal("3000.5").compareTo(agregados.getSaldoTotal()));
+    }
+
+    @Test
+    void testHistogramaYMayoresSaldos() {
+        Banco banco = new Banco("Banco De Chile");
+        AgregadosBanco agregados = banco.activarAgregados();
+        Cuenta chica = new Cuenta("chica", new BigDecimal("0.50"));
+        Cuenta mediana = new Cuenta("mediana", new BigDecimal("75"));
+        Cuenta grande = new CuentaAtomica("grande", new BigDecimal("1234.5"));
+        banco.addCuentas(chica);
+        banco.addCuentas(mediana);
+        banco.addCuentas(grande);
+
+        long[] histograma = agregados.getHistogramaSaldos();
+        assertEquals(1, histograma[0]);
+        assertEquals(1, histograma[2]);
+        assertEquals(1, histograma[4]);
+        assertEquals(Arrays.asList(grande, mediana), agregados.getMayoresSaldos(2));
+
+        chica.credito(new BigDecimal("5000"));
+        assertEquals(Arrays.asList(chica, grande, mediana), agregados.getMayoresSaldos(5));
+        assertEquals(0, agregados.getHistogramaSaldos()[0]);
+    }
+
+    @Test
+    @Tag("concurrencia")
+    void testConsistenteConLaSumaDeSaldos() throws InterruptedException {
+        Banco banco = new Banco("Banco De Chile");
+        AgregadosBanco agregados = banco.activarAgregados();
+        for (int i = 0; i < 60; i++) {
+            Cuenta cuenta = i % 3 == 0 ? new Cuenta("persona " + i, 10_000L, 2)
+                    : i % 3 == 1 ? new CuentaAtomica("persona " + i, 10_000L, 2)
+                    : new CuentaEstriada("persona " + i, 10_000L, 2);
+            banco.addCuentas(cuenta);
+        }
+        List<Cuenta> cuentas = banco.getCuentas();
+
+        List<Thread> hilos = new ArrayList<>();
+        for (int h = 0; h < 4; h++) {
+            Random random = new Random(h);
+            hilos.add(new Thread(() -> {
+                for (int i = 0; i < 20_000; i++) {
+                    Cuenta cuenta = cuentas.get(random.nextInt(cuentas.size()));
+                    switch (random.nextInt(3)) {
+                        case 0:
+                            cuenta.credito(random.nextInt(100), 2);
+                            break;
+                        case 1:
+                            cuenta.tryDebito(random.nextInt(100), 2);
+                            break;
+                        default:
+                            try {
+                                banco.trasnferir(cuenta, cuentas.get(random.nextInt(cuentas.size())), random.nextInt(500), 2);
+                            } catch (DineroInsuficienteException e) {
+                                // rechazada
+                            }
+                    }
+                }
+            }));
+        }
+        hilos.forEach(Thread::start);
+        for (Thread hilo : hilos) {
+            hilo.join();
+        }
+
+        assertEquals(0, sumarSaldos(banco).compareTo(agregados.getSaldoTotal()));
+        assertEquals(60, Arrays.stream(agregados.getHistogramaSaldos()).sum());
+        assertEquals(60, agregados.getMayoresSaldos(100).size());
+    }
+}
@@ -0,0 +1,256 @@
+package org.example.ejemplos.models;
+
+import org.example.ejemplos.exceptions.DineroInsuficienteException;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AlmacenColumnarTest {
+
+    @Test
+    void testCuentasColumnaresYDelHeapEnElMismoBanco() {
+        AlmacenColumnar almacen = new AlmacenColumnar(1000, 2);
+        Banco banco = new Banco("Banco De Chile", almacen);
+        Cuenta columnar = almacen.nueva("kan doe", 250000L);
+        banco.addCuentas(columnar);
+        Cuenta delHeap = new Cuenta("Chulin Doe", new BigDecimal("1000.232"));
+        banco.addCuentas(delHeap);
+
+        assertEquals(2, banco.getCantidadCuentas());
+        assertEquals(2, banco.getCuentas().size());
+        Cuenta encontrada = banco.findCuenta("kan doe");
+        assertEquals(columnar.getId(), encontrada.getId());
+        assertEquals(columnar.getId(), banco.findCuenta(columnar.getId()).getId());
+        assertEquals("2500.00", encontrada.getSaldo().toPlainString());
+
+        // las vistas comparten el saldo
+        banco.trasnferir(delHeap, encontrada, new BigDecimal("500.23"));
+        assertEquals("3000.23", columnar.getSaldo().toPlainString());
+        assertEquals("500.002", delHeap.getSaldo().toPlainString());
+        assertThrows(DineroInsuficienteException.class, () -> banco.trasnferir(columnar, delHeap, new BigDecimal("5000")));
+        assertThrows(ArithmeticException.class, () -> columnar.credito(new BigDecimal("0.001")));
+        assertEquals("3000.23", banco.findCuenta("kan doe").getSaldo().toPlainString());
+
+        assertThrows(IllegalArgumentException.class, () -> banco.addCuentas(almacen.nueva("Chulin Doe", 0L)));
+        assertThrows(IllegalArgumentException.class, () -> banco.addCuentas(new Cuenta("kan doe", BigDecimal.ONE)));
+        assertThrows(IllegalArgumentException.class, () -> almacen.nueva("un titular demasiado largo para la columna", 0L));
+
+        assertEquals(columnar.getId(), banco.removeCuenta("kan doe").getId());
+        assertNull(banco.findCuenta("kan doe"));
+        assertNull(banco.findCuenta(columnar.getId()));
+        assertEquals(1, banco.getCantidadCuentas());
+        // el titular queda libre otra vez
+        banco.addCuentas(almacen.nueva("kan doe", 0L));
+        assertNotNull(banco.findCuenta("kan doe"));
+    }
+
+    @Test
+    void testRenombrarCambiaElIndiceDelAlmacen() {
+        AlmacenColumnar almacen = new AlmacenColumnar(100, 2, 16);
+        Banco banco = new Banco("Banco De Chile", almacen);
+        Cuenta columnar = almacen.nueva("kan doe", 100L);
+        banco.addCuentas(columnar);
+        banco.addCuentas(almacen.nueva("Chulin Doe", 200L));
+        banco.addCuentas(new Cuenta("John Doe", BigDecimal.ONE));
+        Cuenta otraVista = banco.findCuenta("kan doe");
+
+        columnar.setPersona("kan doe jr");
+        assertNull(banco.findCuenta("kan doe"));
+        assertEquals(columnar.getId(), banco.findCuenta("kan doe jr").getId());
+        // las demas vistas leen el titular del almacen
+        assertEquals("kan doe jr", otraVista.getPersona());
+
+        assertThrows(IllegalArgumentException.class, () -> columnar.setPersona("Chulin Doe"));
+        assertThrows(IllegalArgumentException.class, () -> columnar.setPersona("John Doe"));
+        assertThrows(IllegalArgumentException.class, () -> columnar.setPersona("un titular que no cabe"));
+        assertEquals("kan doe jr", columnar.getPersona());
+
+        // el titular anterior queda libre y el cierre usa el nuevo
+        banco.addCuentas(almacen.nueva("kan doe", 0L));
+        assertEquals(columnar.getId(), banco.removeCuenta("kan doe jr").getId());
+        assertNull(banco.findCuenta("kan doe jr"));
+        assertNotNull(banco.findCuenta("kan doe"));
+    }
+
+    @Test
+    void testLoteConVistasDistintasDeLaMismaFila() {
+        AlmacenColumnar almacen = new AlmacenColumnar(1000, 2);
+        Banco banco = new Banco("Banco De Chile", almacen);
+        List<Transferencia> lote = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            banco.addCuentas(almacen.nueva("persona " + i, 100L));
+            Cuenta primero = new Cuenta("primero " + i, BigDecimal.ZERO);
+            Cuenta segundo = new Cuenta("segundo " + i, BigDecimal.ZERO);
+            banco.addCuentas(primero);
+            banco.addCuentas(segundo);
+            // cada transferencia con su propia vista de la fila, solo la primera tiene saldo
+            lote.add(new Transferencia(banco.findCuenta("persona " + i), primero, 100L, 2));
+            lote.add(new Transferencia(banco.findCuenta("persona " + i), segundo, 100L, 2));
+        }
+
+        List<ResultadoTransferencia> resultados = banco.trasnferirLote(lote);
+        for (int i = 0; i < 200; i++) {
+            assertTrue(resultados.get(2 * i).isExitosa());
+            assertInstanceOf(DineroInsuficienteException.class, resultados.get(2 * i + 1).getError());
+            assertEquals("1.00", banco.findCuenta("primero " + i).getSaldo().toPlainString());
+        }
+    }
+
+    @Test
+    void testLimitesCompartidosEntreVistas() {
+        AlmacenColumnar almacen = new AlmacenColumnar(100, 2);
+        Banco banco = new Banco("Banco De Chile", almacen);
+        banco.addCuentas(almacen.nueva("kan doe", 100_000L));
+
+        banco.findCuenta("kan doe").setLimites(LimitesDebito.NINGUNO.conLimite(Duration.ofHours(1), BigDecimal.TEN));
+        assertEquals(1, banco.findCuenta("kan doe").getLimites().getCantidad());
+        assertEquals(ResultadoDebito.LIMITE_EXCEDIDO, banco.findCuenta("kan doe").tryDebito(new BigDecimal("50")));
+        assertEquals(ResultadoDebito.EXITOSO, banco.findCuenta("kan doe").tryDebito(new BigDecimal("6")));
+        assertEquals(ResultadoDebito.LIMITE_EXCEDIDO, banco.findCuenta("kan doe").tryDebito(new BigDecimal("6")));
+
+        banco.findCuenta("kan doe").setLimites(LimitesDebito.NINGUNO);
+        assertEquals(ResultadoDebito.EXITOSO, banco.findCuenta("kan doe").tryDebito(new BigDecimal("50")));
+        assertEquals("944.00", banco.findCuenta("kan doe").getSaldo().toPlainString());
+    }
+
+    @Test
+    void testDevengoYAgregadosRecorrenLasFilas() {
+        AlmacenColumnar almacen = new AlmacenColumnar(20_000, 0);
+        Banco banco = new Banco("Banco De Chile", almacen);
+        banco.addCuentas(new Cuenta("del heap", new BigDecimal("1000")));
+        for (int i = 0; i < 10_000; i++) {
+            banco.addCuentas(almacen.nueva("persona " + i, 1000L));
+        }
+        // una fila reservada sin abrir y una cerrada no cuentan
+        almacen.nueva("sin abrir", 1000L);
+        banco.removeCuenta("persona 0");
+
+        AgregadosBanco agregados = banco.activarAgregados();
+        assertEquals(10_000, agregados.getCantidadCuentas());
+        assertEquals(new BigDecimal("10000000"), agregados.getSaldoTotal());
+
+        ResumenDevengo resumen = banco.devengar(PlanDevengo.VACIO.conTasa(Cuenta.MONEDA_POR_DEFECTO,
+                new BigDecimal("0.01")));
+        assertEquals(10_000, resumen.getCuentas());
+        assertEquals("100000", resumen.getIntereses(Cuenta.MONEDA_POR_DEFECTO).toPlainString());
+        assertEquals("1010", banco.findCuenta("persona 9999").getSaldo().toPlainString());
+        assertEquals("1010", banco.findCuenta("del heap").getSaldo().toPlainString());
+        assertEquals(0, new BigDecimal("10100000").compareTo(agregados.getSaldoTotal()));
+    }
+
+    @Test
+    @Tag("concurrencia")
+    void testTransferenciasConcurrentesEntreVistas() throws InterruptedException {
+        AlmacenColumnar almacen = new AlmacenColumnar(10_000, 2);
+        Banco banco = new Banco("Banco De Chile", almacen);
+        AgregadosBanco agregados = banco.activarAgregados();
+        int cantidad = 500;
+        long[] ids = new long[cantidad];
+        for (int i = 0; i < cantidad; i++) {
+            Cuenta cuenta = almacen.nueva("persona " + i, 10_000L);
+            banco.addCuentas(cuenta);
+            ids[i] = cuenta.getId();
+        }
+
+        List<Thread> hilos = new ArrayList<>();
+        for (int h = 0; h < 4; h++) {
+            Random random = new Random(h);
+            hilos.add(new Thread(() -> {
+                for (int i = 0; i < 20_000; i++) {
+                    // cada transferencia con vistas nuevas, como las entregaria una busqueda
+                    Cuenta origen = banco.findCuenta(ids[random.nextInt(cantidad)]);
+                    Cuenta destino = banco.findCuenta("persona " + random.nextInt(cantidad));
+                    try {
+                        banco.trasnferir(origen, destino, random.nextInt(5_000), 2);
+                    } catch (DineroInsuficienteException e) {
+                        // rechazada
+                    }
+                }
+            }));
+        }
+        hilos.forEach(Thread::start);
+        for (Thread hilo : hilos) {
+            hilo.join();
+        }
+
+        long suma = 0;
+        for (Cuenta cuenta : banco.getCuentas()) {
+            assertTrue(cuenta.getSaldoUnidades() >= 0);
+            suma += cuenta.getSaldoUnidades();
+        }
+        assertEquals(cantidad * 10_000L, suma);
+        assertEquals(0, agregados.getSaldoTotal().compareTo(BigDecimal.valueOf(suma, 2)));
+    }
+
+    private static long usadoEnHeap() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long[] recolecciones() {
+        long cantidad = 0;
+        long milisegundos = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            cantidad += Math.max(0, gc.getCollectionCount());
+            milisegundos += Math.max(0, gc.getCollectionTime());
+        }
+        return new long[]{cantidad, milisegundos};
+    }
+
+    // Heap retenido y trabajo del recolector con cuentas del heap y con el almacen columnar. Por defecto 1M de
+    // cuentas, para medir con mas: -Dalmacen.cuentas=50000000 (y -Xmx y -XX:MaxDirectMemorySize suficientes)
+    @Test
+    @Tag("rendimiento")
+    void testHeapYRecolectorContraCuentasDelHeap(TestReporter reporter) {
+        int cantidad = Integer.getInteger("almacen.cuentas", 1_000_000);
+
+        long antes = usadoEnHeap();
+        long[] gcAntes = recolecciones();
+        Banco delHeap = new Banco("Banco De Chile");
+        for (int i = 0; i < cantidad; i++) {
+            delHeap.addCuentas(new Cuenta("persona " + i, 10_000L, 2));
+        }
+        long[] gcDespues = recolecciones();
+        long heapCuentas = usadoEnHeap() - antes;
+        long inicio = System.nanoTime();
+        System.gc();
+        long pausaCompletaHeap = (System.nanoTime() - inicio) / 1_000_000;
+        reporter.publishEntry("heap: bytes retenidos", String.valueOf(heapCuentas));
+        reporter.publishEntry("heap: recolecciones / ms al crear",
+                (gcDespues[0] - gcAntes[0]) + " / " + (gcDespues[1] - gcAntes[1]));
+        reporter.publishEntry("heap: System.gc() ms", String.valueOf(pausaCompletaHeap));
+        assertEquals(cantidad, delHeap.getCantidadCuentas());
+        delHeap = null;
+
+        antes = usadoEnHeap();
+        gcAntes = recolecciones();
+        AlmacenColumnar almacen = new AlmacenColumnar(cantidad, 2);
+        Banco columnar = new Banco("Banco De Chile", almacen);
+        for (int i = 0; i < cantidad; i++) {
+            columnar.addCuentas(almacen.nueva("persona " + i, 10_000L));
+        }
+        gcDespues = recolecciones();
+        long heapColumnar = usadoEnHeap() - antes;
+        inicio = System.nanoTime();
+        System.gc();
+        long pausaCompletaColumnar = (System.nanoTime() - inicio) / 1_000_000;
+        reporter.publishEntry("columnar: bytes retenidos en heap", String.valueOf(heapColumnar));
+        reporter.publishEntry("columnar: bytes fuera del heap", String.valueOf(almacen.getBytesFueraDelHeap()));
+        reporter.publishEntry("columnar: recolecciones / ms al crear",
+                (gcDespues[0] - gcAntes[0]) + " / " + (gcDespues[1] - gcAntes[1]));
+        reporter.publishEntry("columnar: System.gc() ms", String.valueOf(pausaCompletaColumnar));
+        assertEquals(cantidad, columnar.getCantidadCuentas());
+        assertEquals("100.00", columnar.findCuenta("persona " + (cantidad - 1)).getSaldo().toPlainString());
+        assertTrue(heapColumnar < heapCuentas, "el almacen columnar retiene menos heap");
+    }
+}
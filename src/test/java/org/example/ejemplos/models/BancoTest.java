@@ -0,0 +1,202 @@
+package org.example.ejemplos.models;
+
+import org.example.ejemplos.exceptions.DineroInsuficienteException;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BancoTest {
+
+    private static BigDecimal saldoTotal(List<Cuenta> cuentas) {
+        return cuentas.stream().map(Cuenta::getSaldo).reduce(BigDecimal.ZERO, BigDecimal::add);
+    }
+
+    @Test
+    void testBuscarYEliminarCuentasPorIndice() {
+        Cuenta cuenta = new Cuenta("kan doe", new BigDecimal("2500"));
+        Cuenta cuenta2 = new Cuenta("Chulin Doe", new BigDecimal("1000.232"));
+        Banco banco = new Banco("Banco De Chile");
+        banco.addCuentas(cuenta);
+        banco.addCuentas(cuenta2);
+
+        assertSame(cuenta2, banco.findCuenta("Chulin Doe"));
+        assertSame(cuenta, banco.findCuenta(cuenta.getId()));
+        assertNull(banco.findCuenta("Nadie"));
+
+        assertSame(cuenta2, banco.removeCuenta("Chulin Doe"));
+        assertNull(banco.findCuenta("Chulin Doe"));
+        assertNull(banco.findCuenta(cuenta2.getId()));
+        assertNull(cuenta2.getBanco());
+        assertEquals(1, banco.getCantidadCuentas());
+        assertEquals(1, banco.getCuentas().size());
+    }
+
+    @Test
+    void testIndiceSeActualizaAlCambiarTitular() {
+        Cuenta cuenta = new Cuenta("kan doe", new BigDecimal("2500"));
+        Cuenta cuenta2 = new Cuenta("Chulin Doe", new BigDecimal("1000.232"));
+        Banco banco = new Banco("Banco De Chile");
+        banco.addCuentas(cuenta);
+        banco.addCuentas(cuenta2);
+
+        cuenta.setPersona("John Doe");
+        assertSame(cuenta, banco.findCuenta("John Doe"));
+        assertNull(banco.findCuenta("kan doe"));
+
+        assertThrows(IllegalArgumentException.class, () -> cuenta.setPersona("Chulin Doe"));
+        assertEquals("John Doe", cuenta.getPersona());
+        assertThrows(NullPointerException.class, () -> cuenta.setPersona(null));
+        assertSame(cuenta, banco.findCuenta("John Doe"));
+        assertThrows(IllegalArgumentException.class, () -> banco.addCuentas(new Cuenta("Chulin Doe", BigDecimal.ONE)));
+    }
+
+    @Test
+    void testHashCodeConsistenteConEquals() {
+        Cuenta cuenta = new Cuenta("kan doe", new BigDecimal("12333.232"));
+        Cuenta cuenta2 = new Cuenta("kan doe", new BigDecimal("12333.232"));
+        assertEquals(cuenta, cuenta2);
+        assertEquals(cuenta.hashCode(), cuenta2.hashCode());
+        int hash = cuenta.hashCode();
+        cuenta.credito(BigDecimal.TEN);
+        assertEquals(hash, cuenta.hashCode());
+    }
+
+    @Test
+    void testTransferenciaSinFondosNoModificaSaldos() {
+        Cuenta origen = new Cuenta("kan doe", new BigDecimal("100"));
+        Cuenta destino = new Cuenta("Chulin Doe", new BigDecimal("50"));
+        Banco banco = new Banco("Banco De Chile");
+
+        assertThrows(DineroInsuficienteException.class, () -> banco.trasnferir(origen, destino, new BigDecimal(500)));
+        assertEquals("100", origen.getSaldo().toPlainString());
+        assertEquals("50", destino.getSaldo().toPlainString());
+    }
+
+    // El lote se aplica en paralelo pero debe dejar los mismos saldos y resultados que aplicarlo en orden
+    @Test
+    void testLoteIgualAAplicacionSecuencial() {
+        Banco banco = new Banco("Banco De Chile");
+        Banco bancoSecuencial = new Banco("Banco De Chile");
+        List<Cuenta> cuentas = new ArrayList<>();
+        List<Cuenta> cuentasSecuencial = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            Cuenta cuenta = new Cuenta("persona " + i, new BigDecimal("100.5"));
+            Cuenta copia = new Cuenta("persona " + i, new BigDecimal("100.5"));
+            banco.addCuentas(cuenta);
+            bancoSecuencial.addCuentas(copia);
+            cuentas.add(cuenta);
+            cuentasSecuencial.add(copia);
+        }
+
+        Random random = new Random(42);
+        List<Transferencia> lote = new ArrayList<>();
+        List<String> esperados = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            int origen = random.nextInt(cuentas.size());
+            int destino = random.nextInt(cuentas.size());
+            BigDecimal monto = new BigDecimal(random.nextInt(80) + ".1");
+            lote.add(new Transferencia(cuentas.get(origen), cuentas.get(destino), monto));
+            try {
+                bancoSecuencial.trasnferir(cuentasSecuencial.get(origen), cuentasSecuencial.get(destino), monto);
+                esperados.add("EXITOSA");
+            } catch (DineroInsuficienteException e) {
+                esperados.add("FALLIDA: " + e.getMessage());
+            }
+        }
+
+        List<ResultadoTransferencia> resultados = banco.trasnferirLote(lote);
+
+        assertEquals(lote.size(), resultados.size());
+        for (int i = 0; i < resultados.size(); i++) {
+            assertEquals(esperados.get(i), resultados.get(i).toString());
+        }
+        for (int i = 0; i < cuentas.size(); i++) {
+            assertEquals(cuentasSecuencial.get(i).getSaldo(), cuentas.get(i).getSaldo());
+        }
+        assertTrue(resultados.stream().anyMatch(r -> r.getError() instanceof DineroInsuficienteException));
+    }
+
+    // Transferencias cruzadas A->B y B->A al mismo tiempo, si el orden de bloqueo no fuera fijo esto se bloquearia
+    @Test
+    @Tag("concurrencia")
+    void testTransferenciasCruzadasSinDeadlock() {
+        Cuenta a = new Cuenta("kan doe", new BigDecimal("1000000"));
+        Cuenta b = new Cuenta("Chulin Doe", new BigDecimal("1000000"));
+        Banco banco = new Banco("Banco De Chile");
+
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            Thread t1 = new Thread(() -> {
+                for (int i = 0; i < 100_000; i++) {
+                    banco.trasnferir(a, b, BigDecimal.ONE);
+                }
+            });
+            Thread t2 = new Thread(() -> {
+                for (int i = 0; i < 100_000; i++) {
+                    banco.trasnferir(b, a, BigDecimal.ONE);
+                }
+            });
+            t1.start();
+            t2.start();
+            t1.join();
+            t2.join();
+        });
+        assertEquals("1000000", a.getSaldo().toPlainString());
+        assertEquals("1000000", b.getSaldo().toPlainString());
+    }
+
+    // Muchos hilos transfiriendo al azar entre pocas cuentas: el total del banco se debe conservar
+    // y ninguna cuenta puede quedar en negativo
+    @Test
+    @Tag("concurrencia")
+    void testTransferenciasConcurrentesConservanSaldoTotal() throws InterruptedException {
+        Banco banco = new Banco("Banco De Chile");
+        List<Cuenta> cuentas = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            Cuenta cuenta = new Cuenta("persona " + i, new BigDecimal("1000.50"));
+            cuentas.add(cuenta);
+            banco.addCuentas(cuenta);
+        }
+        BigDecimal totalInicial = saldoTotal(cuentas);
+
+        int hilos = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(hilos);
+        CountDownLatch inicio = new CountDownLatch(1);
+        for (int h = 0; h < hilos; h++) {
+            long semilla = h;
+            executor.submit(() -> {
+                Random random = new Random(semilla);
+                inicio.await();
+                for (int i = 0; i < 20_000; i++) {
+                    Cuenta origen = cuentas.get(random.nextInt(cuentas.size()));
+                    Cuenta destino = cuentas.get(random.nextInt(cuentas.size()));
+                    if (origen == destino) {
+                        continue;
+                    }
+                    try {
+                        banco.trasnferir(origen, destino, new BigDecimal(random.nextInt(300) + ".25"));
+                    } catch (DineroInsuficienteException e) {
+                        // es esperado que algunas transferencias no tengan fondos
+                    }
+                }
+                return null;
+            });
+        }
+        inicio.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertEquals(0, totalInicial.compareTo(saldoTotal(cuentas)));
+        assertTrue(cuentas.stream().allMatch(c -> c.getSaldo().compareTo(BigDecimal.ZERO) >= 0));
+    }
+}
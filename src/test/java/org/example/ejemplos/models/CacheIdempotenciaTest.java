@@ -0,0 +1,150 @@
+package org.example.ejemplos.models;
+
+import org.example.ejemplos.exceptions.DineroInsuficienteException;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CacheIdempotenciaTest {
+
+    private static CacheIdempotencia.Entrada entrada(long unidades) {
+        return new CacheIdempotencia.Entrada(1L, 2L, unidades, 0, System.nanoTime());
+    }
+
+    @Test
+    void testReintentoNoMueveDineroDosVeces() {
+        Banco banco = new Banco("Banco De Chile");
+        Cuenta cuenta1 = new Cuenta("kan doe", new BigDecimal("2500"));
+        Cuenta cuenta2 = new Cuenta("Chulin Doe", new BigDecimal("1500.8989"));
+        banco.addCuentas(cuenta1);
+        banco.addCuentas(cuenta2);
+
+        banco.trasnferir("solicitud-1", cuenta2, cuenta1, new BigDecimal("500"));
+        banco.trasnferir("solicitud-1", cuenta2, cuenta1, new BigDecimal("500"));
+        banco.trasnferir(new Transferencia("solicitud-1", cuenta2, cuenta1, 500L, 0));
+
+        assertEquals("3000", cuenta1.getSaldo().toPlainString());
+        assertEquals("1000.8989", cuenta2.getSaldo().toPlainString());
+
+        // otro id es otra transferencia
+        banco.trasnferir("solicitud-2", cuenta2, cuenta1, new BigDecimal("500"));
+        assertEquals("3500", cuenta1.getSaldo().toPlainString());
+    }
+
+    @Test
+    void testReintentoDeFallidaRepiteElError() {
+        Banco banco = new Banco("Banco De Chile");
+        Cuenta cuenta1 = new Cuenta("kan doe", new BigDecimal("100"));
+        Cuenta cuenta2 = new Cuenta("Chulin Doe", new BigDecimal("0"));
+        banco.addCuentas(cuenta1);
+        banco.addCuentas(cuenta2);
+
+        DineroInsuficienteException primera = assertThrows(DineroInsuficienteException.class,
+                () -> banco.trasnferir("solicitud-1", cuenta1, cuenta2, new BigDecimal("500")));
+        cuenta1.credito(new BigDecimal("1000"));
+        // aunque ahora alcanzaria, el reintento devuelve el resultado original
+        DineroInsuficienteException segunda = assertThrows(DineroInsuficienteException.class,
+                () -> banco.trasnferir("solicitud-1", cuenta1, cuenta2, new BigDecimal("500")));
+        assertSame(primera, segunda);
+        assertEquals("1100", cuenta1.getSaldo().toPlainString());
+    }
+
+    @Test
+    void testIdReutilizadoConOtrosDatos() {
+        Banco banco = new Banco("Banco De Chile");
+        Cuenta cuenta1 = new Cuenta("kan doe", new BigDecimal("2500"));
+        Cuenta cuenta2 = new Cuenta("Chulin Doe", new BigDecimal("1500"));
+        banco.addCuentas(cuenta1);
+        banco.addCuentas(cuenta2);
+
+        banco.trasnferir("solicitud-1", cuenta1, cuenta2, new BigDecimal("100"));
+        // la misma cantidad con otra escala es la misma solicitud
+        banco.trasnferir("solicitud-1", cuenta1, cuenta2, new BigDecimal("100.00"));
+        assertThrows(IllegalArgumentException.class,
+                () -> banco.trasnferir("solicitud-1", cuenta1, cuenta2, new BigDecimal("200")));
+        assertThrows(IllegalArgumentException.class,
+                () -> banco.trasnferir("solicitud-1", cuenta2, cuenta1, new BigDecimal("100")));
+        assertEquals("2400", cuenta1.getSaldo().toPlainString());
+    }
+
+    @Test
+    void testVencimiento() throws InterruptedException {
+        Banco banco = new Banco("Banco De Chile");
+        banco.configurarIdempotencia(100, Duration.ofMillis(20));
+        Cuenta cuenta1 = new Cuenta("kan doe", new BigDecimal("2500"));
+        Cuenta cuenta2 = new Cuenta("Chulin Doe", new BigDecimal("1500"));
+        banco.addCuentas(cuenta1);
+        banco.addCuentas(cuenta2);
+
+        banco.trasnferir("solicitud-1", cuenta1, cuenta2, new BigDecimal("100"));
+        Thread.sleep(50);
+        banco.trasnferir("solicitud-1", cuenta1, cuenta2, new BigDecimal("100"));
+        assertEquals("2300", cuenta1.getSaldo().toPlainString());
+    }
+
+    @Test
+    void testCapacidadAcotadaYProtegidas() {
+        CacheIdempotencia cache = new CacheIdempotencia(640, 0);
+        CacheIdempotencia.Entrada reintentada = entrada(1);
+        assertNull(cache.reservar("reintentada", reintentada));
+        // un reintento la pasa al segmento protegido
+        assertSame(reintentada, cache.reservar("reintentada", entrada(1)));
+
+        for (int i = 0; i < 10_000; i++) {
+            assertNull(cache.reservar("unica-" + i, entrada(i)));
+            assertTrue(cache.getTamano() <= 640);
+        }
+        // la rafaga de ids de una sola vez no la desplazo
+        assertSame(reintentada, cache.reservar("reintentada", entrada(1)));
+        assertNull(cache.reservar("unica-0", entrada(0)));
+        assertEquals(2, cache.getAciertos());
+    }
+
+    @Test
+    @Tag("concurrencia")
+    void testReintentosSimultaneos() throws InterruptedException {
+        Banco banco = new Banco("Banco De Chile");
+        Cuenta cuenta1 = new Cuenta("kan doe", 1_000_000L, 0);
+        Cuenta cuenta2 = new Cuenta("Chulin Doe", 0L, 0);
+        banco.addCuentas(cuenta1);
+        banco.addCuentas(cuenta2);
+
+        int hilos = 8;
+        int solicitudes = 2_000;
+        CountDownLatch partida = new CountDownLatch(1);
+        List<Thread> trabajadores = new ArrayList<>();
+        List<Throwable> errores = new ArrayList<>();
+        for (int h = 0; h < hilos; h++) {
+            Thread hilo = new Thread(() -> {
+                try {
+                    partida.await();
+                    for (int i = 0; i < solicitudes; i++) {
+                        banco.trasnferir("solicitud-" + i, cuenta1, cuenta2, 1L, 0);
+                    }
+                } catch (Throwable e) {
+                    synchronized (errores) {
+                        errores.add(e);
+                    }
+                }
+            });
+            hilo.start();
+            trabajadores.add(hilo);
+        }
+        partida.countDown();
+        for (Thread hilo : trabajadores) {
+            hilo.join();
+        }
+
+        assertEquals(Arrays.asList(), errores);
+        assertEquals(solicitudes, cuenta2.getSaldo().longValueExact());
+        assertEquals(1_000_000L - solicitudes, cuenta1.getSaldo().longValueExact());
+    }
+}
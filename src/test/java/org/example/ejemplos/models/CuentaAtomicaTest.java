@@ -0,0 +1,58 @@
+package org.example.ejemplos.models;
+
+import org.example.ejemplos.exceptions.DineroInsuficienteException;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CuentaAtomicaTest {
+
+    @Test
+    void testCreditoDebito() {
+        Cuenta cuenta = new CuentaAtomica("kan doe", new BigDecimal("1000.232"));
+        cuenta.credito(new BigDecimal(100));
+        cuenta.debito(new BigDecimal("50.2"));
+        assertEquals("1050.032", cuenta.getSaldo().toPlainString());
+    }
+
+    @Test
+    void testDineroInsuficiente() {
+        Cuenta cuenta = new CuentaAtomica("kan doe", new BigDecimal("1000.232"));
+        Exception exception = assertThrows(DineroInsuficienteException.class, () -> cuenta.debito(new BigDecimal(1500)));
+        assertEquals("Dinero insuficiente", exception.getMessage());
+        assertEquals("1000.232", cuenta.getSaldo().toPlainString());
+    }
+
+    @Test
+    void testEscalaFija() {
+        Cuenta cuenta = new CuentaAtomica("kan doe", new BigDecimal("10.50"));
+        assertThrows(ArithmeticException.class, () -> cuenta.credito(new BigDecimal("0.001")));
+        assertEquals("10.50", cuenta.getSaldo().toPlainString());
+    }
+
+    @Test
+    @Tag("concurrencia")
+    void testCreditosYDebitosConcurrentes() throws InterruptedException {
+        CuentaAtomica cuenta = new CuentaAtomica("comercio", 0L, 2);
+        List<Thread> hilos = new ArrayList<>();
+        for (int h = 0; h < 8; h++) {
+            hilos.add(new Thread(() -> {
+                for (int i = 0; i < 50_000; i++) {
+                    cuenta.credito(3L, 2);
+                    cuenta.debito(1L, 2);
+                }
+            }));
+        }
+        hilos.forEach(Thread::start);
+        for (Thread hilo : hilos) {
+            hilo.join();
+        }
+
+        assertEquals(8 * 50_000 * 2L, cuenta.getSaldoUnidades());
+    }
+}
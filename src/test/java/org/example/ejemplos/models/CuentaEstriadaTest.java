@@ -0,0 +1,104 @@
+package org.example.ejemplos.models;
+
+import org.example.ejemplos.exceptions.DineroInsuficienteException;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CuentaEstriadaTest {
+
+    @Test
+    void testDebitoMantieneReglaDeSaldo() {
+        Cuenta cuenta = new CuentaEstriada("comisiones", new BigDecimal("100.00"));
+        cuenta.credito(new BigDecimal("50.25"));
+        cuenta.debito(new BigDecimal("150.25"));
+        assertEquals("0.00", cuenta.getSaldo().toPlainString());
+
+        Exception exception = assertThrows(DineroInsuficienteException.class, () -> cuenta.debito(new BigDecimal("0.01")));
+        assertEquals("Dinero insuficiente", exception.getMessage());
+    }
+
+    @Test
+    @Tag("concurrencia")
+    void testCreditosConcurrentesConDebitos() throws InterruptedException {
+        CuentaEstriada cuenta = new CuentaEstriada("pozo", 0L, 0);
+        List<Thread> hilos = new ArrayList<>();
+        for (int h = 0; h < 8; h++) {
+            hilos.add(new Thread(() -> {
+                for (int i = 0; i < 100_000; i++) {
+                    cuenta.credito(2L, 0);
+                }
+            }));
+        }
+        LongAdder debitado = new LongAdder();
+        Thread debitos = new Thread(() -> {
+            for (int i = 0; i < 100_000; i++) {
+                try {
+                    cuenta.debito(3L, 0);
+                    debitado.add(3);
+                } catch (DineroInsuficienteException e) {
+                    assertTrue(cuenta.getSaldoUnidades() >= 0);
+                }
+            }
+        });
+        hilos.add(debitos);
+        hilos.forEach(Thread::start);
+        for (Thread hilo : hilos) {
+            hilo.join();
+        }
+
+        assertEquals(8 * 100_000 * 2L - debitado.sum(), cuenta.getSaldoUnidades());
+        assertTrue(cuenta.getSaldoUnidades() >= 0);
+    }
+
+    // Comparacion simple de rendimiento: varios hilos acreditando a la misma cuenta durante un tiempo fijo
+    @Test
+    @Tag("rendimiento")
+    void testRendimientoCreditosConcurrentes(TestReporter reporter) throws InterruptedException {
+        int hilos = Math.max(2, Runtime.getRuntime().availableProcessors());
+        long sincronizada = medirCreditos(() -> new Cuenta("plana", 0L, 0), hilos);
+        long atomica = medirCreditos(() -> new CuentaAtomica("atomica", 0L, 0), hilos);
+        long estriada = medirCreditos(() -> new CuentaEstriada("estriada", 0L, 0), hilos);
+
+        reporter.publishEntry("hilos", String.valueOf(hilos));
+        reporter.publishEntry("Cuenta creditos/s", String.valueOf(sincronizada));
+        reporter.publishEntry("CuentaAtomica creditos/s", String.valueOf(atomica));
+        reporter.publishEntry("CuentaEstriada creditos/s", String.valueOf(estriada));
+        assertTrue(estriada > 0);
+    }
+
+    private static long medirCreditos(Supplier<Cuenta> fabrica, int hilos) throws InterruptedException {
+        Cuenta cuenta = fabrica.get();
+        long duracion = TimeUnit.MILLISECONDS.toNanos(300);
+        LongAdder operaciones = new LongAdder();
+        List<Thread> trabajadores = new ArrayList<>();
+        for (int h = 0; h < hilos; h++) {
+            trabajadores.add(new Thread(() -> {
+                long fin = System.nanoTime() + duracion;
+                long hechas = 0;
+                while (System.nanoTime() < fin) {
+                    for (int i = 0; i < 1000; i++) {
+                        cuenta.credito(1L, 0);
+                    }
+                    hechas += 1000;
+                }
+                operaciones.add(hechas);
+            }));
+        }
+        trabajadores.forEach(Thread::start);
+        for (Thread trabajador : trabajadores) {
+            trabajador.join();
+        }
+        assertEquals(operaciones.sum(), cuenta.getSaldoUnidades());
+        return operaciones.sum() * TimeUnit.SECONDS.toNanos(1) / duracion;
+    }
+}
@@ -118,6 +118,26 @@ class CuentaTest {
         assertEquals(esperado, actual);
     }
 
+    // el rechazo no captura la traza del stack, solo importa el mensaje
+    @Test
+    void testDineroInsuficienteSinTraza() {
+        Cuenta cuenta = new Cuenta("kan doe", new BigDecimal("1000.232"));
+        Exception exception = assertThrows(DineroInsuficienteException.class, () -> cuenta.debito(new BigDecimal(1500)));
+        assertEquals("Dinero insuficiente", exception.getMessage());
+        assertEquals(0, exception.getStackTrace().length);
+    }
+
+    @Test
+    void testTryDebitoCuenta() {
+        Cuenta cuenta = new Cuenta("kan doe", new BigDecimal("1000.232"));
+        assertEquals(ResultadoDebito.DINERO_INSUFICIENTE, cuenta.tryDebito(new BigDecimal(1500)));
+        assertEquals("1000.232", cuenta.getSaldo().toPlainString());
+        assertEquals(ResultadoDebito.EXITOSO, cuenta.tryDebito(new BigDecimal(100)));
+        assertEquals("900.232", cuenta.getSaldo().toPlainString());
+        assertTrue(cuenta.tryDebito(900232L, 3).isExitoso());
+        assertEquals(0, cuenta.getSaldo().signum());
+    }
+
     @Test
     void testTransferirDineroCuentas() {
         Cuenta cuenta = new Cuenta("kan doe", new BigDecimal("2500"));
@@ -0,0 +1,76 @@
+package org.example.ejemplos.models;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DineroTest {
+
+    @Test
+    void testConversionBigDecimal() {
+        assertEquals(1000232L, Dinero.aUnidades(new BigDecimal("1000.232"), 3));
+        assertEquals(100023200L, Dinero.aUnidades(new BigDecimal("1000.232"), 5));
+        assertEquals("1000.232", Dinero.aBigDecimal(1000232L, 3).toPlainString());
+        assertEquals(0, Dinero.escalaDe(new BigDecimal("1E+3")));
+        assertThrows(ArithmeticException.class, () -> Dinero.aUnidades(new BigDecimal("1.005"), 2));
+    }
+
+    @Test
+    void testReescalar() {
+        assertEquals(250000L, Dinero.reescalar(2500L, 0, 2));
+        assertEquals(2500L, Dinero.reescalar(250000L, 2, 0));
+        assertThrows(ArithmeticException.class, () -> Dinero.reescalar(250001L, 2, 0));
+    }
+
+    @Test
+    void testComparar() {
+        assertEquals(0, Dinero.comparar(2500L, 0, 250000L, 2));
+        assertTrue(Dinero.comparar(1L, 0, 99L, 2) > 0);
+        // reescalar desbordaria, se compara con BigDecimal
+        assertTrue(Dinero.comparar(Long.MAX_VALUE, 0, 1L, 18) > 0);
+    }
+
+    @Test
+    void testDividirRedondeaIgualQueBigDecimal() {
+        long[] dividendos = {0, 1, 5, 15, 25, 26, 24, -5, -15, -25, -26, 7, -7, Long.MAX_VALUE, Long.MIN_VALUE + 1};
+        for (RoundingMode modo : RoundingMode.values()) {
+            if (modo == RoundingMode.UNNECESSARY) {
+                continue;
+            }
+            for (long dividendo : dividendos) {
+                long esperado = BigDecimal.valueOf(dividendo).divide(BigDecimal.TEN, 0, modo).longValueExact();
+                assertEquals(esperado, Dinero.dividir(dividendo, 10, modo), dividendo + " " + modo);
+            }
+        }
+        assertEquals(3, Dinero.dividir(30, 10, RoundingMode.UNNECESSARY));
+        assertThrows(ArithmeticException.class, () -> Dinero.dividir(31, 10, RoundingMode.UNNECESSARY));
+    }
+
+    @Test
+    void testDesbordeSeDetecta() {
+        assertThrows(ArithmeticException.class, () -> Dinero.sumar(Long.MAX_VALUE, 1));
+        assertThrows(ArithmeticException.class, () -> Dinero.restar(Long.MIN_VALUE, 1));
+        assertThrows(ArithmeticException.class, () -> Dinero.reescalar(Long.MAX_VALUE / 10, 0, 2));
+        assertThrows(ArithmeticException.class, () -> Dinero.potenciaDiez(Dinero.ESCALA_MAXIMA + 1));
+    }
+
+    @Test
+    void testCuentaConEscalaConfigurable() {
+        Cuenta cuenta = new Cuenta("kan doe", 100050L, 2);
+        cuenta.credito(25L, 2);
+        cuenta.debito(new BigDecimal("0.001"));
+        assertEquals("1000.749", cuenta.getSaldo().toPlainString());
+        assertEquals(3, cuenta.getEscala());
+        assertEquals(1000749L, cuenta.getSaldoUnidades());
+    }
+
+    @Test
+    void testCreditoConDesbordeNoCambiaSaldo() {
+        Cuenta cuenta = new Cuenta("kan doe", Long.MAX_VALUE - 1, 0);
+        assertThrows(ArithmeticException.class, () -> cuenta.credito(10L, 0));
+        assertEquals(Long.MAX_VALUE - 1, cuenta.getSaldoUnidades());
+    }
+}
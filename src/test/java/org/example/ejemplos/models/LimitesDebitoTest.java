@@ -0,0 +1,194 @@
+package org.example.ejemplos.models;
+
+import org.example.ejemplos.exceptions.DineroInsuficienteException;
+import org.example.ejemplos.exceptions.LimiteExcedidoException;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LimitesDebitoTest {
+
+    /**
+     * Reloj que solo avanza cuando el test lo pide.
+     */
+    private static class RelojManual extends Clock {
+        private volatile Instant ahora = Instant.parse("2024-01-01T00:00:00Z");
+
+        void avanzar(Duration duracion) {
+            ahora = ahora.plus(duracion);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return ahora;
+        }
+    }
+
+    @Test
+    void testLimitePorHora() {
+        RelojManual reloj = new RelojManual();
+        Cuenta cuenta = new Cuenta("kan doe", new BigDecimal("10000"));
+        cuenta.setLimites(LimitesDebito.NINGUNO.conLimite(Duration.ofHours(1), new BigDecimal("1000")).conReloj(reloj));
+
+        cuenta.debito(new BigDecimal("600"));
+        reloj.avanzar(Duration.ofMinutes(30));
+        cuenta.debito(new BigDecimal("400"));
+        assertThrows(LimiteExcedidoException.class, () -> cuenta.debito(new BigDecimal("0.01")));
+        assertEquals(ResultadoDebito.LIMITE_EXCEDIDO, cuenta.tryDebito(BigDecimal.ONE));
+        assertEquals(new BigDecimal("9000"), cuenta.getSaldo());
+
+        // a la hora y un poco del primer debito ya salio de la ventana, el segundo no
+        reloj.avanzar(Duration.ofMinutes(32));
+        assertEquals(ResultadoDebito.EXITOSO, cuenta.tryDebito(new BigDecimal("600")));
+        assertEquals(ResultadoDebito.LIMITE_EXCEDIDO, cuenta.tryDebito(new BigDecimal("0.001")));
+        // los creditos no cuentan
+        cuenta.credito(new BigDecimal("5000"));
+        assertEquals(ResultadoDebito.LIMITE_EXCEDIDO, cuenta.tryDebito(BigDecimal.ONE));
+
+        // cambiar el monto de la misma ventana conserva lo que ya se debito en ella, una ventana nueva empieza de cero
+        cuenta.setLimites(LimitesDebito.NINGUNO.conLimite(Duration.ofHours(1), new BigDecimal("1100.5"))
+                .conLimite(Duration.ofDays(1), new BigDecimal("100.5")).conReloj(reloj));
+        assertEquals(ResultadoDebito.LIMITE_EXCEDIDO, cuenta.tryDebito(new BigDecimal("101")));
+        assertEquals(ResultadoDebito.EXITOSO, cuenta.tryDebito(new BigDecimal("100.5")));
+        assertEquals(ResultadoDebito.LIMITE_EXCEDIDO, cuenta.tryDebito(new BigDecimal("0.1")));
+
+        cuenta.setLimites(LimitesDebito.NINGUNO);
+        cuenta.debito(new BigDecimal("5000"));
+        assertEquals(0, new BigDecimal("8299.5").compareTo(cuenta.getSaldo()));
+    }
+
+    @Test
+    void testLimitesPorHoraYPorDia() {
+        RelojManual reloj = new RelojManual();
+        LimitesDebito limites = LimitesDebito.NINGUNO
+                .conLimite(Duration.ofHours(1), new BigDecimal("100"))
+                .conLimite(Duration.ofDays(1), new BigDecimal("250"))
+                .conReloj(reloj);
+        assertEquals(2, limites.getCantidad());
+        Cuenta cuenta = new CuentaAtomica("kan doe", 1_000_000L, 2);
+        cuenta.setLimites(limites);
+
+        for (int hora = 0; hora < 2; hora++) {
+            cuenta.debito(new BigDecimal("100"));
+            assertEquals(ResultadoDebito.LIMITE_EXCEDIDO, cuenta.tryDebito(BigDecimal.ONE));
+            reloj.avanzar(Duration.ofMinutes(62));
+        }
+        cuenta.debito(new BigDecimal("50"));
+        // queda limite por hora pero no por dia
+        assertThrows(LimiteExcedidoException.class, () -> cuenta.debito(BigDecimal.ONE));
+        reloj.avanzar(Duration.ofHours(23));
+        cuenta.debito(new BigDecimal("100"));
+        assertEquals(new BigDecimal("9650.00"), cuenta.getSaldo());
+
+        // un sobregiro dentro del limite sigue siendo un sobregiro, y no consume limite
+        Cuenta pobre = new Cuenta("Chulin Doe", new BigDecimal("10"));
+        pobre.setLimites(limites);
+        assertThrows(DineroInsuficienteException.class, () -> pobre.debito(new BigDecimal("20")));
+        pobre.credito(new BigDecimal("1000"));
+        pobre.debito(new BigDecimal("100"));
+    }
+
+    @Test
+    void testTransferenciaSobreElLimiteNoMueveDinero() {
+        Banco banco = new Banco("Banco De Chile");
+        Cuenta origen = new Cuenta("kan doe", new BigDecimal("5000"));
+        Cuenta destino = new Cuenta("Chulin Doe", new BigDecimal("10"));
+        banco.addCuentas(origen);
+        banco.addCuentas(destino);
+        origen.setLimites(LimitesDebito.NINGUNO.conLimite(Duration.ofDays(1), new BigDecimal("1000")));
+
+        banco.trasnferir(origen, destino, new BigDecimal("800"));
+        assertThrows(LimiteExcedidoException.class, () -> banco.trasnferir(origen, destino, new BigDecimal("300")));
+        assertEquals(new BigDecimal("4200"), origen.getSaldo());
+        assertEquals(new BigDecimal("810"), destino.getSaldo());
+
+        // si el credito del destino falla, el origen recupera el saldo y el limite
+        Cuenta llena = new CuentaAtomica("llena", Long.MAX_VALUE - 10, 0);
+        banco.addCuentas(llena);
+        assertThrows(ArithmeticException.class, () -> banco.trasnferir(origen, llena, new BigDecimal("200")));
+        assertEquals(new BigDecimal("4200"), origen.getSaldo());
+        banco.trasnferir(origen, destino, new BigDecimal("200"));
+        assertEquals(new BigDecimal("4000"), origen.getSaldo());
+    }
+
+    @Test
+    void testTransaccionDeshaceElLimite() {
+        Banco banco = new Banco("Banco De Chile");
+        Cuenta a = new Cuenta("kan doe", new BigDecimal("1000"));
+        Cuenta b = new Cuenta("Chulin Doe", new BigDecimal("1000"));
+        Cuenta c = new Cuenta("comercio", new BigDecimal("0"));
+        banco.addCuentas(a);
+        banco.addCuentas(b);
+        banco.addCuentas(c);
+        a.setLimites(LimitesDebito.NINGUNO.conLimite(Duration.ofHours(1), new BigDecimal("100")));
+        b.setLimites(LimitesDebito.NINGUNO.conLimite(Duration.ofHours(1), new BigDecimal("100")));
+
+        assertThrows(LimiteExcedidoException.class, () -> banco.transaccion(tx -> {
+            tx.trasnferir(a, c, new BigDecimal("100"));
+            tx.trasnferir(b, c, new BigDecimal("150"));
+            return null;
+        }));
+        assertEquals(new BigDecimal("1000"), a.getSaldo());
+        assertEquals(new BigDecimal("1000"), b.getSaldo());
+        // el debito de a que se deshizo no le quito limite
+        a.debito(new BigDecimal("100"));
+    }
+
+    @Tag("concurrencia")
+    @Test
+    void testLimiteConcurrenteEnCuentaAtomica() throws Exception {
+        Cuenta cuenta = new CuentaAtomica("kan doe", 1_000_000L, 0);
+        cuenta.setLimites(LimitesDebito.NINGUNO.conLimite(Duration.ofDays(1), new BigDecimal("5000")));
+        AtomicInteger rechazados = new AtomicInteger();
+        ExecutorService ejecutor = Executors.newFixedThreadPool(4);
+        for (int h = 0; h < 4; h++) {
+            ejecutor.execute(() -> {
+                for (int i = 0; i < 2000; i++) {
+                    if (cuenta.tryDebito(1, 0) == ResultadoDebito.LIMITE_EXCEDIDO) {
+                        rechazados.incrementAndGet();
+                    }
+                }
+            });
+        }
+        ejecutor.shutdown();
+        assertTrue(ejecutor.awaitTermination(1, TimeUnit.MINUTES));
+        assertEquals(3000, rechazados.get());
+        assertEquals(995_000L, cuenta.getSaldoUnidades());
+    }
+
+    @Test
+    void testValidaciones() {
+        assertThrows(IllegalArgumentException.class,
+                () -> LimitesDebito.NINGUNO.conLimite(Duration.ofMillis(10), BigDecimal.TEN));
+        assertThrows(IllegalArgumentException.class,
+                () -> LimitesDebito.NINGUNO.conLimite(Duration.ofHours(1), new BigDecimal("-1")));
+        LimitesDebito limites = LimitesDebito.NINGUNO
+                .conLimite(Duration.ofHours(1), BigDecimal.TEN)
+                .conLimite(Duration.ofHours(1), new BigDecimal("20.5"));
+        assertEquals(1, limites.getCantidad());
+        assertEquals(new BigDecimal("20.5"), limites.getLimite(0));
+        assertEquals(0, LimitesDebito.NINGUNO.getCantidad());
+    }
+}
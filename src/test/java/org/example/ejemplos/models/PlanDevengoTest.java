@@ -0,0 +1,192 @@
+package org.example.ejemplos.models;
+
+import org.example.ejemplos.exceptions.DineroInsuficienteException;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PlanDevengoTest {
+
+    private static final Currency CLP = Currency.getInstance("CLP");
+    private static final Currency USD = Currency.getInstance("USD");
+    private static final Currency EUR = Currency.getInstance("EUR");
+
+    private static final PlanDevengo PLAN = PlanDevengo.VACIO
+            .conTasa(CLP, new BigDecimal("0.004"))
+            .conComision(CLP, new BigDecimal("990"))
+            .conTasa(USD, new BigDecimal("0.0025"));
+
+    @Test
+    void testInteresYComisionPorMoneda() {
+        Banco banco = new Banco("Banco De Chile");
+        Cuenta pesos = new Cuenta("kan doe", new BigDecimal("100000"));
+        // 0.4% de 1000.232 son 4.000928, CLP no tiene decimales
+        Cuenta pesosConDecimales = new CuentaEstriada("Chulin Doe", new BigDecimal("1000.232"));
+        Cuenta sinFondos = new CuentaAtomica("sin fondos", 500L, 0);
+        // 0.25% de 10.10 son 0.02525
+        Cuenta dolares = new CuentaAtomica("John Doe", 1010L, 2, USD);
+        Cuenta euros = new Cuenta("Jane Doe", new BigDecimal("50.00"), EUR);
+        for (Cuenta cuenta : new Cuenta[]{pesos, pesosConDecimales, sinFondos, dolares, euros}) {
+            banco.addCuentas(cuenta);
+        }
+        AgregadosBanco agregados = banco.activarAgregados();
+
+        ResumenDevengo resumen = banco.devengar(PLAN);
+
+        assertEquals("99410", pesos.getSaldo().toPlainString());
+        assertEquals("14.232", pesosConDecimales.getSaldo().toPlainString());
+        assertEquals("502", sinFondos.getSaldo().toPlainString());
+        assertEquals("10.13", dolares.getSaldo().toPlainString());
+        assertEquals("50.00", euros.getSaldo().toPlainString());
+
+        assertEquals(5, resumen.getCuentas());
+        assertEquals(1, resumen.getSinFondos());
+        assertEquals("406", resumen.getIntereses(CLP).toPlainString());
+        assertEquals("1980", resumen.getComisiones(CLP).toPlainString());
+        assertEquals("0.03", resumen.getIntereses(USD).toPlainString());
+        assertEquals(0, BigDecimal.ZERO.compareTo(resumen.getIntereses(EUR)));
+        assertEquals(0, new BigDecimal("101500.232").add(resumen.getNeto(CLP)).compareTo(agregados.getSaldoTotal(CLP)));
+    }
+
+    @Test
+    void testRedondeoConfigurable() {
+        Banco banco = new Banco("Banco De Chile");
+        Cuenta cuenta = new Cuenta("kan doe", new BigDecimal("10.10"), USD);
+        banco.addCuentas(cuenta);
+        PlanDevengo plan = PLAN.conRedondeo(RoundingMode.DOWN).conComision(USD, new BigDecimal("0.015"));
+
+        banco.devengar(plan);
+        // 0.02525 de interes y 0.015 de comision, ambos a dos decimales hacia abajo
+        assertEquals("10.11", cuenta.getSaldo().toPlainString());
+        assertEquals(2, cuenta.getEscala());
+        assertEquals(RoundingMode.HALF_EVEN, PLAN.getRedondeo());
+        assertThrows(IllegalArgumentException.class, () -> PLAN.conRedondeo(RoundingMode.UNNECESSARY));
+        assertThrows(IllegalArgumentException.class, () -> PLAN.conTasa(USD, new BigDecimal("-0.01")));
+    }
+
+    @Test
+    void testIgualQueBigDecimalConCualquierDivision() {
+        Random random = new Random(21);
+        int cantidad = 20_000;
+        long[] saldos = new long[cantidad];
+        for (int i = 0; i < cantidad; i++) {
+            saldos[i] = i < 19_000 ? random.nextInt(100_000_000) : random.nextLong() >>> 12;
+        }
+        BigDecimal tasa = PLAN.getTasa(USD);
+        BigDecimal referencia = null;
+        for (int hilos : new int[]{1, 3}) {
+            Banco banco = new Banco("Banco De Chile");
+            List<Cuenta> cuentas = new ArrayList<>();
+            for (int i = 0; i < cantidad; i++) {
+                Cuenta cuenta = i % 2 == 0 ? new Cuenta("persona " + i, saldos[i], 2, USD)
+                        : new CuentaAtomica("persona " + i, saldos[i], 2, USD);
+                cuentas.add(cuenta);
+                banco.addCuentas(cuenta);
+            }
+            ResumenDevengo resumen = banco.devengar(PLAN, new ForkJoinPool(hilos));
+
+            BigDecimal suma = BigDecimal.ZERO;
+            for (int i = 0; i < cantidad; i++) {
+                BigDecimal saldo = BigDecimal.valueOf(saldos[i], 2);
+                BigDecimal interes = saldo.multiply(tasa).setScale(2, RoundingMode.HALF_EVEN);
+                assertEquals(saldo.add(interes), cuentas.get(i).getSaldo(), "cuenta " + i);
+                suma = suma.add(interes);
+            }
+            assertEquals(0, suma.compareTo(resumen.getIntereses(USD)));
+            if (referencia == null) {
+                referencia = resumen.getIntereses(USD);
+            } else {
+                assertEquals(referencia, resumen.getIntereses(USD), "hilos " + hilos);
+            }
+        }
+    }
+
+    @Test
+    @Tag("concurrencia")
+    void testDevengoConTransferenciasEnCurso(TestReporter reporter) throws InterruptedException {
+        Banco banco = new Banco("Banco De Chile");
+        int cantidad = 20_000;
+        List<Cuenta> cuentas = new ArrayList<>();
+        long inicial = 0;
+        for (int i = 0; i < cantidad; i++) {
+            long saldo = 100_000L + i;
+            Cuenta cuenta = i % 3 == 0 ? new Cuenta("persona " + i, saldo, 0)
+                    : i % 3 == 1 ? new CuentaAtomica("persona " + i, saldo, 0)
+                    : new CuentaEstriada("persona " + i, saldo, 0);
+            cuentas.add(cuenta);
+            banco.addCuentas(cuenta);
+            inicial += saldo;
+        }
+        AgregadosBanco agregados = banco.activarAgregados();
+
+        AtomicBoolean terminar = new AtomicBoolean();
+        List<Thread> hilos = new ArrayList<>();
+        for (int h = 0; h < 2; h++) {
+            long semilla = h;
+            Thread hilo = new Thread(() -> {
+                Random random = new Random(semilla);
+                while (!terminar.get()) {
+                    try {
+                        banco.trasnferir(cuentas.get(random.nextInt(cantidad)), cuentas.get(random.nextInt(cantidad)),
+                                random.nextInt(5_000), 0);
+                    } catch (DineroInsuficienteException e) {
+                        // no pasa con estos montos, pero una transferencia rechazada no cambia el total
+                    }
+                }
+            });
+            hilo.start();
+            hilos.add(hilo);
+        }
+        ResumenDevengo resumen;
+        try {
+            resumen = banco.devengar(PLAN);
+        } finally {
+            terminar.set(true);
+            for (Thread hilo : hilos) {
+                hilo.join();
+            }
+        }
+
+        long total = 0;
+        for (Cuenta cuenta : cuentas) {
+            total += cuenta.getSaldoUnidades();
+        }
+        BigDecimal esperado = BigDecimal.valueOf(inicial).add(resumen.getNeto(CLP));
+        assertEquals(0, esperado.compareTo(BigDecimal.valueOf(total)));
+        assertEquals(0, esperado.compareTo(agregados.getSaldoTotal()));
+        assertEquals(cantidad, resumen.getCuentas());
+        reporter.publishEntry("devengo", resumen.toString());
+    }
+
+    @Test
+    @Tag("rendimiento")
+    void testRendimientoDevengo(TestReporter reporter) {
+        Banco banco = new Banco("Banco De Chile");
+        int cantidad = 1_000_000;
+        long inicial = 0;
+        for (int i = 0; i < cantidad; i++) {
+            banco.addCuentas(new CuentaAtomica("persona " + i, 100_000L + i, 0));
+            inicial += 100_000L + i;
+        }
+
+        ResumenDevengo resumen = banco.devengar(PLAN);
+
+        reporter.publishEntry("devengo", resumen.toString());
+        long total = 0;
+        for (Cuenta cuenta : banco.getCuentas()) {
+            total += cuenta.getSaldoUnidades();
+        }
+        assertEquals(0, BigDecimal.valueOf(inicial).add(resumen.getNeto(CLP)).compareTo(BigDecimal.valueOf(total)));
+    }
+}
@@ -0,0 +1,114 @@
+package org.example.ejemplos.models;
+
+import org.example.ejemplos.exceptions.DineroInsuficienteException;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Currency;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TablaCambioTest {
+
+    private static final Currency CLP = Currency.getInstance("CLP");
+    private static final Currency USD = Currency.getInstance("USD");
+    private static final Currency EUR = Currency.getInstance("EUR");
+    private static final Currency JPY = Currency.getInstance("JPY");
+
+    private static final TablaCambio TABLA = TablaCambio.VACIA
+            .conTasa(USD, CLP, new BigDecimal("943.25"))
+            .conTasa(CLP, USD, new BigDecimal("0.00106016"))
+            .conTasa(EUR, USD, new BigDecimal("1.0875"))
+            .conTasa(USD, JPY, new BigDecimal("149.5"));
+
+    @Test
+    void testConvertirConDecimalesDeLaMoneda() {
+        assertEquals("94325", TABLA.convertir(new BigDecimal("100"), USD, CLP).toPlainString());
+        // 10.01 * 943.25 = 9441.9325, CLP no tiene decimales
+        assertEquals("9442", TABLA.convertir(new BigDecimal("10.01"), USD, CLP).toPlainString());
+        assertEquals("1.06", TABLA.convertir(new BigDecimal("1000"), CLP, USD).toPlainString());
+        assertEquals("108.75", TABLA.convertir(new BigDecimal("100.00"), EUR, USD).toPlainString());
+        assertEquals(new BigDecimal("943.250000000"), TABLA.getTasa(USD, CLP));
+        assertNull(TABLA.getTasa(JPY, USD));
+        assertThrows(IllegalArgumentException.class, () -> TABLA.convertir(new BigDecimal("1"), JPY, USD));
+    }
+
+    @Test
+    void testRedondeoConfigurable() {
+        // 0.5 USD son 471.625 CLP
+        BigDecimal monto = new BigDecimal("0.5");
+        assertEquals("472", TABLA.convertir(monto, USD, CLP).toPlainString());
+        assertEquals("471", TABLA.conRedondeo(RoundingMode.DOWN).convertir(monto, USD, CLP).toPlainString());
+        assertEquals("472", TABLA.conRedondeo(RoundingMode.CEILING).convertir(monto, USD, CLP).toPlainString());
+        assertThrows(IllegalArgumentException.class, () -> TABLA.conRedondeo(RoundingMode.UNNECESSARY));
+        // la tabla original no cambia
+        assertEquals(RoundingMode.HALF_EVEN, TABLA.getRedondeo());
+    }
+
+    @Test
+    void testIgualQueBigDecimal() {
+        Random random = new Random(11);
+        for (RoundingMode modo : new RoundingMode[]{RoundingMode.HALF_EVEN, RoundingMode.HALF_UP, RoundingMode.FLOOR}) {
+            TablaCambio tabla = TABLA.conRedondeo(modo);
+            BigDecimal tasa = tabla.getTasa(CLP, USD);
+            for (int i = 0; i < 10_000; i++) {
+                // incluye montos cuyo producto con la tasa no cabe en un long
+                long unidades = i < 9_000 ? random.nextInt(100_000_000) : random.nextLong() >>> 8;
+                BigDecimal esperado = BigDecimal.valueOf(unidades).multiply(tasa).setScale(2, modo);
+                assertEquals(esperado.unscaledValue().longValueExact(), tabla.convertir(CLP, USD, unidades, 0, 2));
+            }
+        }
+    }
+
+    @Test
+    void testTransferenciaEntreMonedas() {
+        Banco banco = new Banco("Banco De Chile");
+        banco.setTablaCambio(TABLA);
+        Cuenta pesos = new Cuenta("kan doe", new BigDecimal("100000"));
+        Cuenta dolares = new Cuenta("Chulin Doe", new BigDecimal("10.00"), USD);
+        Cuenta yenes = new CuentaAtomica("comercio", 0L, 0, JPY);
+        banco.addCuentas(pesos);
+        banco.addCuentas(dolares);
+        banco.addCuentas(yenes);
+        AgregadosBanco agregados = banco.activarAgregados();
+
+        banco.trasnferir(pesos, dolares, new BigDecimal("50000"));
+        assertEquals("50000", pesos.getSaldo().toPlainString());
+        assertEquals("63.01", dolares.getSaldo().toPlainString());
+
+        banco.trasnferir(dolares, yenes, new BigDecimal("3.01"));
+        assertEquals("60.00", dolares.getSaldo().toPlainString());
+        assertEquals("450", yenes.getSaldo().toPlainString());
+
+        assertEquals(0, new BigDecimal("60").compareTo(agregados.getSaldoTotal(USD)));
+        assertEquals(0, new BigDecimal("50000").compareTo(agregados.getSaldoTotal(CLP)));
+        assertEquals(3, agregados.getSaldosTotales().size());
+        assertThrows(IllegalStateException.class, agregados::getSaldoTotal);
+    }
+
+    @Test
+    void testSinTasaNoMueveDinero() {
+        Banco banco = new Banco("Banco De Chile");
+        Cuenta pesos = new Cuenta("kan doe", new BigDecimal("100000"));
+        Cuenta dolares = new Cuenta("Chulin Doe", new BigDecimal("10.00"), USD);
+        banco.addCuentas(pesos);
+        banco.addCuentas(dolares);
+
+        assertThrows(IllegalArgumentException.class, () -> banco.trasnferir(pesos, dolares, new BigDecimal("500")));
+        assertEquals("100000", pesos.getSaldo().toPlainString());
+        assertEquals("10.00", dolares.getSaldo().toPlainString());
+
+        // la tabla nueva rige para las transferencias siguientes
+        banco.setTablaCambio(TABLA);
+        assertThrows(DineroInsuficienteException.class,
+                () -> banco.trasnferir(dolares, pesos, new BigDecimal("10.01")));
+        // 9432.5 pesos, redondeado al par
+        banco.trasnferir(dolares, pesos, new BigDecimal("10"));
+        assertEquals("109432", pesos.getSaldo().toPlainString());
+        assertEquals("0.00", dolares.getSaldo().toPlainString());
+        banco.setTablaCambio(TablaCambio.VACIA);
+        assertThrows(IllegalArgumentException.class, () -> banco.trasnferir(pesos, dolares, new BigDecimal("1")));
+    }
+}
@@ -0,0 +1,183 @@
+package org.example.ejemplos.models;
+
+import org.example.ejemplos.exceptions.ConflictoTransaccionException;
+import org.example.ejemplos.exceptions.DineroInsuficienteException;
+import org.example.ejemplos.exceptions.LimiteExcedidoException;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransaccionTest {
+
+    @Test
+    void testPagoDivididoConComision() {
+        Banco banco = new Banco("Banco De Chile");
+        Cuenta pagador = new Cuenta("kan doe", new BigDecimal("1000"));
+        Cuenta tienda = new Cuenta("Chulin Doe", new BigDecimal("0"));
+        Cuenta envio = new CuentaAtomica("envio", new BigDecimal("0.00"));
+        Cuenta comision = new CuentaEstriada("comision", new BigDecimal("0.00"));
+        banco.addCuentas(pagador);
+        banco.addCuentas(tienda);
+        banco.addCuentas(envio);
+        banco.addCuentas(comision);
+        AgregadosBanco agregados = banco.activarAgregados();
+
+        BigDecimal saldoVisto = banco.transaccion(tx -> {
+            tx.trasnferir(pagador, tienda, new BigDecimal("500"));
+            tx.trasnferir(pagador, envio, new BigDecimal("20.50"));
+            tx.trasnferir(pagador, comision, new BigDecimal("5.25"));
+            return tx.getSaldo(pagador);
+        });
+
+        assertEquals("474.25", saldoVisto.toPlainString());
+        assertEquals("474.25", pagador.getSaldo().toPlainString());
+        assertEquals("500", tienda.getSaldo().toPlainString());
+        assertEquals("20.50", envio.getSaldo().toPlainString());
+        assertEquals("5.25", comision.getSaldo().toPlainString());
+        assertEquals(0, new BigDecimal("1000").compareTo(agregados.getSaldoTotal()));
+        assertEquals(1, banco.getEstadisticasTransacciones().getConfirmadas());
+    }
+
+    @Test
+    void testFondosSeVerificanAlConfirmar() {
+        Banco banco = new Banco("Banco De Chile");
+        Cuenta cuenta1 = new Cuenta("kan doe", new BigDecimal("100"));
+        Cuenta cuenta2 = new Cuenta("Chulin Doe", new BigDecimal("50"));
+        banco.addCuentas(cuenta1);
+        banco.addCuentas(cuenta2);
+
+        // en el medio cuenta1 queda en -100, pero el neto alcanza
+        banco.transaccion(tx -> {
+            tx.debito(cuenta1, new BigDecimal("200"));
+            tx.credito(cuenta1, new BigDecimal("150"));
+            tx.trasnferir(cuenta2, cuenta1, new BigDecimal("50"));
+            return null;
+        });
+        assertEquals("100", cuenta1.getSaldo().toPlainString());
+        assertEquals("0", cuenta2.getSaldo().toPlainString());
+
+        // el segundo debito no alcanza, el primero tampoco se aplica
+        assertThrows(DineroInsuficienteException.class, () -> banco.transaccion(tx -> {
+            tx.debito(cuenta1, new BigDecimal("10"));
+            tx.credito(cuenta2, new BigDecimal("10"));
+            tx.debito(cuenta2, new BigDecimal("11"));
+            return null;
+        }));
+        assertEquals("100", cuenta1.getSaldo().toPlainString());
+        assertEquals("0", cuenta2.getSaldo().toPlainString());
+        assertEquals(1, banco.getEstadisticasTransacciones().getSinFondos());
+
+        // con fondos pero sobre el limite: tampoco se aplica nada y se cuenta aparte
+        cuenta1.setLimites(LimitesDebito.NINGUNO.conLimite(Duration.ofHours(1), new BigDecimal("20")));
+        assertThrows(LimiteExcedidoException.class, () -> banco.transaccion(tx -> {
+            tx.credito(cuenta2, new BigDecimal("30"));
+            tx.debito(cuenta1, new BigDecimal("30"));
+            return null;
+        }));
+        assertEquals("100", cuenta1.getSaldo().toPlainString());
+        assertEquals("0", cuenta2.getSaldo().toPlainString());
+        assertEquals(1, banco.getEstadisticasTransacciones().getSinFondos());
+        assertEquals(1, banco.getEstadisticasTransacciones().getLimiteExcedido());
+    }
+
+    @Test
+    void testConflictoRepiteElCuerpo() {
+        Banco banco = new Banco("Banco De Chile");
+        Cuenta cuenta1 = new Cuenta("kan doe", new BigDecimal("100"));
+        Cuenta cuenta2 = new Cuenta("Chulin Doe", new BigDecimal("0"));
+        banco.addCuentas(cuenta1);
+        banco.addCuentas(cuenta2);
+        AtomicInteger ejecuciones = new AtomicInteger();
+
+        // transfiere la mitad de lo que lee; la primera vez alguien deposita despues de la lectura
+        banco.transaccion(tx -> {
+            BigDecimal mitad = tx.getSaldo(cuenta1).divide(new BigDecimal(2));
+            if (ejecuciones.incrementAndGet() == 1) {
+                cuenta1.credito(new BigDecimal("100"));
+            }
+            tx.trasnferir(cuenta1, cuenta2, mitad);
+            return null;
+        });
+        assertEquals(2, ejecuciones.get());
+        assertEquals("100", cuenta1.getSaldo().toPlainString());
+        assertEquals("100", cuenta2.getSaldo().toPlainString());
+        assertEquals(1, banco.getEstadisticasTransacciones().getReintentos());
+
+        assertThrows(ConflictoTransaccionException.class, () -> banco.transaccion(tx -> {
+            tx.getSaldo(cuenta2);
+            cuenta2.credito(new BigDecimal("1"));
+            tx.debito(cuenta2, new BigDecimal("1"));
+            return null;
+        }, 3));
+        assertEquals("103", cuenta2.getSaldo().toPlainString());
+        assertEquals(1, banco.getEstadisticasTransacciones().getAbortadas());
+        assertEquals(3, banco.getEstadisticasTransacciones().getReintentos());
+    }
+
+    @Test
+    @Tag("concurrencia")
+    void testTransaccionesConcurrentesConservanElTotal(TestReporter reporter) throws InterruptedException {
+        Banco banco = new Banco("Banco De Chile");
+        int cantidadCuentas = 8;
+        List<Cuenta> cuentas = new ArrayList<>();
+        for (int i = 0; i < cantidadCuentas; i++) {
+            Cuenta cuenta = i % 2 == 0 ? new Cuenta("persona " + i, 100_000L, 2)
+                    : new CuentaAtomica("persona " + i, 100_000L, 2);
+            cuentas.add(cuenta);
+            banco.addCuentas(cuenta);
+        }
+        int hilos = 4;
+        int operaciones = 5_000;
+        List<Thread> trabajadores = new ArrayList<>();
+        for (int h = 0; h < hilos; h++) {
+            long semilla = h;
+            Thread hilo = new Thread(() -> {
+                Random random = new Random(semilla);
+                for (int i = 0; i < operaciones; i++) {
+                    Cuenta origen = cuentas.get(random.nextInt(cantidadCuentas));
+                    Cuenta destino = cuentas.get(random.nextInt(cantidadCuentas));
+                    Cuenta comision = cuentas.get(random.nextInt(cantidadCuentas));
+                    try {
+                        if (i % 4 == 0) {
+                            banco.trasnferir(origen, destino, 7L, 2);
+                        } else {
+                            // paga el 1% de lo que tiene el origen, repartido entre destino y comision
+                            banco.transaccion(tx -> {
+                                long unidades = tx.getSaldo(origen).movePointRight(2).longValue() / 100;
+                                tx.trasnferir(origen, destino, unidades - unidades / 10, 2);
+                                tx.trasnferir(origen, comision, unidades / 10, 2);
+                                return null;
+                            }, Integer.MAX_VALUE);
+                        }
+                    } catch (DineroInsuficienteException e) {
+                        // las transferencias simples pueden quedar sin fondos
+                    }
+                }
+            });
+            hilo.start();
+            trabajadores.add(hilo);
+        }
+        for (Thread hilo : trabajadores) {
+            hilo.join();
+        }
+
+        long total = 0;
+        for (Cuenta cuenta : cuentas) {
+            assertTrue(cuenta.getSaldoUnidades() >= 0);
+            total += cuenta.getSaldoUnidades();
+        }
+        assertEquals(100_000L * cantidadCuentas, total);
+        EstadisticasTransacciones estadisticas = banco.getEstadisticasTransacciones();
+        assertEquals(hilos * operaciones * 3 / 4, estadisticas.getConfirmadas());
+        reporter.publishEntry("transacciones", estadisticas.toString());
+    }
+}
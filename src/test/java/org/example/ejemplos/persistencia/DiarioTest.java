@@ -0,0 +1,232 @@
+package org.example.ejemplos.persistencia;
+
+import org.example.ejemplos.exceptions.DineroInsuficienteException;
+import org.example.ejemplos.models.Banco;
+import org.example.ejemplos.models.Cuenta;
+import org.example.ejemplos.models.CuentaAtomica;
+import org.example.ejemplos.models.TablaCambio;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Currency;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DiarioTest {
+
+    @TempDir
+    Path directorio;
+
+    private static void assertMismasCuentas(Banco esperado, Banco actual) {
+        assertEquals(esperado.getCantidadCuentas(), actual.getCantidadCuentas());
+        for (Cuenta cuenta : esperado.getCuentas()) {
+            Cuenta restaurada = actual.findCuenta(cuenta.getPersona());
+            assertNotNull(restaurada, cuenta.getPersona());
+            assertEquals(cuenta.getId(), restaurada.getId());
+            assertEquals(cuenta.getSaldo(), restaurada.getSaldo(), cuenta.getPersona());
+            assertEquals(cuenta.getClass(), restaurada.getClass());
+        }
+    }
+
+    @Test
+    void testRestaurarConMonedas() throws Exception {
+        Currency usd = Currency.getInstance("USD");
+        Banco banco = new Banco("Banco De Chile");
+        banco.setTablaCambio(TablaCambio.VACIA.conTasa(Cuenta.MONEDA_POR_DEFECTO, usd, new BigDecimal("0.00106")));
+        try (Diario diario = new Diario(directorio)) {
+            diario.restaurar(banco);
+            Cuenta pesos = new Cuenta("kan doe", new BigDecimal("100000"));
+            Cuenta dolares = new CuentaAtomica("Chulin Doe", 1000L, 2, usd);
+            banco.addCuentas(pesos);
+            banco.addCuentas(dolares);
+            banco.trasnferir(pesos, dolares, new BigDecimal("12345"));
+            diario.tomarInstantanea();
+            banco.trasnferir(pesos, dolares, new BigDecimal("1000"));
+            diario.esperarDurable();
+        }
+
+        Banco restaurado = new Banco("Banco De Chile");
+        try (Diario diario = new Diario(directorio)) {
+            diario.restaurar(restaurado);
+            assertMismasCuentas(banco, restaurado);
+            assertEquals(usd, restaurado.findCuenta("Chulin Doe").getMoneda());
+            assertEquals(Cuenta.MONEDA_POR_DEFECTO, restaurado.findCuenta("kan doe").getMoneda());
+            assertEquals("24.15", restaurado.findCuenta("Chulin Doe").getSaldo().toPlainString());
+        }
+    }
+
+    @Test
+    void testRestaurarReconstruyeSaldos() throws Exception {
+        Banco banco = new Banco("Banco De Chile");
+        try (Diario diario = new Diario(directorio)) {
+            diario.restaurar(banco);
+            Cuenta cuenta = new Cuenta("kan doe", new BigDecimal("2500"));
+            Cuenta cuenta2 = new Cuenta("Chulin Doe", new BigDecimal("1000.232"));
+            Cuenta cuenta3 = new CuentaAtomica("comercio", new BigDecimal("10.00"));
+            Cuenta cuenta4 = new Cuenta("se va", new BigDecimal("1"));
+            banco.addCuentas(cuenta);
+            banco.addCuentas(cuenta2);
+            banco.addCuentas(cuenta3);
+            banco.addCuentas(cuenta4);
+
+            banco.trasnferir(cuenta2, cuenta, new BigDecimal(500));
+            cuenta.credito(new BigDecimal("0.5"));
+            cuenta3.debito(new BigDecimal("2.25"));
+            cuenta3.debito(new BigDecimal("1.5"));
+            // se reproduce sumando el monto revertido
+            cuenta3.revertirDebito(150, 2);
+            assertThrows(DineroInsuficienteException.class, () -> cuenta2.debito(new BigDecimal(5000)));
+            cuenta4.setSaldo(new BigDecimal("99.99"));
+            banco.removeCuenta("se va");
+            diario.esperarDurable();
+        }
+
+        Banco restaurado = new Banco("Banco De Chile");
+        try (Diario diario = new Diario(directorio)) {
+            diario.restaurar(restaurado);
+            assertMismasCuentas(banco, restaurado);
+            assertEquals("3000.5", restaurado.findCuenta("kan doe").getSaldo().toPlainString());
+            assertEquals("7.75", restaurado.findCuenta("comercio").getSaldo().toPlainString());
+            assertNull(restaurado.findCuenta("se va"));
+
+            // el diario reabierto sigue escribiendo a continuacion de lo que ya tenia
+            restaurado.findCuenta("kan doe").debito(new BigDecimal("0.5"));
+            restaurado.addCuentas(new Cuenta("nueva", new BigDecimal("7")));
+        }
+
+        Banco otraVez = new Banco("Banco De Chile");
+        try (Diario diario = new Diario(directorio)) {
+            diario.restaurar(otraVez);
+            assertMismasCuentas(restaurado, otraVez);
+            assertEquals("3000.0", otraVez.findCuenta("kan doe").getSaldo().toPlainString());
+        }
+    }
+
+    @Test
+    void testSegmentosRotan() throws Exception {
+        Banco banco = new Banco("Banco De Chile");
+        try (Diario diario = new Diario(directorio, Diario.TAMANO_REGISTRO * 16L, 0)) {
+            diario.restaurar(banco);
+            Random random = new Random(7);
+            for (int i = 0; i < 20; i++) {
+                banco.addCuentas(new Cuenta("persona " + i, new BigDecimal("100")));
+            }
+            List<Cuenta> cuentas = banco.getCuentas();
+            for (int i = 0; i < 500; i++) {
+                try {
+                    banco.trasnferir(cuentas.get(random.nextInt(20)), cuentas.get(random.nextInt(20)),
+                            new BigDecimal(random.nextInt(50)));
+                } catch (DineroInsuficienteException e) {
+                    // no queda en el diario
+                }
+            }
+            diario.esperarDurable();
+        }
+        try (Stream<Path> archivos = Files.list(directorio)) {
+            assertTrue(archivos.count() > 1);
+        }
+
+        Banco restaurado = new Banco("Banco De Chile");
+        try (Diario diario = new Diario(directorio, Diario.TAMANO_REGISTRO * 16L, 0)) {
+            diario.restaurar(restaurado);
+        }
+        assertMismasCuentas(banco, restaurado);
+    }
+
+    // Un registro escrito a medias al final (caida en medio de la escritura) se descarta al restaurar
+    @Test
+    void testRegistroIncompletoSeDescarta() throws Exception {
+        Banco banco = new Banco("Banco De Chile");
+        Cuenta cuenta = new Cuenta("kan doe", new BigDecimal("100"));
+        try (Diario diario = new Diario(directorio, Diario.TAMANO_REGISTRO * 64L, 0)) {
+            diario.restaurar(banco);
+            banco.addCuentas(cuenta);
+            cuenta.credito(new BigDecimal("1"));
+            cuenta.credito(new BigDecimal("2"));
+            diario.esperarDurable();
+        }
+        Path segmento;
+        try (Stream<Path> archivos = Files.list(directorio)) {
+            segmento = archivos.sorted().collect(Collectors.toList()).get(0);
+        }
+        try (RandomAccessFile archivo = new RandomAccessFile(segmento.toFile(), "rw")) {
+            archivo.seek(2L * Diario.TAMANO_REGISTRO + 40);
+            archivo.writeLong(1_000_000L);
+        }
+
+        Banco restaurado = new Banco("Banco De Chile");
+        try (Diario diario = new Diario(directorio, Diario.TAMANO_REGISTRO * 64L, 0)) {
+            diario.restaurar(restaurado);
+            assertEquals("101", restaurado.findCuenta("kan doe").getSaldo().toPlainString());
+            assertEquals(2, diario.getUltimaSecuencia());
+        }
+    }
+
+    // Lo que el diario no puede escribir se rechaza antes de cambiar el saldo, nunca despues
+    @Test
+    void testRechazaMovimientosQueNoPuedeEscribir() throws Exception {
+        Banco banco = new Banco("Banco De Chile");
+        Cuenta cuenta = new Cuenta("kan doe", new BigDecimal("100"));
+        Diario diario = new Diario(directorio, Diario.TAMANO_REGISTRO * 4L, 0);
+        diario.restaurar(banco);
+        banco.addCuentas(cuenta);
+
+        String largo = String.join("", Collections.nCopies(Diario.LARGO_MAXIMO_PERSONA + 1, "x"));
+        assertThrows(IllegalArgumentException.class, () -> banco.addCuentas(new Cuenta(largo, BigDecimal.ONE)));
+        assertNull(banco.findCuenta(largo));
+        assertEquals(1, banco.getCantidadCuentas());
+
+        // un directorio con el nombre del segmento que se mapea por adelantado en la rotacion la hace fallar
+        Files.createDirectory(directorio.resolve(String.format("diario-%020d.seg", 9)));
+        for (int i = 0; i < 4; i++) {
+            cuenta.credito(BigDecimal.ONE);
+        }
+        assertNotNull(diario.getFalloEscritura());
+        // el credito que roto quedo escrito y aplicado, los siguientes se rechazan sin tocar el saldo
+        assertEquals(5, diario.getUltimaSecuencia());
+        assertThrows(IllegalStateException.class, () -> cuenta.credito(BigDecimal.ONE));
+        assertThrows(IllegalStateException.class, () -> banco.removeCuenta("kan doe"));
+        assertEquals("104", cuenta.getSaldo().toPlainString());
+        assertSame(cuenta, banco.findCuenta("kan doe"));
+        IOException error = assertThrows(IOException.class, diario::close);
+        assertSame(diario.getFalloEscritura(), error.getCause());
+        assertThrows(IllegalStateException.class, () -> cuenta.debito(BigDecimal.ONE));
+        assertEquals("104", cuenta.getSaldo().toPlainString());
+    }
+
+    @Test
+    @Tag("rendimiento")
+    void testRendimientoDiario(TestReporter reporter) throws IOException, InterruptedException {
+        Banco banco = new Banco("Banco De Chile");
+        int transferencias = 200_000;
+        try (Diario diario = new Diario(directorio, 8L * 1024 * 1024, Diario.INTERVALO_SINCRONIZACION_POR_DEFECTO)) {
+            diario.restaurar(banco);
+            Cuenta[] cuentas = new Cuenta[1000];
+            for (int i = 0; i < cuentas.length; i++) {
+                cuentas[i] = new Cuenta("persona " + i, 1_000_000_00L, 2);
+                banco.addCuentas(cuentas[i]);
+            }
+            Random random = new Random(1);
+            long inicio = System.nanoTime();
+            for (int i = 0; i < transferencias; i++) {
+                banco.trasnferir(cuentas[random.nextInt(cuentas.length)], cuentas[random.nextInt(cuentas.length)], 125L, 2);
+            }
+            diario.esperarDurable();
+            long nanos = System.nanoTime() - inicio;
+            reporter.publishEntry("transferencias/s", String.valueOf(transferencias * 1_000_000_000L / nanos));
+            assertEquals(transferencias + cuentas.length, diario.getUltimaSecuencia());
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package org.example.ejemplos.persistencia;
+
+import org.example.ejemplos.models.Banco;
+import org.example.ejemplos.models.Cuenta;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HistorialCuentasTest {
+
+    private static final Instant INICIO = Instant.parse("2024-01-01T00:00:00Z");
+
+    @TempDir
+    Path directorio;
+
+    /**
+     * Reloj que solo avanza cuando el test lo pide.
+     */
+    private static class RelojManual extends Clock {
+        private volatile Instant ahora = INICIO;
+
+        void avanzar(long millis) {
+            ahora = ahora.plusMillis(millis);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return ahora;
+        }
+    }
+
+    private static List<MovimientoHistorial> todas(HistorialCuentas historial, PaginaExtracto pagina) {
+        List<MovimientoHistorial> movimientos = new ArrayList<>(pagina.getMovimientos());
+        while (pagina.isHayMas()) {
+            pagina = historial.siguiente(pagina);
+            movimientos.addAll(pagina.getMovimientos());
+        }
+        return movimientos;
+    }
+
+    private static BigDecimal efecto(MovimientoHistorial movimiento) {
+        switch (movimiento.getTipo()) {
+            case CREDITO:
+            case ENTRADA:
+            case REVERSION:
+                return movimiento.getMonto();
+            case DEBITO:
+            case SALIDA:
+                return movimiento.getMonto().negate();
+            default:
+                throw new AssertionError(movimiento);
+        }
+    }
+
+    @Test
+    void testExtractoPaginadoPorRango() throws Exception {
+        RelojManual reloj = new RelojManual();
+        Banco banco = new Banco("Banco De Chile");
+        // retencion y bloques chicos para que el historial pase por el bloque y los segmentos
+        try (HistorialCuentas historial = new HistorialCuentas(directorio, 4, 8, reloj)) {
+            banco.agregarObservador(historial);
+            Cuenta cuenta = new Cuenta("kan doe", new BigDecimal("1000"));
+            Cuenta otra = new Cuenta("Chulin Doe", new BigDecimal("1000"));
+            banco.addCuentas(cuenta);
+            banco.addCuentas(otra);
+            for (int i = 1; i <= 50; i++) {
+                reloj.avanzar(1000);
+                cuenta.credito(new BigDecimal(i));
+                otra.debito(BigDecimal.ONE);
+            }
+            banco.trasnferir(cuenta, otra, new BigDecimal("10.5"));
+
+            // creditos del segundo 11 al 30, el limite superior no se incluye
+            PaginaExtracto pagina = historial.extracto(cuenta, INICIO.plusSeconds(11), INICIO.plusSeconds(31), 7);
+            assertEquals(7, pagina.getMovimientos().size());
+            assertTrue(pagina.isHayMas());
+            assertEquals(new BigDecimal("11"), pagina.getMovimientos().get(0).getMonto());
+            List<MovimientoHistorial> movimientos = todas(historial, pagina);
+            assertEquals(20, movimientos.size());
+            for (int i = 0; i < movimientos.size(); i++) {
+                assertEquals(new BigDecimal(11 + i), movimientos.get(i).getMonto());
+                assertEquals(MovimientoHistorial.Tipo.CREDITO, movimientos.get(i).getTipo());
+                assertEquals(cuenta.getId(), movimientos.get(i).getCuenta());
+            }
+
+            List<MovimientoHistorial> ultimos = historial.extracto(otra.getId(), INICIO.plusSeconds(50),
+                    Instant.MAX, 10).getMovimientos();
+            assertEquals(2, ultimos.size());
+            assertEquals(MovimientoHistorial.Tipo.DEBITO, ultimos.get(0).getTipo());
+            assertEquals(MovimientoHistorial.Tipo.ENTRADA, ultimos.get(1).getTipo());
+            assertEquals(cuenta.getId(), ultimos.get(1).getContraparte());
+            assertEquals(new BigDecimal("10.5"), ultimos.get(1).getMonto());
+
+            assertTrue(historial.extracto(cuenta, INICIO, INICIO.plusSeconds(1), 5).getMovimientos().isEmpty());
+            assertThrows(IllegalArgumentException.class, () -> historial.extracto(cuenta, INICIO, INICIO, 0));
+        }
+    }
+
+    @Test
+    void testReabrirConservaHistorial() throws Exception {
+        RelojManual reloj = new RelojManual();
+        Banco banco = new Banco("Banco De Chile");
+        Cuenta cuenta = new Cuenta("kan doe", new BigDecimal("100"));
+        banco.addCuentas(cuenta);
+        HistorialCuentas historial = new HistorialCuentas(directorio, 8, 16, reloj);
+        banco.agregarObservador(historial);
+        for (int i = 0; i < 20; i++) {
+            reloj.avanzar(10);
+            cuenta.credito(BigDecimal.ONE);
+        }
+        cuenta.setSaldo(new BigDecimal("7"));
+        historial.close();
+        assertTrue(historial.getCantidadSegmentos() > 0);
+        // el banco sigue operando y el historial cerrado ignora los movimientos
+        cuenta.credito(BigDecimal.ONE);
+        assertEquals("8", cuenta.getSaldo().toPlainString());
+
+        try (HistorialCuentas reabierto = new HistorialCuentas(directorio, 8, 16, reloj)) {
+            List<MovimientoHistorial> movimientos = todas(reabierto,
+                    reabierto.extracto(cuenta, Instant.EPOCH, Instant.MAX, 6));
+            assertEquals(21, movimientos.size());
+            MovimientoHistorial ajuste = movimientos.get(20);
+            assertEquals(MovimientoHistorial.Tipo.AJUSTE, ajuste.getTipo());
+            assertEquals(0, new BigDecimal("7").compareTo(ajuste.getMonto()));
+
+            // las secuencias siguen despues de las que ya estaban escritas
+            Cuenta nueva = new Cuenta(cuenta.getId(), "kan doe", 0, 0);
+            reabierto.credito(nueva, 5, 0);
+            List<MovimientoHistorial> conNuevo = todas(reabierto,
+                    reabierto.extracto(cuenta, Instant.EPOCH, Instant.MAX, 100));
+            assertEquals(22, conNuevo.size());
+            assertTrue(conNuevo.get(21).getSecuencia() > ajuste.getSecuencia());
+        }
+    }
+
+    @Test
+    void testSegmentoFallidoSeReintentaEnOrden() throws Exception {
+        RelojManual reloj = new RelojManual();
+        Cuenta cuenta = new Cuenta("kan doe", new BigDecimal("100"));
+        // un directorio con el nombre del archivo temporal hace fallar la escritura del primer segmento
+        Path bloqueo = Files.createDirectory(directorio.resolve(String.format("historial-%020d.seg.tmp", 0)));
+        HistorialCuentas historial = new HistorialCuentas(directorio, 2, 2, reloj);
+        for (int i = 1; i <= 10; i++) {
+            reloj.avanzar(10);
+            historial.credito(cuenta, i, 0);
+        }
+        long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (historial.getFalloSegmento() == null && System.nanoTime() < limite) {
+            Thread.sleep(5);
+        }
+        assertNotNull(historial.getFalloSegmento());
+        // los bloques que siguen al fallido esperan, y todo se sigue pudiendo consultar en orden
+        assertEquals(0, historial.getCantidadSegmentos());
+        List<MovimientoHistorial> movimientos = todas(historial,
+                historial.extracto(cuenta, Instant.EPOCH, Instant.MAX, 3));
+        assertEquals(10, movimientos.size());
+        for (int i = 0; i < movimientos.size(); i++) {
+            assertEquals(new BigDecimal(i + 1), movimientos.get(i).getMonto());
+        }
+
+        // arreglado el problema, cerrar escribe todo en orden
+        Files.delete(bloqueo);
+        historial.close();
+        assertNull(historial.getFalloSegmento());
+        try (HistorialCuentas reabierto = new HistorialCuentas(directorio, 2, 2, reloj)) {
+            List<MovimientoHistorial> releidos = todas(reabierto,
+                    reabierto.extracto(cuenta, Instant.EPOCH, Instant.MAX, 3));
+            assertEquals(movimientos.size(), releidos.size());
+            for (int i = 0; i < releidos.size(); i++) {
+                assertEquals(movimientos.get(i).getSecuencia(), releidos.get(i).getSecuencia());
+            }
+        }
+
+        // si sigue fallando al cerrar, close lo avisa
+        Path otroDirectorio = directorio.resolve("otro");
+        Files.createDirectories(otroDirectorio.resolve(String.format("historial-%020d.seg.tmp", 0)));
+        HistorialCuentas fallido = new HistorialCuentas(otroDirectorio, 2, 2, reloj);
+        fallido.credito(cuenta, 1, 0);
+        IOException error = assertThrows(IOException.class, fallido::close);
+        assertSame(fallido.getFalloSegmento(), error.getCause());
+    }
+
+    @Tag("concurrencia")
+    @Test
+    void testExtractosReconstruyenSaldosConcurrentes() throws Exception {
+        int cantidadCuentas = 16;
+        Banco banco = new Banco("Banco De Chile");
+        List<Cuenta> cuentas = new ArrayList<>();
+        for (int i = 0; i < cantidadCuentas; i++) {
+            Cuenta cuenta = new Cuenta("cuenta " + i, new BigDecimal("1000000"));
+            banco.addCuentas(cuenta);
+            cuentas.add(cuenta);
+        }
+        try (HistorialCuentas historial = new HistorialCuentas(directorio, 16, 256, Clock.systemUTC())) {
+            banco.agregarObservador(historial);
+            int hilos = 4;
+            ExecutorService ejecutor = Executors.newFixedThreadPool(hilos);
+            CountDownLatch listos = new CountDownLatch(hilos);
+            for (int h = 0; h < hilos; h++) {
+                int semilla = h;
+                ejecutor.execute(() -> {
+                    Random random = new Random(semilla);
+                    for (int i = 0; i < 5000; i++) {
+                        Cuenta origen = cuentas.get(random.nextInt(cantidadCuentas));
+                        Cuenta destino = cuentas.get(random.nextInt(cantidadCuentas));
+                        if (origen != destino) {
+                            banco.trasnferir(origen, destino, random.nextInt(1000), 0);
+                        }
+                        if (i % 500 == 0) {
+                            // consultas mientras el historial se mueve a los segmentos
+                            historial.extracto(origen, Instant.EPOCH, Instant.MAX, 50);
+                        }
+                    }
+                    listos.countDown();
+                });
+            }
+            assertTrue(listos.await(1, TimeUnit.MINUTES));
+            ejecutor.shutdown();
+
+            for (Cuenta cuenta : cuentas) {
+                BigDecimal saldo = new BigDecimal("1000000");
+                long anterior = 0;
+                for (MovimientoHistorial movimiento : todas(historial,
+                        historial.extracto(cuenta, Instant.EPOCH, Instant.MAX, 333))) {
+                    assertTrue(movimiento.getSecuencia() > anterior);
+                    anterior = movimiento.getSecuencia();
+                    saldo = saldo.add(efecto(movimiento));
+                }
+                assertEquals(0, saldo.compareTo(cuenta.getSaldo()), cuenta.getPersona());
+            }
+        }
+    }
+}
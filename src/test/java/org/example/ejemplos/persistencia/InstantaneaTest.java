@@ -0,0 +1,246 @@
+package org.example.ejemplos.persistencia;
+
+import org.example.ejemplos.exceptions.DineroInsuficienteException;
+import org.example.ejemplos.models.Banco;
+import org.example.ejemplos.models.Cuenta;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InstantaneaTest {
+
+    private static final long SEGMENTO_CHICO = Diario.TAMANO_REGISTRO * 256L;
+
+    @TempDir
+    Path directorio;
+
+    private static void assertMismosSaldos(Banco esperado, Banco actual) {
+        assertEquals(esperado.getCantidadCuentas(), actual.getCantidadCuentas());
+        for (Cuenta cuenta : esperado.getCuentas()) {
+            assertEquals(cuenta.getSaldo(), actual.findCuenta(cuenta.getId()).getSaldo(), cuenta.getPersona());
+        }
+    }
+
+    private long contar(String sufijo) throws Exception {
+        try (Stream<Path> archivos = Files.list(directorio)) {
+            return archivos.filter(p -> p.toString().endsWith(sufijo)).count();
+        }
+    }
+
+    private static void transferirAlAzar(Banco banco, List<Cuenta> cuentas, Random random, int cantidad) {
+        for (int i = 0; i < cantidad; i++) {
+            try {
+                banco.trasnferir(cuentas.get(random.nextInt(cuentas.size())), cuentas.get(random.nextInt(cuentas.size())),
+                        new BigDecimal(random.nextInt(40) + ".5"));
+            } catch (DineroInsuficienteException e) {
+                // rechazada, no queda en el diario
+            }
+        }
+    }
+
+    @Test
+    void testRestaurarDesdeInstantanea() throws Exception {
+        Banco banco = new Banco("Banco De Chile");
+        Random random = new Random(3);
+        try (Diario diario = new Diario(directorio, SEGMENTO_CHICO, 0)) {
+            diario.restaurar(banco);
+            for (int i = 0; i < 50; i++) {
+                banco.addCuentas(new Cuenta("persona " + i, new BigDecimal("100")));
+            }
+            List<Cuenta> cuentas = banco.getCuentas();
+            transferirAlAzar(banco, cuentas, random, 2000);
+            long segmentosAntes = contar(".seg");
+
+            long secuencia = diario.tomarInstantanea();
+            assertEquals(diario.getUltimaSecuencia(), secuencia);
+            assertEquals(1, contar(".snap"));
+            // sin una instantanea anterior los segmentos se conservan por si esta se dana
+            assertEquals(segmentosAntes, contar(".seg"));
+
+            // movimientos despues de la instantanea, se recuperan desde el diario
+            transferirAlAzar(banco, cuentas, random, 500);
+            banco.removeCuenta("persona 0");
+            banco.addCuentas(new Cuenta("persona nueva", new BigDecimal("1.25")));
+            diario.tomarInstantanea();
+            assertEquals(2, contar(".snap"));
+            assertTrue(contar(".seg") < segmentosAntes, "los segmentos cubiertos por la instantanea anterior se borran");
+            transferirAlAzar(banco, banco.getCuentas(), random, 100);
+            diario.tomarInstantanea();
+            assertEquals(2, contar(".snap"));
+            transferirAlAzar(banco, banco.getCuentas(), random, 100);
+        }
+
+        Banco restaurado = new Banco("Banco De Chile");
+        try (Diario diario = new Diario(directorio, SEGMENTO_CHICO, 0)) {
+            diario.restaurar(restaurado);
+        }
+        assertMismosSaldos(banco, restaurado);
+    }
+
+    // La instantanea se toma mientras otros hilos siguen transfiriendo, sin detenerlos
+    @Test
+    @Tag("concurrencia")
+    void testInstantaneaConTransferenciasEnCurso() throws Exception {
+        Banco banco = new Banco("Banco De Chile");
+        try (Diario diario = new Diario(directorio, SEGMENTO_CHICO, 0)) {
+            diario.restaurar(banco);
+            for (int i = 0; i < 100; i++) {
+                banco.addCuentas(new Cuenta("persona " + i, new BigDecimal("1000")));
+            }
+            List<Cuenta> cuentas = banco.getCuentas();
+            AtomicBoolean seguir = new AtomicBoolean(true);
+            List<Thread> hilos = new ArrayList<>();
+            for (int h = 0; h < 4; h++) {
+                Random random = new Random(h);
+                hilos.add(new Thread(() -> {
+                    while (seguir.get()) {
+                        transferirAlAzar(banco, cuentas, random, 100);
+                    }
+                }));
+            }
+            hilos.forEach(Thread::start);
+            for (int i = 0; i < 5; i++) {
+                Thread.sleep(20);
+                diario.tomarInstantanea();
+            }
+            seguir.set(false);
+            for (Thread hilo : hilos) {
+                hilo.join();
+            }
+        }
+
+        Banco restaurado = new Banco("Banco De Chile");
+        try (Diario diario = new Diario(directorio, SEGMENTO_CHICO, 0)) {
+            diario.restaurar(restaurado);
+        }
+        assertMismosSaldos(banco, restaurado);
+    }
+
+    @Test
+    void testInstantaneaDanadaUsaLaAnterior() throws Exception {
+        Banco banco = new Banco("Banco De Chile");
+        Random random = new Random(7);
+        try (Diario diario = new Diario(directorio, SEGMENTO_CHICO, 0)) {
+            diario.restaurar(banco);
+            for (int i = 0; i < 30; i++) {
+                banco.addCuentas(new Cuenta("persona " + i, new BigDecimal("100")));
+            }
+            transferirAlAzar(banco, banco.getCuentas(), random, 1000);
+            diario.tomarInstantanea();
+            transferirAlAzar(banco, banco.getCuentas(), random, 1000);
+            diario.tomarInstantanea();
+            transferirAlAzar(banco, banco.getCuentas(), random, 100);
+        }
+        List<Path> fotos = Instantanea.existentes(directorio);
+        assertEquals(2, fotos.size());
+        // un byte cambiado en medio de la mas nueva
+        Path nueva = fotos.get(1);
+        byte[] contenido = Files.readAllBytes(nueva);
+        contenido[contenido.length / 2] ^= 0x10;
+        Files.write(nueva, contenido);
+
+        Banco restaurado = new Banco("Banco De Chile");
+        try (Diario diario = new Diario(directorio, SEGMENTO_CHICO, 0)) {
+            diario.restaurar(restaurado);
+            // la siguiente instantanea reemplaza a la danada
+            diario.tomarInstantanea();
+        }
+        assertMismosSaldos(banco, restaurado);
+        assertFalse(Files.exists(nueva));
+        assertEquals(2, contar(".snap"));
+
+        // una danada y sin anterior no se puede usar
+        for (Path foto : Instantanea.existentes(directorio)) {
+            Files.delete(foto);
+        }
+        Files.write(nueva, new byte[]{1, 2, 3});
+        assertThrows(IOException.class, () -> Instantanea.leerUltima(directorio));
+    }
+
+    @Test
+    void testFalloDeInstantaneaProgramadaNoSePierde() throws Exception {
+        Banco banco = new Banco("Banco De Chile");
+        Diario diario = new Diario(directorio, SEGMENTO_CHICO, 0);
+        diario.restaurar(banco);
+        banco.addCuentas(new Cuenta("kan doe", new BigDecimal("100")));
+        // un directorio con el nombre del archivo temporal hace fallar la escritura
+        Files.createDirectory(directorio.resolve("instantanea-" + diario.getUltimaSecuencia() + ".tmp"));
+
+        diario.programarInstantaneas(5, TimeUnit.MILLISECONDS);
+        long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (diario.getFalloInstantanea() == null && System.nanoTime() < limite) {
+            Thread.sleep(5);
+        }
+        assertNotNull(diario.getFalloInstantanea());
+        assertEquals(0, contar(".snap"));
+        IOException error = assertThrows(IOException.class, diario::close);
+        assertSame(diario.getFalloInstantanea(), error.getCause());
+
+        Banco restaurado = new Banco("Banco De Chile");
+        try (Diario otro = new Diario(directorio, SEGMENTO_CHICO, 0)) {
+            otro.restaurar(restaurado);
+        }
+        assertMismosSaldos(banco, restaurado);
+    }
+
+    // Tiempo de arranque con y sin instantanea. Por defecto usa pocas cuentas para que la suite sea rapida,
+    // para medir con 10M: -Dinstantanea.cuentas=10000000 (y suficiente memoria, por ejemplo -Xmx8g)
+    @Test
+    @Tag("rendimiento")
+    void testTiempoDeArranque(TestReporter reporter) throws Exception {
+        int cantidad = Integer.getInteger("instantanea.cuentas", 100_000);
+        Random random = new Random(5);
+        try (Diario diario = new Diario(directorio)) {
+            Banco banco = new Banco("Banco De Chile");
+            diario.restaurar(banco);
+            Cuenta[] cuentas = new Cuenta[cantidad];
+            for (int i = 0; i < cantidad; i++) {
+                cuentas[i] = new Cuenta("persona " + i, 1_000_000L, 2);
+                banco.addCuentas(cuentas[i]);
+            }
+            for (int i = 0; i < cantidad; i++) {
+                banco.trasnferir(cuentas[random.nextInt(cantidad)], cuentas[random.nextInt(cantidad)], 1L, 2);
+            }
+        }
+
+        long inicio = System.nanoTime();
+        Banco soloDiario = new Banco("Banco De Chile");
+        try (Diario diario = new Diario(directorio)) {
+            diario.restaurar(soloDiario);
+            reporter.publishEntry("arranque solo con diario ms", String.valueOf((System.nanoTime() - inicio) / 1_000_000));
+
+            inicio = System.nanoTime();
+            diario.tomarInstantanea();
+            reporter.publishEntry("tomar instantanea ms", String.valueOf((System.nanoTime() - inicio) / 1_000_000));
+
+            // una cola corta de movimientos despues de la instantanea
+            List<Cuenta> cuentas = soloDiario.getCuentas();
+            for (int i = 0; i < cantidad / 100; i++) {
+                soloDiario.trasnferir(cuentas.get(random.nextInt(cantidad)), cuentas.get(random.nextInt(cantidad)), 1L, 2);
+            }
+        }
+
+        inicio = System.nanoTime();
+        Banco restaurado = new Banco("Banco De Chile");
+        try (Diario diario = new Diario(directorio)) {
+            diario.restaurar(restaurado);
+        }
+        reporter.publishEntry("cuentas", String.valueOf(cantidad));
+        reporter.publishEntry("arranque con instantanea ms", String.valueOf((System.nanoTime() - inicio) / 1_000_000));
+        assertMismosSaldos(soloDiario, restaurado);
+    }
+}
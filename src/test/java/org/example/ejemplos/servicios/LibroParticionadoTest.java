@@ -0,0 +1,168 @@
+package org.example.ejemplos.servicios;
+
+import org.example.ejemplos.exceptions.DineroInsuficienteException;
+import org.example.ejemplos.exceptions.LimiteExcedidoException;
+import org.example.ejemplos.models.Banco;
+import org.example.ejemplos.models.Cuenta;
+import org.example.ejemplos.models.LimitesDebito;
+import org.example.ejemplos.models.ObservadorMovimientos;
+import org.example.ejemplos.models.ResultadoTransferencia;
+import org.example.ejemplos.models.Transferencia;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LibroParticionadoTest {
+
+    private static Banco crearBanco(int cantidad, long saldoUnidades) {
+        Banco banco = new Banco("Banco De Chile");
+        for (int i = 0; i < cantidad; i++) {
+            banco.addCuentas(new Cuenta("persona " + i, saldoUnidades, 2));
+        }
+        return banco;
+    }
+
+    private static long sumaUnidades(Banco banco) {
+        long suma = 0;
+        for (Cuenta cuenta : banco.getCuentas()) {
+            suma += cuenta.getSaldoUnidades();
+        }
+        return suma;
+    }
+
+    @Test
+    void testTransferenciaEntreParticiones() throws Exception {
+        Banco banco = new Banco("Banco De Chile");
+        Cuenta cuenta1 = new Cuenta("kan doe", new BigDecimal("2500"));
+        Cuenta cuenta2 = new Cuenta("Chulin Doe", new BigDecimal("1500.8989"));
+        banco.addCuentas(cuenta1);
+        banco.addCuentas(cuenta2);
+
+        try (LibroParticionado libro = new LibroParticionado(banco, 2)) {
+            ResultadoTransferencia exitosa = libro.trasnferir(cuenta2, cuenta1, new BigDecimal("500")).get(10, TimeUnit.SECONDS);
+            ResultadoTransferencia fallida = libro.trasnferir(cuenta2, cuenta1, new BigDecimal("5000")).get(10, TimeUnit.SECONDS);
+
+            assertTrue(exitosa.isExitosa());
+            assertTrue(fallida.getError() instanceof DineroInsuficienteException);
+
+            // con fondos pero sobre el limite, el error dice por que
+            cuenta2.setLimites(LimitesDebito.NINGUNO.conLimite(Duration.ofHours(1), new BigDecimal("100")));
+            ResultadoTransferencia limitada = libro.trasnferir(cuenta2, cuenta1, new BigDecimal("200")).get(10, TimeUnit.SECONDS);
+            assertTrue(limitada.getError() instanceof LimiteExcedidoException);
+        }
+        assertEquals("1000.8989", cuenta2.getSaldo().toPlainString());
+        assertEquals("3000", cuenta1.getSaldo().toPlainString());
+    }
+
+    // Si el credito desborda, la compensacion devuelve el monto al origen
+    @Test
+    void testCompensacionCuandoFallaElCredito() throws Exception {
+        Banco banco = new Banco("Banco De Chile");
+        Cuenta origen = new Cuenta("origen", 100L, 0);
+        Cuenta destino = new Cuenta("destino", Long.MAX_VALUE - 10, 0);
+        banco.addCuentas(origen);
+        banco.addCuentas(destino);
+        origen.setLimites(LimitesDebito.NINGUNO.conLimite(Duration.ofHours(1), new BigDecimal("60")));
+        AtomicInteger creditos = new AtomicInteger();
+        banco.agregarObservador(new ObservadorMovimientos() {
+            @Override
+            public void credito(Cuenta cuenta, long unidades, int escala) {
+                creditos.incrementAndGet();
+            }
+        });
+
+        ResultadoTransferencia resultado;
+        try (LibroParticionado libro = new LibroParticionado(banco, 4)) {
+            resultado = libro.trasnferir(new Transferencia(origen, destino, 50L, 0)).get(10, TimeUnit.SECONDS);
+        }
+        assertFalse(resultado.isExitosa());
+        assertTrue(resultado.getError() instanceof ArithmeticException);
+        assertEquals(100L, origen.getSaldoUnidades());
+        assertEquals(Long.MAX_VALUE - 10, destino.getSaldoUnidades());
+        // la compensacion no se avisa como un credito y el debito revertido no consume limite
+        assertEquals(0, creditos.get());
+        assertTrue(origen.tryDebito(50L, 0).isExitoso());
+    }
+
+    @Test
+    @Tag("concurrencia")
+    void testConservaElDineroConVariosProductores() throws Exception {
+        Banco banco = crearBanco(200, 10_000L);
+        long sumaInicial = sumaUnidades(banco);
+        List<Cuenta> cuentas = banco.getCuentas();
+        List<CompletableFuture<ResultadoTransferencia>> resultados = new ArrayList<>();
+
+        try (LibroParticionado libro = new LibroParticionado(banco, 4, 64)) {
+            List<Thread> productores = new ArrayList<>();
+            for (int h = 0; h < 4; h++) {
+                Random random = new Random(h);
+                List<CompletableFuture<ResultadoTransferencia>> propios = new ArrayList<>();
+                productores.add(new Thread(() -> {
+                    for (int i = 0; i < 20_000; i++) {
+                        propios.add(libro.trasnferir(new Transferencia(cuentas.get(random.nextInt(cuentas.size())),
+                                cuentas.get(random.nextInt(cuentas.size())), random.nextInt(20_000), 2)));
+                    }
+                    synchronized (resultados) {
+                        resultados.addAll(propios);
+                    }
+                }));
+            }
+            productores.forEach(Thread::start);
+            for (Thread productor : productores) {
+                productor.join();
+            }
+        }
+
+        int exitosas = 0;
+        for (CompletableFuture<ResultadoTransferencia> resultado : resultados) {
+            assertTrue(resultado.isDone());
+            if (resultado.get().isExitosa()) {
+                exitosas++;
+            }
+        }
+        assertTrue(exitosas > 0);
+        assertEquals(sumaInicial, sumaUnidades(banco));
+        for (Cuenta cuenta : cuentas) {
+            assertTrue(cuenta.getSaldoUnidades() >= 0);
+        }
+    }
+
+    @Test
+    @Tag("rendimiento")
+    void testRendimientoPorParticiones(TestReporter reporter) throws Exception {
+        int cantidad = 200_000;
+        for (int particiones : new int[]{1, 2, 4}) {
+            Banco banco = crearBanco(10_000, 1_000_000L);
+            List<Cuenta> cuentas = banco.getCuentas();
+            Random random = new Random(7);
+            Transferencia[] transferencias = new Transferencia[cantidad];
+            for (int i = 0; i < cantidad; i++) {
+                transferencias[i] = new Transferencia(cuentas.get(random.nextInt(cuentas.size())),
+                        cuentas.get(random.nextInt(cuentas.size())), 1L, 2);
+            }
+
+            long inicio = System.nanoTime();
+            CompletableFuture<ResultadoTransferencia> ultima = null;
+            try (LibroParticionado libro = new LibroParticionado(banco, particiones)) {
+                for (Transferencia transferencia : transferencias) {
+                    ultima = libro.trasnferir(transferencia);
+                }
+            }
+            long nanos = System.nanoTime() - inicio;
+            assertTrue(ultima.isDone());
+            reporter.publishEntry("particiones " + particiones + " transferencias/s",
+                    String.valueOf(cantidad * 1_000_000_000L / nanos));
+        }
+    }
+}
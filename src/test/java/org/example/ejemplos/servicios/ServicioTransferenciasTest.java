@@ -0,0 +1,114 @@
+package org.example.ejemplos.servicios;
+
+import org.example.ejemplos.exceptions.DineroInsuficienteException;
+import org.example.ejemplos.models.Banco;
+import org.example.ejemplos.models.Cuenta;
+import org.example.ejemplos.models.ResultadoTransferencia;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ServicioTransferenciasTest {
+
+    @Test
+    void testTransferenciaAsincrona() throws Exception {
+        Banco banco = new Banco("Banco De Chile");
+        Cuenta cuenta1 = new Cuenta("kan doe", new BigDecimal("2500"));
+        Cuenta cuenta2 = new Cuenta("Chulin Doe", new BigDecimal("1500.8989"));
+        banco.addCuentas(cuenta1);
+        banco.addCuentas(cuenta2);
+
+        try (ServicioTransferencias servicio = new ServicioTransferencias(banco)) {
+            ResultadoTransferencia exitosa = servicio.trasnferir(cuenta2, cuenta1, new BigDecimal("500")).get(10, TimeUnit.SECONDS);
+            ResultadoTransferencia fallida = servicio.trasnferir(cuenta2, cuenta1, new BigDecimal("5000")).get(10, TimeUnit.SECONDS);
+
+            assertTrue(exitosa.isExitosa());
+            assertFalse(fallida.isExitosa());
+            assertTrue(fallida.getError() instanceof DineroInsuficienteException);
+        }
+        assertEquals("1000.8989", cuenta2.getSaldo().toPlainString());
+        assertEquals("3000", cuenta1.getSaldo().toPlainString());
+    }
+
+    // El dinero da vueltas A -> B -> C -> A y solo alcanza si cada transferencia espera a la anterior de su cuenta
+    @Test
+    @Tag("concurrencia")
+    void testOrdenPorCuenta() throws Exception {
+        Banco banco = new Banco("Banco De Chile");
+        Cuenta a = new Cuenta("a", new BigDecimal("100"));
+        Cuenta b = new Cuenta("b", BigDecimal.ZERO);
+        Cuenta c = new Cuenta("c", BigDecimal.ZERO);
+        banco.addCuentas(a);
+        banco.addCuentas(b);
+        banco.addCuentas(c);
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<CompletableFuture<ResultadoTransferencia>> resultados = new ArrayList<>();
+        try (ServicioTransferencias servicio = new ServicioTransferencias(banco, pool, 64)) {
+            for (int i = 0; i < 2000; i++) {
+                resultados.add(servicio.trasnferir(a, b, new BigDecimal("100")));
+                resultados.add(servicio.trasnferir(b, c, new BigDecimal("100")));
+                resultados.add(servicio.trasnferir(c, a, new BigDecimal("100")));
+            }
+        } finally {
+            pool.shutdown();
+        }
+        for (CompletableFuture<ResultadoTransferencia> resultado : resultados) {
+            assertTrue(resultado.get().isExitosa(), resultado.get().toString());
+        }
+        assertEquals(0, new BigDecimal("100").compareTo(a.getSaldo()));
+    }
+
+    @Test
+    @Tag("concurrencia")
+    void testContrapresion() throws Exception {
+        Banco banco = new Banco("Banco De Chile");
+        Cuenta origen = new Cuenta("origen", new BigDecimal("100"));
+        banco.addCuentas(origen);
+        List<Cuenta> destinos = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            destinos.add(new Cuenta("destino " + i, BigDecimal.ZERO));
+            banco.addCuentas(destinos.get(i));
+        }
+
+        CountDownLatch liberar = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        ServicioTransferencias servicio = new ServicioTransferencias(banco, tarea -> pool.execute(() -> {
+            try {
+                liberar.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            tarea.run();
+        }), 2);
+
+        servicio.trasnferir(origen, destinos.get(0), BigDecimal.ONE);
+        servicio.trasnferir(origen, destinos.get(1), BigDecimal.ONE);
+        assertEquals(2, servicio.getEnVuelo());
+
+        CountDownLatch enviada = new CountDownLatch(1);
+        Thread productor = new Thread(() -> {
+            servicio.trasnferir(origen, destinos.get(2), BigDecimal.ONE);
+            enviada.countDown();
+        });
+        productor.start();
+        assertFalse(enviada.await(200, TimeUnit.MILLISECONDS), "la tercera tiene que esperar un lugar");
+
+        liberar.countDown();
+        assertTrue(enviada.await(10, TimeUnit.SECONDS));
+        servicio.close();
+        pool.shutdown();
+        assertEquals(0, servicio.getEnVuelo());
+        assertEquals("97", origen.getSaldo().toPlainString());
+    }
+}